@@ -0,0 +1,9 @@
+// 按城市统计用户年龄示例脚本
+// 使用聚合助手，只读取 city 和 age 字段
+
+return agg.over('user:*')
+        .groupBy('city')
+        .avg('age')
+        .min('age')
+        .max('age')
+        .count()
@@ -0,0 +1,8 @@
+// 订单关联用户与商品示例脚本
+// 每个被引用的用户/商品 Hash 只读取一次
+
+return redis.join('order:*', 'userId', 'user:')
+        .selectRight('name', 'city')
+        .join('productId', 'product:')
+        .selectRight('name', 'price')
+        .limit(100)
@@ -5,6 +5,9 @@ import org.example.service.llm.LlmProvider;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * LLM Configuration Properties
  * Supports multiple LLM providers
@@ -59,6 +62,36 @@ public class LlmConfig {
      */
     private VllmConfig vllm;
 
+    /**
+     * LMDeploy configuration (local deployment)
+     */
+    private LmdeployConfig lmdeploy;
+
+    /**
+     * SGLang configuration (local deployment)
+     */
+    private SglangConfig sglang;
+
+    /**
+     * Analysis cache configuration
+     */
+    private CacheConfig cache = new CacheConfig();
+
+    /**
+     * Provider health check configuration
+     */
+    private HealthConfig health = new HealthConfig();
+
+    /**
+     * HTTP client configuration shared by all providers
+     */
+    private HttpConfig http = new HttpConfig();
+
+    /**
+     * Hedged request configuration
+     */
+    private HedgeConfig hedge = new HedgeConfig();
+
     @Data
     public static class OpenAIConfig {
         private String apiUrl = "https://api.openai.com/v1/chat/completions";
@@ -91,4 +124,146 @@ public class LlmConfig {
         private String apiUrl = "http://localhost:8000/v1/chat/completions";
         private String model = "meta-llama/Llama-2-7b-chat-hf";
     }
+
+    @Data
+    public static class LmdeployConfig {
+        private String apiUrl = "http://localhost:23333/v1/chat/completions";
+        private String model = "internlm/internlm2_5-7b-chat";
+    }
+
+    @Data
+    public static class SglangConfig {
+        private String apiUrl = "http://localhost:30000/v1/chat/completions";
+        private String model = "meta-llama/Llama-3.1-8B-Instruct";
+    }
+
+    /**
+     * Two-level cache of LLM analyses keyed by script hash, provider, model and prompt version
+     * L1 为本节点内存（Caffeine），L2 为 Redis，所有节点共享
+     */
+    @Data
+    public static class CacheConfig {
+        private boolean enabled = true;
+        /**
+         * Key on the normalized AST fingerprint instead of the exact script text
+         */
+        private boolean normalizeKeys = true;
+        private int localMaxSize = 1000;
+        private long localTtlSeconds = 600;
+        private long redisTtlSeconds = 86400;
+        private String keyPrefix = "llm:analysis:";
+    }
+
+    /**
+     * Background reachability probes and per-provider circuit breakers
+     * 熔断器由真实调用结果驱动，探测只决定提供者是否可达
+     */
+    @Data
+    public static class HealthConfig {
+        /**
+         * Seconds between reachability probes of each provider, 0 disables background probing
+         */
+        private long probeIntervalSeconds = 30;
+        /**
+         * Consecutive failed calls that open a provider's circuit
+         */
+        private int failureThreshold = 3;
+        /**
+         * Seconds an open circuit rejects calls before letting a trial call through
+         */
+        private long openSeconds = 30;
+    }
+
+    /**
+     * One shared OkHttpClient (dispatcher and threads) with a connection pool per provider
+     */
+    @Data
+    public static class HttpConfig {
+        private long connectTimeoutSeconds = 5;
+        /**
+         * Timeout of a whole availability probe call
+         */
+        private long probeTimeoutSeconds = 3;
+        /**
+         * Idle connections kept alive per provider
+         */
+        private int maxIdleConnections = 5;
+        private long keepAliveSeconds = 300;
+        /**
+         * Asynchronous calls running at once on the shared dispatcher, in total and per host
+         */
+        private int maxRequests = 64;
+        private int maxRequestsPerHost = 16;
+        /**
+         * Negotiate HTTP/2 over TLS (ALPN) where the endpoint supports it
+         */
+        private boolean http2 = true;
+        /**
+         * Per-provider overrides and limits, e.g. llm.http.providers.VLLM.max-idle-connections
+         */
+        private Map<LlmProvider, ProviderHttpConfig> providers = new HashMap<>();
+        /**
+         * Retry of rate-limited (429) and overloaded (503) analysis calls
+         */
+        private RetryConfig retry = new RetryConfig();
+    }
+
+    @Data
+    public static class ProviderHttpConfig {
+        private Integer maxIdleConnections;
+        /**
+         * Read, write and whole-call timeout of analysis calls, defaults to llm.timeout
+         */
+        private Integer timeoutSeconds;
+        /**
+         * Analysis calls in flight at once; further calls wait in arrival order. Unlimited when unset
+         */
+        private Integer maxConcurrent;
+        /**
+         * Token buckets refilled over a minute, tokens estimated from prompt length plus max-tokens. Unlimited when unset
+         */
+        private Integer requestsPerMinute;
+        private Integer tokensPerMinute;
+    }
+
+    @Data
+    public static class RetryConfig {
+        private int maxRetries = 3;
+        /**
+         * Exponential backoff with jitter: attempt n waits between half and all of min(initial * 2^n, max);
+         * a Retry-After header (capped at max) takes precedence
+         */
+        private long initialBackoffMs = 500;
+        private long maxBackoffMs = 30000;
+    }
+
+    /**
+     * Hedging of slow analyses: fire a second provider when the first is slower than usual
+     */
+    @Data
+    public static class HedgeConfig {
+        private boolean enabled = true;
+        /**
+         * Hedge once the primary is slower than this percentile of its recent latencies
+         */
+        private double percentile = 0.95;
+        /**
+         * Recent successful calls kept per provider, and how many are needed before the percentile is trusted
+         */
+        private int sampleSize = 200;
+        private int minSamples = 20;
+        /**
+         * Hedge delay until enough latencies were observed
+         */
+        private long initialDelayMs = 10000;
+        /**
+         * Never hedge sooner than this
+         */
+        private long minDelayMs = 1000;
+        private int maxHedgesPerMinute = 6;
+        /**
+         * Provider to hedge with, defaults to the first available provider other than the primary
+         */
+        private LlmProvider provider;
+    }
 }
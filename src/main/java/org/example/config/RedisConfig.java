@@ -1,11 +1,26 @@
 package org.example.config;
 
+import io.lettuce.core.ReadFrom;
+import io.lettuce.core.api.StatefulConnection;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.redis.connection.RedisConfiguration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStaticMasterReplicaConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettucePoolingClientConfiguration;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
+import java.time.Duration;
+
 /**
  * Redis Configuration
  * 开机自启动：brew services start redis 已设置为开机自启动
@@ -14,17 +29,164 @@ import org.springframework.data.redis.serializer.StringRedisSerializer;
  * 日志位置：/usr/local/var/log/redis.log
  * 现在可以启动 Spring Boot 应用，它会自动连接到本地 Redis。
  */
+@Slf4j
 @Configuration
 public class RedisConfig {
 
+    private LettuceConnectionFactory replicaConnectionFactory;
+    private LettuceConnectionFactory dedicatedConnectionFactory;
+
     /**
      * Configure RedisTemplate with proper serializers
      * 使用 StringRedisSerializer 以兼容通过 redis-cli 直接存储的字符串数据
      * 如果需要存储复杂对象，可以在应用层进行 JSON 序列化/反序列化
+     *
+     * 连接角色 "shared"：单键命令走 Spring Boot 连接工厂的共享多路复用连接；
+     * pipeline 与事务转交给 dedicatedRedisTemplate，长 pipeline 不会阻塞短 GET
+     */
+    @Bean
+    @Primary
+    public RedisTemplate<String, Object> redisTemplate(
+            RedisConnectionFactory connectionFactory,
+            @Qualifier("dedicatedRedisTemplate") RedisTemplate<String, Object> dedicatedRedisTemplate,
+            RedisConnectionsConfig connections,
+            MeterRegistry meterRegistry) {
+        RoleRedisTemplate template = new RoleRedisTemplate("shared", 0, 0, meterRegistry);
+        if (connections.isDedicatedEnabled()) {
+            template.setDedicated(dedicatedRedisTemplate);
+        }
+        return configure(template, connectionFactory);
+    }
+
+    /**
+     * Template of the "dedicated" role: a bounded pool of connections that are never shared,
+     * for pipelines, transactions and blocking commands
+     * 连接池沿用 Spring Boot 连接工厂的节点配置（单机 / 哨兵 / 集群）；连接工厂不注册为 Bean，原因同 scriptReadRedisTemplate
+     */
+    @Bean
+    public RedisTemplate<String, Object> dedicatedRedisTemplate(
+            RedisConnectionFactory connectionFactory,
+            RedisConnectionsConfig connections,
+            MeterRegistry meterRegistry) {
+        RoleRedisTemplate template = new RoleRedisTemplate("dedicated", connections.getDedicatedPoolSize(),
+                connections.getMaxWaitMs(), meterRegistry);
+        if (!connections.isDedicatedEnabled() || !(connectionFactory instanceof LettuceConnectionFactory shared)) {
+            return configure(template, connectionFactory);
+        }
+
+        LettucePoolingClientConfiguration.LettucePoolingClientConfigurationBuilder clientConfiguration =
+                pooling(connections, shared.getClientConfiguration().getCommandTimeout());
+        if (shared.getClientConfiguration().isUseSsl()) {
+            clientConfiguration.useSsl();
+        }
+
+        dedicatedConnectionFactory = new LettuceConnectionFactory(nodesOf(shared), clientConfiguration.build());
+        dedicatedConnectionFactory.setShareNativeConnection(false);
+        dedicatedConnectionFactory.afterPropertiesSet();
+
+        log.info("Redis pipelines and transactions use a dedicated pool of {} connections", connections.getDedicatedPoolSize());
+        return configure(template, dedicatedConnectionFactory);
+    }
+
+    /**
+     * Template used for script reads
+     * 未开启 redis.topology 时就是 redisTemplate；开启后使用 Lettuce 主从连接，读按 readFrom 策略分发到副本，写自动发往主节点。
+     * 与主模板一样分两个角色：单键读共享一条主从连接（"replica"），pipeline 从同一连接工厂的连接池借用连接并按池大小限流
+     * （"replica-dedicated"），不会为每个 pipeline 新建主从连接。
+     * 连接工厂不注册为 Bean，避免替换 Spring Boot 自动配置的主连接
      */
     @Bean
-    public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory connectionFactory) {
-        RedisTemplate<String, Object> template = new RedisTemplate<>();
+    public RedisTemplate<String, Object> scriptReadRedisTemplate(
+            @Qualifier("redisTemplate") RedisTemplate<String, Object> redisTemplate,
+            RedisTopologyConfig topology,
+            RedisConnectionsConfig connections,
+            MeterRegistry meterRegistry) {
+        if (!topology.isEnabled()) {
+            return redisTemplate;
+        }
+
+        RedisStaticMasterReplicaConfiguration configuration = new RedisStaticMasterReplicaConfiguration(
+                host(topology.getMaster()), port(topology.getMaster()));
+        topology.getReplicas().forEach(replica -> configuration.addNode(host(replica), port(replica)));
+        configuration.setDatabase(topology.getDatabase());
+        if (topology.getPassword() != null && !topology.getPassword().isEmpty()) {
+            configuration.setPassword(topology.getPassword());
+        }
+
+        LettuceClientConfiguration clientConfiguration = pooling(connections, Duration.ofMillis(topology.getTimeout()))
+                .readFrom(readFrom(topology.getReadFrom()))
+                .build();
+        replicaConnectionFactory = new LettuceConnectionFactory(configuration, clientConfiguration);
+        replicaConnectionFactory.afterPropertiesSet();
+
+        RoleRedisTemplate template = new RoleRedisTemplate("replica", 0, 0, meterRegistry);
+        if (connections.isDedicatedEnabled()) {
+            template.setDedicated(configure(new RoleRedisTemplate("replica-dedicated", connections.getDedicatedPoolSize(),
+                    connections.getMaxWaitMs(), meterRegistry), replicaConnectionFactory));
+        }
+
+        log.info("Script reads routed with {} over master {} and replicas {}",
+                topology.getReadFrom(), topology.getMaster(), topology.getReplicas());
+        return configure(template, replicaConnectionFactory);
+    }
+
+    /**
+     * Client configuration whose pool backs pipelines and transactions, sized like the dedicated role
+     */
+    static LettucePoolingClientConfiguration.LettucePoolingClientConfigurationBuilder pooling(
+            RedisConnectionsConfig connections, Duration commandTimeout) {
+        GenericObjectPoolConfig<StatefulConnection<?, ?>> pool = new GenericObjectPoolConfig<>();
+        pool.setMaxTotal(connections.getDedicatedPoolSize());
+        pool.setMaxIdle(connections.getDedicatedPoolSize());
+        pool.setMinIdle(connections.getDedicatedMinIdle());
+        pool.setMaxWait(Duration.ofMillis(connections.getMaxWaitMs()));
+        return LettucePoolingClientConfiguration.builder()
+                .poolConfig(pool)
+                .commandTimeout(commandTimeout);
+    }
+
+    @PreDestroy
+    public void closeReplicaConnections() {
+        if (replicaConnectionFactory != null) {
+            replicaConnectionFactory.destroy();
+        }
+        if (dedicatedConnectionFactory != null) {
+            dedicatedConnectionFactory.destroy();
+        }
+    }
+
+    static ReadFrom readFrom(RedisTopologyConfig.ReadPolicy policy) {
+        return switch (policy) {
+            case NEAREST -> ReadFrom.LOWEST_LATENCY;
+            case REPLICA_PREFERRED -> ReadFrom.REPLICA_PREFERRED;
+            case ROUND_ROBIN -> new RoundRobinReadFrom();
+            case REPLICA -> ReadFrom.REPLICA;
+            case MASTER -> ReadFrom.UPSTREAM;
+        };
+    }
+
+    static RedisConfiguration nodesOf(LettuceConnectionFactory factory) {
+        if (factory.isClusterAware()) {
+            return factory.getClusterConfiguration();
+        }
+        if (factory.getSentinelConfiguration() != null) {
+            return factory.getSentinelConfiguration();
+        }
+        return factory.getStandaloneConfiguration();
+    }
+
+    static String host(String node) {
+        int separator = node.lastIndexOf(':');
+        return separator < 0 ? node : node.substring(0, separator);
+    }
+
+    static int port(String node) {
+        int separator = node.lastIndexOf(':');
+        return separator < 0 ? 6379 : Integer.parseInt(node.substring(separator + 1).trim());
+    }
+
+    private static RedisTemplate<String, Object> configure(RedisTemplate<String, Object> template,
+                                                          RedisConnectionFactory connectionFactory) {
         template.setConnectionFactory(connectionFactory);
 
         // Use String serializer for keys and values
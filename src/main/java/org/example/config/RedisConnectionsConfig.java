@@ -0,0 +1,33 @@
+package org.example.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Connection roles of the primary RedisTemplate
+ * 单键读写走一条共享的多路复用连接；pipeline、事务和阻塞命令从有上限的专用连接池借用连接，
+ * 长 pipeline 不会阻塞共享连接上的短命令
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "redis.connections")
+public class RedisConnectionsConfig {
+
+    /**
+     * Route pipelines and transactions to the dedicated pool; false keeps everything on the shared connection
+     */
+    private boolean dedicatedEnabled = true;
+
+    /**
+     * Dedicated connections (pipelines, transactions, blocking commands)
+     */
+    private int dedicatedPoolSize = 8;
+
+    private int dedicatedMinIdle = 0;
+
+    /**
+     * Longest wait for a dedicated connection in milliseconds before failing
+     */
+    private long maxWaitMs = 2000;
+}
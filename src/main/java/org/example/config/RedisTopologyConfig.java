@@ -0,0 +1,70 @@
+package org.example.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Master/replica topology used for script reads
+ * 开启后脚本的读操作按 readFrom 策略发往副本，写操作以及写入之后的读仍然走主节点
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "redis.topology")
+public class RedisTopologyConfig {
+
+    /**
+     * Route script reads through a master/replica connection
+     */
+    private boolean enabled = false;
+
+    /**
+     * Master node as host:port
+     */
+    private String master = "localhost:6379";
+
+    /**
+     * Replica nodes as host:port
+     */
+    private List<String> replicas = new ArrayList<>();
+
+    /**
+     * Which node serves a read
+     */
+    private ReadPolicy readFrom = ReadPolicy.REPLICA_PREFERRED;
+
+    private String password;
+
+    private int database = 0;
+
+    /**
+     * Command timeout in milliseconds
+     */
+    private long timeout = 3000;
+
+    public enum ReadPolicy {
+        /**
+         * Lowest measured latency, master included
+         */
+        NEAREST,
+        /**
+         * Replicas, falling back to the master when none is reachable
+         */
+        REPLICA_PREFERRED,
+        /**
+         * Rotate over replicas on every read connection selection
+         */
+        ROUND_ROBIN,
+        /**
+         * Replicas only
+         */
+        REPLICA,
+        /**
+         * Everything on the master (same as disabled, useful to compare)
+         */
+        MASTER
+    }
+}
@@ -0,0 +1,119 @@
+package org.example.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * RedisTemplate bound to one connection role ("shared" or "dedicated")
+ * 每个角色记录 redis.connections.in_flight（正在执行的操作数）与 redis.connections.wait（等待连接的时间）。
+ * 专用角色用与连接池大小相同的许可数限流，等待许可的时间就是等待连接池的时间；
+ * 共享角色的 pipeline 与事务转交给专用角色执行
+ */
+class RoleRedisTemplate extends RedisTemplate<String, Object> {
+
+    private final Semaphore permits;
+    private final long maxWaitMs;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Timer waitTimer;
+    private final ThreadLocal<Boolean> holding = ThreadLocal.withInitial(() -> false);
+    private RedisTemplate<String, Object> dedicated;
+
+    /**
+     * @param permits 0 for a multiplexed connection without a limit
+     */
+    RoleRedisTemplate(String role, int permits, long maxWaitMs, MeterRegistry meterRegistry) {
+        this.permits = permits > 0 ? new Semaphore(permits, true) : null;
+        this.maxWaitMs = maxWaitMs;
+        this.waitTimer = Timer.builder("redis.connections.wait")
+                .description("Time spent waiting for a connection of this role")
+                .tag("role", role)
+                .register(meterRegistry);
+        Gauge.builder("redis.connections.in_flight", inFlight, AtomicInteger::get)
+                .description("Redis operations currently running on connections of this role")
+                .tag("role", role)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Send pipelines and transactions of this template to another role
+     */
+    void setDedicated(RedisTemplate<String, Object> dedicated) {
+        this.dedicated = dedicated;
+    }
+
+    int getInFlight() {
+        return inFlight.get();
+    }
+
+    @Override
+    public <T> T execute(RedisCallback<T> action, boolean exposeConnection, boolean pipeline) {
+        return withConnection(() -> super.execute(action, exposeConnection, pipeline));
+    }
+
+    @Override
+    public <T> T execute(SessionCallback<T> session) {
+        return dedicated != null ? dedicated.execute(session) : withConnection(() -> super.execute(session));
+    }
+
+    @Override
+    public List<Object> executePipelined(RedisCallback<?> action, RedisSerializer<?> resultSerializer) {
+        return dedicated != null
+                ? dedicated.executePipelined(action, resultSerializer)
+                : super.executePipelined(action, resultSerializer);
+    }
+
+    @Override
+    public List<Object> executePipelined(SessionCallback<?> session, RedisSerializer<?> resultSerializer) {
+        return dedicated != null
+                ? dedicated.executePipelined(session, resultSerializer)
+                : super.executePipelined(session, resultSerializer);
+    }
+
+    private <T> T withConnection(Supplier<T> operation) {
+        // SessionCallback 内的每条命令会再次进入，同一线程只占用一个许可
+        if (holding.get()) {
+            return operation.get();
+        }
+        acquire();
+        holding.set(true);
+        inFlight.incrementAndGet();
+        try {
+            return operation.get();
+        } finally {
+            inFlight.decrementAndGet();
+            holding.set(false);
+            if (permits != null) {
+                permits.release();
+            }
+        }
+    }
+
+    private void acquire() {
+        if (permits == null) {
+            return;
+        }
+        long started = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(maxWaitMs, TimeUnit.MILLISECONDS)) {
+                throw new RedisConnectionFailureException("No dedicated Redis connection available within " + maxWaitMs + "ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RedisConnectionFailureException("Interrupted while waiting for a dedicated Redis connection", e);
+        } finally {
+            waitTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package org.example.config;
+
+import io.lettuce.core.ReadFrom;
+import io.lettuce.core.models.role.RedisNodeDescription;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lettuce read policy rotating over replicas, the master is only used when no replica is known
+ */
+class RoundRobinReadFrom extends ReadFrom {
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    @Override
+    public List<RedisNodeDescription> select(Nodes nodes) {
+        List<RedisNodeDescription> replicas = new ArrayList<>();
+        List<RedisNodeDescription> masters = new ArrayList<>();
+        for (RedisNodeDescription node : nodes) {
+            (node.getRole().isReplica() ? replicas : masters).add(node);
+        }
+        if (replicas.isEmpty()) {
+            return masters;
+        }
+
+        int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+        List<RedisNodeDescription> ordered = new ArrayList<>(replicas.size() + masters.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            ordered.add(replicas.get((start + i) % replicas.size()));
+        }
+        ordered.addAll(masters);
+        return ordered;
+    }
+
+    @Override
+    protected boolean isOrderSensitive() {
+        return true;
+    }
+}
@@ -4,6 +4,7 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -30,7 +31,75 @@ public class ScriptConfig {
     private int cacheSize = 100;
 
     /**
-     * Allowed Redis commands (whitelist)
+     * Number of keys fetched per pipelined round trip in batch reads
+     */
+    private int pipelineBatchSize = 500;
+
+    /**
+     * Return hash reads as read-only compact rows sharing field names per key prefix.
+     * Rows cannot be modified in scripts (e.g. userData.put) when enabled
+     */
+    private boolean compactRows = false;
+
+    /**
+     * Push pattern-based agg aggregations down to Redis as a cached Lua script by default
+     * (scripts can always opt in per query with .pushdown())
+     */
+    private boolean luaPushdown = false;
+
+    /**
+     * Rewrite redis.keys(p).each { k -> redis.hgetAll(k) ... } loops at compile time into
+     * SCAN batches with pipelined prefetching (removes the per-key round trip)
+     */
+    private boolean batchRewrite = false;
+
+    /**
+     * Worker threads shared by parallelEach/parallelCollect across all scripts
+     */
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Track key access frequency of scripts (count-min sketch), exposed at /actuator/hotkeys
+     */
+    private boolean hotKeysEnabled = true;
+
+    /**
+     * Number of hot keys / hot prefixes reported
+     */
+    private int hotKeysTopK = 20;
+
+    /**
+     * Access counts are halved every this many seconds so the ranking follows recent traffic
+     */
+    private long hotKeysDecaySeconds = 60;
+
+    /**
+     * Counters per sketch row (4 rows of longs, 8192 wide uses 256KB)
+     */
+    private int hotKeysSketchWidth = 8192;
+
+    /**
+     * Secondary indexes maintained on writes through the script Redis operations
+     */
+    private List<IndexDefinition> indexes = new ArrayList<>();
+
+    /**
+     * Per-execution budget: maximum Redis commands a script may issue (0 = unlimited)
+     */
+    private long maxCommands = 100_000;
+
+    /**
+     * Per-execution budget: maximum keys returned by KEYS/SCAN (0 = unlimited)
+     */
+    private long maxKeysScanned = 1_000_000;
+
+    /**
+     * Per-execution budget: maximum approximate bytes read from Redis (0 = unlimited)
+     */
+    private long maxBytesRead = 256L * 1024 * 1024;
+
+    /**
+     * Allowed Redis commands (whitelist), enforced by the script Redis operations; empty allows all
      */
     private List<String> allowedCommands;
 
@@ -38,4 +107,27 @@ public class ScriptConfig {
      * Forbidden patterns in scripts
      */
     private List<String> forbiddenPatterns;
+
+    @Data
+    public static class IndexDefinition {
+        /**
+         * Key prefix without the trailing colon, e.g. "user" for user:*
+         */
+        private String prefix;
+
+        /**
+         * Indexed hash field; empty to index the value of string keys
+         */
+        private String field;
+
+        /**
+         * EQUALITY (Redis set per value) or RANGE (sorted set scored by numeric value)
+         */
+        private IndexType type = IndexType.EQUALITY;
+    }
+
+    public enum IndexType {
+        EQUALITY,
+        RANGE
+    }
 }
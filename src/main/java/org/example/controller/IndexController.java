@@ -0,0 +1,57 @@
+package org.example.controller;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.service.redis.SecondaryIndexes;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+/**
+ * Provides endpoints for inspecting and backfilling secondary indexes
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/index")
+@CrossOrigin(origins = "*")
+public class IndexController {
+
+    private final SecondaryIndexes secondaryIndexes;
+
+    public IndexController(SecondaryIndexes secondaryIndexes) {
+        this.secondaryIndexes = secondaryIndexes;
+    }
+
+    /**
+     * List declared indexes and backfill progress
+     */
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> getIndexes() {
+        return ResponseEntity.ok(Map.of(
+                "indexes", secondaryIndexes.getDefinitions(),
+                "backfill", secondaryIndexes.getBackfillStatus()
+        ));
+    }
+
+    /**
+     * Start an online SCAN-based backfill of all declared indexes
+     */
+    @PostMapping("/backfill")
+    public ResponseEntity<Map<String, Object>> backfill() {
+        log.info("Starting backfill of {} indexes", secondaryIndexes.getDefinitions().size());
+
+        try {
+            int started = secondaryIndexes.backfillAll().size();
+            return ResponseEntity.ok(Map.of(
+                    "success", true,
+                    "message", "Backfill started for " + started + " indexes"
+            ));
+        } catch (Exception e) {
+            log.error("Failed to start index backfill", e);
+            return ResponseEntity.ok(Map.of(
+                    "success", false,
+                    "error", e.getMessage()
+            ));
+        }
+    }
+}
@@ -7,10 +7,16 @@ import org.example.model.ScriptExecutionRequest;
 import org.example.model.ScriptExecutionResult;
 import org.example.service.LlmAnalysisService;
 import org.example.service.ScriptEngineService;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 /**
  * REST API Controller for script operations
  */
@@ -54,25 +60,88 @@ public class ScriptController {
 
     /**
      * Analyze a script using LLM
+     * 异步返回：等待 LLM 响应期间不占用 Tomcat 请求线程
      */
     @PostMapping("/analyze")
-    public ResponseEntity<ScriptAnalysisResult> analyzeScript( @RequestBody ScriptAnalysisRequest request) {
+    public CompletableFuture<ResponseEntity<ScriptAnalysisResult>> analyzeScript( @RequestBody ScriptAnalysisRequest request) {
         log.info("Analyzing script with provider: {}", request.getProvider() != null ? request.getProvider() : "auto");
 
+        CompletableFuture<ScriptAnalysisResult> analysis;
         try {
-            ScriptAnalysisResult result = llmAnalysisService.analyzeScript(
+            analysis = llmAnalysisService.analyzeScriptAsync(
                     request.getScript(),
                     request.getProvider()
             );
-            return ResponseEntity.ok(result);
         } catch (Exception e) {
-            log.error("Script analysis failed", e);
+            analysis = CompletableFuture.failedFuture(e);
+        }
+        return analysis.handle((result, error) -> {
+            if (error == null) {
+                return ResponseEntity.ok(result);
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            log.error("Script analysis failed", cause);
             return ResponseEntity.ok(ScriptAnalysisResult.builder()
                     .securityScore(0)
                     .qualityScore(0)
                     .safeToExecute(false)
-                    .llmAnalysis("Analysis failed: " + e.getMessage())
+                    .llmAnalysis("Analysis failed: " + cause.getMessage())
                     .build());
+        });
+    }
+
+    /**
+     * Analyze a script using LLM, streaming the result as server-sent events
+     * 事件依次为 analysis（静态分析结果）、若干 token（{"text": 增量}）、done（完整结果，与 /analyze 的响应相同）；
+     * 页面在第一个 token 到达时就开始渲染
+     */
+    @PostMapping(value = "/analyze/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter analyzeScriptStream( @RequestBody ScriptAnalysisRequest request) {
+        log.info("Streaming analysis with provider: {}", request.getProvider() != null ? request.getProvider() : "auto");
+
+        SseEmitter emitter = new SseEmitter();
+        CompletableFuture<ScriptAnalysisResult> analysis;
+        try {
+            analysis = llmAnalysisService.analyzeScriptStreaming(
+                    request.getScript(),
+                    request.getProvider(),
+                    result -> send(emitter, "analysis", result),
+                    token -> send(emitter, "token", Map.of("text", token))
+            );
+        } catch (Exception e) {
+            analysis = CompletableFuture.failedFuture(e);
+        }
+        analysis.whenComplete((result, error) -> {
+            ScriptAnalysisResult done = result;
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                log.error("Streaming script analysis failed", cause);
+                done = ScriptAnalysisResult.builder()
+                        .securityScore(0)
+                        .qualityScore(0)
+                        .safeToExecute(false)
+                        .llmAnalysis("Analysis failed: " + cause.getMessage())
+                        .build();
+            }
+            try {
+                send(emitter, "done", done);
+                emitter.complete();
+            } catch (UncheckedIOException e) {
+                log.debug("Client went away before the analysis finished: {}", e.getMessage());
+                emitter.completeWithError(e.getCause());
+            }
+        });
+        return emitter;
+    }
+
+    /**
+     * Send one event; an exception here (the browser went away) aborts reading the LLM stream
+     */
+    private static void send(SseEmitter emitter, String name, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
     }
 
@@ -110,6 +179,8 @@ public class ScriptController {
         allProviders.add(createProviderInfo("COMPASS", "Compass", "cloud"));
         allProviders.add(createProviderInfo("OLLAMA", "Ollama (Local)", "local"));
         allProviders.add(createProviderInfo("VLLM", "vLLM (Local)", "local"));
+        allProviders.add(createProviderInfo("LLMDEPLOY", "LMDeploy (Local)", "local"));
+        allProviders.add(createProviderInfo("SGLANG", "SGLang (Local)", "local"));
         
         Map<String, Object> response = new HashMap<>();
         response.put("providers", providers);
@@ -55,4 +55,24 @@ public class ScriptAnalysisResult {
      * Whether the script is safe to execute
      */
     private boolean safeToExecute;
+
+    /**
+     * Whether the LLM analysis came from the analysis cache
+     */
+    private boolean cacheHit;
+
+    /**
+     * Cache tier that served the LLM analysis: LOCAL, REDIS, or null when the LLM was called
+     */
+    private String cacheTier;
+
+    /**
+     * How the cached analysis matched: EXACT (same script text) or NORMALIZED (same structure)
+     */
+    private String cacheMatch;
+
+    /**
+     * Seconds until the cached LLM analysis expires (for a fresh analysis: the TTL it was stored with)
+     */
+    private Long cacheTtlSeconds;
 }
@@ -43,4 +43,9 @@ public class ScriptExecutionResult {
      * Whether this was a test run
      */
     private boolean testRun;
+
+    /**
+     * Whether an N+1 keys/each/hgetAll loop was rewritten into batched prefetching at compile time
+     */
+    private boolean batchRewriteApplied;
 }
@@ -3,13 +3,23 @@ package org.example.service;
 import lombok.extern.slf4j.Slf4j;
 import org.example.config.ScriptConfig;
 import org.example.model.ScriptAnalysisResult;
+import org.example.service.llm.AnalysisCache;
+import org.example.service.llm.HedgePolicy;
 import org.example.service.llm.LlmProvider;
 import org.example.service.llm.LlmService;
 import org.example.service.llm.LlmServiceFactory;
+import org.example.service.script.HashProjection;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
@@ -22,13 +32,35 @@ public class LlmAnalysisService {
 
     private final ScriptConfig scriptConfig;
     private final LlmServiceFactory llmServiceFactory;
+    private final AnalysisCache analysisCache;
+    private final HedgePolicy hedgePolicy;
 
     public LlmAnalysisService(
             ScriptConfig scriptConfig,
             LlmServiceFactory llmServiceFactory
+    ) {
+        this(scriptConfig, llmServiceFactory, AnalysisCache.disabled());
+    }
+
+    public LlmAnalysisService(
+            ScriptConfig scriptConfig,
+            LlmServiceFactory llmServiceFactory,
+            AnalysisCache analysisCache
+    ) {
+        this(scriptConfig, llmServiceFactory, analysisCache, HedgePolicy.disabled());
+    }
+
+    @Autowired
+    public LlmAnalysisService(
+            ScriptConfig scriptConfig,
+            LlmServiceFactory llmServiceFactory,
+            AnalysisCache analysisCache,
+            HedgePolicy hedgePolicy
     ) {
         this.scriptConfig = scriptConfig;
         this.llmServiceFactory = llmServiceFactory;
+        this.analysisCache = analysisCache;
+        this.hedgePolicy = hedgePolicy;
     }
 
     /**
@@ -40,6 +72,8 @@ public class LlmAnalysisService {
 
     /**
      * 分析和执行LLM服务，指定LLM提供者
+     * 结构相同的脚本（只差空白、注释、变量名或字面量）在同一提供者、模型与提示词版本下复用缓存的 LLM 分析（本地 + Redis），
+     * 静态分析每次按原文重新计算
      */
     public ScriptAnalysisResult analyzeScript(String script, LlmProvider provider) {
         log.info("Analyzing script with LLM, provider: {}", provider != null ? provider : "auto");
@@ -49,22 +83,154 @@ public class LlmAnalysisService {
 
         // Enhance with LLM analysis
         try {
-            LlmService llmService = provider != null
-                    ? llmServiceFactory.getService(provider)
-                    : llmServiceFactory.getPrimaryService();
+            LlmService llmService = selectService(provider);
+            String cacheKey = analysisCache.key(script, llmService);
+            if (applyCachedAnalysis(basicAnalysis, cacheKey, script, llmService)) {
+                releaseUnused(provider, llmService);
+                return basicAnalysis;
+            }
 
-            String llmAnalysis = llmService.analyzeScript(script);
-            basicAnalysis.setLlmAnalysis(llmAnalysis);
+            long startTime = System.currentTimeMillis();
+            String llmAnalysis;
+            try {
+                llmAnalysis = llmService.analyzeScript(script);
+            } catch (Exception e) {
+                llmServiceFactory.recordFailure(llmService.getProvider());
+                throw e;
+            }
+            llmServiceFactory.recordSuccess(llmService.getProvider());
+            applyFreshAnalysis(basicAnalysis, cacheKey, script, llmAnalysis, System.currentTimeMillis() - startTime);
 
             log.info("LLM analysis completed successfully using {}", llmService.getProvider());
         } catch (Exception e) {
-            log.error("LLM分析失败，使用原始分析", e);
-            basicAnalysis.setLlmAnalysis("LLM分析无法使用: " + e.getMessage());
+            applyFailure(basicAnalysis, e);
         }
 
         return basicAnalysis;
     }
 
+    /**
+     * 与 analyzeScript 相同，但 LLM 调用异步执行：返回时只完成了静态分析与缓存查找，
+     * LLM 响应到达后在 HTTP 线程上补全结果，等待期间不占用调用线程。
+     * 未指定提供者时按 HedgePolicy 对冲：主提供者慢于其历史耗时分位时再调用备用提供者，先成功者胜出
+     */
+    public CompletableFuture<ScriptAnalysisResult> analyzeScriptAsync(String script, LlmProvider provider) {
+        log.info("Analyzing script asynchronously with LLM, provider: {}", provider != null ? provider : "auto");
+        return analyzeAsync(script, provider, provider == null, basicAnalysis -> {
+        }, llmService -> llmService.analyzeScriptAsync(script));
+    }
+
+    /**
+     * 流式分析：静态分析完成后立即交给 onStaticAnalysis，LLM 生成的 token 增量到达时逐个交给 onToken；
+     * 命中缓存时没有 token，完整结果都在返回的 future 中
+     */
+    public CompletableFuture<ScriptAnalysisResult> analyzeScriptStreaming(String script, LlmProvider provider,
+                                                                         Consumer<ScriptAnalysisResult> onStaticAnalysis,
+                                                                         Consumer<String> onToken) {
+        log.info("Streaming script analysis with LLM, provider: {}", provider != null ? provider : "auto");
+        return analyzeAsync(script, provider, false, onStaticAnalysis, llmService -> llmService.analyzeScriptStreaming(script, onToken));
+    }
+
+    /**
+     * @param hedge 是否允许对冲；流式分析不对冲，两个提供者的 token 无法交织在同一个流里
+     */
+    private CompletableFuture<ScriptAnalysisResult> analyzeAsync(String script, LlmProvider provider, boolean hedge,
+                                                                 Consumer<ScriptAnalysisResult> onStaticAnalysis,
+                                                                 Function<LlmService, CompletableFuture<String>> call) {
+        ScriptAnalysisResult basicAnalysis = performBasicAnalysis(script);
+
+        LlmService llmService;
+        String cacheKey;
+        CompletableFuture<HedgePolicy.Answer> llmCall;
+        try {
+            llmService = selectService(provider);
+            cacheKey = analysisCache.key(script, llmService);
+            if (applyCachedAnalysis(basicAnalysis, cacheKey, script, llmService)) {
+                releaseUnused(provider, llmService);
+                return CompletableFuture.completedFuture(basicAnalysis);
+            }
+            onStaticAnalysis.accept(basicAnalysis);
+            LlmProvider primary = llmService.getProvider();
+            Supplier<LlmService> secondary = hedge && hedgePolicy.isEnabled()
+                    ? () -> llmServiceFactory.getHedgeService(primary, hedgePolicy.getProvider())
+                    : null;
+            llmCall = hedgePolicy.race(llmService, secondary, call, this::reportOutcome);
+        } catch (Exception e) {
+            applyFailure(basicAnalysis, e);
+            return CompletableFuture.completedFuture(basicAnalysis);
+        }
+
+        long startTime = System.currentTimeMillis();
+        return llmCall.handle((answer, error) -> {
+            if (error != null) {
+                applyFailure(basicAnalysis, error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+                return basicAnalysis;
+            }
+            // 对冲胜出的分析按实际作答的提供者与模型缓存
+            String answerKey = answer.service() == llmService ? cacheKey : analysisCache.key(script, answer.service());
+            applyFreshAnalysis(basicAnalysis, answerKey, script, answer.text(), System.currentTimeMillis() - startTime);
+            log.info("LLM analysis completed successfully using {}", answer.service().getProvider());
+            return basicAnalysis;
+        });
+    }
+
+    /**
+     * Feed each call's outcome to its provider's circuit breaker
+     */
+    private void reportOutcome(LlmService llmService, Throwable error) {
+        if (error == null) {
+            llmServiceFactory.recordSuccess(llmService.getProvider());
+        } else {
+            llmServiceFactory.recordFailure(llmService.getProvider());
+        }
+    }
+
+    private LlmService selectService(LlmProvider provider) {
+        return provider != null
+                ? llmServiceFactory.getService(provider)
+                : llmServiceFactory.getPrimaryService();
+    }
+
+    /**
+     * 自动选择的提供者最终没有被调用时交还，避免它占着半开熔断器的试探名额
+     */
+    private void releaseUnused(LlmProvider provider, LlmService llmService) {
+        if (provider == null) {
+            llmServiceFactory.release(llmService.getProvider());
+        }
+    }
+
+    /**
+     * 缓存命中时写入缓存的分析并返回 true
+     */
+    private boolean applyCachedAnalysis(ScriptAnalysisResult basicAnalysis, String cacheKey, String script, LlmService llmService) {
+        AnalysisCache.Hit hit = analysisCache.get(cacheKey, script);
+        if (hit == null) {
+            return false;
+        }
+        basicAnalysis.setLlmAnalysis(hit.analysis());
+        basicAnalysis.setCacheHit(true);
+        basicAnalysis.setCacheTier(hit.tier());
+        basicAnalysis.setCacheMatch(hit.match());
+        basicAnalysis.setCacheTtlSeconds(hit.ttlSeconds());
+        log.info("LLM analysis served from {} cache ({} match) for {}", hit.tier(), hit.match(), llmService.getProvider());
+        return true;
+    }
+
+    private void applyFreshAnalysis(ScriptAnalysisResult basicAnalysis, String cacheKey, String script, String llmAnalysis, long durationMs) {
+        basicAnalysis.setLlmAnalysis(llmAnalysis);
+        // 失败的分析不会走到这里，不会被缓存
+        long ttlSeconds = analysisCache.put(cacheKey, script, llmAnalysis, durationMs);
+        if (ttlSeconds > 0) {
+            basicAnalysis.setCacheTtlSeconds(ttlSeconds);
+        }
+    }
+
+    private void applyFailure(ScriptAnalysisResult basicAnalysis, Throwable e) {
+        log.error("LLM分析失败，使用原始分析", e);
+        basicAnalysis.setLlmAnalysis("LLM分析无法使用: " + e.getMessage());
+    }
+
     /**
      * 执行原始分析
      */
@@ -123,6 +289,13 @@ public class LlmAnalysisService {
             performanceSuggestions.add("Avoid using KEYS command in production, use SCAN instead");
         }
 
+        Set<String> projectedFields = findProjectableFields(script);
+        if (!projectedFields.isEmpty()) {
+            String fieldList = projectedFields.stream().map(f -> "'" + f + "'").collect(Collectors.joining(", "));
+            performanceSuggestions.add("Only fields " + projectedFields + " of hgetAll results are used, fetch them with redis.hmget(key, "
+                    + fieldList + ") or redis.hgetAllMany(keys, [" + fieldList + "]) instead");
+        }
+
         if (script.contains("while") || script.contains("for")) {
             performanceSuggestions.add("Be cautious with loops, they may cause performance issues");
         }
@@ -151,6 +324,13 @@ public class LlmAnalysisService {
                 .build();
     }
 
+    /**
+     * 找出 hgetAll 结果变量上实际访问的字段；若结果被整体使用（调用方法、作为参数、返回等）则返回空集合
+     */
+    Set<String> findProjectableFields(String script) {
+        return HashProjection.fields(script);
+    }
+
     /**
      * Get available LLM providers
      */
@@ -3,16 +3,42 @@ package org.example.service;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import groovy.lang.Binding;
+import groovy.lang.Closure;
 import groovy.lang.GroovyShell;
 import groovy.lang.Script;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.runtime.MethodClosure;
 import org.example.config.ScriptConfig;
 import org.example.model.ScriptExecutionResult;
+import org.example.service.redis.Aggregations;
+import org.example.service.redis.HotKeyTracker;
+import org.example.service.redis.Join;
+import org.example.service.redis.LazyResult;
+import org.example.service.redis.LuaScanAggregator;
+import org.example.service.redis.ParallelScan;
+import org.example.service.redis.Query;
+import org.example.service.redis.RedisClusterRouter;
+import org.example.service.redis.RowSchemaRegistry;
+import org.example.service.redis.ScriptBudget;
+import org.example.service.redis.SecondaryIndexes;
+import org.example.service.script.BatchFetchRewriter;
 import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Service;
 
+import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 /**
  * Service for executing Groovy 脚本 against Redis
@@ -23,19 +49,53 @@ import java.util.concurrent.*;
 public class ScriptEngineService {
 
     private final RedisTemplate<String, Object> redisTemplate;
+    private final RedisTemplate<String, Object> readTemplate;
     private final ScriptConfig scriptConfig;
     private final ExecutorService executorService;
-    private final Cache<String, Script> scriptCache;
+    private final ExecutorService parallelExecutor;
+    private final Cache<String, CompiledScript> scriptCache;
+    private final RowSchemaRegistry rowSchemaRegistry = new RowSchemaRegistry();
+    private final LuaScanAggregator luaScanAggregator;
+    private final SecondaryIndexes secondaryIndexes;
+    private final MeterRegistry meterRegistry;
+    private final HotKeyTracker hotKeyTracker;
+    private final RedisClusterRouter clusterRouter;
 
     public ScriptEngineService(
             RedisTemplate<String, Object> redisTemplate,
             ScriptConfig scriptConfig
+    ) {
+        this(redisTemplate, scriptConfig, new SecondaryIndexes(redisTemplate, scriptConfig), new SimpleMeterRegistry(),
+                new HotKeyTracker(scriptConfig), redisTemplate, new RedisClusterRouter(redisTemplate, new SimpleMeterRegistry()));
+    }
+
+    @Autowired
+    public ScriptEngineService(
+            RedisTemplate<String, Object> redisTemplate,
+            ScriptConfig scriptConfig,
+            SecondaryIndexes secondaryIndexes,
+            MeterRegistry meterRegistry,
+            HotKeyTracker hotKeyTracker,
+            @Qualifier("scriptReadRedisTemplate") RedisTemplate<String, Object> readTemplate,
+            RedisClusterRouter clusterRouter
     ) {
         this.redisTemplate = redisTemplate;
+        this.readTemplate = readTemplate;
         this.scriptConfig = scriptConfig;
+        this.secondaryIndexes = secondaryIndexes;
+        this.meterRegistry = meterRegistry;
+        this.hotKeyTracker = hotKeyTracker;
+        this.clusterRouter = clusterRouter;
+        this.luaScanAggregator = new LuaScanAggregator(redisTemplate, clusterRouter);
 
         // 并发场景-线程池
         this.executorService = Executors.newCachedThreadPool();
+        // 并发场景-脚本内 parallelEach/parallelCollect 的分区线程池，所有脚本共享，线程数有上限
+        this.parallelExecutor = Executors.newFixedThreadPool(Math.max(1, scriptConfig.getParallelism()), r -> {
+            Thread thread = new Thread(r, "script-parallel");
+            thread.setDaemon(true);
+            return thread;
+        });
 
         // 并发场景-缓存
         this.scriptCache = Caffeine.newBuilder()
@@ -64,12 +124,11 @@ public class ScriptEngineService {
 
             // Try to get cached script
             String cacheKey = Integer.toHexString(scriptText.hashCode());
-            Script script = scriptCache.get(cacheKey, key -> {
+            CompiledScript compiled = scriptCache.get(cacheKey, key -> {
                 log.debug("Script not in cache, parsing: {}", key);
-                Binding binding = createBinding();
-                GroovyShell shell = new GroovyShell(binding);
-                return shell.parse(scriptText);
+                return compile(scriptText);
             });
+            Script script = compiled.script;
 
             // Create new binding for execution
             Binding binding = createBinding();
@@ -82,7 +141,8 @@ public class ScriptEngineService {
 
             // Log performance metrics
             MDC.put("executionTime", String.valueOf(executionTime));
-            log.info("Script executed successfully in {}ms", executionTime);
+            log.info("Script executed successfully in {}ms, redis usage: {}", executionTime,
+                    ((RedisOperations) binding.getVariable("redis")).getUsage());
 
             return ScriptExecutionResult.builder()
                     .success(true)
@@ -90,6 +150,7 @@ public class ScriptEngineService {
                     .executionTime(executionTime)
                     .script(scriptText)
                     .testRun(testRun)
+                    .batchRewriteApplied(compiled.batchRewriteApplied)
                     .build();
 
         } catch (TimeoutException e) {
@@ -145,6 +206,32 @@ public class ScriptEngineService {
         }
     }
 
+    /**
+     * 编译脚本；开启 batchRewrite 时在编译期把 keys().each { hgetAll(k) } 改写为批量预取
+     */
+    private CompiledScript compile(String scriptText) {
+        CompilerConfiguration configuration = new CompilerConfiguration();
+        BatchFetchRewriter rewriter = new BatchFetchRewriter();
+        if (scriptConfig.isBatchRewrite()) {
+            configuration.addCompilationCustomizers(rewriter);
+        }
+        Script script = new GroovyShell(createBinding(), configuration).parse(scriptText);
+        if (rewriter.isApplied()) {
+            log.debug("N+1 hgetAll loop rewritten to batched prefetch");
+        }
+        return new CompiledScript(script, rewriter.isApplied());
+    }
+
+    private static class CompiledScript {
+        private final Script script;
+        private final boolean batchRewriteApplied;
+
+        CompiledScript(Script script, boolean batchRewriteApplied) {
+            this.script = script;
+            this.batchRewriteApplied = batchRewriteApplied;
+        }
+    }
+
     /**
      * 创建绑定，包含 Redis 操作
      */
@@ -152,8 +239,14 @@ public class ScriptEngineService {
         Binding binding = new Binding();
 
         // Provide Redis operations wrapper
-        RedisOperations redisOps = new RedisOperations(redisTemplate, scriptConfig);
+        ScriptBudget budget = new ScriptBudget(scriptConfig, meterRegistry);
+        RedisOperations redisOps = new RedisOperations(redisTemplate, scriptConfig, rowSchemaRegistry, secondaryIndexes, budget,
+                hotKeyTracker, readTemplate, clusterRouter);
         binding.setVariable("redis", redisOps);
+        binding.setVariable("agg", new Aggregations(redisOps, luaScanAggregator, budget, scriptConfig.isLuaPushdown()));
+        ParallelScan parallelScan = new ParallelScan(redisOps, parallelExecutor, budget, scriptConfig.getParallelism());
+        binding.setVariable("parallelEach", new MethodClosure(parallelScan, "parallelEach"));
+        binding.setVariable("parallelCollect", new MethodClosure(parallelScan, "parallelCollect"));
         binding.setVariable("log", log);
 
         return binding;
@@ -161,9 +254,13 @@ public class ScriptEngineService {
 
     /**
      * Execute script with timeout
+     * 脚本直接返回未执行的聚合、查询或关联（agg.over / redis.from / redis.join）时，在超时范围内执行它
      */
     private Object executeWithTimeout(Script script, long timeoutMs) throws TimeoutException, ExecutionException, InterruptedException {
-        Future<Object> future = executorService.submit(() -> script.run());
+        Future<Object> future = executorService.submit(() -> {
+            Object result = script.run();
+            return result instanceof LazyResult lazy ? lazy.result() : result;
+        });
 
         try {
             return future.get(timeoutMs, TimeUnit.MILLISECONDS);
@@ -179,54 +276,358 @@ public class ScriptEngineService {
     public static class RedisOperations {
         private final RedisTemplate<String, Object> redisTemplate;
         private final ScriptConfig scriptConfig;
+        private final RowSchemaRegistry rowSchemaRegistry;
+        private final SecondaryIndexes secondaryIndexes;
+        private final ScriptBudget budget;
+        private final HotKeyTracker hotKeys;
+        private final RedisTemplate<String, Object> readTemplate;
+        private final RedisClusterRouter cluster;
+        private volatile boolean pinnedToMaster;
+        private Map<String, Map<String, Object>> prefetched;
 
         public RedisOperations(RedisTemplate<String, Object> redisTemplate, ScriptConfig scriptConfig) {
+            this(redisTemplate, scriptConfig, new RowSchemaRegistry(), new SecondaryIndexes(redisTemplate, scriptConfig),
+                    new ScriptBudget(scriptConfig, null), new HotKeyTracker(scriptConfig), redisTemplate,
+                    new RedisClusterRouter(redisTemplate, new SimpleMeterRegistry()));
+        }
+
+        /**
+         * @param readTemplate template for reads (replica routing when redis.topology is enabled), SCAN and writes
+         *                     always use redisTemplate
+         * @param cluster      fans SCAN out to all masters and groups pipelines by node when Redis runs as a cluster
+         */
+        public RedisOperations(RedisTemplate<String, Object> redisTemplate, ScriptConfig scriptConfig,
+                               RowSchemaRegistry rowSchemaRegistry, SecondaryIndexes secondaryIndexes,
+                               ScriptBudget budget, HotKeyTracker hotKeys, RedisTemplate<String, Object> readTemplate,
+                               RedisClusterRouter cluster) {
             this.redisTemplate = redisTemplate;
+            this.readTemplate = readTemplate;
             this.scriptConfig = scriptConfig;
+            this.rowSchemaRegistry = rowSchemaRegistry;
+            this.secondaryIndexes = secondaryIndexes;
+            this.budget = budget;
+            this.hotKeys = hotKeys;
+            this.cluster = cluster;
+        }
+
+        /**
+         * 读操作使用的模板：脚本写过数据（或调用了 pinToMaster）之后改回主节点，保证读到自己的写入
+         */
+        private RedisTemplate<String, Object> reads() {
+            return pinnedToMaster || readTemplate == null ? redisTemplate : readTemplate;
+        }
+
+        /**
+         * Send every following read of this execution to the master
+         */
+        public void pinToMaster() {
+            pinnedToMaster = true;
         }
 
         public Object get(String key) {
-            return redisTemplate.opsForValue().get(key);
+            budget.command("GET");
+            hotKeys.record(key);
+            return budget.read(reads().opsForValue().get(key));
         }
 
         public void set(String key, Object value) {
-            redisTemplate.opsForValue().set(key, value);
+            budget.command("SET");
+            hotKeys.record(key);
+            pinToMaster();
+            if (!secondaryIndexes.isIndexed(key, null)) {
+                redisTemplate.opsForValue().set(key, value);
+                return;
+            }
+            Object oldValue = redisTemplate.opsForValue().getAndSet(key, value);
+            secondaryIndexes.update(key, null, oldValue, value);
         }
 
         public Object hget(String key, String field) {
-            return redisTemplate.opsForHash().get(key, field);
+            budget.command("HGET");
+            hotKeys.record(key);
+            return budget.read(reads().opsForHash().get(key, field));
         }
 
         public Object hgetAll(String key) {
-            return redisTemplate.opsForHash().entries(key);
+            if (prefetched != null && prefetched.containsKey(key)) {
+                return prefetched.get(key);
+            }
+            budget.command("HGETALL");
+            hotKeys.record(key);
+            Map<Object, Object> entries = budget.read(reads().opsForHash().entries(key));
+            return scriptConfig.isCompactRows() ? rowSchemaRegistry.toRow(key, entries) : entries;
+        }
+
+        /**
+         * 投影读取 Hash：只取指定字段，缺失字段不出现在结果中
+         */
+        public Map<String, Object> hmget(String key, String... fields) {
+            if (fields == null || fields.length == 0) {
+                return new LinkedHashMap<>();
+            }
+            budget.command("HMGET");
+            hotKeys.record(key);
+            List<Object> values = budget.read(reads().opsForHash().multiGet(key, Arrays.asList((Object[]) fields)));
+            return toRow(key, fields, values);
+        }
+
+        public Map<String, Map<String, Object>> hgetAllMany(Collection<String> keys) {
+            return hgetAllMany(keys, Collections.emptyList());
+        }
+
+        public Map<String, Map<String, Object>> hgetAllMany(Collection<String> keys, String... fields) {
+            return hgetAllMany(keys, Arrays.asList(fields));
+        }
+
+        /**
+         * 批量读取多个 Hash，按 pipelineBatchSize 分批走 pipeline；fields 为空时读取全部字段
+         */
+        public Map<String, Map<String, Object>> hgetAllMany(Collection<String> keys, List<String> fields) {
+            Map<String, Map<String, Object>> rows = new LinkedHashMap<>();
+            if (keys == null || keys.isEmpty()) {
+                return rows;
+            }
+
+            List<String> keyList = new ArrayList<>(keys);
+            String[] projection = fields == null ? new String[0] : fields.toArray(new String[0]);
+            int batchSize = getPipelineBatchSize();
+
+            for (int from = 0; from < keyList.size(); from += batchSize) {
+                List<String> batch = keyList.subList(from, Math.min(from + batchSize, keyList.size()));
+                budget.command(projection.length == 0 ? "HGETALL" : "HMGET", batch.size());
+                hotKeys.recordAll(batch);
+                // 集群模式下按 hash slot 归到主节点，每个节点一条 pipeline 并行执行
+                List<Object> results = budget.read(cluster.isCluster()
+                        ? cluster.pipelineByNode(batch, nodeKeys -> pipelineHashReads(nodeKeys, projection))
+                        : pipelineHashReads(batch, projection));
+                for (int i = 0; i < batch.size(); i++) {
+                    Object result = i < results.size() ? results.get(i) : null;
+                    String key = batch.get(i);
+                    rows.put(key, projection.length == 0
+                            ? toRow(key, (Map<?, ?>) result)
+                            : toRow(key, projection, (List<?>) result));
+                }
+            }
+            return rows;
         }
 
         public void hset(String key, String field, Object value) {
+            budget.command("HSET");
+            hotKeys.record(key);
+            pinToMaster();
+            if (!secondaryIndexes.isIndexed(key, field)) {
+                redisTemplate.opsForHash().put(key, field, value);
+                return;
+            }
+            Object oldValue = redisTemplate.opsForHash().get(key, field);
             redisTemplate.opsForHash().put(key, field, value);
+            secondaryIndexes.update(key, field, oldValue, value);
         }
 
+        /**
+         * 惰性查询：redis.from('user:*').where { it.age > 30 }.select('name', 'city').limit(100)
+         */
+        public Query from(String pattern) {
+            return new Query(this, pattern);
+        }
+
+        /**
+         * 外键关联：redis.join('order:*', 'userId', 'user:')，每个被引用的 Hash 只读取一次
+         */
+        public Join join(String leftPattern, String fkField, String rightPrefix) {
+            return new Join(this, leftPattern).join(fkField, rightPrefix);
+        }
+
+        /**
+         * 查询声明的二级索引，例：redis.index('user', 'city').eq('北京')
+         */
+        public SecondaryIndexes.IndexQuery index(String prefix, String field) {
+            return secondaryIndexes.query(prefix, field, budget);
+        }
+
+        /**
+         * KEYS 语义（去重后的键集合），但不在服务器上执行阻塞的 KEYS：单机按 SCAN 分批，集群对所有主节点并行 SCAN 后合并。
+         * 每一批都计入 keysScanned，超出预算时在扫描途中终止，而不是全部扫完才计费
+         */
         public Object keys(String pattern) {
-            return redisTemplate.keys(pattern);
+            budget.command("KEYS");
+            Set<String> keys = new LinkedHashSet<>();
+            scanBatches(pattern, getPipelineBatchSize(), keys::addAll);
+            return keys;
+        }
+
+        /**
+         * 使用 SCAN 游标遍历匹配的键，不阻塞 Redis（替代 keys）
+         */
+        public List<String> scan(String pattern) {
+            List<String> keys = new ArrayList<>();
+            scanBatches(pattern, getPipelineBatchSize(), keys::addAll);
+            return keys;
+        }
+
+        /**
+         * 批量改写后的 keys().each { hgetAll(k) } 循环：SCAN 一批键，pipeline 预取这一批 Hash，
+         * 再逐个调用闭包，闭包内的 hgetAll(k) 直接命中预取结果
+         */
+        public void eachKeyPrefetched(String pattern, Closure<?> body) {
+            Set<String> seen = new HashSet<>();
+            scanBatches(pattern, getPipelineBatchSize(), batch -> {
+                List<String> fresh = new ArrayList<>(batch.size());
+                for (String key : batch) {
+                    // SCAN 可能重复返回同一个键，keys 语义下每个键只处理一次
+                    if (seen.add(key)) {
+                        fresh.add(key);
+                    }
+                }
+                prefetched = hgetAllMany(fresh);
+                try {
+                    for (String key : fresh) {
+                        body.call(key);
+                    }
+                } finally {
+                    prefetched = null;
+                }
+            });
+        }
+
+        /**
+         * 按批次回调 SCAN 结果，适合不需要一次性持有全部键的场景
+         */
+        public void scanBatches(String pattern, int batchSize, Consumer<List<String>> consumer) {
+            scanBatchesWhile(pattern, batchSize, batch -> {
+                consumer.accept(batch);
+                return true;
+            });
+        }
+
+        /**
+         * 同 scanBatches，回调返回 false 时立即关闭游标停止扫描（用于 limit 等提前结束的场景）
+         */
+        public void scanBatchesWhile(String pattern, int batchSize, Predicate<List<String>> consumer) {
+            int size = Math.max(1, batchSize);
+            if (cluster.isCluster()) {
+                budget.command("SCAN");
+                cluster.scanBatchesWhile(pattern, size, batch -> {
+                    chargeScanBatch(batch);
+                    return consumer.test(batch);
+                });
+                return;
+            }
+            ScanOptions options = ScanOptions.scanOptions().match(pattern).count(size).build();
+            // SCAN 游标只在同一个节点上有效，不能按读策略分散到多个副本
+            try (Cursor<String> cursor = redisTemplate.scan(options)) {
+                if (cursor == null) {
+                    return;
+                }
+                List<String> batch = new ArrayList<>(size);
+                budget.command("SCAN");
+                while (cursor.hasNext()) {
+                    batch.add(cursor.next());
+                    if (batch.size() >= size) {
+                        chargeScanBatch(batch);
+                        if (!consumer.test(batch)) {
+                            return;
+                        }
+                        batch = new ArrayList<>(size);
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    chargeScanBatch(batch);
+                    consumer.test(batch);
+                }
+            }
+        }
+
+        private void chargeScanBatch(List<String> batch) {
+            budget.command("SCAN");
+            budget.keysScanned(batch.size());
+            budget.read(batch);
+        }
+
+        /**
+         * Redis usage of this execution so far (commands, keysScanned, bytesRead)
+         */
+        public Map<String, Long> getUsage() {
+            return budget.usage();
+        }
+
+        public int getPipelineBatchSize() {
+            return Math.max(1, scriptConfig.getPipelineBatchSize());
         }
 
         public Object lrange(String key, long start, long end) {
-            return redisTemplate.opsForList().range(key, start, end);
+            budget.command("LRANGE");
+            hotKeys.record(key);
+            return budget.read(reads().opsForList().range(key, start, end));
         }
 
         public Object smembers(String key) {
-            return redisTemplate.opsForSet().members(key);
+            budget.command("SMEMBERS");
+            hotKeys.record(key);
+            return budget.read(reads().opsForSet().members(key));
         }
 
         public Object zrange(String key, long start, long end) {
-            return redisTemplate.opsForZSet().range(key, start, end);
+            budget.command("ZRANGE");
+            hotKeys.record(key);
+            return budget.read(reads().opsForZSet().range(key, start, end));
         }
 
         public Boolean exists(String key) {
-            return redisTemplate.hasKey(key);
+            budget.command("EXISTS");
+            hotKeys.record(key);
+            return reads().hasKey(key);
         }
 
         public Long ttl(String key) {
-            return redisTemplate.getExpire(key);
+            budget.command("TTL");
+            hotKeys.record(key);
+            return reads().getExpire(key);
+        }
+
+        private List<Object> pipelineHashReads(List<String> keys, String[] fields) {
+            return reads().executePipelined((RedisCallback<Object>) connection -> {
+                RedisSerializer<String> serializer = reads().getStringSerializer();
+                byte[][] rawFields = new byte[fields.length][];
+                for (int i = 0; i < fields.length; i++) {
+                    rawFields[i] = serializer.serialize(fields[i]);
+                }
+                for (String key : keys) {
+                    if (rawFields.length == 0) {
+                        connection.hashCommands().hGetAll(serializer.serialize(key));
+                    } else {
+                        connection.hashCommands().hMGet(serializer.serialize(key), rawFields);
+                    }
+                }
+                return null;
+            });
+        }
+
+        private Map<String, Object> toRow(String key, String[] fields, List<?> values) {
+            if (scriptConfig.isCompactRows()) {
+                return rowSchemaRegistry.toRow(key, fields, values);
+            }
+            Map<String, Object> row = new LinkedHashMap<>();
+            if (values == null) {
+                return row;
+            }
+            for (int i = 0; i < fields.length && i < values.size(); i++) {
+                if (values.get(i) != null) {
+                    row.put(fields[i], values.get(i));
+                }
+            }
+            return row;
+        }
+
+        private Map<String, Object> toRow(String key, Map<?, ?> entries) {
+            if (scriptConfig.isCompactRows()) {
+                return rowSchemaRegistry.toRow(key, entries);
+            }
+            Map<String, Object> row = new LinkedHashMap<>();
+            if (entries != null) {
+                entries.forEach((field, value) -> row.put(String.valueOf(field), value));
+            }
+            return row;
         }
     }
 }
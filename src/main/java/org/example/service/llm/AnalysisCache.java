@@ -0,0 +1,229 @@
+package org.example.service.llm;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.example.config.LlmConfig;
+import org.example.service.script.ScriptFingerprint;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Two-level cache of LLM analyses
+ * 键为 脚本指纹哈希 + 提供者 + 模型 + 提示词版本；L1 为本节点 Caffeine，L2 为 Redis（所有节点共享），
+ * L2 命中时回填 L1，L1 条目不会比 L2 活得更久。Redis 不可用时只降级为未命中，不影响分析
+ *
+ * 脚本指纹来自规范化的 AST（ScriptFingerprint），只在空白、注释、变量名或字面量上不同的脚本复用同一份分析；
+ * 无法解析的脚本退回按原文哈希。命中情况记录在 llm.analysis.cache（标签 result、tier、match），
+ * 省下的 LLM 调用时间累计在 llm.analysis.cache.saved
+ */
+@Slf4j
+@Component
+public class AnalysisCache {
+
+    public static final String TIER_LOCAL = "LOCAL";
+    public static final String TIER_REDIS = "REDIS";
+
+    public static final String MATCH_EXACT = "EXACT";
+    public static final String MATCH_NORMALIZED = "NORMALIZED";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final LlmConfig.CacheConfig config;
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final Cache<String, Entry> local;
+    private final MeterRegistry meterRegistry;
+    private final Counter savedTime;
+
+    /**
+     * A cached analysis, the epoch millis at which it expires, the hash of the exact script it was made for
+     * and how long the LLM call took
+     */
+    record Entry(String analysis, long expiresAt, String scriptHash, long durationMs) {
+    }
+
+    /**
+     * Analysis served from the cache; match is EXACT for the same script text, NORMALIZED for a structurally identical one
+     */
+    public record Hit(String analysis, String tier, long ttlSeconds, String match) {
+    }
+
+    @Autowired
+    public AnalysisCache(LlmConfig llmConfig, RedisTemplate<String, Object> redisTemplate, MeterRegistry meterRegistry) {
+        this(llmConfig.getCache(), redisTemplate, meterRegistry);
+    }
+
+    AnalysisCache(LlmConfig.CacheConfig config, RedisTemplate<String, Object> redisTemplate, MeterRegistry meterRegistry) {
+        this.config = config;
+        this.redisTemplate = redisTemplate;
+        this.meterRegistry = meterRegistry;
+        this.savedTime = Counter.builder("llm.analysis.cache.saved")
+                .description("LLM call time avoided by analysis cache hits")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        this.local = Caffeine.newBuilder()
+                .maximumSize(config.getLocalMaxSize())
+                .expireAfter(new Expiry<String, Entry>() {
+                    @Override
+                    public long expireAfterCreate(String key, Entry entry, long currentTime) {
+                        return localTtlNanos(entry);
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Entry entry, long currentTime, long currentDuration) {
+                        return localTtlNanos(entry);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Entry entry, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * Cache that never stores anything
+     */
+    public static AnalysisCache disabled() {
+        LlmConfig.CacheConfig config = new LlmConfig.CacheConfig();
+        config.setEnabled(false);
+        return new AnalysisCache(config, null, new SimpleMeterRegistry());
+    }
+
+    public boolean isEnabled() {
+        return config.isEnabled();
+    }
+
+    /**
+     * Cache key of an analysis of this script by this service, null when caching is disabled
+     */
+    public String key(String script, LlmService service) {
+        if (!config.isEnabled()) {
+            return null;
+        }
+        String fingerprint = config.isNormalizeKeys() ? ScriptFingerprint.of(script) : null;
+        String content = fingerprint != null ? "ast\n" + fingerprint : "raw\n" + script;
+        return config.getKeyPrefix() + sha256(service.getProvider() + "\n" + service.getModel() + "\n"
+                + LlmService.PROMPT_VERSION + "\n" + content);
+    }
+
+    /**
+     * Look the analysis up in the local tier, then in Redis; null on a miss
+     *
+     * @param script the script being analyzed, to tell exact from normalized matches
+     */
+    public Hit get(String key, String script) {
+        if (!config.isEnabled()) {
+            return null;
+        }
+        String tier = TIER_LOCAL;
+        Entry entry = local.getIfPresent(key);
+        if (entry == null || ttlSeconds(entry) <= 0) {
+            tier = TIER_REDIS;
+            entry = readRedis(key);
+            if (entry == null || ttlSeconds(entry) <= 0) {
+                record("miss", "none", "none");
+                return null;
+            }
+            local.put(key, entry);
+        }
+
+        String match = sha256(script).equals(entry.scriptHash()) ? MATCH_EXACT : MATCH_NORMALIZED;
+        record("hit", tier, match);
+        savedTime.increment(entry.durationMs() / 1000.0);
+        return new Hit(entry.analysis(), tier, ttlSeconds(entry), match);
+    }
+
+    /**
+     * Store a fresh analysis in both tiers
+     *
+     * @param durationMs how long the LLM call took, counted as saved time on later hits
+     * @return seconds the analysis stays cached, 0 when caching is disabled
+     */
+    public long put(String key, String script, String analysis, long durationMs) {
+        if (!config.isEnabled() || analysis == null) {
+            return 0;
+        }
+        Entry entry = new Entry(analysis, System.currentTimeMillis() + config.getRedisTtlSeconds() * 1000,
+                sha256(script), durationMs);
+        local.put(key, entry);
+        writeRedis(key, entry);
+        return config.getRedisTtlSeconds();
+    }
+
+    private Entry readRedis(String key) {
+        if (redisTemplate == null) {
+            return null;
+        }
+        try {
+            Object value = redisTemplate.opsForValue().get(key);
+            if (value == null) {
+                return null;
+            }
+            Map<?, ?> json = MAPPER.readValue(value.toString(), Map.class);
+            Object durationMs = json.get("durationMs");
+            return new Entry((String) json.get("analysis"), ((Number) json.get("expiresAt")).longValue(),
+                    (String) json.get("scriptHash"), durationMs instanceof Number number ? number.longValue() : 0);
+        } catch (Exception e) {
+            log.warn("Failed to read cached analysis {}: {}", key, e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeRedis(String key, Entry entry) {
+        if (redisTemplate == null) {
+            return;
+        }
+        try {
+            String json = MAPPER.writeValueAsString(Map.of(
+                    "analysis", entry.analysis(),
+                    "expiresAt", entry.expiresAt(),
+                    "scriptHash", entry.scriptHash(),
+                    "durationMs", entry.durationMs()));
+            redisTemplate.opsForValue().set(key, json, Duration.ofSeconds(config.getRedisTtlSeconds()));
+        } catch (Exception e) {
+            log.warn("Failed to cache analysis {} in Redis: {}", key, e.getMessage());
+        }
+    }
+
+    /**
+     * Local entries live for localTtlSeconds, but never beyond the shared expiry
+     */
+    private long localTtlNanos(Entry entry) {
+        long remainingMs = Math.max(0, entry.expiresAt() - System.currentTimeMillis());
+        return TimeUnit.MILLISECONDS.toNanos(Math.min(remainingMs, config.getLocalTtlSeconds() * 1000));
+    }
+
+    private void record(String result, String tier, String match) {
+        meterRegistry.counter("llm.analysis.cache", "result", result, "tier", tier.toLowerCase(), "match", match.toLowerCase())
+                .increment();
+    }
+
+    private static long ttlSeconds(Entry entry) {
+        return Math.max(0, (entry.expiresAt() - System.currentTimeMillis()) / 1000);
+    }
+
+    static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
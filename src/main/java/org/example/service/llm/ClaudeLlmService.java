@@ -1,5 +1,7 @@
 package org.example.service.llm;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
@@ -8,7 +10,9 @@ import org.example.config.LlmConfig;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
-import java.util.concurrent.TimeUnit;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  * Claude (Anthropic) LLM Service Implementation
@@ -18,56 +22,92 @@ import java.util.concurrent.TimeUnit;
 public class ClaudeLlmService implements LlmService {
 
     private final LlmConfig llmConfig;
+    private final LlmHttpClients httpClients;
     private final OkHttpClient httpClient;
     private final ObjectMapper objectMapper;
 
-    public ClaudeLlmService(LlmConfig llmConfig) {
+    public ClaudeLlmService(LlmConfig llmConfig, LlmHttpClients httpClients) {
         this.llmConfig = llmConfig;
         this.objectMapper = new ObjectMapper();
-        this.httpClient = new OkHttpClient.Builder()
-                .connectTimeout(llmConfig.getTimeout(), TimeUnit.SECONDS)
-                .readTimeout(llmConfig.getTimeout(), TimeUnit.SECONDS)
-                .writeTimeout(llmConfig.getTimeout(), TimeUnit.SECONDS)
-                .build();
+        this.httpClients = httpClients;
+        this.httpClient = httpClients.forProvider(LlmProvider.CLAUDE);
     }
 
     @Override
     public String analyzeScript(String script) throws Exception {
+        return httpClients.execute(LlmProvider.CLAUDE, httpClient.newCall(analysisRequest(script, false)), this::parseAnalysis);
+    }
+
+    @Override
+    public CompletableFuture<String> analyzeScriptAsync(String script) {
+        return httpClients.enqueue(LlmProvider.CLAUDE, httpClient.newCall(analysisRequest(script, false)), this::parseAnalysis);
+    }
+
+    @Override
+    public CompletableFuture<String> analyzeScriptStreaming(String script, Consumer<String> onToken) {
+        return httpClients.stream(LlmProvider.CLAUDE, httpClient.newCall(analysisRequest(script, true)), this::streamDelta, onToken);
+    }
+
+    private Request analysisRequest(String script, boolean stream) {
         log.info("Analyzing script with Claude, model: {}", llmConfig.getClaude().getModel());
 
         String prompt = buildAnalysisPrompt(script);
 
         // Build Claude API request
-        String requestBody = String.format(
-                "{\"model\": \"%s\", \"messages\": [{\"role\": \"user\", \"content\": \"%s\"}], \"max_tokens\": %d, \"temperature\": %.1f}",
-                llmConfig.getClaude().getModel(),
-                escapeJson(prompt),
-                llmConfig.getMaxTokens(),
-                llmConfig.getTemperature()
-        );
-
-        Request request = new Request.Builder()
+        RequestBody requestBody = LlmJson.body(json -> {
+            json.writeStringField("model", llmConfig.getClaude().getModel());
+            json.writeArrayFieldStart("messages");
+            json.writeStartObject();
+            json.writeStringField("role", "user");
+            json.writeStringField("content", prompt);
+            json.writeEndObject();
+            json.writeEndArray();
+            json.writeNumberField("max_tokens", llmConfig.getMaxTokens());
+            json.writeNumberField("temperature", llmConfig.getTemperature());
+            json.writeBooleanField("stream", stream);
+        });
+
+        return new Request.Builder()
                 .url(llmConfig.getClaude().getApiUrl())
                 .header("x-api-key", llmConfig.getClaude().getApiKey())
                 .header("anthropic-version", "2023-06-01")
                 .header("Content-Type", "application/json")
-                .post(RequestBody.create(requestBody, MediaType.parse("application/json")))
+                .tag(ProviderLimiter.Cost.class, ProviderLimiter.Cost.of(List.of(prompt), llmConfig.getMaxTokens()))
+                .post(requestBody)
                 .build();
+    }
 
-        try (Response response = httpClient.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                throw new IOException("Claude API request failed: " + response.code());
-            }
-
-            String responseBody = response.body().string();
-            JsonNode jsonNode = objectMapper.readTree(responseBody);
+    private String parseAnalysis(Response response) throws IOException {
+        if (!response.isSuccessful()) {
+            throw new IOException("Claude API request failed: " + response.code());
+        }
 
-            if (jsonNode.has("content") && jsonNode.get("content").size() > 0) {
-                return jsonNode.get("content").get(0).get("text").asText();
-            } else {
-                throw new IOException("Invalid response format from Claude API");
+        // content[0].text
+        try (JsonParser json = LlmJson.parser(response.body())) {
+            if (json.nextToken() == JsonToken.START_OBJECT
+                    && LlmJson.seek(json, "content") == JsonToken.START_ARRAY
+                    && json.nextToken() == JsonToken.START_OBJECT
+                    && LlmJson.seek(json, "text") == JsonToken.VALUE_STRING) {
+                return json.getText();
             }
+            throw new IOException("Invalid response format from Claude API");
+        }
+    }
+
+    /**
+     * Server-sent event line of a streaming message: content_block_delta events carry {"delta": {"text": "..."}}
+     */
+    private String streamDelta(String line) throws IOException {
+        if (!line.startsWith("data:")) {
+            return null;
         }
+        JsonNode event = objectMapper.readTree(line.substring(5).trim());
+        String type = event.path("type").asText();
+        if ("error".equals(type)) {
+            throw new IOException("Claude stream failed: " + event.path("error").path("message").asText());
+        }
+        JsonNode text = event.path("delta").path("text");
+        return "content_block_delta".equals(type) && text.isTextual() ? text.asText() : null;
     }
 
     @Override
@@ -75,6 +115,11 @@ public class ClaudeLlmService implements LlmService {
         return LlmProvider.CLAUDE;
     }
 
+    @Override
+    public String getModel() {
+        return llmConfig.getClaude() != null ? llmConfig.getClaude().getModel() : null;
+    }
+
     @Override
     public boolean isAvailable() {
         return llmConfig.getClaude() != null
@@ -94,11 +139,4 @@ public class ClaudeLlmService implements LlmService {
                 "Keep your analysis concise and focused on the most important points.";
     }
 
-    private String escapeJson(String text) {
-        return text.replace("\\", "\\\\")
-                .replace("\"", "\\\"")
-                .replace("\n", "\\n")
-                .replace("\r", "\\r")
-                .replace("\t", "\\t");
-    }
 }
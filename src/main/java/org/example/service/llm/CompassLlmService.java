@@ -1,83 +1,40 @@
 package org.example.service.llm;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import lombok.extern.slf4j.Slf4j;
-import okhttp3.*;
 import org.example.config.LlmConfig;
 import org.springframework.stereotype.Service;
 
-import java.io.IOException;
-import java.util.concurrent.TimeUnit;
-
 /**
  * Compass LLM Service Implementation
  * 支持百度文心一言等国内大模型
  */
-@Slf4j
 @Service
-public class CompassLlmService implements LlmService {
-
-    private final LlmConfig llmConfig;
-    private final OkHttpClient httpClient;
-    private final ObjectMapper objectMapper;
+public class CompassLlmService extends OpenAICompatibleLlmService {
 
-    public CompassLlmService(LlmConfig llmConfig) {
-        this.llmConfig = llmConfig;
-        this.objectMapper = new ObjectMapper();
-        this.httpClient = new OkHttpClient.Builder()
-                .connectTimeout(llmConfig.getTimeout(), TimeUnit.SECONDS)
-                .readTimeout(llmConfig.getTimeout(), TimeUnit.SECONDS)
-                .writeTimeout(llmConfig.getTimeout(), TimeUnit.SECONDS)
-                .build();
+    public CompassLlmService(LlmConfig llmConfig, LlmHttpClients httpClients) {
+        super(llmConfig, httpClients, LlmProvider.COMPASS, "Compass");
     }
 
     @Override
-    public String analyzeScript(String script) throws Exception {
-        log.info("Analyzing script with Compass, model: {}", llmConfig.getCompass().getModel());
-
-        String prompt = buildAnalysisPrompt(script);
-
-        // Build Compass API request (compatible with OpenAI format)
-        String requestBody = String.format(
-                "{\"model\": \"%s\", \"messages\": [{\"role\": \"user\", \"content\": \"%s\"}], \"temperature\": %.1f, \"max_tokens\": %d}",
-                llmConfig.getCompass().getModel(),
-                escapeJson(prompt),
-                llmConfig.getTemperature(),
-                llmConfig.getMaxTokens()
-        );
-
-        Request request = new Request.Builder()
-                .url(llmConfig.getCompass().getApiUrl())
-                .header("Authorization", "Bearer " + llmConfig.getCompass().getApiKey())
-                .header("Content-Type", "application/json")
-                .post(RequestBody.create(requestBody, MediaType.parse("application/json")))
-                .build();
-
-        try (Response response = httpClient.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                throw new IOException("Compass API request failed: " + response.code());
-            }
+    protected String getApiUrl() {
+        return llmConfig.getCompass() != null ? llmConfig.getCompass().getApiUrl() : null;
+    }
 
-            String responseBody = response.body().string();
-            JsonNode jsonNode = objectMapper.readTree(responseBody);
+    @Override
+    protected String getApiKey() {
+        return llmConfig.getCompass() != null ? llmConfig.getCompass().getApiKey() : null;
+    }
 
-            // Try OpenAI-compatible format first
-            if (jsonNode.has("choices") && jsonNode.get("choices").size() > 0) {
-                return jsonNode.get("choices").get(0).get("message").get("content").asText();
-            }
-            // Try alternative format
-            else if (jsonNode.has("result")) {
-                return jsonNode.get("result").asText();
-            } else {
-                throw new IOException("Invalid response format from Compass API");
-            }
-        }
+    /**
+     * 部分兼容服务以顶层 result 字段返回结果
+     */
+    @Override
+    protected String getFallbackField() {
+        return "result";
     }
 
     @Override
-    public LlmProvider getProvider() {
-        return LlmProvider.COMPASS;
+    public String getModel() {
+        return llmConfig.getCompass() != null ? llmConfig.getCompass().getModel() : null;
     }
 
     @Override
@@ -87,7 +44,8 @@ public class CompassLlmService implements LlmService {
                 && !llmConfig.getCompass().getApiKey().isEmpty();
     }
 
-    private String buildAnalysisPrompt(String script) {
+    @Override
+    protected String buildAnalysisPrompt(String script) {
         return "你是一个代码安全和质量分析专家。请分析以下将在Redis数据库上执行的Groovy脚本。\n\n" +
                 "脚本:\n```groovy\n" + script + "\n```\n\n" +
                 "请提供以下分析:\n" +
@@ -98,12 +56,4 @@ public class CompassLlmService implements LlmService {
                 "5. 总体安全性判断（安全/不安全执行）\n\n" +
                 "请保持分析简洁，专注于最重要的要点。";
     }
-
-    private String escapeJson(String text) {
-        return text.replace("\\", "\\\\")
-                .replace("\"", "\\\"")
-                .replace("\n", "\\n")
-                .replace("\r", "\\r")
-                .replace("\t", "\\t");
-    }
 }
@@ -0,0 +1,278 @@
+package org.example.service.llm;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.example.config.LlmConfig;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Hedged LLM requests across providers
+ * 按提供者记录最近 sampleSize 次成功调用的耗时；主提供者超过其 percentile 分位耗时仍未返回时，再向备用提供者发一次请求，
+ * 先成功的结果胜出，另一个调用被取消。被取消的主调用记录取消前已等待的时间（真实耗时的下界），
+ * 否则慢调用永远进不了样本，分位耗时会越来越低、对冲越来越早。每分钟最多 maxHedgesPerMinute 次对冲，避免提供者整体变慢时请求量翻倍；
+ * 样本不足 minSamples 时按 initialDelayMs 对冲。
+ *
+ * 对冲情况记录在 llm.hedge（标签 outcome=fired|primary_won|hedge_won|budget_exhausted|no_secondary）
+ */
+@Slf4j
+@Component
+public class HedgePolicy {
+
+    private static final long BUDGET_WINDOW_MS = 60_000;
+
+    private final LlmConfig.HedgeConfig config;
+    private final MeterRegistry meterRegistry;
+    private final LongSupplier clock;
+    private final Map<LlmProvider, Samples> latencies = new EnumMap<>(LlmProvider.class);
+    private final Deque<Long> hedges = new ArrayDeque<>();
+
+    /**
+     * The answer that won the race and the provider that produced it
+     */
+    public record Answer(LlmService service, String text) {
+    }
+
+    @Autowired
+    public HedgePolicy(LlmConfig llmConfig, MeterRegistry meterRegistry) {
+        this(llmConfig.getHedge(), meterRegistry, System::currentTimeMillis);
+    }
+
+    HedgePolicy(LlmConfig.HedgeConfig config, MeterRegistry meterRegistry, LongSupplier clock) {
+        this.config = config;
+        this.meterRegistry = meterRegistry;
+        this.clock = clock;
+    }
+
+    /**
+     * Policy that never hedges
+     */
+    public static HedgePolicy disabled() {
+        LlmConfig.HedgeConfig config = new LlmConfig.HedgeConfig();
+        config.setEnabled(false);
+        return new HedgePolicy(config, new SimpleMeterRegistry(), System::currentTimeMillis);
+    }
+
+    public boolean isEnabled() {
+        return config.isEnabled();
+    }
+
+    /**
+     * Configured hedge provider, null to use the first available provider other than the primary
+     */
+    public LlmProvider getProvider() {
+        return config.getProvider();
+    }
+
+    /**
+     * Call the primary and, if it has not answered within its hedge delay, the secondary too
+     *
+     * @param secondary  picks the provider to hedge with when the hedge fires (null when there is none);
+     *                   null to call only the primary
+     * @param onCallDone told about every call that completed, with null for a success; cancelled losers are not reported
+     */
+    public CompletableFuture<Answer> race(LlmService primary, Supplier<LlmService> secondary,
+                                          Function<LlmService, CompletableFuture<String>> call,
+                                          BiConsumer<LlmService, Throwable> onCallDone) {
+        boolean hedging = secondary != null && config.isEnabled();
+        Race race = new Race(call, onCallDone);
+        race.launch(primary, false);
+        if (!hedging) {
+            return race.winner;
+        }
+
+        long delayMs = hedgeDelayMs(primary.getProvider());
+        CompletableFuture<Void> timer = CompletableFuture.runAsync(() -> {
+            if (race.winner.isDone()) {
+                return;
+            }
+            if (!tryAcquire()) {
+                outcome("budget_exhausted");
+                return;
+            }
+            // 到对冲时才选择备用提供者，半开的提供者只在真正发出调用时占用试探名额
+            LlmService service = secondary.get();
+            if (service == null) {
+                refund();
+                outcome("no_secondary");
+                return;
+            }
+            outcome("fired");
+            log.info("{} has not answered within {}ms, hedging with {}", primary.getProvider(), delayMs, service.getProvider());
+            race.launch(service, true);
+        }, CompletableFuture.delayedExecutor(delayMs, TimeUnit.MILLISECONDS));
+        race.winner.whenComplete((answer, error) -> timer.cancel(false));
+        return race.winner;
+    }
+
+    /**
+     * How long to wait for the provider before hedging: the configured percentile of its recent latencies
+     */
+    public long hedgeDelayMs(LlmProvider provider) {
+        Samples samples;
+        synchronized (latencies) {
+            samples = latencies.get(provider);
+        }
+        long delay = samples != null ? samples.percentile(config.getPercentile(), config.getMinSamples()) : -1;
+        return Math.max(config.getMinDelayMs(), delay >= 0 ? delay : config.getInitialDelayMs());
+    }
+
+    public void recordLatency(LlmProvider provider, long millis) {
+        Samples samples;
+        synchronized (latencies) {
+            samples = latencies.computeIfAbsent(provider, p -> new Samples(config.getSampleSize()));
+        }
+        samples.add(millis);
+    }
+
+    /**
+     * Take one hedge from the per-minute budget
+     */
+    boolean tryAcquire() {
+        long now = clock.getAsLong();
+        synchronized (hedges) {
+            while (!hedges.isEmpty() && now - hedges.peekFirst() >= BUDGET_WINDOW_MS) {
+                hedges.pollFirst();
+            }
+            if (hedges.size() >= config.getMaxHedgesPerMinute()) {
+                return false;
+            }
+            hedges.addLast(now);
+            return true;
+        }
+    }
+
+    /**
+     * Give back the hedge just taken from the budget
+     */
+    private void refund() {
+        synchronized (hedges) {
+            hedges.pollLast();
+        }
+    }
+
+    private void outcome(String outcome) {
+        meterRegistry.counter("llm.hedge", "outcome", outcome).increment();
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    /**
+     * Calls of one analysis; the first success completes winner and cancels the others.
+     * 已发出的调用全部失败时 winner 失败；主调用在对冲之前失败不会触发对冲（失败交给熔断器处理）
+     */
+    private final class Race {
+
+        private final CompletableFuture<Answer> winner = new CompletableFuture<>();
+        private final List<CompletableFuture<String>> calls = new ArrayList<>();
+        private final Function<LlmService, CompletableFuture<String>> call;
+        private final BiConsumer<LlmService, Throwable> onCallDone;
+        private int running;
+        private Throwable firstError;
+
+        private Race(Function<LlmService, CompletableFuture<String>> call, BiConsumer<LlmService, Throwable> onCallDone) {
+            this.call = call;
+            this.onCallDone = onCallDone;
+        }
+
+        synchronized void launch(LlmService service, boolean hedge) {
+            if (winner.isDone()) {
+                return;
+            }
+            running++;
+            long started = clock.getAsLong();
+            CompletableFuture<String> future;
+            try {
+                future = call.apply(service);
+            } catch (Exception e) {
+                future = CompletableFuture.failedFuture(e);
+            }
+            calls.add(future);
+            future.whenComplete((text, error) -> finish(service, hedge, text, error, clock.getAsLong() - started));
+        }
+
+        private synchronized void finish(LlmService service, boolean hedge, String text, Throwable error, long elapsedMs) {
+            running--;
+            Throwable cause = error != null ? unwrap(error) : null;
+            if (cause instanceof CancellationException) {
+                // 截尾样本：主调用至少要这么久，备用调用被取消时耗时很短，不能当作下界
+                if (!hedge) {
+                    recordLatency(service.getProvider(), elapsedMs);
+                }
+                return;
+            }
+            onCallDone.accept(service, cause);
+            if (cause == null) {
+                recordLatency(service.getProvider(), elapsedMs);
+                if (winner.isDone()) {
+                    return;
+                }
+                // 先取消其他调用再交付结果，调用方拿到结果时输家已经停止
+                if (calls.size() > 1) {
+                    outcome(hedge ? "hedge_won" : "primary_won");
+                    calls.forEach(other -> other.cancel(true));
+                }
+                winner.complete(new Answer(service, text));
+                return;
+            }
+            if (firstError == null) {
+                firstError = cause;
+            }
+            if (running == 0) {
+                winner.completeExceptionally(firstError);
+            }
+        }
+    }
+
+    /**
+     * Ring buffer of the most recent latencies of one provider
+     */
+    private static final class Samples {
+
+        private final long[] values;
+        private int next;
+        private int count;
+
+        private Samples(int size) {
+            this.values = new long[Math.max(1, size)];
+        }
+
+        synchronized void add(long value) {
+            values[next] = value;
+            next = (next + 1) % values.length;
+            count = Math.min(count + 1, values.length);
+        }
+
+        /**
+         * @return -1 while there are fewer than minSamples latencies
+         */
+        synchronized long percentile(double percentile, int minSamples) {
+            if (count == 0 || count < minSamples) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(values, count);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile * count) - 1;
+            return sorted[Math.max(0, Math.min(count - 1, index))];
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package org.example.service.llm;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.*;
+import okio.BufferedSource;
+import org.example.config.LlmConfig;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * HTTP clients of the LLM providers, all derived from one shared OkHttpClient
+ * 所有提供者共用一个调度器与线程池；每个提供者有自己的连接池（空闲连接上限、keep-alive 时间）和超时，
+ * 某个提供者的慢连接不会占满其他提供者的池。HTTPS 端点通过 ALPN 协商 HTTP/2，llm.http.http2=false 时只用 HTTP/1.1。
+ *
+ * 连接复用记录在 llm.http.connections（标签 provider、reused），连接池占用记录在 llm.http.pool.connections
+ * （标签 provider、state=active|idle），与 llm.http.pool.max_idle 对比即可看出池是否饱和；
+ * 流式调用的首个 token 延迟记录在 llm.analysis.first_token（标签 provider）。
+ * 分析调用经 ProviderLimiter 做并发与速率限制、429/503 重试，限额在 llm.http.providers.&lt;PROVIDER&gt; 下配置；
+ * 排队与退避都在 Call.enqueue 之前由定时器调度，不占用调度器线程
+ */
+@Slf4j
+@Component
+public class LlmHttpClients {
+
+    private final LlmConfig llmConfig;
+    private final LlmConfig.HttpConfig config;
+    private final MeterRegistry meterRegistry;
+    private final OkHttpClient shared;
+    private final Map<LlmProvider, OkHttpClient> clients = new EnumMap<>(LlmProvider.class);
+    private final Map<LlmProvider, ProviderLimiter> limiters = new EnumMap<>(LlmProvider.class);
+    private final ScheduledExecutorService timer;
+
+    @Autowired
+    public LlmHttpClients(LlmConfig llmConfig, MeterRegistry meterRegistry) {
+        this.llmConfig = llmConfig;
+        this.config = llmConfig.getHttp();
+        this.meterRegistry = meterRegistry;
+
+        ExecutorService executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), r -> {
+                    Thread thread = new Thread(r, "llm-http");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        Dispatcher dispatcher = new Dispatcher(executor);
+        dispatcher.setMaxRequests(config.getMaxRequests());
+        dispatcher.setMaxRequestsPerHost(config.getMaxRequestsPerHost());
+        this.shared = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .protocols(config.isHttp2() ? List.of(Protocol.HTTP_2, Protocol.HTTP_1_1) : List.of(Protocol.HTTP_1_1))
+                .connectTimeout(config.getConnectTimeoutSeconds(), TimeUnit.SECONDS)
+                .retryOnConnectionFailure(true)
+                .build();
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "llm-limit");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Gauge.builder("llm.http.calls.running", shared.dispatcher(), Dispatcher::runningCallsCount)
+                .description("LLM HTTP calls currently running across all providers")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Client of one provider: its own connection pool and timeouts on the shared dispatcher
+     */
+    public synchronized OkHttpClient forProvider(LlmProvider provider) {
+        return clients.computeIfAbsent(provider, this::build);
+    }
+
+    /**
+     * Per-call timeout of availability probes, much shorter than an analysis call
+     */
+    public Call probe(LlmProvider provider, Request request) {
+        Call call = forProvider(provider).newCall(request);
+        call.timeout().timeout(config.getProbeTimeoutSeconds(), TimeUnit.SECONDS);
+        return call;
+    }
+
+    /**
+     * Run the call on the shared dispatcher, once the provider's limiter admits it, without blocking the caller
+     * 响应在 OkHttp 线程上解析；取消返回的 future 会将调用移出等待队列或取消 HTTP 调用
+     */
+    public <T> CompletableFuture<T> enqueue(LlmProvider provider, Call call, ResponseParser<T> parser) {
+        return limiter(provider).submit(call, new CompletableFuture<>(), parser);
+    }
+
+    /**
+     * Blocking form of enqueue for synchronous callers: the caller's own thread waits, never a dispatcher thread
+     */
+    public <T> T execute(LlmProvider provider, Call call, ResponseParser<T> parser) throws IOException {
+        CompletableFuture<T> future = enqueue(provider, call, parser);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for " + provider);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    @FunctionalInterface
+    public interface ResponseParser<T> {
+        T parse(Response response) throws IOException;
+    }
+
+    /**
+     * Run a streaming call without blocking the caller
+     * 响应体逐行读取，由提供者的 parser 取出 token 增量（不含 token 的行返回 null）并立即交给 onToken；
+     * 从发起调用到第一个 token 的时间就是用户感知的延迟。onToken 抛出异常（例如浏览器已断开）会中止读取并关闭连接
+     *
+     * @return the full generated text once the response body ends
+     */
+    public CompletableFuture<String> stream(LlmProvider provider, Call call, LineParser parser, Consumer<String> onToken) {
+        long started = System.nanoTime();
+        Timer firstToken = Timer.builder("llm.analysis.first_token")
+                .description("Time from sending a streaming LLM request to receiving its first token")
+                .tag("provider", provider.name())
+                .register(meterRegistry);
+        CompletableFuture<String> future = new CompletableFuture<>();
+        return limiter(provider).submit(call, future, response -> {
+            if (!response.isSuccessful()) {
+                throw new IOException(provider.name() + " API request failed: " + response.code());
+            }
+            BufferedSource source = response.body().source();
+            StringBuilder text = new StringBuilder();
+            String line;
+            while ((line = source.readUtf8Line()) != null && !future.isDone()) {
+                String delta = parser.delta(line);
+                if (delta == null || delta.isEmpty()) {
+                    continue;
+                }
+                if (text.isEmpty()) {
+                    firstToken.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+                }
+                text.append(delta);
+                onToken.accept(delta);
+            }
+            return text.toString();
+        });
+    }
+
+    /**
+     * Token delta carried by one line of a streaming response, null when the line carries none
+     */
+    @FunctionalInterface
+    public interface LineParser {
+        String delta(String line) throws IOException;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+        shared.dispatcher().executorService().shutdown();
+        clients.values().forEach(client -> client.connectionPool().evictAll());
+    }
+
+    private synchronized ProviderLimiter limiter(LlmProvider provider) {
+        return limiters.computeIfAbsent(provider, p -> new ProviderLimiter(p, config.getProviders().get(p), config.getRetry(),
+                timer, meterRegistry, System::currentTimeMillis));
+    }
+
+    private OkHttpClient build(LlmProvider provider) {
+        LlmConfig.ProviderHttpConfig overrides = config.getProviders().get(provider);
+        int maxIdle = overrides != null && overrides.getMaxIdleConnections() != null
+                ? overrides.getMaxIdleConnections() : config.getMaxIdleConnections();
+        int timeout = overrides != null && overrides.getTimeoutSeconds() != null
+                ? overrides.getTimeoutSeconds() : llmConfig.getTimeout();
+
+        ConnectionPool pool = new ConnectionPool(maxIdle, config.getKeepAliveSeconds(), TimeUnit.SECONDS);
+        String tag = provider.name();
+        Gauge.builder("llm.http.pool.connections", pool, p -> p.connectionCount() - p.idleConnectionCount())
+                .description("Connections of the provider's pool currently carrying a call")
+                .tags("provider", tag, "state", "active")
+                .register(meterRegistry);
+        Gauge.builder("llm.http.pool.connections", pool, ConnectionPool::idleConnectionCount)
+                .description("Idle connections kept alive in the provider's pool")
+                .tags("provider", tag, "state", "idle")
+                .register(meterRegistry);
+        Gauge.builder("llm.http.pool.max_idle", () -> maxIdle)
+                .description("Idle connections the provider's pool keeps alive at most")
+                .tag("provider", tag)
+                .register(meterRegistry);
+        Counter reused = Counter.builder("llm.http.connections").tags("provider", tag, "reused", "true")
+                .description("Connections acquired for LLM calls").register(meterRegistry);
+        Counter opened = Counter.builder("llm.http.connections").tags("provider", tag, "reused", "false")
+                .description("Connections acquired for LLM calls").register(meterRegistry);
+
+        log.info("HTTP client for {}: {} idle connections kept {}s, timeout {}s", provider, maxIdle,
+                config.getKeepAliveSeconds(), timeout);
+        return shared.newBuilder()
+                .connectionPool(pool)
+                .readTimeout(timeout, TimeUnit.SECONDS)
+                .writeTimeout(timeout, TimeUnit.SECONDS)
+                .callTimeout(timeout, TimeUnit.SECONDS)
+                .eventListenerFactory(call -> new ReuseListener(reused, opened))
+                .build();
+    }
+
+    /**
+     * Counts whether each acquired connection came from the pool or had to be opened for this call
+     */
+    private static final class ReuseListener extends EventListener {
+
+        private final Counter reused;
+        private final Counter opened;
+        private boolean connecting;
+
+        private ReuseListener(Counter reused, Counter opened) {
+            this.reused = reused;
+            this.opened = opened;
+        }
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress address, Proxy proxy) {
+            connecting = true;
+        }
+
+        @Override
+        public void connectionAcquired(Call call, Connection connection) {
+            (connecting ? opened : reused).increment();
+            connecting = false;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package org.example.service.llm;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.StreamReadFeature;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import okio.BufferedSink;
+
+import java.io.IOException;
+
+/**
+ * Jackson streaming helpers of the LLM services
+ * 请求体直接生成到 HTTP 连接上，响应体直接从连接解析，不经过中间字符串与 JsonNode 树；
+ * 字符串转义与数字格式由 Jackson 负责，不受默认 Locale 影响
+ */
+final class LlmJson {
+
+    static final JsonFactory FACTORY = JsonFactory.builder()
+            .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+            .disable(StreamReadFeature.AUTO_CLOSE_SOURCE)
+            .build();
+    private static final MediaType JSON_TYPE = MediaType.parse("application/json");
+
+    private LlmJson() {
+    }
+
+    /**
+     * Fields of a JSON object, written between its start and end
+     */
+    @FunctionalInterface
+    interface Fields {
+        void write(JsonGenerator json) throws IOException;
+    }
+
+    /**
+     * Request body whose JSON object is generated straight into the connection each time it is sent
+     */
+    static RequestBody body(Fields fields) {
+        return new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return JSON_TYPE;
+            }
+
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                try (JsonGenerator json = FACTORY.createGenerator(sink.outputStream())) {
+                    json.writeStartObject();
+                    fields.write(json);
+                    json.writeEndObject();
+                }
+            }
+        };
+    }
+
+    static JsonParser parser(ResponseBody body) throws IOException {
+        return FACTORY.createParser(body.byteStream());
+    }
+
+    /**
+     * Advance inside the current object to the value of the field, skipping the others
+     *
+     * @return the token of the value, null when the object has no such field
+     */
+    static JsonToken seek(JsonParser json, String field) throws IOException {
+        while (json.nextToken() == JsonToken.FIELD_NAME) {
+            JsonToken value = json.nextToken();
+            if (field.equals(json.getCurrentName())) {
+                return value;
+            }
+            json.skipChildren();
+        }
+        return null;
+    }
+}
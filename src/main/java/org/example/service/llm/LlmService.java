@@ -1,11 +1,20 @@
 package org.example.service.llm;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
 /**
  * LLM Service Interface
  * All LLM providers must implement this interface
  */
 public interface LlmService {
 
+    /**
+     * Version of the analysis prompt built by the providers, part of the analysis cache key;
+     * bump it whenever a buildAnalysisPrompt changes so cached analyses of the old prompt are not reused
+     */
+    String PROMPT_VERSION = "v1";
+
     /**
      * Analyze script using LLM
      *
@@ -14,6 +23,24 @@ public interface LlmService {
      */
     String analyzeScript(String script) throws Exception;
 
+    /**
+     * Analyze script using LLM without blocking the calling thread
+     * 请求在共享的 HTTP 调度器上异步执行，等待 LLM 期间不占用调用线程
+     *
+     * @param script The script to analyze
+     * @return Analysis result, completed exceptionally when the call fails
+     */
+    CompletableFuture<String> analyzeScriptAsync(String script);
+
+    /**
+     * Analyze script using LLM, handing each generated token delta to onToken as it arrives
+     *
+     * @param script  The script to analyze
+     * @param onToken Receives token deltas in order, on an HTTP thread
+     * @return The full analysis once generation ends, completed exceptionally when the call fails
+     */
+    CompletableFuture<String> analyzeScriptStreaming(String script, Consumer<String> onToken);
+
     /**
      * Get provider name
      *
@@ -21,6 +48,13 @@ public interface LlmService {
      */
     LlmProvider getProvider();
 
+    /**
+     * Get the configured model name
+     *
+     * @return Model name, null when the provider is not configured
+     */
+    String getModel();
+
     /**
      * Check if the service is available
      *
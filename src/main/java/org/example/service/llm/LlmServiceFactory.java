@@ -1,16 +1,21 @@
 package org.example.service.llm;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.example.config.LlmConfig;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.util.HashMap;
-import java.util.List;
+import java.util.EnumMap;
 import java.util.Map;
 
 /**
- * 管理 LLM 服务的工厂模式，提供 OPENAI、CLAUDE、COMPASS、OLLAMA、VLLM等大模型服务；
+ * 管理 LLM 服务的工厂模式，提供 OPENAI、CLAUDE、COMPASS、OLLAMA、VLLM、LLMDEPLOY、SGLANG等大模型服务；
  * Manages multiple LLM providers and selects the appropriate one
+ * 可用性来自 ProviderHealth（后台探测 + 熔断器），选择提供者不做网络 I/O；回退按枚举顺序
  */
 @Slf4j
 @Component
@@ -18,6 +23,7 @@ public class LlmServiceFactory {
 
     private final Map<LlmProvider, LlmService> services;
     private final LlmConfig llmConfig;
+    private final ProviderHealth health;
 
     public LlmServiceFactory(
             LlmConfig llmConfig,
@@ -26,19 +32,54 @@ public class LlmServiceFactory {
             CompassLlmService compassLlmService,
             OllamaLlmService ollamaLlmService,
             VllmLlmService vllmLlmService
+    ) {
+        this(llmConfig, openAILlmService, claudeLlmService, compassLlmService, ollamaLlmService, vllmLlmService,
+                null, null, new SimpleMeterRegistry());
+    }
+
+    @Autowired
+    public LlmServiceFactory(
+            LlmConfig llmConfig,
+            OpenAILlmService openAILlmService,
+            ClaudeLlmService claudeLlmService,
+            CompassLlmService compassLlmService,
+            OllamaLlmService ollamaLlmService,
+            VllmLlmService vllmLlmService,
+            LmdeployLlmService lmdeployLlmService,
+            SglangLlmService sglangLlmService,
+            MeterRegistry meterRegistry
     ) {
         this.llmConfig = llmConfig;
-        this.services = new HashMap<>();
+        this.services = new EnumMap<>(LlmProvider.class);
 
         services.put(LlmProvider.OPENAI, openAILlmService);
         services.put(LlmProvider.CLAUDE, claudeLlmService);
         services.put(LlmProvider.COMPASS, compassLlmService);
         services.put(LlmProvider.OLLAMA, ollamaLlmService);
         services.put(LlmProvider.VLLM, vllmLlmService);
+        if (lmdeployLlmService != null) {
+            services.put(LlmProvider.LLMDEPLOY, lmdeployLlmService);
+        }
+        if (sglangLlmService != null) {
+            services.put(LlmProvider.SGLANG, sglangLlmService);
+        }
+
+        LlmConfig.HealthConfig healthConfig = llmConfig.getHealth() != null ? llmConfig.getHealth() : new LlmConfig.HealthConfig();
+        this.health = new ProviderHealth(healthConfig, services, meterRegistry, System::currentTimeMillis);
 
         log.info("LLM Service Factory initialized with {} providers", services.size());
     }
 
+    @PostConstruct
+    public void startHealthChecks() {
+        health.start();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        health.shutdown();
+    }
+
     /**
      * Get LLM service by provider
      */
@@ -57,7 +98,7 @@ public class LlmServiceFactory {
         LlmProvider primaryProvider = llmConfig.getPrimaryProvider();
         LlmService service = services.get(primaryProvider);
 
-        if (service != null && service.isAvailable()) {
+        if (service != null && health.tryAcquire(primaryProvider)) {
             log.debug("Using primary LLM provider: {}", primaryProvider);
             return service;
         }
@@ -72,7 +113,7 @@ public class LlmServiceFactory {
      */
     public LlmService getFirstAvailableService() {
         for (Map.Entry<LlmProvider, LlmService> entry : services.entrySet()) {
-            if (entry.getValue().isAvailable()) {
+            if (health.tryAcquire(entry.getKey())) {
                 log.info("Using available LLM provider: {}", entry.getKey());
                 return entry.getValue();
             }
@@ -81,13 +122,38 @@ public class LlmServiceFactory {
         throw new IllegalStateException("No LLM service is available");
     }
 
+    /**
+     * Service to hedge a slow call of the given provider with: the preferred provider when it is available,
+     * otherwise the first available provider other than the given one; null when there is none.
+     * Claims the provider's half-open trial, so call it only when the hedge is about to be sent
+     */
+    public LlmService getHedgeService(LlmProvider primary, LlmProvider preferred) {
+        if (preferred != null && preferred != primary && services.containsKey(preferred) && health.tryAcquire(preferred)) {
+            return services.get(preferred);
+        }
+        for (Map.Entry<LlmProvider, LlmService> entry : services.entrySet()) {
+            if (entry.getKey() != primary && health.tryAcquire(entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Hand back a provider selected by {@link #getPrimaryService} when no call is made to it after all
+     * (e.g. the analysis came from the cache), so a half-open trial it claimed goes to the next caller
+     */
+    public void release(LlmProvider provider) {
+        health.release(provider);
+    }
+
     /**
      * Get all available services
      */
     public Map<LlmProvider, LlmService> getAvailableServices() {
-        Map<LlmProvider, LlmService> available = new HashMap<>();
+        Map<LlmProvider, LlmService> available = new EnumMap<>(LlmProvider.class);
         for (Map.Entry<LlmProvider, LlmService> entry : services.entrySet()) {
-            if (entry.getValue().isAvailable()) {
+            if (health.isAvailable(entry.getKey())) {
                 available.put(entry.getKey(), entry.getValue());
             }
         }
@@ -98,6 +164,27 @@ public class LlmServiceFactory {
      * Check if any service is available
      */
     public boolean hasAvailableService() {
-        return services.values().stream().anyMatch(LlmService::isAvailable);
+        return services.keySet().stream().anyMatch(health::isAvailable);
+    }
+
+    /**
+     * Circuit breaker state of a provider
+     */
+    public ProviderHealth.State getState(LlmProvider provider) {
+        return health.getState(provider);
+    }
+
+    /**
+     * Report a completed call so the provider's circuit stays or goes back to closed
+     */
+    public void recordSuccess(LlmProvider provider) {
+        health.recordSuccess(provider);
+    }
+
+    /**
+     * Report a failed call; enough consecutive failures open the provider's circuit
+     */
+    public void recordFailure(LlmProvider provider) {
+        health.recordFailure(provider);
     }
 }
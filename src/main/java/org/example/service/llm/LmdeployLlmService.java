@@ -0,0 +1,26 @@
+package org.example.service.llm;
+
+import org.example.config.LlmConfig;
+import org.springframework.stereotype.Service;
+
+/**
+ * LMDeploy Local Deployment Service Implementation
+ * LMDeploy api_server provides OpenAI-compatible API
+ */
+@Service
+public class LmdeployLlmService extends OpenAICompatibleLlmService {
+
+    public LmdeployLlmService(LlmConfig llmConfig, LlmHttpClients httpClients) {
+        super(llmConfig, httpClients, LlmProvider.LLMDEPLOY, "LMDeploy");
+    }
+
+    @Override
+    protected String getApiUrl() {
+        return llmConfig.getLmdeploy() != null ? llmConfig.getLmdeploy().getApiUrl() : null;
+    }
+
+    @Override
+    public String getModel() {
+        return llmConfig.getLmdeploy() != null ? llmConfig.getLmdeploy().getModel() : null;
+    }
+}
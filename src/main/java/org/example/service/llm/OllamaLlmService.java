@@ -1,5 +1,7 @@
 package org.example.service.llm;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
@@ -8,7 +10,9 @@ import org.example.config.LlmConfig;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
-import java.util.concurrent.TimeUnit;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  * Ollama Local LLM Service Implementation
@@ -18,53 +22,81 @@ import java.util.concurrent.TimeUnit;
 public class OllamaLlmService implements LlmService {
 
     private final LlmConfig llmConfig;
+    private final LlmHttpClients httpClients;
     private final OkHttpClient httpClient;
     private final ObjectMapper objectMapper;
 
-    public OllamaLlmService(LlmConfig llmConfig) {
+    public OllamaLlmService(LlmConfig llmConfig, LlmHttpClients httpClients) {
         this.llmConfig = llmConfig;
         this.objectMapper = new ObjectMapper();
-        this.httpClient = new OkHttpClient.Builder()
-                .connectTimeout(llmConfig.getTimeout(), TimeUnit.SECONDS)
-                .readTimeout(llmConfig.getTimeout(), TimeUnit.SECONDS)
-                .writeTimeout(llmConfig.getTimeout(), TimeUnit.SECONDS)
-                .build();
+        this.httpClients = httpClients;
+        this.httpClient = httpClients.forProvider(LlmProvider.OLLAMA);
     }
 
     @Override
     public String analyzeScript(String script) throws Exception {
+        return httpClients.execute(LlmProvider.OLLAMA, httpClient.newCall(analysisRequest(script, false)), this::parseAnalysis);
+    }
+
+    @Override
+    public CompletableFuture<String> analyzeScriptAsync(String script) {
+        return httpClients.enqueue(LlmProvider.OLLAMA, httpClient.newCall(analysisRequest(script, false)), this::parseAnalysis);
+    }
+
+    @Override
+    public CompletableFuture<String> analyzeScriptStreaming(String script, Consumer<String> onToken) {
+        return httpClients.stream(LlmProvider.OLLAMA, httpClient.newCall(analysisRequest(script, true)), this::streamDelta, onToken);
+    }
+
+    private Request analysisRequest(String script, boolean stream) {
         log.info("Analyzing script with Ollama, model: {}", llmConfig.getOllama().getModel());
 
         String prompt = buildAnalysisPrompt(script);
 
         // Build Ollama API request
-        String requestBody = String.format(
-                "{\"model\": \"%s\", \"prompt\": \"%s\", \"stream\": false, \"options\": {\"temperature\": %.1f, \"num_predict\": %d}}",
-                llmConfig.getOllama().getModel(),
-                escapeJson(prompt),
-                llmConfig.getTemperature(),
-                llmConfig.getMaxTokens()
-        );
-
-        Request request = new Request.Builder()
+        RequestBody requestBody = LlmJson.body(json -> {
+            json.writeStringField("model", llmConfig.getOllama().getModel());
+            json.writeStringField("prompt", prompt);
+            json.writeBooleanField("stream", stream);
+            json.writeObjectFieldStart("options");
+            json.writeNumberField("temperature", llmConfig.getTemperature());
+            json.writeNumberField("num_predict", llmConfig.getMaxTokens());
+            json.writeEndObject();
+        });
+
+        return new Request.Builder()
                 .url(llmConfig.getOllama().getApiUrl())
-                .post(RequestBody.create(requestBody, MediaType.parse("application/json")))
+                .tag(ProviderLimiter.Cost.class, ProviderLimiter.Cost.of(List.of(prompt), llmConfig.getMaxTokens()))
+                .post(requestBody)
                 .build();
+    }
 
-        try (Response response = httpClient.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                throw new IOException("Ollama API request failed: " + response.code());
-            }
-
-            String responseBody = response.body().string();
-            JsonNode jsonNode = objectMapper.readTree(responseBody);
+    private String parseAnalysis(Response response) throws IOException {
+        if (!response.isSuccessful()) {
+            throw new IOException("Ollama API request failed: " + response.code());
+        }
 
-            if (jsonNode.has("response")) {
-                return jsonNode.get("response").asText();
-            } else {
-                throw new IOException("Invalid response format from Ollama API");
+        try (JsonParser json = LlmJson.parser(response.body())) {
+            if (json.nextToken() == JsonToken.START_OBJECT && LlmJson.seek(json, "response") == JsonToken.VALUE_STRING) {
+                return json.getText();
             }
+            throw new IOException("Invalid response format from Ollama API");
+        }
+    }
+
+    /**
+     * One JSON object per line: {"response": "...", "done": false}
+     */
+    private String streamDelta(String line) throws IOException {
+        if (line.isBlank()) {
+            return null;
+        }
+        JsonNode node = objectMapper.readTree(line);
+        if (node.has("error")) {
+            throw new IOException("Ollama stream failed: " + node.get("error").asText());
         }
+        JsonNode response = node.path("response");
+        return response.isTextual() ? response.asText() : null;
     }
 
     @Override
@@ -72,6 +104,11 @@ public class OllamaLlmService implements LlmService {
         return LlmProvider.OLLAMA;
     }
 
+    @Override
+    public String getModel() {
+        return llmConfig.getOllama() != null ? llmConfig.getOllama().getModel() : null;
+    }
+
     @Override
     public boolean isAvailable() {
         try {
@@ -80,7 +117,7 @@ public class OllamaLlmService implements LlmService {
                     .get()
                     .build();
 
-            try (Response response = httpClient.newCall(request).execute()) {
+            try (Response response = httpClients.probe(LlmProvider.OLLAMA, request).execute()) {
                 return response.isSuccessful();
             }
         } catch (Exception e) {
@@ -100,12 +137,4 @@ public class OllamaLlmService implements LlmService {
                 "5. Overall safety verdict (safe/unsafe to execute)\n\n" +
                 "Keep your analysis concise and focused on the most important points.";
     }
-
-    private String escapeJson(String text) {
-        return text.replace("\\", "\\\\")
-                .replace("\"", "\\\"")
-                .replace("\n", "\\n")
-                .replace("\r", "\\r")
-                .replace("\t", "\\t");
-    }
 }
@@ -0,0 +1,203 @@
+package org.example.service.llm;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.*;
+import org.example.config.LlmConfig;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Base of the providers speaking the OpenAI chat completions API (OpenAI, Compass, vLLM, LMDeploy, SGLang)
+ * 请求体用 Jackson 流式 API 直接写入 HTTP 连接，响应体直接从连接读取并只取需要的字段，不构造中间字符串和 JsonNode 树。
+ * 新的兼容后端只需提供 URL、模型与（可选的）API key
+ */
+@Slf4j
+public abstract class OpenAICompatibleLlmService implements LlmService {
+
+    protected final LlmConfig llmConfig;
+    protected final LlmHttpClients httpClients;
+    protected final OkHttpClient httpClient;
+    private final LlmProvider provider;
+    private final String name;
+
+    /**
+     * @param name provider name used in logs and error messages
+     */
+    protected OpenAICompatibleLlmService(LlmConfig llmConfig, LlmHttpClients httpClients, LlmProvider provider,
+                                         String name) {
+        this.llmConfig = llmConfig;
+        this.httpClients = httpClients;
+        this.httpClient = httpClients.forProvider(provider);
+        this.provider = provider;
+        this.name = name;
+    }
+
+    /**
+     * Chat completions endpoint, e.g. http://localhost:8000/v1/chat/completions
+     */
+    protected abstract String getApiUrl();
+
+    /**
+     * Sent as a bearer token when present
+     */
+    protected String getApiKey() {
+        return null;
+    }
+
+    /**
+     * Top-level text field some servers answer with instead of choices
+     */
+    protected String getFallbackField() {
+        return null;
+    }
+
+    @Override
+    public LlmProvider getProvider() {
+        return provider;
+    }
+
+    @Override
+    public String analyzeScript(String script) throws Exception {
+        return httpClients.execute(provider, httpClient.newCall(analysisRequest(script, false)), this::parseAnalysis);
+    }
+
+    @Override
+    public CompletableFuture<String> analyzeScriptAsync(String script) {
+        return httpClients.enqueue(provider, httpClient.newCall(analysisRequest(script, false)), this::parseAnalysis);
+    }
+
+    @Override
+    public CompletableFuture<String> analyzeScriptStreaming(String script, Consumer<String> onToken) {
+        return httpClients.stream(provider, httpClient.newCall(analysisRequest(script, true)), this::streamDelta, onToken);
+    }
+
+    /**
+     * Local servers are available when they answer /v1/models
+     */
+    @Override
+    public boolean isAvailable() {
+        if (getApiUrl() == null) {
+            return false;
+        }
+
+        try {
+            Request request = new Request.Builder()
+                    .url(getApiUrl().replace("/v1/chat/completions", "/v1/models"))
+                    .get()
+                    .build();
+
+            try (Response response = httpClients.probe(provider, request).execute()) {
+                return response.isSuccessful();
+            }
+        } catch (Exception e) {
+            log.debug("{} service not available: {}", name, e.getMessage());
+            return false;
+        }
+    }
+
+    protected String buildAnalysisPrompt(String script) {
+        return "You are a code security and quality analyst. Analyze the following Groovy script that will be executed against a Redis database.\n\n" +
+                "Script:\n```groovy\n" + script + "\n```\n\n" +
+                "Please analyze this script and provide:\n" +
+                "1. Security concerns (if any)\n" +
+                "2. Code quality assessment\n" +
+                "3. Performance considerations\n" +
+                "4. Best practices recommendations\n" +
+                "5. Overall safety verdict (safe/unsafe to execute)\n\n" +
+                "Keep your analysis concise and focused on the most important points.";
+    }
+
+    private Request analysisRequest(String script, boolean stream) {
+        log.info("Analyzing script with {}, model: {}", name, getModel());
+        return chatRequest(buildAnalysisPrompt(script), stream);
+    }
+
+    private Request chatRequest(String prompt, boolean stream) {
+        return request(getApiUrl(), ProviderLimiter.Cost.of(List.of(prompt), llmConfig.getMaxTokens()), json -> {
+            json.writeStringField("model", getModel());
+            json.writeArrayFieldStart("messages");
+            json.writeStartObject();
+            json.writeStringField("role", "user");
+            json.writeStringField("content", prompt);
+            json.writeEndObject();
+            json.writeEndArray();
+            json.writeNumberField("temperature", llmConfig.getTemperature());
+            json.writeNumberField("max_tokens", llmConfig.getMaxTokens());
+            json.writeBooleanField("stream", stream);
+        });
+    }
+
+    /**
+     * POST whose JSON body is generated straight into the connection, tagged with its cost for the provider's limits
+     */
+    private Request request(String url, ProviderLimiter.Cost cost, LlmJson.Fields fields) {
+        Request.Builder builder = new Request.Builder()
+                .url(url)
+                .header("Content-Type", "application/json")
+                .tag(ProviderLimiter.Cost.class, cost)
+                .post(LlmJson.body(fields));
+        if (getApiKey() != null && !getApiKey().isEmpty()) {
+            builder.header("Authorization", "Bearer " + getApiKey());
+        }
+        return builder.build();
+    }
+
+    private String parseAnalysis(Response response) throws IOException {
+        if (!response.isSuccessful()) {
+            throw new IOException(name + " API request failed: " + response.code());
+        }
+
+        try (JsonParser json = LlmJson.parser(response.body())) {
+            String content = readContent(json, "message");
+            if (content == null) {
+                throw new IOException("Invalid response format from " + name + " API");
+            }
+            return content;
+        }
+    }
+
+    /**
+     * Server-sent event line of a streaming chat completion: data: {"choices": [{"delta": {"content": "..."}}]}
+     */
+    private String streamDelta(String line) throws IOException {
+        if (!line.startsWith("data:")) {
+            return null;
+        }
+        String data = line.substring(5).trim();
+        if (data.isEmpty() || data.equals("[DONE]")) {
+            return null;
+        }
+        try (JsonParser json = LlmJson.FACTORY.createParser(data)) {
+            return readContent(json, "delta");
+        }
+    }
+
+    /**
+     * choices[0].&lt;container&gt;.content of a chat completion, or the fallback field; null when neither is there.
+     * 只读到目标字段为止，其余字段整体跳过
+     */
+    private String readContent(JsonParser json, String container) throws IOException {
+        if (json.nextToken() != JsonToken.START_OBJECT) {
+            return null;
+        }
+        while (json.nextToken() == JsonToken.FIELD_NAME) {
+            String field = json.getCurrentName();
+            JsonToken value = json.nextToken();
+            if (field.equals("choices")) {
+                return value == JsonToken.START_ARRAY && json.nextToken() == JsonToken.START_OBJECT
+                        && LlmJson.seek(json, container) == JsonToken.START_OBJECT && LlmJson.seek(json, "content") == JsonToken.VALUE_STRING
+                        ? json.getText() : null;
+            }
+            if (field.equals(getFallbackField()) && value == JsonToken.VALUE_STRING) {
+                return json.getText();
+            }
+            json.skipChildren();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,220 @@
+package org.example.service.llm;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.example.config.LlmConfig;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Availability of the LLM providers, tracked off the request path
+ * 每个提供者一个熔断器（CLOSED / HALF_OPEN / OPEN），由真实调用结果驱动：连续失败 failureThreshold 次后打开，
+ * openSeconds 后半开，只放行一个试探调用（tryAcquire 抢到试探名额的调用方），其余调用方在试探结束前都视为不可用；
+ * 试探成功则关闭，失败则重新打开；抢到名额却没有发出调用（例如命中缓存）时用 release 交还；试探调用 openSeconds 内没有结果时名额作废，允许下一个试探。
+ * 可达性由后台线程每 probeIntervalSeconds 探测一次（isAvailable，本地模型为一次 HTTP 请求），
+ * 选择提供者只读内存中的状态；只有尚未探测过的提供者（启动后第一轮探测完成前）才会就地探测一次。
+ *
+ * 状态记录在 llm.provider.circuit（0 关闭、1 半开、2 打开）与 llm.provider.reachable，标签 provider
+ */
+@Slf4j
+public class ProviderHealth {
+
+    public enum State {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    private final LlmConfig.HealthConfig config;
+    private final LongSupplier clock;
+    private final Map<LlmProvider, Breaker> breakers = new EnumMap<>(LlmProvider.class);
+    private ScheduledExecutorService scheduler;
+
+    ProviderHealth(LlmConfig.HealthConfig config, Map<LlmProvider, LlmService> services,
+                   MeterRegistry meterRegistry, LongSupplier clock) {
+        this.config = config;
+        this.clock = clock;
+        services.forEach((provider, service) -> {
+            Breaker breaker = new Breaker(provider, service);
+            breakers.put(provider, breaker);
+            Gauge.builder("llm.provider.circuit", breaker, b -> b.state().ordinal())
+                    .description("Circuit breaker state of the LLM provider: 0 closed, 1 half-open, 2 open")
+                    .tag("provider", provider.name())
+                    .register(meterRegistry);
+            Gauge.builder("llm.provider.reachable", breaker, b -> Boolean.TRUE.equals(b.reachable) ? 1 : 0)
+                    .description("Whether the last background probe reached the LLM provider")
+                    .tag("provider", provider.name())
+                    .register(meterRegistry);
+        });
+    }
+
+    /**
+     * Probe every provider now and then every probeIntervalSeconds, each on its own thread
+     * so that a provider hanging until its timeout does not delay the others
+     */
+    public synchronized void start() {
+        if (scheduler != null || config.getProbeIntervalSeconds() <= 0 || breakers.isEmpty()) {
+            return;
+        }
+        scheduler = Executors.newScheduledThreadPool(breakers.size(), r -> {
+            Thread thread = new Thread(r, "llm-health");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (Breaker breaker : breakers.values()) {
+            scheduler.scheduleWithFixedDelay(breaker::probe, 0, config.getProbeIntervalSeconds(), TimeUnit.SECONDS);
+        }
+        log.info("LLM provider health checks started, probing every {}s", config.getProbeIntervalSeconds());
+    }
+
+    public synchronized void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Whether calls may go to the provider: it answered the last probe, its circuit is not open
+     * and no half-open trial call is in flight. Does not claim the trial, use {@link #tryAcquire} before calling
+     */
+    public boolean isAvailable(LlmProvider provider) {
+        Breaker breaker = breakers.get(provider);
+        return breaker != null && breaker.reachable() && breaker.permits(false);
+    }
+
+    /**
+     * Like {@link #isAvailable}, but a half-open provider is only granted to the one caller that claims its trial call
+     */
+    public boolean tryAcquire(LlmProvider provider) {
+        Breaker breaker = breakers.get(provider);
+        return breaker != null && breaker.reachable() && breaker.permits(true);
+    }
+
+    /**
+     * Hand back a half-open trial claimed by {@link #tryAcquire} for a call that was never made
+     */
+    public void release(LlmProvider provider) {
+        Breaker breaker = breakers.get(provider);
+        if (breaker != null) {
+            breaker.release();
+        }
+    }
+
+    public State getState(LlmProvider provider) {
+        Breaker breaker = breakers.get(provider);
+        return breaker != null ? breaker.state() : State.OPEN;
+    }
+
+    public void recordSuccess(LlmProvider provider) {
+        Breaker breaker = breakers.get(provider);
+        if (breaker != null) {
+            breaker.success();
+        }
+    }
+
+    public void recordFailure(LlmProvider provider) {
+        Breaker breaker = breakers.get(provider);
+        if (breaker != null) {
+            breaker.failure();
+        }
+    }
+
+    private final class Breaker {
+
+        private final LlmProvider provider;
+        private final LlmService service;
+        /**
+         * Result of the last probe, null until the provider has been probed
+         */
+        private volatile Boolean reachable;
+        private State state = State.CLOSED;
+        private int failures;
+        private long openedAt;
+        /**
+         * When the half-open trial call was handed out, 0 when none is in flight
+         */
+        private long trialStartedAt;
+
+        private Breaker(LlmProvider provider, LlmService service) {
+            this.provider = provider;
+            this.service = service;
+        }
+
+        synchronized State state() {
+            if (state == State.OPEN && clock.getAsLong() - openedAt >= config.getOpenSeconds() * 1000) {
+                state = State.HALF_OPEN;
+                log.info("LLM provider {} circuit half-open, letting a trial call through", provider);
+            }
+            return state;
+        }
+
+        boolean reachable() {
+            Boolean ok = reachable;
+            return ok != null ? ok : probe();
+        }
+
+        /**
+         * Closed lets everyone through; half-open lets one trial through until it reports back or expires
+         */
+        synchronized boolean permits(boolean claimTrial) {
+            State current = state();
+            if (current != State.HALF_OPEN) {
+                return current == State.CLOSED;
+            }
+            long now = clock.getAsLong();
+            if (trialStartedAt != 0 && now - trialStartedAt < config.getOpenSeconds() * 1000) {
+                return false;
+            }
+            if (claimTrial) {
+                trialStartedAt = now;
+            }
+            return true;
+        }
+
+        synchronized void release() {
+            trialStartedAt = 0;
+        }
+
+        synchronized void success() {
+            if (state != State.CLOSED) {
+                log.info("LLM provider {} circuit closed", provider);
+            }
+            state = State.CLOSED;
+            failures = 0;
+            trialStartedAt = 0;
+        }
+
+        synchronized void failure() {
+            failures++;
+            trialStartedAt = 0;
+            if (state() == State.HALF_OPEN || failures >= config.getFailureThreshold()) {
+                if (state != State.OPEN) {
+                    log.warn("LLM provider {} circuit opened after {} failed call(s)", provider, failures);
+                }
+                state = State.OPEN;
+                openedAt = clock.getAsLong();
+            }
+        }
+
+        boolean probe() {
+            boolean ok;
+            try {
+                ok = service.isAvailable();
+            } catch (Exception e) {
+                log.debug("LLM provider {} probe failed: {}", provider, e.getMessage());
+                ok = false;
+            }
+            Boolean previous = reachable;
+            reachable = ok;
+            if (previous != null && previous != ok) {
+                log.info("LLM provider {} is now {}", provider, ok ? "reachable" : "unreachable");
+            }
+            return ok;
+        }
+    }
+}
@@ -0,0 +1,339 @@
+package org.example.service.llm;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Response;
+import org.example.config.LlmConfig;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-provider concurrency and rate limits of analysis calls, with retry of 429/503 responses
+ * 调用在 Call.enqueue 之前排队：先占用并发名额（名额占满时按到达顺序进入提供者自己的等待队列），再从每分钟请求数与 token 数两个令牌桶预订令牌，
+ * 令牌不够时由定时器在补足的时刻发出；收到 429/503 时按 Retry-After（没有则指数退避加随机抖动）由定时器重新发出，每次重试重新预订令牌。
+ * 等待期间不占用 OkHttp 调度器线程，也不计入 max-requests / max-requests-per-host，某个提供者排队不会拖住其他提供者和对冲调用。
+ * 并发名额在响应处理完（流式调用读完）后才归还；取消调用会将其移出等待队列、取消定时任务并归还名额。
+ *
+ * 只限制带 Cost 标签的请求（分析调用），其余请求直接发出。等待时间记录在 llm.limit.wait（标签 provider），
+ * 排队数记录在 llm.limit.queued，重试记录在 llm.http.retries（标签 provider、status）
+ */
+@Slf4j
+public class ProviderLimiter {
+
+    private static final int CHARS_PER_TOKEN = 4;
+
+    private final LlmProvider provider;
+    private final LlmConfig.RetryConfig retry;
+    private final ScheduledExecutorService timer;
+    private final boolean bounded;
+    private final Deque<Admission<?>> waiting = new ArrayDeque<>();
+    private int slots;
+    private final TokenBucket requests;
+    private final TokenBucket tokens;
+    private final Timer waitTimer;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Estimated tokens of an analysis request, attached as a request tag
+     */
+    public record Cost(int tokens) {
+
+        /**
+         * Prompt length at about four characters a token, plus the completion budget of every prompt
+         */
+        public static Cost of(List<String> prompts, int maxTokens) {
+            int total = 0;
+            for (String prompt : prompts) {
+                total += prompt.length() / CHARS_PER_TOKEN + maxTokens;
+            }
+            return new Cost(total);
+        }
+    }
+
+    ProviderLimiter(LlmProvider provider, LlmConfig.ProviderHttpConfig limits, LlmConfig.RetryConfig retry,
+                    ScheduledExecutorService timer, MeterRegistry meterRegistry, LongSupplier clock) {
+        this.provider = provider;
+        this.retry = retry;
+        this.timer = timer;
+        this.meterRegistry = meterRegistry;
+        this.bounded = limits != null && limits.getMaxConcurrent() != null;
+        this.slots = bounded ? limits.getMaxConcurrent() : 0;
+        this.requests = limits != null && limits.getRequestsPerMinute() != null
+                ? new TokenBucket(limits.getRequestsPerMinute(), clock) : null;
+        this.tokens = limits != null && limits.getTokensPerMinute() != null
+                ? new TokenBucket(limits.getTokensPerMinute(), clock) : null;
+        this.waitTimer = Timer.builder("llm.limit.wait")
+                .description("Time analysis calls waited for a concurrency slot and rate-limit tokens")
+                .tag("provider", provider.name())
+                .register(meterRegistry);
+        if (bounded) {
+            Gauge.builder("llm.limit.queued", this, ProviderLimiter::queued)
+                    .description("Analysis calls waiting for a concurrency slot")
+                    .tag("provider", provider.name())
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Send the call once it has a slot and its tokens, retrying 429/503 on the timer, and complete future with what
+     * parser makes of the final response. Cancelling future withdraws or cancels the call
+     */
+    <T> CompletableFuture<T> submit(Call call, CompletableFuture<T> future, LlmHttpClients.ResponseParser<T> parser) {
+        new Admission<>(call, future, parser).start();
+        return future;
+    }
+
+    int queued() {
+        synchronized (waiting) {
+            return waiting.size();
+        }
+    }
+
+    /**
+     * Retry-After in seconds or as an HTTP date, otherwise exponential backoff with jitter; never above maxBackoffMs
+     */
+    long retryDelayMs(String retryAfter, int attempt) {
+        if (retryAfter != null) {
+            try {
+                return Math.min(retry.getMaxBackoffMs(), Math.max(0, Long.parseLong(retryAfter.trim()) * 1000));
+            } catch (NumberFormatException e) {
+                try {
+                    ZonedDateTime at = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                    long millis = Duration.between(ZonedDateTime.now(at.getZone()), at).toMillis();
+                    return Math.min(retry.getMaxBackoffMs(), Math.max(0, millis));
+                } catch (Exception ignored) {
+                    // fall back to backoff
+                }
+            }
+        }
+        long cap = Math.min(retry.getMaxBackoffMs(), retry.getInitialBackoffMs() << Math.min(attempt, 30));
+        return cap / 2 + ThreadLocalRandom.current().nextLong(cap / 2 + 1);
+    }
+
+    /**
+     * Take a free slot for admission, or queue it to be handed the next released one
+     */
+    private boolean acquire(Admission<?> admission) {
+        synchronized (waiting) {
+            if (slots > 0) {
+                slots--;
+                admission.holding.set(true);
+                return true;
+            }
+            waiting.add(admission);
+            return false;
+        }
+    }
+
+    /**
+     * Hand the slot straight to the longest waiting call, or back to the pool when none waits
+     */
+    private void release() {
+        Admission<?> next;
+        synchronized (waiting) {
+            next = waiting.poll();
+            if (next == null) {
+                slots++;
+                return;
+            }
+            next.holding.set(true);
+        }
+        next.admitted();
+    }
+
+    private boolean withdraw(Admission<?> admission) {
+        synchronized (waiting) {
+            return waiting.remove(admission);
+        }
+    }
+
+    /**
+     * One limited call from arrival to its final response; every step runs on the caller, the timer or the callback
+     * of the previous attempt, never waiting on a thread
+     */
+    private final class Admission<T> implements Callback {
+
+        private final CompletableFuture<T> future;
+        private final LlmHttpClients.ResponseParser<T> parser;
+        private final Cost cost;
+        private final AtomicBoolean holding = new AtomicBoolean();
+        private volatile Call current;
+        private volatile ScheduledFuture<?> pending;
+        private long started = System.nanoTime();
+        private int attempt;
+
+        private Admission(Call call, CompletableFuture<T> future, LlmHttpClients.ResponseParser<T> parser) {
+            this.current = call;
+            this.future = future;
+            this.parser = parser;
+            this.cost = call.request().tag(Cost.class);
+        }
+
+        private void start() {
+            future.whenComplete((result, error) -> {
+                if (future.isCancelled()) {
+                    cancel();
+                }
+            });
+            if (cost == null) {
+                dispatch();
+            } else if (!bounded || acquire(this)) {
+                admitted();
+            }
+        }
+
+        private void admitted() {
+            if (future.isDone()) {
+                releaseSlot();
+                return;
+            }
+            reserveTokens();
+        }
+
+        /**
+         * Tokens are reserved up front, so calls leave the buckets in arrival order and the timer sends each at its turn
+         */
+        private void reserveTokens() {
+            if (future.isDone()) {
+                releaseSlot();
+                return;
+            }
+            long delayMs = 0;
+            if (requests != null) {
+                delayMs = requests.reserve(1);
+            }
+            if (tokens != null) {
+                delayMs = Math.max(delayMs, tokens.reserve(cost.tokens()));
+            }
+            if (delayMs > 0) {
+                later(delayMs, this::dispatch);
+            } else {
+                dispatch();
+            }
+        }
+
+        private void dispatch() {
+            if (future.isDone()) {
+                releaseSlot();
+                return;
+            }
+            if (cost != null) {
+                waitTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            }
+            Call call = current;
+            call.enqueue(this);
+            if (future.isDone()) {
+                call.cancel();
+            }
+        }
+
+        private void later(long delayMs, Runnable step) {
+            pending = timer.schedule(step, delayMs, TimeUnit.MILLISECONDS);
+            if (future.isDone()) {
+                pending.cancel(false);
+                releaseSlot();
+            }
+        }
+
+        @Override
+        public void onResponse(Call call, Response response) {
+            int code = response.code();
+            if (cost != null && (code == 429 || code == 503) && attempt < retry.getMaxRetries()) {
+                long delayMs = retryDelayMs(response.header("Retry-After"), attempt);
+                response.close();
+                Counter.builder("llm.http.retries").tags("provider", provider.name(), "status", String.valueOf(code))
+                        .description("LLM calls retried after a rate-limit or overload response")
+                        .register(meterRegistry).increment();
+                attempt++;
+                log.warn("{} answered {}, retrying in {}ms (attempt {} of {})", provider, code, delayMs, attempt,
+                        retry.getMaxRetries());
+                current = call.clone();
+                started = System.nanoTime();
+                later(delayMs, this::reserveTokens);
+                return;
+            }
+
+            try (response) {
+                future.complete(parser.parse(response));
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            } finally {
+                releaseSlot();
+            }
+        }
+
+        @Override
+        public void onFailure(Call call, IOException e) {
+            future.completeExceptionally(e);
+            releaseSlot();
+        }
+
+        private void cancel() {
+            ScheduledFuture<?> task = pending;
+            if (task != null) {
+                task.cancel(false);
+            }
+            current.cancel();
+            if (!withdraw(this)) {
+                releaseSlot();
+            }
+        }
+
+        private void releaseSlot() {
+            if (holding.compareAndSet(true, false)) {
+                release();
+            }
+        }
+    }
+
+    /**
+     * Bucket of capacity tokens refilled evenly over a minute
+     * 令牌按预订扣除，可以透支：后到的调用等到透支部分补足为止，于是按到达顺序依次发出，没有线程在桶上等待
+     */
+    static final class TokenBucket {
+
+        private static final long MINUTE_MS = 60_000;
+
+        private final long capacity;
+        private final LongSupplier clock;
+        private double available;
+        private long refilledAt;
+
+        TokenBucket(long capacity, LongSupplier clock) {
+            this.capacity = Math.max(1, capacity);
+            this.clock = clock;
+            this.available = this.capacity;
+            this.refilledAt = clock.getAsLong();
+        }
+
+        /**
+         * @return 0 when the tokens were there, otherwise how long until the reservation is covered.
+         * 超过容量的请求按容量计，避免永远等不到
+         */
+        synchronized long reserve(long count) {
+            long now = clock.getAsLong();
+            available = Math.min(capacity, available + (now - refilledAt) * capacity / (double) MINUTE_MS);
+            refilledAt = now;
+            available -= Math.min(count, capacity);
+            return available >= 0 ? 0 : Math.max(1, (long) Math.ceil(-available * MINUTE_MS / capacity));
+        }
+    }
+}
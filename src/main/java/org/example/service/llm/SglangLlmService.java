@@ -0,0 +1,26 @@
+package org.example.service.llm;
+
+import org.example.config.LlmConfig;
+import org.springframework.stereotype.Service;
+
+/**
+ * SGLang Local Deployment Service Implementation
+ * SGLang provides OpenAI-compatible API
+ */
+@Service
+public class SglangLlmService extends OpenAICompatibleLlmService {
+
+    public SglangLlmService(LlmConfig llmConfig, LlmHttpClients httpClients) {
+        super(llmConfig, httpClients, LlmProvider.SGLANG, "SGLang");
+    }
+
+    @Override
+    protected String getApiUrl() {
+        return llmConfig.getSglang() != null ? llmConfig.getSglang().getApiUrl() : null;
+    }
+
+    @Override
+    public String getModel() {
+        return llmConfig.getSglang() != null ? llmConfig.getSglang().getModel() : null;
+    }
+}
@@ -0,0 +1,550 @@
+package org.example.service.redis;
+
+import org.example.service.ScriptEngineService.RedisOperations;
+
+import java.util.*;
+
+/**
+ * Fluent hash aggregation with primitive accumulators
+ * 数值字段直接解析为 long/double 累加，不为每行创建 Integer/BigDecimal；只按需投影读取用到的字段
+ *
+ * 结果：无分组时为 {count, avg_age, ...}；分组时为 {分组值: {count, avg_age, ...}}，缺少分组字段的行不计入
+ * 调用 pushdown() 后过滤与聚合在 Redis 内通过 Lua 完成，只传回聚合结果；集群模式下自动改走本地计算
+ * 调用 approximate() 后按样本估计并给出置信区间（xxx_ci），结果中的 _approximate 描述样本。样本不是名字上的前 N 个键：
+ * 给定键列表时按键的哈希排序后读取（相当于按键哈希的伯努利抽样，阈值随样本量自适应），与键名顺序无关；
+ * SCAN 本身按 Redis 哈希表顺序返回，同样与键名无关；
+ * countDistinct 使用进程内 HyperLogLog。这两种情况都在本地计算，忽略 pushdown
+ */
+public class Aggregation implements LazyResult {
+
+    private enum Kind { SUM, AVG, MIN, MAX, DISTINCT }
+
+    private static final Set<String> OPERATORS = Set.of("==", "!=", ">", ">=", "<", "<=");
+
+    private final RedisOperations redis;
+    private final LuaScanAggregator luaAggregator;
+    private final ScriptBudget budget;
+    private final String pattern;
+    private final Collection<String> keys;
+    private final List<Kind> metricKinds = new ArrayList<>();
+    private final List<String> metricFields = new ArrayList<>();
+    private final List<String> fields = new ArrayList<>();
+    private final List<String[]> predicates = new ArrayList<>();
+    private final List<String> distinctFields = new ArrayList<>();
+    private String groupField;
+    private boolean counting;
+    private boolean pushdown;
+    private Approximation approximation;
+
+    Aggregation(RedisOperations redis, LuaScanAggregator luaAggregator, ScriptBudget budget,
+                String pattern, Collection<String> keys) {
+        this.redis = redis;
+        this.luaAggregator = luaAggregator;
+        this.budget = budget;
+        this.pattern = pattern;
+        this.keys = keys;
+    }
+
+    public Aggregation groupBy(String field) {
+        this.groupField = field;
+        return this;
+    }
+
+    /**
+     * Keep only rows where {@code field op value}; numeric comparison when both sides are numbers
+     */
+    public Aggregation where(String field, String op, Object value) {
+        if (!OPERATORS.contains(op)) {
+            throw new IllegalArgumentException("Unsupported operator: " + op + ", expected one of " + OPERATORS);
+        }
+        predicates.add(new String[]{field, op, String.valueOf(value)});
+        return this;
+    }
+
+    public Aggregation count() {
+        this.counting = true;
+        return this;
+    }
+
+    public Aggregation sum(String field) {
+        return metric(Kind.SUM, field);
+    }
+
+    public Aggregation avg(String field) {
+        return metric(Kind.AVG, field);
+    }
+
+    public Aggregation min(String field) {
+        return metric(Kind.MIN, field);
+    }
+
+    public Aggregation max(String field) {
+        return metric(Kind.MAX, field);
+    }
+
+    /**
+     * Approximate number of distinct values (in-process HyperLogLog, about 0.81% standard error)
+     */
+    public Aggregation countDistinct(String field) {
+        metricKinds.add(Kind.DISTINCT);
+        metricFields.add(field);
+        if (!distinctFields.contains(field)) {
+            distinctFields.add(field);
+        }
+        return this;
+    }
+
+    /**
+     * Sample until 5% relative error at 95% confidence
+     */
+    public Aggregation approximate() {
+        return approximate(Map.of());
+    }
+
+    public Aggregation approximate(double error) {
+        return approximate(Map.of("error", error));
+    }
+
+    /**
+     * Sample instead of reading every row. Options: error (relative, default 0.05), confidence (default 0.95),
+     * timeMs and maxSample (stop early regardless of error), population (row count used to extrapolate count/sum).
+     * Over a pattern without population, count and sum cannot be extrapolated, so they are computed exactly
+     */
+    public Aggregation approximate(Map<String, ?> options) {
+        this.approximation = Approximation.of(options, keys == null ? null : (long) keys.size());
+        return this;
+    }
+
+    /**
+     * Evaluate inside Redis with a cached Lua script
+     */
+    public Aggregation pushdown() {
+        return pushdown(true);
+    }
+
+    public Aggregation pushdown(boolean enabled) {
+        if (enabled && luaAggregator == null) {
+            throw new IllegalStateException("Lua pushdown is not available");
+        }
+        this.pushdown = enabled;
+        return this;
+    }
+
+    /**
+     * Run the aggregation. Scripts may also just return the builder, the engine runs it for them
+     */
+    @Override
+    public Map<String, Object> result() {
+        Map<String, Stats> groups = new LinkedHashMap<>();
+        Stats total = new Stats(fields.size(), distinctFields.size());
+        Sample sample = new Sample();
+
+        if (pushdown && approximation == null && distinctFields.isEmpty() && !luaAggregator.isCluster()) {
+            runPushdown(groups, total);
+        } else {
+            runLocal(groups, total, sample);
+        }
+
+        Map<String, Object> result;
+        if (groupField == null) {
+            result = total.toMap(this, sample);
+        } else {
+            result = new LinkedHashMap<>();
+            for (Map.Entry<String, Stats> group : groups.entrySet()) {
+                result.put(group.getKey(), group.getValue().toMap(this, sample));
+            }
+        }
+        if (approximation != null) {
+            result.put("_approximate", sample.describe(approximation));
+        }
+        return result;
+    }
+
+    /**
+     * Rows looked at by the local run and whether every row was seen
+     */
+    private static final class Sample {
+        final long startNanos = System.nanoTime();
+        long examined;
+        boolean exact = true;
+
+        long elapsedMs() {
+            return (System.nanoTime() - startNanos) / 1_000_000;
+        }
+
+        Map<String, Object> describe(Approximation approximation) {
+            Map<String, Object> out = new LinkedHashMap<>();
+            out.put("sample_size", examined);
+            out.put("exact", exact);
+            out.put("confidence", approximation.confidence);
+            out.put("target_error", approximation.error);
+            out.put("elapsed_ms", elapsedMs());
+            return out;
+        }
+    }
+
+    private void runLocal(Map<String, Stats> groups, Stats total, Sample sample) {
+        List<String> projection = new ArrayList<>(fields);
+        for (String[] predicate : predicates) {
+            if (!projection.contains(predicate[0])) {
+                projection.add(predicate[0]);
+            }
+        }
+        for (String field : distinctFields) {
+            if (!projection.contains(field)) {
+                projection.add(field);
+            }
+        }
+        if (groupField != null && !projection.contains(groupField)) {
+            projection.add(groupField);
+        }
+
+        int batchSize = redis.getPipelineBatchSize();
+        Collection<String> ordered = approximation != null && keys != null && keys.size() > batchSize
+                ? sampleOrder(keys) : keys;
+        KeyBatches source = pattern != null
+                ? consumer -> redis.scanBatchesWhile(pattern, batchSize, consumer)
+                : consumer -> KeyBatches.splitWhile(ordered, batchSize, consumer);
+
+        source.forEachBatchWhile(batch -> {
+            sample.examined += batch.size();
+            if (projection.isEmpty()) {
+                total.count += batch.size();
+            } else {
+                for (Map<String, Object> row : redis.hgetAllMany(batch, projection).values()) {
+                    if (row.isEmpty() || !matches(row)) {
+                        continue;
+                    }
+                    Stats stats = total;
+                    if (groupField != null) {
+                        Object group = row.get(groupField);
+                        if (group == null) {
+                            continue;
+                        }
+                        stats = groups.computeIfAbsent(group.toString(), g -> new Stats(fields.size(), distinctFields.size()));
+                    }
+                    stats.accept(row, fields, distinctFields);
+                }
+            }
+            if (approximation != null && precise(total, sample)) {
+                sample.exact = false;
+                return false;
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Keys ordered by a mixed hash, so any prefix of the order is a uniform sample regardless of how keys were named or listed
+     */
+    static List<String> sampleOrder(Collection<String> keys) {
+        List<String> ordered = new ArrayList<>(keys);
+        ordered.sort(Comparator.comparingLong(Aggregation::sampleRank));
+        return ordered;
+    }
+
+    /**
+     * String.hashCode is close to sequential for keys like user:1, user:2; the 64-bit finalizer spreads it
+     */
+    private static long sampleRank(String key) {
+        long h = key.hashCode();
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Stopping rule of the approximate mode, evaluated on the overall totals after each batch
+     */
+    private boolean precise(Stats total, Sample sample) {
+        // 模式扫描没有给出 population 时 count/sum 无法外推，提前停止只能返回 null，退回精确模式读完所有行（时间与样本上限也不生效）
+        if (approximation.population == null && (counting || metricKinds.contains(Kind.SUM))) {
+            return false;
+        }
+        if (approximation.timeMs > 0 && sample.elapsedMs() >= approximation.timeMs) {
+            return true;
+        }
+        if (approximation.maxSample > 0 && sample.examined >= approximation.maxSample) {
+            return true;
+        }
+        // 去重计数无法从样本外推，需要看完所有行
+        if (!distinctFields.isEmpty() || sample.examined < Approximation.MIN_SAMPLE) {
+            return false;
+        }
+        for (int m = 0; m < metricKinds.size(); m++) {
+            Kind kind = metricKinds.get(m);
+            int i = fields.indexOf(metricFields.get(m));
+            if (kind == Kind.AVG && !withinError(approximation.meanHalfWidth(total.n[i], total.sum[i], total.sumSq[i]),
+                    total.n[i] == 0 ? 0 : total.sum[i] / total.n[i])) {
+                return false;
+            }
+            if (kind == Kind.SUM && approximation.population != null && !withinError(
+                    approximation.totalHalfWidth(sample.examined, total.sum[i], total.sumSq[i]),
+                    total.sum[i] * approximation.population / sample.examined)) {
+                return false;
+            }
+        }
+        if (counting && approximation.population != null && !withinError(
+                approximation.totalHalfWidth(sample.examined, total.count, total.count),
+                (double) total.count * approximation.population / sample.examined)) {
+            return false;
+        }
+        return true;
+    }
+
+    private boolean withinError(double halfWidth, double estimate) {
+        return estimate != 0 && halfWidth <= approximation.error * Math.abs(estimate);
+    }
+
+    private void runPushdown(Map<String, Stats> groups, Stats total) {
+        int count = redis.getPipelineBatchSize();
+        if (pattern != null) {
+            String cursor = "0";
+            do {
+                cursor = mergeStep(step(Collections.emptyList(), cursor, count), groups, total, true);
+            } while (!"0".equals(cursor));
+        } else {
+            KeyBatches.split(keys, count, batch -> mergeStep(step(batch, "0", count), groups, total, false));
+        }
+    }
+
+    private List<Object> step(List<String> batch, String cursor, int count) {
+        if (budget != null) {
+            budget.command("EVALSHA");
+        }
+        return luaAggregator.step(batch, cursor, pattern, count, groupField, fields, predicates);
+    }
+
+    /**
+     * Merge one partial Lua result, returns the next SCAN cursor
+     */
+    private String mergeStep(List<Object> out, Map<String, Stats> groups, Stats total, boolean scanned) {
+        if (out.isEmpty()) {
+            return "0";
+        }
+        if (budget != null) {
+            if (scanned) {
+                budget.keysScanned(Long.parseLong(out.get(1).toString()));
+            }
+            budget.read(out);
+        }
+
+        int groupCount = Integer.parseInt(out.get(2).toString());
+        int i = 3;
+        for (int g = 0; g < groupCount; g++) {
+            String group = out.get(i++).toString();
+            Stats stats = groupField == null ? total : groups.computeIfAbsent(group, k -> new Stats(fields.size(), distinctFields.size()));
+            stats.count += Long.parseLong(out.get(i++).toString());
+            for (int f = 0; f < fields.size(); f++) {
+                long n = Long.parseLong(out.get(i++).toString());
+                double sum = Double.parseDouble(out.get(i++).toString());
+                double min = Double.parseDouble(out.get(i++).toString());
+                double max = Double.parseDouble(out.get(i++).toString());
+                boolean fractional = "1".equals(out.get(i++).toString());
+                stats.merge(f, n, sum, min, max, fractional);
+            }
+        }
+        return out.get(0).toString();
+    }
+
+    private boolean matches(Map<String, Object> row) {
+        for (String[] predicate : predicates) {
+            Object actual = row.get(predicate[0]);
+            if (actual == null || !compare(actual, predicate[1], predicate[2])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static boolean compare(Object actual, String op, String expected) {
+        double a = parseNumber(actual);
+        double e = parseNumber(expected);
+        int cmp = Double.isNaN(a) || Double.isNaN(e)
+                ? actual.toString().compareTo(expected)
+                : Double.compare(a, e);
+        return switch (op) {
+            case "==" -> cmp == 0;
+            case "!=" -> cmp != 0;
+            case ">" -> cmp > 0;
+            case ">=" -> cmp >= 0;
+            case "<" -> cmp < 0;
+            case "<=" -> cmp <= 0;
+            default -> false;
+        };
+    }
+
+    private Aggregation metric(Kind kind, String field) {
+        metricKinds.add(kind);
+        metricFields.add(field);
+        if (!fields.contains(field)) {
+            fields.add(field);
+        }
+        return this;
+    }
+
+    /**
+     * Parse a numeric hash value without boxing, returns NaN when not numeric
+     */
+    static double parseNumber(Object value) {
+        if (value instanceof Number number) {
+            return number.doubleValue();
+        }
+        if (!(value instanceof CharSequence text) || text.length() == 0) {
+            return Double.NaN;
+        }
+
+        int i = text.charAt(0) == '-' ? 1 : 0;
+        if (i < text.length() && text.length() - i <= 18) {
+            long parsed = 0;
+            for (int j = i; j < text.length(); j++) {
+                char c = text.charAt(j);
+                if (c < '0' || c > '9') {
+                    parsed = -1;
+                    break;
+                }
+                parsed = parsed * 10 + (c - '0');
+            }
+            if (parsed >= 0) {
+                return i == 1 ? -parsed : parsed;
+            }
+        }
+
+        try {
+            return Double.parseDouble(text.toString().trim());
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static final class Stats {
+        long count;
+        final long[] n;
+        final double[] sum;
+        final double[] sumSq;
+        final double[] min;
+        final double[] max;
+        final boolean[] fractional;
+        final HyperLogLog[] distinct;
+
+        Stats(int width, int distinctWidth) {
+            n = new long[width];
+            sum = new double[width];
+            sumSq = new double[width];
+            min = new double[width];
+            max = new double[width];
+            fractional = new boolean[width];
+            Arrays.fill(min, Double.POSITIVE_INFINITY);
+            Arrays.fill(max, Double.NEGATIVE_INFINITY);
+            distinct = new HyperLogLog[distinctWidth];
+            for (int i = 0; i < distinctWidth; i++) {
+                distinct[i] = new HyperLogLog();
+            }
+        }
+
+        void accept(Map<String, Object> row, List<String> fields, List<String> distinctFields) {
+            count++;
+            for (int i = 0; i < fields.size(); i++) {
+                double value = parseNumber(row.get(fields.get(i)));
+                if (Double.isNaN(value)) {
+                    continue;
+                }
+                n[i]++;
+                sum[i] += value;
+                sumSq[i] += value * value;
+                min[i] = Math.min(min[i], value);
+                max[i] = Math.max(max[i], value);
+                fractional[i] |= value != Math.rint(value);
+            }
+            for (int i = 0; i < distinctFields.size(); i++) {
+                distinct[i].add(row.get(distinctFields.get(i)));
+            }
+        }
+
+        void merge(int i, long partialN, double partialSum, double partialMin, double partialMax, boolean partialFractional) {
+            if (partialN == 0) {
+                return;
+            }
+            n[i] += partialN;
+            sum[i] += partialSum;
+            min[i] = Math.min(min[i], partialMin);
+            max[i] = Math.max(max[i], partialMax);
+            fractional[i] |= partialFractional;
+        }
+
+        Map<String, Object> toMap(Aggregation spec, Sample sample) {
+            Approximation approximation = spec.approximation;
+            // 抽样提前结束时 count/sum 按总体外推，没有总体大小时无法估计
+            boolean estimated = approximation != null && !sample.exact;
+            double scale = !estimated ? 1 : approximation.population == null
+                    ? Double.NaN
+                    : (double) approximation.population / Math.max(1, sample.examined);
+
+            Map<String, Object> out = new LinkedHashMap<>();
+            if (spec.counting) {
+                if (!estimated) {
+                    out.put("count", count);
+                } else {
+                    double estimate = count * scale;
+                    out.put("count", Double.isNaN(estimate) ? null : Math.round(estimate));
+                    putInterval(out, "count", estimate, approximation.totalHalfWidth(sample.examined, count, count));
+                }
+            }
+            for (int m = 0; m < spec.metricKinds.size(); m++) {
+                String field = spec.metricFields.get(m);
+                Kind kind = spec.metricKinds.get(m);
+                String name = kind.name().toLowerCase() + "_" + field;
+                if (kind == Kind.DISTINCT) {
+                    long estimate = distinct[spec.distinctFields.indexOf(field)].estimate();
+                    out.put(name, estimate);
+                    if (approximation != null) {
+                        double z = approximation.z;
+                        putInterval(out, name, estimate, z * HyperLogLog.STANDARD_ERROR * estimate);
+                    }
+                    continue;
+                }
+                int i = spec.fields.indexOf(field);
+                if (n[i] == 0) {
+                    out.put(name, null);
+                    continue;
+                }
+                switch (kind) {
+                    case SUM -> {
+                        if (!estimated) {
+                            out.put(name, number(sum[i], fractional[i]));
+                        } else {
+                            double estimate = sum[i] * scale;
+                            out.put(name, Double.isNaN(estimate) ? null : estimate);
+                            putInterval(out, name, estimate, approximation.totalHalfWidth(sample.examined, sum[i], sumSq[i]));
+                        }
+                    }
+                    case AVG -> {
+                        double mean = sum[i] / n[i];
+                        out.put(name, mean);
+                        if (estimated) {
+                            putInterval(out, name, mean, approximation.meanHalfWidth(n[i], sum[i], sumSq[i]));
+                        }
+                    }
+                    case MIN -> out.put(name, number(min[i], fractional[i]));
+                    case MAX -> out.put(name, number(max[i], fractional[i]));
+                    default -> { }
+                }
+            }
+            return out;
+        }
+
+        private static void putInterval(Map<String, Object> out, String name, double estimate, double halfWidth) {
+            if (Double.isNaN(estimate) || Double.isInfinite(halfWidth)) {
+                return;
+            }
+            out.put(name + "_ci", List.of(estimate - halfWidth, estimate + halfWidth));
+        }
+
+        private static Object number(double value, boolean fractional) {
+            return fractional ? value : (Object) (long) value;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package org.example.service.redis;
+
+import org.example.service.ScriptEngineService.RedisOperations;
+
+import java.util.Collection;
+
+/**
+ * Entry point bound into scripts as {@code agg}
+ * 例：agg.over('user:*').groupBy('city').avg('age').count()
+ */
+public class Aggregations {
+
+    private final RedisOperations redis;
+    private final LuaScanAggregator luaAggregator;
+    private final ScriptBudget budget;
+    private final boolean pushdownByDefault;
+
+    public Aggregations(RedisOperations redis) {
+        this(redis, null, null, false);
+    }
+
+    public Aggregations(RedisOperations redis, LuaScanAggregator luaAggregator, ScriptBudget budget,
+                        boolean pushdownByDefault) {
+        this.redis = redis;
+        this.luaAggregator = luaAggregator;
+        this.budget = budget;
+        this.pushdownByDefault = pushdownByDefault;
+    }
+
+    /**
+     * Aggregate over keys matching a pattern, keys are streamed via SCAN in batches
+     */
+    public Aggregation over(String pattern) {
+        return new Aggregation(redis, luaAggregator, budget, pattern, null).pushdown(pushdownByDefault && luaAggregator != null);
+    }
+
+    /**
+     * Aggregate over an explicit key collection (e.g. the result of redis.scan / redis.keys)
+     */
+    public Aggregation over(Collection<String> keys) {
+        return new Aggregation(redis, luaAggregator, budget, null, keys);
+    }
+}
@@ -0,0 +1,102 @@
+package org.example.service.redis;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Options of the approximate aggregation mode: agg.over(...).approximate(error: 0.02, timeMs: 200)
+ * 按 SCAN 顺序抽样，直到所有估计量的相对置信区间半宽不超过 error，或用完时间预算 / 样本上限
+ *
+ * count 与 sum 需要总体大小才能外推（over(keys) 时为键数量，over(pattern) 时可通过 population 传入），
+ * 否则抽样提前结束时这两个结果为 null
+ */
+final class Approximation {
+
+    private static final Set<String> OPTIONS = Set.of("error", "confidence", "timeMs", "maxSample", "population");
+
+    private static final Map<Double, Double> Z_SCORES = Map.of(
+            0.80, 1.2816,
+            0.90, 1.6449,
+            0.95, 1.9600,
+            0.98, 2.3263,
+            0.99, 2.5758,
+            0.999, 3.2905
+    );
+
+    /**
+     * Rows to look at before trusting variance estimates
+     */
+    static final long MIN_SAMPLE = 30;
+
+    final double error;
+    final double confidence;
+    final double z;
+    final long timeMs;
+    final long maxSample;
+    final Long population;
+
+    private Approximation(double error, double confidence, long timeMs, long maxSample, Long population) {
+        this.error = error;
+        this.confidence = confidence;
+        this.z = Z_SCORES.get(confidence);
+        this.timeMs = timeMs;
+        this.maxSample = maxSample;
+        this.population = population;
+    }
+
+    static Approximation of(Map<String, ?> options, Long knownPopulation) {
+        for (String option : options.keySet()) {
+            if (!OPTIONS.contains(option)) {
+                throw new IllegalArgumentException("Unknown approximate option: " + option + ", expected one of " + OPTIONS);
+            }
+        }
+        double error = number(options, "error", 0.05);
+        double confidence = number(options, "confidence", 0.95);
+        if (error <= 0 || error >= 1) {
+            throw new IllegalArgumentException("error must be between 0 and 1");
+        }
+        if (!Z_SCORES.containsKey(confidence)) {
+            throw new IllegalArgumentException("confidence must be one of " + Z_SCORES.keySet());
+        }
+        Long population = options.containsKey("population")
+                ? Long.valueOf((long) number(options, "population", 0))
+                : knownPopulation;
+        return new Approximation(error, confidence, (long) number(options, "timeMs", 0),
+                (long) number(options, "maxSample", 0), population);
+    }
+
+    /**
+     * Half width of the confidence interval of a mean from n values with the given sum and sum of squares
+     */
+    double meanHalfWidth(long n, double sum, double sumSq) {
+        if (n < 2) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double variance = Math.max(0, (sumSq - sum * sum / n) / (n - 1));
+        return z * Math.sqrt(variance / n);
+    }
+
+    /**
+     * Half width for a population total (Horvitz-Thompson) estimated from {@code examined} sampled rows,
+     * where rows that did not match contribute zero
+     */
+    double totalHalfWidth(long examined, double sum, double sumSq) {
+        if (population == null || examined < 2) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double mean = sum / examined;
+        double variance = Math.max(0, (sumSq / examined - mean * mean) * examined / (examined - 1));
+        return population * z * Math.sqrt(variance / examined);
+    }
+
+    private static double number(Map<String, ?> options, String name, double defaultValue) {
+        Object value = options.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        if (value instanceof Number number) {
+            return number.doubleValue();
+        }
+        throw new IllegalArgumentException("approximate option " + name + " must be a number");
+    }
+}
@@ -0,0 +1,84 @@
+package org.example.service.redis;
+
+import java.util.*;
+
+/**
+ * Read-only hash row backed by a shared {@link RowSchema} and a flat value array
+ * 对 Groovy 表现为普通 Map（userData.city 可直接访问），但不支持修改
+ */
+public final class CompactRow extends AbstractMap<String, Object> {
+
+    private final RowSchema schema;
+    private final Object[] values;
+    private final int size;
+
+    CompactRow(RowSchema schema, Object[] values) {
+        this.schema = schema;
+        this.values = values;
+        int present = 0;
+        for (Object value : values) {
+            if (value != null) {
+                present++;
+            }
+        }
+        this.size = present;
+    }
+
+    @Override
+    public Object get(Object key) {
+        if (!(key instanceof CharSequence)) {
+            return null;
+        }
+        int i = schema.indexOf(key.toString());
+        return i < 0 ? null : values[i];
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new Iterator<>() {
+                    private int next = advance(0);
+
+                    private int advance(int from) {
+                        while (from < values.length && values[from] == null) {
+                            from++;
+                        }
+                        return from;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < values.length;
+                    }
+
+                    @Override
+                    public Entry<String, Object> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        Entry<String, Object> entry = new SimpleImmutableEntry<>(schema.fieldAt(next), values[next]);
+                        next = advance(next + 1);
+                        return entry;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+}
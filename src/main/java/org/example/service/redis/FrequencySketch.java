@@ -0,0 +1,160 @@
+package org.example.service.redis;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Count-min sketch with a small top-K table and periodic halving (exponential decay)
+ * 计数器是固定大小的 AtomicLongArray，记录路径无锁；已在 top-K 中的键只在并发 Map 上更新计数，也不加锁。
+ * 只有未跟踪的键估计值超过当前 top-K 门槛时才进入同步块，淘汰最冷的键用最小堆而不是每次全表扫描：
+ * 已跟踪键的计数在锁外增长后堆里的记录会偏小，出堆时发现过期就按当前值重新入堆
+ */
+public class FrequencySketch {
+
+    private static final int DEPTH = 4;
+
+    private final int width;
+    private final int mask;
+    private final AtomicLongArray counters;
+    private final int topK;
+    private final long decayIntervalNanos;
+    private final AtomicLong lastDecay = new AtomicLong(System.nanoTime());
+
+    private final Map<String, Long> top = new ConcurrentHashMap<>();
+    private final PriorityQueue<Entry> coldest = new PriorityQueue<>(Comparator.comparingLong(Entry::count));
+    private volatile long threshold;
+    private volatile boolean full;
+
+    /**
+     * @param width   counters per row, rounded up to a power of two
+     * @param topK    number of heavy hitters kept
+     * @param decayMs counts are halved every decayMs milliseconds, 0 disables decay
+     */
+    public FrequencySketch(int width, int topK, long decayMs) {
+        this.width = Integer.highestOneBit(Math.max(16, width - 1) << 1);
+        this.mask = this.width - 1;
+        this.counters = new AtomicLongArray(DEPTH * this.width);
+        this.topK = Math.max(1, topK);
+        this.decayIntervalNanos = decayMs * 1_000_000;
+    }
+
+    public void record(String item) {
+        if (item == null) {
+            return;
+        }
+        maybeDecay();
+
+        long hash = HyperLogLog.hash64(item);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            int index = row * width + ((h1 + row * h2) & mask);
+            estimate = Math.min(estimate, counters.incrementAndGet(index));
+        }
+
+        long tracked = estimate;
+        if (top.computeIfPresent(item, (key, count) -> Math.max(count, tracked)) != null
+                || (full && estimate <= threshold)) {
+            return;
+        }
+        synchronized (coldest) {
+            if (top.putIfAbsent(item, estimate) != null) {
+                top.computeIfPresent(item, (key, count) -> Math.max(count, tracked));
+                return;
+            }
+            coldest.add(new Entry(item, estimate));
+            while (top.size() > topK) {
+                evictColdest();
+            }
+            updateThreshold();
+        }
+    }
+
+    /**
+     * Remove the tracked key with the lowest count; heap entries left behind by lock-free increments are refreshed first
+     */
+    private void evictColdest() {
+        while (!coldest.isEmpty()) {
+            Entry entry = coldest.poll();
+            Long current = top.get(entry.item());
+            if (current == null) {
+                continue;
+            }
+            if (current == entry.count() && top.remove(entry.item(), current)) {
+                return;
+            }
+            coldest.add(new Entry(entry.item(), top.getOrDefault(entry.item(), current)));
+        }
+    }
+
+    private void updateThreshold() {
+        Entry min;
+        while ((min = coldest.peek()) != null) {
+            Long current = top.get(min.item());
+            if (current != null && current == min.count()) {
+                break;
+            }
+            coldest.poll();
+            if (current != null) {
+                coldest.add(new Entry(min.item(), current));
+            }
+        }
+        full = top.size() >= topK;
+        threshold = full && min != null ? min.count() : 0;
+    }
+
+    public long estimate(String item) {
+        long hash = HyperLogLog.hash64(item);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, counters.get(row * width + ((h1 + row * h2) & mask)));
+        }
+        return estimate;
+    }
+
+    /**
+     * Current heavy hitters, hottest first
+     */
+    public List<Map<String, Object>> top() {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(top.size());
+        top.forEach((item, count) -> entries.add(Map.entry(item, count)));
+        entries.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+        List<Map<String, Object>> result = new ArrayList<>(entries.size());
+        for (Map.Entry<String, Long> entry : entries) {
+            result.add(Map.of("key", entry.getKey(), "count", entry.getValue()));
+        }
+        return result;
+    }
+
+    /**
+     * Halve every counter once per decay interval so old traffic fades out; only one caller wins the CAS
+     */
+    private void maybeDecay() {
+        if (decayIntervalNanos <= 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        long last = lastDecay.get();
+        if (now - last < decayIntervalNanos || !lastDecay.compareAndSet(last, now)) {
+            return;
+        }
+        for (int i = 0; i < counters.length(); i++) {
+            counters.getAndUpdate(i, count -> count >>> 1);
+        }
+        synchronized (coldest) {
+            top.replaceAll((item, count) -> count >>> 1);
+            top.values().removeIf(count -> count == 0);
+            coldest.clear();
+            top.forEach((item, count) -> coldest.add(new Entry(item, count)));
+            updateThreshold();
+        }
+    }
+
+    private record Entry(String item, long count) {
+    }
+}
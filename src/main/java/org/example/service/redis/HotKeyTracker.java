@@ -0,0 +1,61 @@
+package org.example.service.redis;
+
+import org.example.config.ScriptConfig;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Hot key and hot key prefix detection for keys accessed by scripts
+ * 所有脚本共享一份；RedisOperations 每访问一个键就记录一次，结果通过 actuator 端点 /actuator/hotkeys 查看，
+ * 用于决定近端缓存和二级索引
+ */
+@Component
+public class HotKeyTracker {
+
+    private final boolean enabled;
+    private final long decayMs;
+    private final FrequencySketch keys;
+    private final FrequencySketch prefixes;
+
+    public HotKeyTracker(ScriptConfig scriptConfig) {
+        this.enabled = scriptConfig.isHotKeysEnabled();
+        this.decayMs = scriptConfig.getHotKeysDecaySeconds() * 1000;
+        this.keys = new FrequencySketch(scriptConfig.getHotKeysSketchWidth(), scriptConfig.getHotKeysTopK(), decayMs);
+        this.prefixes = new FrequencySketch(1024, scriptConfig.getHotKeysTopK(), decayMs);
+    }
+
+    public void record(String key) {
+        if (!enabled || key == null) {
+            return;
+        }
+        keys.record(key);
+        String prefix = RowSchemaRegistry.prefixOf(key);
+        if (!prefix.isEmpty()) {
+            prefixes.record(prefix);
+        }
+    }
+
+    public void recordAll(Iterable<String> keys) {
+        if (!enabled || keys == null) {
+            return;
+        }
+        for (String key : keys) {
+            record(key);
+        }
+    }
+
+    public long estimate(String key) {
+        return keys.estimate(key);
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("enabled", enabled);
+        snapshot.put("decaySeconds", decayMs / 1000);
+        snapshot.put("keys", keys.top());
+        snapshot.put("prefixes", prefixes.top());
+        return snapshot;
+    }
+}
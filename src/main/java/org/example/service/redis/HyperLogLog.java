@@ -0,0 +1,66 @@
+package org.example.service.redis;
+
+/**
+ * In-process HyperLogLog distinct counter (2^14 registers, 16KB, standard error about 0.81%)
+ * 在脚本进程内计算去重计数，内存固定，不需要向 Redis 写入临时 PFADD 键
+ */
+public final class HyperLogLog {
+
+    private static final int PRECISION = 14;
+    private static final int REGISTERS = 1 << PRECISION;
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+
+    /**
+     * Relative standard error of the estimate, 1.04 / sqrt(m)
+     */
+    public static final double STANDARD_ERROR = 1.04 / Math.sqrt(REGISTERS);
+
+    private final byte[] registers = new byte[REGISTERS];
+
+    public void add(Object value) {
+        if (value == null) {
+            return;
+        }
+        long hash = hash64(value.toString());
+        int index = (int) (hash >>> (64 - PRECISION));
+        long rest = (hash << PRECISION) | (1L << (PRECISION - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+        }
+    }
+
+    public long estimate() {
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+        // 小基数时使用线性计数修正
+        if (estimate <= 2.5 * REGISTERS && zeros > 0) {
+            estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * FNV-1a over the UTF-16 chars followed by the murmur3 fmix64 finalizer
+     */
+    static long hash64(String text) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < text.length(); i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,233 @@
+package org.example.service.redis;
+
+import groovy.lang.Closure;
+import org.example.service.ScriptEngineService.RedisOperations;
+
+import java.util.*;
+
+/**
+ * Batched foreign-key join, e.g. {@code redis.join('order:*', 'userId', 'user:').join('productId', 'product:')}
+ * 按 SCAN 批次读取左表，对批次内的外键去重后只 pipeline 读取尚未缓存的右表 Hash；
+ * 右表行在整个遍历过程中缓存（有上限），100 万订单关联 100 个用户只需 100 次读取
+ *
+ * 结果行是左表行的副本，关联到的右表行放在别名下（默认为右表前缀去掉冒号，如 row.user.name），未找到时为 null；
+ * 别名与左表字段同名时直接报错而不是覆盖该字段，需要用 join(fkField, rightPrefix, alias) 换一个别名
+ */
+public class Join implements LazyResult {
+
+    /**
+     * Upper bound of right-hand rows kept across batches; least recently used rows are dropped beyond it
+     */
+    static final int MAX_CACHED_ROWS = 100_000;
+
+    private static final class Relation {
+        final String fkField;
+        final String rightPrefix;
+        final String alias;
+        List<String> fields = List.of();
+        final Map<String, Map<String, Object>> cache = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Map<String, Object>> eldest) {
+                return size() > MAX_CACHED_ROWS;
+            }
+        };
+
+        Relation(String fkField, String rightPrefix, String alias) {
+            this.fkField = fkField;
+            this.rightPrefix = rightPrefix;
+            this.alias = alias;
+        }
+    }
+
+    private final RedisOperations redis;
+    private final String leftPattern;
+    private final List<Relation> relations = new ArrayList<>();
+    private List<String> leftFields = List.of();
+    private int limit = -1;
+
+    public Join(RedisOperations redis, String leftPattern) {
+        this.redis = redis;
+        this.leftPattern = leftPattern;
+    }
+
+    /**
+     * Add a relation; the right row lands under the prefix without its trailing ':' ('user:' → row.user)
+     */
+    public Join join(String fkField, String rightPrefix) {
+        return join(fkField, rightPrefix, defaultAlias(rightPrefix));
+    }
+
+    public Join join(String fkField, String rightPrefix, String alias) {
+        if (alias == null || alias.isEmpty()) {
+            throw new IllegalArgumentException("join alias must not be empty");
+        }
+        for (Relation relation : relations) {
+            if (relation.alias.equals(alias) || relation.fkField.equals(alias)) {
+                throw aliasCollision(alias, "another join");
+            }
+        }
+        if (alias.equals(fkField) || leftFields.contains(alias)) {
+            throw aliasCollision(alias, "the left rows");
+        }
+        relations.add(new Relation(fkField, rightPrefix, alias));
+        return this;
+    }
+
+    /**
+     * Fields to read from the left rows (foreign key fields are always read)
+     */
+    public Join select(String... fields) {
+        for (Relation relation : relations) {
+            if (Arrays.asList(fields).contains(relation.alias)) {
+                throw aliasCollision(relation.alias, "the left rows");
+            }
+        }
+        this.leftFields = List.of(fields);
+        return this;
+    }
+
+    /**
+     * Fields to read from the right rows of the most recently added relation
+     */
+    public Join selectRight(String... fields) {
+        if (relations.isEmpty()) {
+            throw new IllegalStateException("selectRight() needs a join(fkField, rightPrefix) first");
+        }
+        relations.get(relations.size() - 1).fields = List.of(fields);
+        return this;
+    }
+
+    public Join limit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit must be >= 0");
+        }
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * Run the join, keyed by left key. Scripts may also just return the builder
+     */
+    @Override
+    public Map<String, Map<String, Object>> result() {
+        Map<String, Map<String, Object>> rows = new LinkedHashMap<>();
+        each((key, row) -> rows.put(key, row));
+        return rows;
+    }
+
+    public List<Map<String, Object>> toList() {
+        return new ArrayList<>(result().values());
+    }
+
+    /**
+     * Stream joined rows to the closure as (row) or (key, row) without materializing the whole result
+     */
+    public void each(Closure<?> body) {
+        each((key, row) -> {
+            if (body.getMaximumNumberOfParameters() > 1) {
+                body.call(key, row);
+            } else {
+                body.call(row);
+            }
+        });
+    }
+
+    private interface RowSink {
+        void accept(String key, Map<String, Object> row);
+    }
+
+    private void each(RowSink sink) {
+        if (limit == 0) {
+            return;
+        }
+        List<String> projection = leftProjection();
+        Set<String> seen = new HashSet<>();
+        int[] emitted = {0};
+
+        redis.scanBatchesWhile(leftPattern, redis.getPipelineBatchSize(), batch -> {
+            List<String> fresh = new ArrayList<>(batch.size());
+            for (String key : batch) {
+                if (seen.add(key)) {
+                    fresh.add(key);
+                }
+            }
+            Map<String, Map<String, Object>> leftRows = redis.hgetAllMany(fresh, projection);
+            for (Relation relation : relations) {
+                fetchMissing(relation, leftRows.values());
+            }
+
+            for (Map.Entry<String, Map<String, Object>> entry : leftRows.entrySet()) {
+                if (entry.getValue() == null || entry.getValue().isEmpty()) {
+                    continue;
+                }
+                Map<String, Object> row = new LinkedHashMap<>(entry.getValue());
+                for (Relation relation : relations) {
+                    if (entry.getValue().containsKey(relation.alias)) {
+                        throw aliasCollision(relation.alias, entry.getKey());
+                    }
+                    Object fk = entry.getValue().get(relation.fkField);
+                    Map<String, Object> right = fk == null ? null : relation.cache.get(fk.toString());
+                    row.put(relation.alias, right == null || right.isEmpty() ? null : right);
+                }
+                sink.accept(entry.getKey(), row);
+                if (limit > 0 && ++emitted[0] >= limit) {
+                    return false;
+                }
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Pipeline-read the distinct foreign keys of this batch that are not cached yet
+     */
+    private void fetchMissing(Relation relation, Collection<Map<String, Object>> leftRows) {
+        Set<String> missing = new LinkedHashSet<>();
+        for (Map<String, Object> row : leftRows) {
+            Object fk = row == null ? null : row.get(relation.fkField);
+            if (fk != null && !relation.cache.containsKey(fk.toString())) {
+                missing.add(fk.toString());
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        List<String> rightKeys = new ArrayList<>(missing.size());
+        for (String fk : missing) {
+            rightKeys.add(relation.rightPrefix + fk);
+        }
+        Map<String, Map<String, Object>> rightRows = redis.hgetAllMany(rightKeys, relation.fields);
+        for (String fk : missing) {
+            Map<String, Object> right = rightRows.get(relation.rightPrefix + fk);
+            relation.cache.put(fk, right == null ? Map.of() : right);
+        }
+    }
+
+    /**
+     * Left fields to fetch, empty means the whole hash
+     */
+    private List<String> leftProjection() {
+        if (leftFields.isEmpty()) {
+            return List.of();
+        }
+        List<String> projection = new ArrayList<>(leftFields);
+        for (Relation relation : relations) {
+            if (!projection.contains(relation.fkField)) {
+                projection.add(relation.fkField);
+            }
+        }
+        return projection;
+    }
+
+    private static IllegalArgumentException aliasCollision(String alias, String owner) {
+        return new IllegalArgumentException("join alias '" + alias + "' collides with a field of " + owner
+                + "; pass another alias with join(fkField, rightPrefix, alias)");
+    }
+
+    private static String defaultAlias(String rightPrefix) {
+        String alias = rightPrefix.endsWith(":") ? rightPrefix.substring(0, rightPrefix.length() - 1) : rightPrefix;
+        int separator = alias.lastIndexOf(':');
+        return separator >= 0 ? alias.substring(separator + 1) : alias;
+    }
+}
@@ -0,0 +1,36 @@
+package org.example.service.redis;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Source of key batches, either a SCAN cursor or an in-memory collection
+ * 回调返回 false 时停止（近似模式达到精度或时间预算）
+ */
+@FunctionalInterface
+public interface KeyBatches {
+
+    void forEachBatchWhile(Predicate<List<String>> consumer);
+
+    static void split(Collection<String> keys, int batchSize, Consumer<List<String>> consumer) {
+        splitWhile(keys, batchSize, batch -> {
+            consumer.accept(batch);
+            return true;
+        });
+    }
+
+    static void splitWhile(Collection<String> keys, int batchSize, Predicate<List<String>> consumer) {
+        if (keys == null || keys.isEmpty()) {
+            return;
+        }
+        List<String> all = new ArrayList<>(keys);
+        for (int from = 0; from < all.size(); from += batchSize) {
+            if (!consumer.test(all.subList(from, Math.min(from + batchSize, all.size())))) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package org.example.service.redis;
+
+/**
+ * Builder that only touches Redis when evaluated (agg.over(...), redis.from(...), redis.join(...))
+ * 脚本直接返回这类构建器时，引擎在脚本超时范围内调用 result() 取得结果
+ */
+public interface LazyResult {
+
+    Object result();
+}
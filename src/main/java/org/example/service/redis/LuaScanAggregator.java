@@ -0,0 +1,63 @@
+package org.example.service.redis;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Runs scan-filter-aggregate steps inside Redis (lua/scan-aggregate.lua)
+ * 脚本只加载一次，之后通过 EVALSHA 调用（NOSCRIPT 时由 Spring 自动回退为 EVAL）；
+ * 每步只处理一次 SCAN 或一批键，只把部分聚合结果传回。
+ * 集群模式下不可用：无 KEYS 的 SCAN 步骤只会落在一个节点上，显式键又会跨 slot（CROSSSLOT），
+ * 此时 Aggregation 改走客户端路径（按主节点并行 SCAN + 按节点 pipeline）
+ */
+public class LuaScanAggregator {
+
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> SCRIPT =
+            RedisScript.of(new ClassPathResource("lua/scan-aggregate.lua"), List.class);
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final RedisClusterRouter cluster;
+
+    public LuaScanAggregator(RedisTemplate<String, Object> redisTemplate, RedisClusterRouter cluster) {
+        this.redisTemplate = redisTemplate;
+        this.cluster = cluster;
+    }
+
+    /**
+     * Whether Redis is a cluster, where a single EVALSHA can neither scan every node nor touch keys of several slots
+     */
+    public boolean isCluster() {
+        return cluster != null && cluster.isCluster();
+    }
+
+    /**
+     * Execute one step, either over explicit keys or one SCAN cursor step when keys is empty
+     *
+     * @param predicates triples of field, operator, value
+     * @return flat partial result, see the script header for the layout
+     */
+    @SuppressWarnings("unchecked")
+    public List<Object> step(List<String> keys, String cursor, String pattern, int count,
+                             String groupField, List<String> fields, List<String[]> predicates) {
+        List<Object> args = new ArrayList<>();
+        args.add(cursor);
+        args.add(pattern == null ? "*" : pattern);
+        args.add(String.valueOf(count));
+        args.add(groupField == null ? "" : groupField);
+        args.add(String.valueOf(fields.size()));
+        args.addAll(fields);
+        args.add(String.valueOf(predicates.size()));
+        for (String[] predicate : predicates) {
+            Collections.addAll(args, (Object[]) predicate);
+        }
+
+        List<Object> result = redisTemplate.execute(SCRIPT, keys, args.toArray());
+        return result == null ? Collections.emptyList() : result;
+    }
+}
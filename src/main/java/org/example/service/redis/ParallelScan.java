@@ -0,0 +1,192 @@
+package org.example.service.redis;
+
+import groovy.lang.Closure;
+import org.example.service.ScriptEngineService.RedisOperations;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Partitioned parallel processing of a SCAN keyspace, bound as parallelEach / parallelCollect
+ * <pre>
+ *   parallelEach('user:*') { key, row -> ... }
+ *   def adults = parallelCollect('user:*', ['name', 'age']) { row -> (row.age as int) >= 18 ? row.name : null }
+ * </pre>
+ * 脚本线程负责 SCAN，每批键作为一个分区提交到共享的有界线程池，分区内 pipeline 读取后逐行调用闭包；
+ * 同时在途的分区数受限（背压），截止时间与预算对所有分区生效，任一分区失败则取消其余分区。
+ * parallelCollect 按分区提交顺序合并闭包的非 null 返回值。闭包会被并发调用，不要在其中修改共享的非线程安全对象。
+ * 分区内每行都检查截止时间；在分区闭包里再次调用 parallelEach / parallelCollect 时在当前线程上顺序执行，
+ * 不再向共享线程池提交分区，避免嵌套调用占满所有工作线程后互相等待
+ */
+public class ParallelScan {
+
+    /**
+     * Set while a pool thread runs a partition, so nested scans run inline instead of waiting on the pool
+     */
+    private static final ThreadLocal<Boolean> IN_PARTITION = ThreadLocal.withInitial(() -> false);
+
+    private final RedisOperations redis;
+    private final ExecutorService executor;
+    private final ScriptBudget budget;
+    private final int parallelism;
+
+    public ParallelScan(RedisOperations redis, ExecutorService executor, ScriptBudget budget, int parallelism) {
+        this.redis = redis;
+        this.executor = executor;
+        this.budget = budget;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public void parallelEach(String pattern, Closure<?> body) {
+        run(pattern, List.of(), body, false);
+    }
+
+    public void parallelEach(String pattern, List<String> fields, Closure<?> body) {
+        run(pattern, fields, body, false);
+    }
+
+    public List<Object> parallelCollect(String pattern, Closure<?> body) {
+        return run(pattern, List.of(), body, true);
+    }
+
+    public List<Object> parallelCollect(String pattern, List<String> fields, Closure<?> body) {
+        return run(pattern, fields, body, true);
+    }
+
+    private List<Object> run(String pattern, List<String> fields, Closure<?> body, boolean collect) {
+        if (IN_PARTITION.get()) {
+            return runInline(pattern, fields, body, collect);
+        }
+        Semaphore inFlight = new Semaphore(parallelism * 2);
+        List<Future<List<Object>>> partitions = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+        try {
+            redis.scanBatchesWhile(pattern, redis.getPipelineBatchSize(), batch -> {
+                budget.checkDeadline();
+                List<String> partition = new ArrayList<>(batch.size());
+                for (String key : batch) {
+                    if (seen.add(key)) {
+                        partition.add(key);
+                    }
+                }
+                if (partition.isEmpty()) {
+                    return true;
+                }
+                acquire(inFlight);
+                // 已有分区失败时不再继续扫描
+                if (failure.get() != null) {
+                    inFlight.release();
+                    throw failure.get();
+                }
+                try {
+                    partitions.add(executor.submit(() -> {
+                        IN_PARTITION.set(true);
+                        try {
+                            return process(partition, fields, body, collect);
+                        } catch (RuntimeException e) {
+                            failure.compareAndSet(null, e);
+                            throw e;
+                        } finally {
+                            IN_PARTITION.remove();
+                            inFlight.release();
+                        }
+                    }));
+                } catch (RejectedExecutionException e) {
+                    inFlight.release();
+                    throw e;
+                }
+                return true;
+            });
+
+            List<Object> results = new ArrayList<>();
+            for (Future<List<Object>> partition : partitions) {
+                results.addAll(await(partition));
+            }
+            return results;
+        } catch (RuntimeException e) {
+            partitions.forEach(partition -> partition.cancel(true));
+            throw e;
+        }
+    }
+
+    /**
+     * Nested scan from inside a partition: every batch processed on the calling pool thread
+     */
+    private List<Object> runInline(String pattern, List<String> fields, Closure<?> body, boolean collect) {
+        Set<String> seen = new HashSet<>();
+        List<Object> results = new ArrayList<>();
+        redis.scanBatchesWhile(pattern, redis.getPipelineBatchSize(), batch -> {
+            List<String> partition = new ArrayList<>(batch.size());
+            for (String key : batch) {
+                if (seen.add(key)) {
+                    partition.add(key);
+                }
+            }
+            if (!partition.isEmpty()) {
+                results.addAll(process(partition, fields, body, collect));
+            }
+            return true;
+        });
+        return results;
+    }
+
+    private List<Object> process(List<String> keys, List<String> fields, Closure<?> body, boolean collect) {
+        budget.checkDeadline();
+        // 每个分区使用闭包的副本，避免并发修改 delegate 等状态
+        Closure<?> closure = (Closure<?>) body.clone();
+        boolean withKey = closure.getMaximumNumberOfParameters() > 1;
+        List<Object> results = collect ? new ArrayList<>() : List.of();
+
+        for (Map.Entry<String, Map<String, Object>> entry : redis.hgetAllMany(keys, fields).entrySet()) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new CancellationException("Partition cancelled");
+            }
+            budget.checkDeadline();
+            Object value = withKey ? closure.call(entry.getKey(), entry.getValue()) : closure.call(entry.getValue());
+            if (collect && value != null) {
+                results.add(value);
+            }
+        }
+        return results;
+    }
+
+    private List<Object> await(Future<List<Object>> partition) {
+        try {
+            return partition.get(Math.max(0, budget.remainingNanos()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            budget.checkDeadline();
+            throw new IllegalStateException("Partition did not finish before the deadline", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Script interrupted");
+        }
+    }
+
+    private void acquire(Semaphore inFlight) {
+        try {
+            if (!inFlight.tryAcquire(Math.max(0, budget.remainingNanos()), TimeUnit.NANOSECONDS)) {
+                budget.checkDeadline();
+                throw new IllegalStateException("No free partition slot before the deadline");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Script interrupted");
+        }
+    }
+
+    private static RuntimeException unwrap(ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException runtime) {
+            return runtime;
+        }
+        if (cause instanceof Error error) {
+            throw error;
+        }
+        return new IllegalStateException(cause);
+    }
+}
@@ -0,0 +1,247 @@
+package org.example.service.redis;
+
+import groovy.lang.Closure;
+import org.codehaus.groovy.runtime.typehandling.DefaultTypeTransformation;
+import org.example.service.ScriptEngineService.RedisOperations;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Lazily evaluated hash query, e.g. {@code redis.from('user:*').where { it.age > 30 }.select('name', 'city').limit(100)}
+ * 构建阶段不访问 Redis；执行时 SCAN 取键，按批 pipeline 只读取需要的字段，满足 limit 后立即停止扫描
+ *
+ * 闭包条件用到的字段无法在编译前得知：第一次访问未读取的字段时记录下来，扩大投影后重读当前批次，
+ * 之后的批次直接带上这些字段；结果行只保留 select 的字段
+ */
+public class Query implements LazyResult {
+
+    private static final Set<String> OPERATORS = Set.of("==", "!=", ">", ">=", "<", "<=");
+
+    private final RedisOperations redis;
+    private final String pattern;
+    private final List<Predicate<Map<String, Object>>> filters = new ArrayList<>();
+    private final Set<String> filterFields = new LinkedHashSet<>();
+    private List<String> selected;
+    private int limit = -1;
+
+    public Query(RedisOperations redis, String pattern) {
+        this.redis = redis;
+        this.pattern = pattern;
+    }
+
+    /**
+     * Keep rows for which the closure, called with the row, is Groovy-true
+     */
+    public Query where(Closure<?> condition) {
+        filters.add(row -> DefaultTypeTransformation.castToBoolean(condition.call(row)));
+        return this;
+    }
+
+    /**
+     * Keep rows where {@code field op value}, same semantics as agg where()
+     */
+    public Query where(String field, String op, Object value) {
+        if (!OPERATORS.contains(op)) {
+            throw new IllegalArgumentException("Unsupported operator: " + op + ", expected one of " + OPERATORS);
+        }
+        String expected = String.valueOf(value);
+        filterFields.add(field);
+        filters.add(row -> {
+            Object actual = row.get(field);
+            return actual != null && Aggregation.compare(actual, op, expected);
+        });
+        return this;
+    }
+
+    public Query select(String... fields) {
+        this.selected = List.of(fields);
+        return this;
+    }
+
+    public Query select(List<String> fields) {
+        this.selected = List.copyOf(fields);
+        return this;
+    }
+
+    public Query limit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit must be >= 0");
+        }
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * Run the query, keyed by Redis key. Scripts may also just return the builder
+     */
+    @Override
+    public Map<String, Map<String, Object>> result() {
+        Map<String, Map<String, Object>> rows = new LinkedHashMap<>();
+        each((key, row) -> rows.put(key, row));
+        return rows;
+    }
+
+    public List<Map<String, Object>> toList() {
+        return new ArrayList<>(result().values());
+    }
+
+    public int count() {
+        int[] count = {0};
+        each((key, row) -> count[0]++);
+        return count[0];
+    }
+
+    /**
+     * Stream matching rows to the closure as (row) or (key, row)
+     */
+    public void each(Closure<?> body) {
+        each((key, row) -> {
+            if (body.getMaximumNumberOfParameters() > 1) {
+                body.call(key, row);
+            } else {
+                body.call(row);
+            }
+        });
+    }
+
+    private interface RowSink {
+        void accept(String key, Map<String, Object> row);
+    }
+
+    private void each(RowSink sink) {
+        if (limit == 0) {
+            return;
+        }
+        Set<String> seen = new HashSet<>();
+        int[] emitted = {0};
+        // 有 limit 时缩小批次，避免为了前几行读取整批
+        int batchSize = limit > 0 ? Math.min(redis.getPipelineBatchSize(), Math.max(limit, 16)) : redis.getPipelineBatchSize();
+
+        redis.scanBatchesWhile(pattern, batchSize, batch -> {
+            List<String> fresh = new ArrayList<>(batch.size());
+            for (String key : batch) {
+                if (seen.add(key)) {
+                    fresh.add(key);
+                }
+            }
+            for (Map.Entry<String, Map<String, Object>> entry : fetchMatching(fresh).entrySet()) {
+                sink.accept(entry.getKey(), entry.getValue());
+                if (limit > 0 && ++emitted[0] >= limit) {
+                    return false;
+                }
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Fetch one batch with the current projection and filter it, widening the projection when a
+     * where closure reads a field that was not fetched
+     */
+    private Map<String, Map<String, Object>> fetchMatching(List<String> keys) {
+        Map<String, Map<String, Object>> matching = new LinkedHashMap<>();
+        if (keys.isEmpty()) {
+            return matching;
+        }
+        while (true) {
+            List<String> projection = projection();
+            Map<String, Map<String, Object>> rows = redis.hgetAllMany(keys, projection);
+            Set<String> missing = new LinkedHashSet<>();
+            matching.clear();
+
+            for (Map.Entry<String, Map<String, Object>> entry : rows.entrySet()) {
+                Map<String, Object> row = entry.getValue();
+                if (row == null || row.isEmpty()) {
+                    continue;
+                }
+                if (matches(row, projection, missing)) {
+                    matching.put(entry.getKey(), select(row));
+                }
+                if (!missing.isEmpty()) {
+                    break;
+                }
+            }
+            if (missing.isEmpty()) {
+                return matching;
+            }
+            filterFields.addAll(missing);
+        }
+    }
+
+    private boolean matches(Map<String, Object> row, List<String> projection, Set<String> missing) {
+        if (filters.isEmpty()) {
+            return true;
+        }
+        Map<String, Object> view = projection.isEmpty() ? row : new RecordingRow(row, projection, missing);
+        for (Predicate<Map<String, Object>> filter : filters) {
+            if (!filter.test(view) || !missing.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Fields to fetch: empty means the whole hash (no select())
+     */
+    private List<String> projection() {
+        if (selected == null) {
+            return List.of();
+        }
+        List<String> projection = new ArrayList<>(selected);
+        for (String field : filterFields) {
+            if (!projection.contains(field)) {
+                projection.add(field);
+            }
+        }
+        return projection;
+    }
+
+    private Map<String, Object> select(Map<String, Object> row) {
+        if (selected == null || filterFields.isEmpty() || selected.containsAll(row.keySet())) {
+            return row;
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (String field : selected) {
+            Object value = row.get(field);
+            if (value != null) {
+                result.put(field, value);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Read-only row view that records accesses to fields outside the fetched projection
+     */
+    private static final class RecordingRow extends AbstractMap<String, Object> {
+        private final Map<String, Object> row;
+        private final List<String> projection;
+        private final Set<String> missing;
+
+        RecordingRow(Map<String, Object> row, List<String> projection, Set<String> missing) {
+            this.row = row;
+            this.projection = projection;
+            this.missing = missing;
+        }
+
+        @Override
+        public Object get(Object field) {
+            if (field instanceof String name && !projection.contains(name)) {
+                missing.add(name);
+            }
+            return row.get(field);
+        }
+
+        @Override
+        public boolean containsKey(Object field) {
+            return get(field) != null;
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return row.entrySet();
+        }
+    }
+}
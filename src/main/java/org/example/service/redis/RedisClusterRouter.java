@@ -0,0 +1,355 @@
+package org.example.service.redis;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.redis.ClusterRedirectException;
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisClusterNode;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Redis Cluster support for script reads (spring.data.redis.cluster.nodes)
+ * SCAN 游标只在单个节点上有效：集群模式下对每个主节点并行 SCAN，批次汇总到脚本线程按到达顺序处理（scatter-gather）；
+ * pipeline 批量读取按 hash slot 归到所属主节点，每个节点一条 pipeline 并行执行。
+ * 主节点与 slot 分布（CLUSTER NODES）缓存 {@value #TOPOLOGY_TTL_MS} ms，遇到 MOVED 时立即刷新，不随读取的键数增长。
+ *
+ * 每个节点的耗时记录在 redis.cluster.node.latency（标签 node、operation），读取的键数记录在 redis.cluster.node.keys，
+ * 通过 /actuator/metrics 对比即可发现热点分片。单机模式下不做任何事
+ */
+@Slf4j
+@Component
+public class RedisClusterRouter {
+
+    private static final String LATENCY_METRIC = "redis.cluster.node.latency";
+    private static final String KEYS_METRIC = "redis.cluster.node.keys";
+
+    /**
+     * Batches buffered per node before a node's SCAN waits for the script thread
+     */
+    private static final int QUEUED_BATCHES_PER_NODE = 2;
+
+    /**
+     * How long a CLUSTER NODES snapshot is used before it is fetched again
+     */
+    static final long TOPOLOGY_TTL_MS = 30_000;
+
+    private final boolean cluster;
+    private final Supplier<RedisClusterConnection> connections;
+    private final MeterRegistry meterRegistry;
+    private final ExecutorService executor;
+    private final LongSupplier clock;
+    private volatile Topology topology;
+
+    @Autowired
+    public RedisClusterRouter(@Qualifier("redisTemplate") RedisTemplate<String, Object> redisTemplate, MeterRegistry meterRegistry) {
+        this(isCluster(redisTemplate.getConnectionFactory()),
+                () -> redisTemplate.getRequiredConnectionFactory().getClusterConnection(), meterRegistry);
+    }
+
+    RedisClusterRouter(boolean cluster, Supplier<RedisClusterConnection> connections, MeterRegistry meterRegistry) {
+        this(cluster, connections, meterRegistry, System::currentTimeMillis);
+    }
+
+    RedisClusterRouter(boolean cluster, Supplier<RedisClusterConnection> connections, MeterRegistry meterRegistry, LongSupplier clock) {
+        this.cluster = cluster;
+        this.connections = connections;
+        this.meterRegistry = meterRegistry;
+        this.clock = clock;
+        this.executor = cluster
+                ? Executors.newCachedThreadPool(r -> {
+                    Thread thread = new Thread(r, "redis-cluster");
+                    thread.setDaemon(true);
+                    return thread;
+                })
+                : null;
+        if (cluster) {
+            log.info("Redis Cluster detected, script scans fan out to all masters");
+        }
+    }
+
+    static boolean isCluster(RedisConnectionFactory connectionFactory) {
+        return connectionFactory instanceof LettuceConnectionFactory lettuce && lettuce.isClusterAware();
+    }
+
+    public boolean isCluster() {
+        return cluster;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Master nodes of the cluster with their slot ranges, from the cached topology snapshot
+     */
+    public List<RedisClusterNode> masters() {
+        Topology current = topology;
+        if (current == null || clock.getAsLong() - current.fetchedAt >= TOPOLOGY_TTL_MS) {
+            current = refreshTopology(current);
+        }
+        return current.masters;
+    }
+
+    /**
+     * Fetch CLUSTER NODES again unless another thread already replaced {@code stale}
+     */
+    private synchronized Topology refreshTopology(Topology stale) {
+        if (topology != stale) {
+            return topology;
+        }
+        try (RedisClusterConnection connection = connections.get()) {
+            List<RedisClusterNode> masters = new ArrayList<>();
+            for (RedisClusterNode node : connection.clusterGetNodes()) {
+                if (node.isMaster()) {
+                    masters.add(node);
+                }
+            }
+            topology = new Topology(List.copyOf(masters), clock.getAsLong());
+            return topology;
+        }
+    }
+
+    /**
+     * SCAN every master in parallel and hand batches to the consumer on the calling thread;
+     * the consumer returning false stops all node scans
+     */
+    public void scanBatchesWhile(String pattern, int batchSize, Predicate<List<String>> consumer) {
+        List<RedisClusterNode> masters = masters();
+        if (masters.isEmpty()) {
+            return;
+        }
+        BlockingQueue<NodeBatch> queue = new LinkedBlockingQueue<>(masters.size() * QUEUED_BATCHES_PER_NODE);
+        AtomicBoolean stopped = new AtomicBoolean();
+        List<Future<?>> scans = new ArrayList<>(masters.size());
+        for (RedisClusterNode node : masters) {
+            scans.add(executor.submit(() -> scanNode(node, pattern, batchSize, queue, stopped)));
+        }
+
+        try {
+            int running = masters.size();
+            while (running > 0) {
+                NodeBatch next = queue.take();
+                if (next.error != null) {
+                    throw next.error;
+                }
+                if (next.keys == null) {
+                    running--;
+                } else if (!consumer.test(next.keys)) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Cluster scan interrupted");
+        } finally {
+            stopped.set(true);
+            scans.forEach(scan -> scan.cancel(true));
+        }
+    }
+
+    private void scanNode(RedisClusterNode node, String pattern, int batchSize, BlockingQueue<NodeBatch> queue, AtomicBoolean stopped) {
+        Timer timer = timer(node, "scan");
+        try (RedisClusterConnection connection = connections.get();
+             Cursor<byte[]> cursor = connection.scan(node, ScanOptions.scanOptions().match(pattern).count(batchSize).build())) {
+            List<String> batch = new ArrayList<>(batchSize);
+            long started = System.nanoTime();
+            while (!stopped.get() && cursor.hasNext()) {
+                batch.add(new String(cursor.next(), StandardCharsets.UTF_8));
+                if (batch.size() >= batchSize) {
+                    timer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+                    offer(queue, NodeBatch.of(batch), stopped);
+                    batch = new ArrayList<>(batchSize);
+                    started = System.nanoTime();
+                }
+            }
+            if (!batch.isEmpty()) {
+                timer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+                offer(queue, NodeBatch.of(batch), stopped);
+            }
+            offer(queue, NodeBatch.DONE, stopped);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            try {
+                offer(queue, NodeBatch.failed(node, e), stopped);
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 队列满时等待脚本线程消费（背压），脚本已停止消费时直接放弃
+     */
+    private static void offer(BlockingQueue<NodeBatch> queue, NodeBatch batch, AtomicBoolean stopped) throws InterruptedException {
+        while (!stopped.get()) {
+            if (queue.offer(batch, 50, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Run {@code pipeline} once per master for the keys that master serves, in parallel,
+     * and return the results in the order of {@code keys}.
+     * A MOVED reply means the cached slot map is out of date: it is fetched again and the batch retried once
+     */
+    public List<Object> pipelineByNode(List<String> keys, Function<List<String>, List<Object>> pipeline) {
+        List<RedisClusterNode> masters = masters();
+        try {
+            return pipelineByNode(keys, masters, pipeline);
+        } catch (RuntimeException e) {
+            if (!isMoved(e)) {
+                throw e;
+            }
+            log.info("Cluster slot moved, refreshing topology: {}", e.getMessage());
+            Topology current = topology;
+            return pipelineByNode(keys, current != null && current.masters == masters
+                    ? refreshTopology(current).masters
+                    : masters(), pipeline);
+        }
+    }
+
+    /**
+     * {@link #pipelineByNode(List, Function)} against a given topology snapshot
+     */
+    List<Object> pipelineByNode(List<String> keys, List<RedisClusterNode> masters, Function<List<String>, List<Object>> pipeline) {
+        Map<RedisClusterNode, List<Integer>> groups = groupByNode(keys, masters);
+        if (groups.size() <= 1) {
+            RedisClusterNode node = groups.isEmpty() ? null : groups.keySet().iterator().next();
+            return node == null ? pipeline.apply(keys) : timedPipeline(node, keys, pipeline);
+        }
+
+        Map<RedisClusterNode, Future<List<Object>>> futures = new LinkedHashMap<>();
+        for (Map.Entry<RedisClusterNode, List<Integer>> group : groups.entrySet()) {
+            List<String> nodeKeys = new ArrayList<>(group.getValue().size());
+            group.getValue().forEach(index -> nodeKeys.add(keys.get(index)));
+            futures.put(group.getKey(), executor.submit(() -> timedPipeline(group.getKey(), nodeKeys, pipeline)));
+        }
+
+        Object[] results = new Object[keys.size()];
+        try {
+            for (Map.Entry<RedisClusterNode, List<Integer>> group : groups.entrySet()) {
+                List<Object> nodeResults = await(futures.get(group.getKey()));
+                List<Integer> indexes = group.getValue();
+                for (int i = 0; i < indexes.size() && i < nodeResults.size(); i++) {
+                    results[indexes.get(i)] = nodeResults.get(i);
+                }
+            }
+        } catch (RuntimeException e) {
+            futures.values().forEach(future -> future.cancel(true));
+            throw e;
+        }
+        return Arrays.asList(results);
+    }
+
+    private List<Object> timedPipeline(RedisClusterNode node, List<String> keys, Function<List<String>, List<Object>> pipeline) {
+        counter(node).increment(keys.size());
+        return timer(node, "pipeline").record(() -> pipeline.apply(keys));
+    }
+
+    /**
+     * Positions of the keys grouped by the master serving their hash slot, masters in first-seen order.
+     * Keys whose slot no known master serves go to the first master (Lettuce follows MOVED redirects)
+     */
+    static Map<RedisClusterNode, List<Integer>> groupByNode(List<String> keys, List<RedisClusterNode> masters) {
+        Map<RedisClusterNode, List<Integer>> groups = new LinkedHashMap<>();
+        if (masters.isEmpty()) {
+            return groups;
+        }
+        Map<Integer, RedisClusterNode> nodeBySlot = new HashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            int slot = ClusterSlotHashUtil.calculateSlot(keys.get(i));
+            RedisClusterNode node = nodeBySlot.computeIfAbsent(slot, s -> masters.stream()
+                    .filter(master -> master.servesSlot(s))
+                    .findFirst()
+                    .orElse(masters.get(0)));
+            groups.computeIfAbsent(node, n -> new ArrayList<>()).add(i);
+        }
+        return groups;
+    }
+
+    /**
+     * Whether a failure comes from a MOVED redirect (spring translation or the raw Lettuce error text)
+     */
+    static boolean isMoved(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ClusterRedirectException
+                    || (cause.getMessage() != null && cause.getMessage().startsWith("MOVED "))) {
+                return true;
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    private Timer timer(RedisClusterNode node, String operation) {
+        return Timer.builder(LATENCY_METRIC)
+                .description("Latency of script reads per cluster node")
+                .tag("node", node.asString())
+                .tag("operation", operation)
+                .register(meterRegistry);
+    }
+
+    private Counter counter(RedisClusterNode node) {
+        return Counter.builder(KEYS_METRIC)
+                .description("Keys read by script pipelines per cluster node")
+                .tag("node", node.asString())
+                .register(meterRegistry);
+    }
+
+    private static List<Object> await(Future<List<Object>> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Cluster pipeline interrupted");
+        }
+    }
+
+    private record Topology(List<RedisClusterNode> masters, long fetchedAt) {
+    }
+
+    private record NodeBatch(List<String> keys, RuntimeException error) {
+        static final NodeBatch DONE = new NodeBatch(null, null);
+
+        static NodeBatch of(List<String> keys) {
+            return new NodeBatch(keys, null);
+        }
+
+        static NodeBatch failed(RedisClusterNode node, RuntimeException error) {
+            log.warn("Cluster scan failed on {}", node.asString(), error);
+            return new NodeBatch(null, error);
+        }
+    }
+}
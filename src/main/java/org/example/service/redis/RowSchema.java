@@ -0,0 +1,55 @@
+package org.example.service.redis;
+
+import java.util.*;
+
+/**
+ * Shared field layout for hash rows under one key prefix
+ * 同一前缀下的所有行共享一份字段名，行本身只保存值数组
+ */
+public final class RowSchema {
+
+    private final String[] fields;
+    private final Map<String, Integer> index;
+
+    private RowSchema(String[] fields) {
+        this.fields = fields;
+        this.index = new HashMap<>(fields.length * 2);
+        for (int i = 0; i < fields.length; i++) {
+            index.put(fields[i], i);
+        }
+    }
+
+    static RowSchema of(Collection<String> names) {
+        return new RowSchema(intern(new LinkedHashSet<>(names)));
+    }
+
+    /**
+     * Returns a schema with the given names appended, existing indexes are kept stable
+     */
+    RowSchema extend(Collection<String> names) {
+        Set<String> merged = new LinkedHashSet<>(Arrays.asList(fields));
+        merged.addAll(names);
+        return new RowSchema(intern(merged));
+    }
+
+    boolean containsAll(Collection<String> names) {
+        return index.keySet().containsAll(names);
+    }
+
+    public int indexOf(String field) {
+        Integer i = index.get(field);
+        return i == null ? -1 : i;
+    }
+
+    public String fieldAt(int i) {
+        return fields[i];
+    }
+
+    public int size() {
+        return fields.length;
+    }
+
+    private static String[] intern(Set<String> names) {
+        return names.stream().map(String::intern).toArray(String[]::new);
+    }
+}
@@ -0,0 +1,90 @@
+package org.example.service.redis;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Builds {@link CompactRow}s, sharing one {@link RowSchema} per key prefix (e.g. "user")
+ * 前缀数量和单个 schema 的字段数都有上限，超出时回退为普通 LinkedHashMap
+ */
+public class RowSchemaRegistry {
+
+    static final int MAX_PREFIXES = 1024;
+    static final int MAX_FIELDS = 256;
+
+    private final Map<String, RowSchema> schemas = new ConcurrentHashMap<>();
+
+    /**
+     * Convert a full HGETALL result
+     */
+    public Map<String, Object> toRow(String key, Map<?, ?> entries) {
+        if (entries == null || entries.isEmpty()) {
+            return new LinkedHashMap<>();
+        }
+        List<String> names = new ArrayList<>(entries.size());
+        entries.keySet().forEach(field -> names.add(String.valueOf(field)));
+
+        RowSchema schema = schemaFor(prefixOf(key), names);
+        if (schema == null) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            entries.forEach((field, value) -> row.put(String.valueOf(field), value));
+            return row;
+        }
+
+        Object[] values = new Object[schema.size()];
+        entries.forEach((field, value) -> values[schema.indexOf(String.valueOf(field))] = value);
+        return new CompactRow(schema, values);
+    }
+
+    /**
+     * Convert a projected HMGET result, values align with fields
+     */
+    public Map<String, Object> toRow(String key, String[] fields, List<?> values) {
+        RowSchema schema = schemaFor(prefixOf(key), Arrays.asList(fields));
+        if (schema == null) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (int i = 0; values != null && i < fields.length && i < values.size(); i++) {
+                if (values.get(i) != null) {
+                    row.put(fields[i], values.get(i));
+                }
+            }
+            return row;
+        }
+
+        Object[] slots = new Object[schema.size()];
+        for (int i = 0; values != null && i < fields.length && i < values.size(); i++) {
+            slots[schema.indexOf(fields[i])] = values.get(i);
+        }
+        return new CompactRow(schema, slots);
+    }
+
+    public int schemaCount() {
+        return schemas.size();
+    }
+
+    private RowSchema schemaFor(String prefix, List<String> names) {
+        RowSchema current = schemas.get(prefix);
+        if (current != null && current.containsAll(names)) {
+            return current;
+        }
+        if (current == null && schemas.size() >= MAX_PREFIXES) {
+            return null;
+        }
+
+        RowSchema schema = schemas.compute(prefix, (p, existing) -> {
+            if (existing == null) {
+                return RowSchema.of(names);
+            }
+            if (existing.containsAll(names) || existing.size() + names.size() > MAX_FIELDS) {
+                return existing;
+            }
+            return existing.extend(names);
+        });
+        return schema.containsAll(names) && schema.size() <= MAX_FIELDS ? schema : null;
+    }
+
+    public static String prefixOf(String key) {
+        int end = key.lastIndexOf(':');
+        return end < 0 ? "" : key.substring(0, end);
+    }
+}
@@ -0,0 +1,137 @@
+package org.example.service.redis;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.example.config.ScriptConfig;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-execution Redis command whitelist and resource budget
+ * 每次脚本执行一个实例；超出预算时抛出 {@link ScriptBudgetExceededException} 中止脚本，并计入 script.budget.exceeded 指标
+ */
+public class ScriptBudget {
+
+    private final Set<String> allowedCommands;
+    private final long maxCommands;
+    private final long maxKeysScanned;
+    private final long maxBytesRead;
+    private final long maxExecutionTime;
+    private final long deadlineNanos;
+    private final MeterRegistry meterRegistry;
+
+    private final AtomicLong commands = new AtomicLong();
+    private final AtomicLong keysScanned = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+
+    public ScriptBudget(ScriptConfig scriptConfig, MeterRegistry meterRegistry) {
+        this.allowedCommands = new HashSet<>();
+        if (scriptConfig.getAllowedCommands() != null) {
+            scriptConfig.getAllowedCommands().forEach(command -> allowedCommands.add(command.toUpperCase(Locale.ROOT)));
+        }
+        this.maxCommands = scriptConfig.getMaxCommands();
+        this.maxKeysScanned = scriptConfig.getMaxKeysScanned();
+        this.maxBytesRead = scriptConfig.getMaxBytesRead();
+        this.maxExecutionTime = scriptConfig.getMaxExecutionTime();
+        this.deadlineNanos = maxExecutionTime > 0
+                ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxExecutionTime)
+                : Long.MAX_VALUE;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Time left before the script deadline (maxExecutionTime from when this budget was created)
+     */
+    public long remainingNanos() {
+        return deadlineNanos == Long.MAX_VALUE ? Long.MAX_VALUE : deadlineNanos - System.nanoTime();
+    }
+
+    /**
+     * Fail when the deadline has passed; work running outside the script thread (parallelEach) checks this
+     * because cancelling the script only interrupts the script thread itself
+     */
+    public void checkDeadline() {
+        if (remainingNanos() <= 0) {
+            breach("deadline");
+            throw new ScriptBudgetExceededException("Script exceeded deadline of " + maxExecutionTime + "ms");
+        }
+    }
+
+    /**
+     * Check the whitelist and charge {@code count} commands
+     */
+    public void command(String command, long count) {
+        if (!allowedCommands.isEmpty() && !allowedCommands.contains(command)) {
+            breach("command_denied");
+            throw new SecurityException("Redis command not allowed: " + command);
+        }
+        charge(commands, count, maxCommands, "commands");
+    }
+
+    public void command(String command) {
+        command(command, 1);
+    }
+
+    public void keysScanned(long count) {
+        charge(keysScanned, count, maxKeysScanned, "keys");
+    }
+
+    /**
+     * Charge the approximate UTF-8 size of a value read from Redis, returns the value unchanged
+     */
+    public <T> T read(T value) {
+        if (maxBytesRead > 0 && value != null) {
+            charge(bytesRead, estimateBytes(value), maxBytesRead, "bytes");
+        }
+        return value;
+    }
+
+    public Map<String, Long> usage() {
+        return Map.of(
+                "commands", commands.get(),
+                "keysScanned", keysScanned.get(),
+                "bytesRead", bytesRead.get()
+        );
+    }
+
+    private void charge(AtomicLong counter, long amount, long limit, String budget) {
+        long total = counter.addAndGet(amount);
+        if (limit > 0 && total > limit) {
+            breach(budget);
+            throw new ScriptBudgetExceededException("Script exceeded " + budget + " budget: " + total + " > " + limit);
+        }
+    }
+
+    private void breach(String budget) {
+        if (meterRegistry != null) {
+            meterRegistry.counter("script.budget.exceeded", "budget", budget).increment();
+        }
+    }
+
+    static long estimateBytes(Object value) {
+        if (value instanceof CharSequence text) {
+            long bytes = 0;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                bytes += c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+            }
+            return bytes;
+        }
+        if (value instanceof Map<?, ?> map) {
+            long bytes = 0;
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                bytes += estimateBytes(entry.getKey()) + estimateBytes(entry.getValue());
+            }
+            return bytes;
+        }
+        if (value instanceof Collection<?> collection) {
+            long bytes = 0;
+            for (Object element : collection) {
+                bytes += estimateBytes(element);
+            }
+            return bytes;
+        }
+        return value == null ? 0 : 8;
+    }
+}
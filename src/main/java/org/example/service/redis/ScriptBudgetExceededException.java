@@ -0,0 +1,11 @@
+package org.example.service.redis;
+
+/**
+ * Thrown when a script exceeds its per-execution Redis budget
+ */
+public class ScriptBudgetExceededException extends RuntimeException {
+
+    public ScriptBudgetExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,396 @@
+package org.example.service.redis;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.example.config.ScriptConfig;
+import org.example.config.ScriptConfig.IndexDefinition;
+import org.example.config.ScriptConfig.IndexType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.ZSetOperations.TypedTuple;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Declarative secondary indexes over hash fields (or string values)
+ * EQUALITY：每个取值一个 Set，idx:{prefix}:{field}:{value}
+ * RANGE：一个 ZSet，以数值为 score，idx:{prefix}:{field}
+ *
+ * 写入经由 RedisOperations.hset/set 时维护（非事务，尽力而为），其余写入路径通过回填修复：
+ * 先 SCAN 数据键补齐缺失的索引项，再 SSCAN/ZSCAN 索引，删除键已不存在或当前值与索引不符的成员。
+ * 集群模式下经 RedisClusterRouter 扫描所有主节点；回填与并发写入之间仍是尽力而为
+ */
+@Slf4j
+@Component
+public class SecondaryIndexes {
+
+    static final String INDEX_KEY_PREFIX = "idx:";
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final ScriptConfig scriptConfig;
+    private final RedisClusterRouter cluster;
+    private final Map<String, Map<String, Object>> backfillStatus = new ConcurrentHashMap<>();
+    private final ExecutorService backfillExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "index-backfill");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SecondaryIndexes(RedisTemplate<String, Object> redisTemplate, ScriptConfig scriptConfig) {
+        this(redisTemplate, scriptConfig, new RedisClusterRouter(redisTemplate, new SimpleMeterRegistry()));
+    }
+
+    @Autowired
+    public SecondaryIndexes(RedisTemplate<String, Object> redisTemplate, ScriptConfig scriptConfig, RedisClusterRouter cluster) {
+        this.redisTemplate = redisTemplate;
+        this.scriptConfig = scriptConfig;
+        this.cluster = cluster;
+    }
+
+    public List<IndexDefinition> getDefinitions() {
+        return scriptConfig.getIndexes() == null ? Collections.emptyList() : scriptConfig.getIndexes();
+    }
+
+    /**
+     * Whether a write to this key/field must maintain an index; field is null for string keys
+     */
+    public boolean isIndexed(String key, String field) {
+        return !definitionsFor(key, field).isEmpty();
+    }
+
+    /**
+     * Move the key from the old value's index entry to the new one
+     */
+    public void update(String key, String field, Object oldValue, Object newValue) {
+        for (IndexDefinition definition : definitionsFor(key, field)) {
+            if (definition.getType() == IndexType.RANGE) {
+                double score = Aggregation.parseNumber(newValue);
+                if (Double.isNaN(score)) {
+                    redisTemplate.opsForZSet().remove(indexKey(definition, null), key);
+                } else {
+                    redisTemplate.opsForZSet().add(indexKey(definition, null), key, score);
+                }
+            } else {
+                if (oldValue != null && !oldValue.equals(newValue)) {
+                    redisTemplate.opsForSet().remove(indexKey(definition, oldValue), key);
+                }
+                if (newValue != null) {
+                    redisTemplate.opsForSet().add(indexKey(definition, newValue), key);
+                }
+            }
+        }
+    }
+
+    public IndexQuery query(String prefix, String field) {
+        return query(prefix, field, null);
+    }
+
+    /**
+     * Index lookup charged against a script budget (may be null)
+     */
+    public IndexQuery query(String prefix, String field, ScriptBudget budget) {
+        List<IndexDefinition> matching = getDefinitions().stream()
+                .filter(d -> prefix.equals(d.getPrefix()) && Objects.equals(normalize(field), normalize(d.getField())))
+                .collect(Collectors.toList());
+        if (matching.isEmpty()) {
+            throw new IllegalArgumentException("No index declared for " + prefix + "." + field);
+        }
+        return new IndexQuery(prefix, field, matching, budget);
+    }
+
+    /**
+     * Repair all declared indexes from the keyspace in the background: add missing entries, then drop stale ones
+     */
+    public List<CompletableFuture<Long>> backfillAll() {
+        return getDefinitions().stream().map(this::backfill).collect(Collectors.toList());
+    }
+
+    public CompletableFuture<Long> backfill(IndexDefinition definition) {
+        String name = indexName(definition);
+        backfillStatus.put(name, Map.of("state", "QUEUED"));
+        return CompletableFuture.supplyAsync(() -> {
+            backfillStatus.put(name, Map.of("state", "RUNNING"));
+            try {
+                long indexed = runBackfill(definition);
+                long removed = prune(definition);
+                backfillStatus.put(name, Map.of("state", "DONE", "indexedKeys", indexed, "removedEntries", removed));
+                log.info("Backfilled index {} with {} keys, removed {} stale entries", name, indexed, removed);
+                return indexed;
+            } catch (RuntimeException e) {
+                backfillStatus.put(name, Map.of("state", "FAILED", "error", String.valueOf(e.getMessage())));
+                log.error("Backfill of index {} failed", name, e);
+                throw e;
+            }
+        }, backfillExecutor);
+    }
+
+    public Map<String, Map<String, Object>> getBackfillStatus() {
+        return new TreeMap<>(backfillStatus);
+    }
+
+    private long runBackfill(IndexDefinition definition) {
+        long[] indexed = {0};
+        scanKeys(definition.getPrefix() + ":*", batch -> {
+            List<String> keys = batch.stream()
+                    .filter(key -> definition.getPrefix().equals(RowSchemaRegistry.prefixOf(key)))
+                    .collect(Collectors.toList());
+            if (!keys.isEmpty()) {
+                indexed[0] += backfillBatch(definition, keys);
+            }
+        });
+        return indexed[0];
+    }
+
+    /**
+     * 同一取值的成员合并为一条 SADD / 一条 ZADD，单键命令在集群模式下同样适用
+     */
+    private long backfillBatch(IndexDefinition definition, List<String> keys) {
+        List<Object> values = readValues(definition, keys);
+        Map<String, List<Object>> members = new LinkedHashMap<>();
+        Set<TypedTuple<Object>> scored = new LinkedHashSet<>();
+        long indexed = 0;
+        for (int i = 0; i < keys.size() && i < values.size(); i++) {
+            Object value = values.get(i);
+            if (value == null) {
+                continue;
+            }
+            if (definition.getType() == IndexType.RANGE) {
+                double score = Aggregation.parseNumber(value);
+                if (!Double.isNaN(score)) {
+                    scored.add(new DefaultTypedTuple<>(keys.get(i), score));
+                    indexed++;
+                }
+            } else {
+                members.computeIfAbsent(indexKey(definition, value), k -> new ArrayList<>()).add(keys.get(i));
+                indexed++;
+            }
+        }
+        if (!scored.isEmpty()) {
+            redisTemplate.opsForZSet().add(indexKey(definition, null), scored);
+        }
+        members.forEach((indexKey, keysOfValue) -> redisTemplate.opsForSet().add(indexKey, keysOfValue.toArray()));
+        return indexed;
+    }
+
+    /**
+     * Remove index members whose key is gone or whose current value no longer matches the entry
+     */
+    private long prune(IndexDefinition definition) {
+        if (definition.getType() == IndexType.RANGE) {
+            String indexKey = indexKey(definition, null);
+            return pruneMembers(definition, () -> redisTemplate.opsForZSet().scan(indexKey, scanOptions(null)),
+                    value -> Double.isNaN(Aggregation.parseNumber(value)),
+                    stale -> redisTemplate.opsForZSet().remove(indexKey, stale.toArray()));
+        }
+
+        String valuePrefix = indexKey(definition, "");
+        long[] removed = {0};
+        scanKeys(valuePrefix + "*", indexKeys -> {
+            for (String indexKey : indexKeys) {
+                String indexedValue = indexKey.substring(valuePrefix.length());
+                removed[0] += pruneMembers(definition, () -> redisTemplate.opsForSet().scan(indexKey, scanOptions(null)),
+                        value -> !indexedValue.equals(String.valueOf(value)),
+                        stale -> redisTemplate.opsForSet().remove(indexKey, stale.toArray()));
+            }
+        });
+        return removed[0];
+    }
+
+    /**
+     * SSCAN / ZSCAN the index key in batches and remove the members whose current value is missing or mismatched
+     */
+    private <T> long pruneMembers(IndexDefinition definition, Supplier<Cursor<T>> scan,
+                                  Predicate<Object> mismatched, Consumer<List<String>> remove) {
+        int batchSize = batchSize();
+        long removed = 0;
+        try (Cursor<T> cursor = scan.get()) {
+            List<String> members = new ArrayList<>(batchSize);
+            while (cursor.hasNext()) {
+                T member = cursor.next();
+                members.add(String.valueOf(member instanceof TypedTuple<?> tuple ? tuple.getValue() : member));
+                if (members.size() >= batchSize || !cursor.hasNext()) {
+                    removed += removeStale(definition, members, mismatched, remove);
+                    members = new ArrayList<>(batchSize);
+                }
+            }
+        }
+        return removed;
+    }
+
+    private long removeStale(IndexDefinition definition, List<String> members,
+                             Predicate<Object> mismatched, Consumer<List<String>> remove) {
+        List<Object> values = readValues(definition, members);
+        List<String> stale = new ArrayList<>();
+        for (int i = 0; i < members.size(); i++) {
+            Object value = i < values.size() ? values.get(i) : null;
+            if (value == null || mismatched.test(value)) {
+                stale.add(members.get(i));
+            }
+        }
+        if (!stale.isEmpty()) {
+            remove.accept(stale);
+        }
+        return stale.size();
+    }
+
+    /**
+     * SCAN the keyspace, every master in cluster mode
+     */
+    private void scanKeys(String pattern, Consumer<List<String>> consumer) {
+        int batchSize = batchSize();
+        if (cluster.isCluster()) {
+            cluster.scanBatchesWhile(pattern, batchSize, batch -> {
+                consumer.accept(batch);
+                return true;
+            });
+            return;
+        }
+        try (Cursor<String> cursor = redisTemplate.scan(scanOptions(pattern))) {
+            List<String> batch = new ArrayList<>(batchSize);
+            while (cursor.hasNext()) {
+                batch.add(cursor.next());
+                if (batch.size() >= batchSize) {
+                    consumer.accept(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                consumer.accept(batch);
+            }
+        }
+    }
+
+    /**
+     * Current indexed value of each key (hash field or string value), null when missing; pipelined per node in cluster mode
+     */
+    private List<Object> readValues(IndexDefinition definition, List<String> keys) {
+        return cluster.isCluster()
+                ? cluster.pipelineByNode(keys, nodeKeys -> pipelineValues(definition, nodeKeys))
+                : pipelineValues(definition, keys);
+    }
+
+    private List<Object> pipelineValues(IndexDefinition definition, List<String> keys) {
+        String field = normalize(definition.getField());
+        RedisSerializer<String> serializer = redisTemplate.getStringSerializer();
+        return redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String key : keys) {
+                if (field == null) {
+                    connection.stringCommands().get(serializer.serialize(key));
+                } else {
+                    connection.hashCommands().hGet(serializer.serialize(key), serializer.serialize(field));
+                }
+            }
+            return null;
+        });
+    }
+
+    private ScanOptions scanOptions(String pattern) {
+        ScanOptions.ScanOptionsBuilder options = ScanOptions.scanOptions().count(batchSize());
+        return pattern == null ? options.build() : options.match(pattern).build();
+    }
+
+    private int batchSize() {
+        return Math.max(1, scriptConfig.getPipelineBatchSize());
+    }
+
+    private List<IndexDefinition> definitionsFor(String key, String field) {
+        List<IndexDefinition> definitions = getDefinitions();
+        if (definitions.isEmpty()) {
+            return Collections.emptyList();
+        }
+        String prefix = RowSchemaRegistry.prefixOf(key);
+        String normalizedField = normalize(field);
+        List<IndexDefinition> matching = new ArrayList<>(1);
+        for (IndexDefinition definition : definitions) {
+            if (prefix.equals(definition.getPrefix()) && Objects.equals(normalizedField, normalize(definition.getField()))) {
+                matching.add(definition);
+            }
+        }
+        return matching;
+    }
+
+    static String indexKey(IndexDefinition definition, Object value) {
+        String base = INDEX_KEY_PREFIX + definition.getPrefix() + ":" + Objects.toString(normalize(definition.getField()), "");
+        return definition.getType() == IndexType.RANGE ? base : base + ":" + value;
+    }
+
+    static String indexName(IndexDefinition definition) {
+        return definition.getPrefix() + "." + Objects.toString(normalize(definition.getField()), "") + ":" + definition.getType();
+    }
+
+    private static String normalize(String field) {
+        return field == null || field.isBlank() ? null : field;
+    }
+
+    /**
+     * Index lookup bound into scripts via redis.index(prefix, field)
+     */
+    public class IndexQuery {
+
+        private final String prefix;
+        private final String field;
+        private final List<IndexDefinition> definitions;
+        private final ScriptBudget budget;
+
+        IndexQuery(String prefix, String field, List<IndexDefinition> definitions, ScriptBudget budget) {
+            this.prefix = prefix;
+            this.field = field;
+            this.definitions = definitions;
+            this.budget = budget;
+        }
+
+        /**
+         * Keys whose indexed value equals the given value
+         */
+        public Set<String> eq(Object value) {
+            IndexDefinition definition = require(IndexType.EQUALITY);
+            charge("SMEMBERS");
+            return toKeys(redisTemplate.opsForSet().members(indexKey(definition, value)));
+        }
+
+        /**
+         * Keys whose indexed numeric value lies within [min, max]
+         */
+        public Set<String> range(Number min, Number max) {
+            IndexDefinition definition = require(IndexType.RANGE);
+            charge("ZRANGEBYSCORE");
+            return toKeys(redisTemplate.opsForZSet().rangeByScore(indexKey(definition, null),
+                    min.doubleValue(), max.doubleValue()));
+        }
+
+        private IndexDefinition require(IndexType type) {
+            return definitions.stream()
+                    .filter(d -> d.getType() == type)
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalStateException("No " + type + " index declared for " + prefix + "." + field));
+        }
+
+        private void charge(String command) {
+            if (budget != null) {
+                budget.command(command);
+            }
+        }
+
+        private Set<String> toKeys(Set<Object> members) {
+            Set<String> keys = new LinkedHashSet<>();
+            if (members != null) {
+                members.forEach(member -> keys.add(String.valueOf(member)));
+            }
+            return budget == null ? keys : budget.read(keys);
+        }
+    }
+}
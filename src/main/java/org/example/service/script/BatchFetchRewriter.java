@@ -0,0 +1,205 @@
+package org.example.service.script;
+
+import org.codehaus.groovy.ast.ClassNode;
+import org.codehaus.groovy.ast.CodeVisitorSupport;
+import org.codehaus.groovy.ast.MethodNode;
+import org.codehaus.groovy.ast.Parameter;
+import org.codehaus.groovy.ast.expr.*;
+import org.codehaus.groovy.ast.stmt.BlockStatement;
+import org.codehaus.groovy.ast.stmt.EmptyStatement;
+import org.codehaus.groovy.ast.stmt.ExpressionStatement;
+import org.codehaus.groovy.ast.stmt.Statement;
+import org.codehaus.groovy.classgen.GeneratorContext;
+import org.codehaus.groovy.control.CompilePhase;
+import org.codehaus.groovy.control.SourceUnit;
+import org.codehaus.groovy.control.customizers.CompilationCustomizer;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Compile-time rewrite of the N+1 pattern
+ * <pre>
+ *   redis.keys(p).each { k -> def d = redis.hgetAll(k) ... }
+ *   def ks = redis.keys('user:*'); ks.each { k -> ... redis.hgetAll(k) ... }
+ * </pre>
+ * into {@code redis.eachKeyPrefetched(p) { k -> ... }}, which walks the keys with SCAN and prefetches
+ * each batch of hashes through a pipeline; hgetAll(k) inside the closure is then served from the batch.
+ *
+ * 只改写脚本顶层语句，且 each 的返回值未被使用（脚本最后一条语句是隐式返回值，不改写）。
+ * 写操作检查是保守的：闭包内只允许调用已知的 redis 只读方法，redis 以其他方式被引用（作为参数传出、方法指针等）
+ * 或调用了脚本自定义方法（可能间接写入）时都不改写；其余情况保持原样
+ */
+public class BatchFetchRewriter extends CompilationCustomizer {
+
+    static final String TARGET_METHOD = "eachKeyPrefetched";
+
+    private static final String REDIS = "redis";
+    private static final Set<String> READ_METHODS = Set.of(
+            "get", "hget", "hgetAll", "hmget", "hgetAllMany", "exists", "ttl", "lrange", "smembers", "zrange",
+            "getUsage", "getPipelineBatchSize");
+    private static final Set<String> SCRIPT_BUILTINS = Set.of("println", "print", "printf");
+
+    private boolean applied;
+
+    public BatchFetchRewriter() {
+        super(CompilePhase.CONVERSION);
+    }
+
+    /**
+     * Whether at least one loop was rewritten during the last compilation
+     */
+    public boolean isApplied() {
+        return applied;
+    }
+
+    @Override
+    public void call(SourceUnit source, GeneratorContext context, ClassNode classNode) {
+        if (!classNode.isScript()) {
+            return;
+        }
+        MethodNode run = classNode.getMethod("run", Parameter.EMPTY_ARRAY);
+        if (run == null || !(run.getCode() instanceof BlockStatement body)) {
+            return;
+        }
+
+        List<Statement> statements = body.getStatements();
+        // 最后一条语句的值就是脚本结果，keys().each 返回键集合而 eachKeyPrefetched 没有返回值
+        for (int i = 0; i < statements.size() - 1; i++) {
+            if (!(statements.get(i) instanceof ExpressionStatement statement)
+                    || !(statement.getExpression() instanceof MethodCallExpression each)
+                    || !"each".equals(each.getMethodAsString())) {
+                continue;
+            }
+            ClosureExpression closure = singleClosureArgument(each);
+            if (closure == null || !fetchesHashPerKey(closure)) {
+                continue;
+            }
+
+            Expression pattern = keysPattern(each.getObjectExpression());
+            if (pattern != null) {
+                statements.set(i, rewrite(statement, pattern, closure));
+                applied = true;
+                continue;
+            }
+
+            if (each.getObjectExpression() instanceof VariableExpression keysVariable) {
+                int declaration = findKeysDeclaration(statements, i, keysVariable.getName());
+                if (declaration >= 0 && countReferences(body, keysVariable.getName()) == 2) {
+                    DeclarationExpression declared = (DeclarationExpression)
+                            ((ExpressionStatement) statements.get(declaration)).getExpression();
+                    statements.set(declaration, EmptyStatement.INSTANCE);
+                    statements.set(i, rewrite(statement, keysPattern(declared.getRightExpression()), closure));
+                    applied = true;
+                }
+            }
+        }
+    }
+
+    private static Statement rewrite(ExpressionStatement original, Expression pattern, ClosureExpression closure) {
+        MethodCallExpression call = new MethodCallExpression(new VariableExpression(REDIS), TARGET_METHOD,
+                new ArgumentListExpression(pattern, closure));
+        call.setImplicitThis(false);
+        call.setSourcePosition(original.getExpression());
+        ExpressionStatement statement = new ExpressionStatement(call);
+        statement.setSourcePosition(original);
+        return statement;
+    }
+
+    /**
+     * Pattern argument of a redis.keys(pattern) call, or null
+     */
+    private static Expression keysPattern(Expression expression) {
+        if (expression instanceof MethodCallExpression call
+                && isRedisCall(call, "keys")
+                && call.getArguments() instanceof ArgumentListExpression args
+                && args.getExpressions().size() == 1) {
+            return args.getExpression(0);
+        }
+        return null;
+    }
+
+    private static int findKeysDeclaration(List<Statement> statements, int before, String name) {
+        for (int i = 0; i < before; i++) {
+            if (statements.get(i) instanceof ExpressionStatement statement
+                    && statement.getExpression() instanceof DeclarationExpression declaration
+                    && declaration.getLeftExpression() instanceof VariableExpression variable
+                    && name.equals(variable.getName())
+                    && keysPattern(declaration.getRightExpression()) instanceof ConstantExpression) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static ClosureExpression singleClosureArgument(MethodCallExpression call) {
+        if (call.getArguments() instanceof ArgumentListExpression args
+                && args.getExpressions().size() == 1
+                && args.getExpression(0) instanceof ClosureExpression closure
+                && (closure.getParameters() == null || closure.getParameters().length <= 1)) {
+            return closure;
+        }
+        return null;
+    }
+
+    /**
+     * The closure reads redis.hgetAll(param) and can only reach Redis through known read methods
+     */
+    private static boolean fetchesHashPerKey(ClosureExpression closure) {
+        Parameter[] parameters = closure.getParameters();
+        String param = parameters == null || parameters.length == 0 ? "it" : parameters[0].getName();
+        boolean[] found = {false};
+        boolean[] unsafe = {false};
+        int[] redisReferences = {0};
+        int[] readCalls = {0};
+
+        closure.getCode().visit(new CodeVisitorSupport() {
+            @Override
+            public void visitMethodCallExpression(MethodCallExpression call) {
+                if (isRedisCall(call, "hgetAll")
+                        && call.getArguments() instanceof ArgumentListExpression args
+                        && args.getExpressions().size() == 1
+                        && args.getExpression(0) instanceof VariableExpression arg
+                        && param.equals(arg.getName())) {
+                    found[0] = true;
+                }
+                if (call.getObjectExpression() instanceof VariableExpression target && REDIS.equals(target.getName())
+                        && READ_METHODS.contains(call.getMethodAsString())) {
+                    readCalls[0]++;
+                }
+                if (call.isImplicitThis() && !SCRIPT_BUILTINS.contains(call.getMethodAsString())) {
+                    unsafe[0] = true;
+                }
+                super.visitMethodCallExpression(call);
+            }
+
+            @Override
+            public void visitVariableExpression(VariableExpression expression) {
+                if (REDIS.equals(expression.getName())) {
+                    redisReferences[0]++;
+                }
+            }
+        });
+        // 每一处 redis 引用都必须是只读方法的接收者
+        return found[0] && !unsafe[0] && redisReferences[0] == readCalls[0];
+    }
+
+    private static int countReferences(BlockStatement body, String name) {
+        int[] count = {0};
+        body.visit(new CodeVisitorSupport() {
+            @Override
+            public void visitVariableExpression(VariableExpression expression) {
+                if (name.equals(expression.getName())) {
+                    count[0]++;
+                }
+            }
+        });
+        return count[0];
+    }
+
+    private static boolean isRedisCall(MethodCallExpression call, String method) {
+        return call.getObjectExpression() instanceof VariableExpression target
+                && REDIS.equals(target.getName())
+                && method.equals(call.getMethodAsString());
+    }
+}
@@ -0,0 +1,155 @@
+package org.example.service.script;
+
+import org.codehaus.groovy.ast.ClassNode;
+import org.codehaus.groovy.ast.CodeVisitorSupport;
+import org.codehaus.groovy.ast.FieldNode;
+import org.codehaus.groovy.ast.MethodNode;
+import org.codehaus.groovy.ast.ModuleNode;
+import org.codehaus.groovy.ast.Variable;
+import org.codehaus.groovy.ast.expr.*;
+import org.codehaus.groovy.control.CompilationUnit;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.Phases;
+import org.codehaus.groovy.control.SourceUnit;
+import org.codehaus.groovy.syntax.Types;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Fields read from the results of redis.hgetAll, found on the Groovy AST
+ * 解析到 SEMANTIC_ANALYSIS 阶段，每个引用都已解析到声明它的变量，同名变量在不同作用域里互不影响；注释与字符串不在 AST 中。
+ * 只有 {@code def v = redis.hgetAll(...)} 声明的变量上的 v.field、v?.field、v['field'] 算作字段访问；
+ * 其他任何用法（调用方法如 v.each { }、v.keySet()，访问 Map 自身的属性如 v.keySet、v.empty，
+ * 作为参数、返回值或被重新赋值）都视为整体使用，此时不建议投影
+ */
+public final class HashProjection {
+
+    /**
+     * Property names that read the map itself rather than one of its fields
+     */
+    private static final Set<String> MAP_PROPERTIES = Set.of("class", "metaClass", "empty", "keySet", "values", "entrySet", "size");
+
+    private HashProjection() {
+    }
+
+    /**
+     * Fields used from hgetAll results; empty when the script does not parse, has no hgetAll result
+     * or uses one as a whole map
+     */
+    public static Set<String> fields(String script) {
+        ModuleNode module;
+        try {
+            CompilationUnit unit = new CompilationUnit(new CompilerConfiguration());
+            SourceUnit source = unit.addSource("Projection.groovy", script);
+            unit.compile(Phases.SEMANTIC_ANALYSIS);
+            module = source.getAST();
+        } catch (RuntimeException e) {
+            return Collections.emptySet();
+        }
+
+        Usage usage = new Usage();
+        for (ClassNode classNode : module.getClasses()) {
+            for (MethodNode method : classNode.getMethods()) {
+                if (method.getCode() != null) {
+                    method.getCode().visit(usage);
+                }
+            }
+            for (FieldNode field : classNode.getFields()) {
+                if (field.getInitialExpression() != null) {
+                    field.getInitialExpression().visit(usage);
+                }
+            }
+        }
+        return usage.whole || usage.fields.isEmpty() ? Collections.emptySet() : usage.fields;
+    }
+
+    private static final class Usage extends CodeVisitorSupport {
+
+        /**
+         * Declared hgetAll result variables; references resolve to the declaring VariableExpression
+         */
+        private final Set<Variable> results = Collections.newSetFromMap(new IdentityHashMap<>());
+        private final Set<String> fields = new LinkedHashSet<>();
+        private boolean whole;
+
+        @Override
+        public void visitDeclarationExpression(DeclarationExpression expression) {
+            if (!expression.isMultipleAssignmentDeclaration() && isHgetAll(expression.getRightExpression())) {
+                results.add(expression.getVariableExpression());
+                expression.getRightExpression().visit(this);
+                return;
+            }
+            super.visitDeclarationExpression(expression);
+        }
+
+        @Override
+        public void visitPropertyExpression(PropertyExpression expression) {
+            if (isResult(expression.getObjectExpression()) && !expression.isSpreadSafe()) {
+                String property = expression.getPropertyAsString();
+                if (property == null || MAP_PROPERTIES.contains(property)) {
+                    whole = true;
+                } else {
+                    fields.add(property);
+                }
+                return;
+            }
+            super.visitPropertyExpression(expression);
+        }
+
+        @Override
+        public void visitBinaryExpression(BinaryExpression expression) {
+            int operator = expression.getOperation().getType();
+            if (operator == Types.LEFT_SQUARE_BRACKET && isResult(expression.getLeftExpression())) {
+                if (expression.getRightExpression() instanceof ConstantExpression key && key.getValue() instanceof String name) {
+                    fields.add(name);
+                } else {
+                    whole = true;
+                }
+                expression.getRightExpression().visit(this);
+                return;
+            }
+            // 只判断真假（v && ...）不需要整个 Hash
+            if (operator == Types.LOGICAL_AND || operator == Types.LOGICAL_OR) {
+                if (!isResult(expression.getLeftExpression())) {
+                    expression.getLeftExpression().visit(this);
+                }
+                if (!isResult(expression.getRightExpression())) {
+                    expression.getRightExpression().visit(this);
+                }
+                return;
+            }
+            super.visitBinaryExpression(expression);
+        }
+
+        @Override
+        public void visitBooleanExpression(BooleanExpression expression) {
+            if (isResult(expression.getExpression())) {
+                return;
+            }
+            super.visitBooleanExpression(expression);
+        }
+
+        @Override
+        public void visitVariableExpression(VariableExpression expression) {
+            if (isResult(expression)) {
+                whole = true;
+            }
+        }
+
+        private boolean isResult(Expression expression) {
+            return expression instanceof VariableExpression variable
+                    && (results.contains(variable) || results.contains(variable.getAccessedVariable()));
+        }
+
+        private static boolean isHgetAll(Expression expression) {
+            return expression instanceof MethodCallExpression call
+                    && call.getObjectExpression() instanceof VariableExpression target
+                    && "redis".equals(target.getName())
+                    && "hgetAll".equals(call.getMethodAsString());
+        }
+    }
+}
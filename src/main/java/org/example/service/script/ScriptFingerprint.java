@@ -0,0 +1,487 @@
+package org.example.service.script;
+
+import org.codehaus.groovy.ast.*;
+import org.codehaus.groovy.ast.expr.*;
+import org.codehaus.groovy.ast.stmt.*;
+import org.codehaus.groovy.control.CompilationUnit;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.Phases;
+import org.codehaus.groovy.control.SourceUnit;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Structural fingerprint of a Groovy script, used as the LLM analysis cache key
+ * 解析到 CONVERSION 阶段的 AST 后按节点输出规范化文本：注释与空白不在 AST 中，
+ * 脚本内声明的变量 / 参数按出现顺序改名为 v0、v1…，数值字面量只保留类型；
+ * 字符串（包括 GString 的静态部分）与布尔字面量保留取值：命令行、Eval.me / redis.eval 的载荷、键模式都是字符串，
+ * "ls".execute() 与 "rm -rf /".execute() 的分析结论完全不同，不能共用缓存。
+ * 方法名、属性名、类名以及未声明的名字（redis、System 等）保持原样，避免把语义不同的脚本视为相同
+ *
+ * 两个脚本的指纹相同，说明它们只在空白、注释、局部变量名或数值字面量取值上不同
+ */
+public final class ScriptFingerprint {
+
+    private ScriptFingerprint() {
+    }
+
+    /**
+     * Normalized text of the script, or null when the script does not parse
+     */
+    public static String of(String script) {
+        ModuleNode module;
+        try {
+            CompilationUnit unit = new CompilationUnit(new CompilerConfiguration());
+            SourceUnit source = unit.addSource("Fingerprint.groovy", script);
+            unit.compile(Phases.CONVERSION);
+            module = source.getAST();
+        } catch (RuntimeException e) {
+            return null;
+        }
+
+        DeclaredNames declared = new DeclaredNames();
+        for (ClassNode classNode : module.getClasses()) {
+            declared.visitClass(classNode);
+        }
+        Printer printer = new Printer(declared.names);
+        for (ClassNode classNode : module.getClasses()) {
+            printer.printClass(classNode);
+        }
+        return printer.out.toString();
+    }
+
+    /**
+     * Names introduced by the script itself: local variables, closure and method parameters, loop and catch variables
+     */
+    private static final class DeclaredNames extends CodeVisitorSupport {
+        final Set<String> names = new HashSet<>();
+
+        void visitClass(ClassNode classNode) {
+            for (MethodNode method : classNode.getMethods()) {
+                addAll(method.getParameters());
+                if (method.getCode() != null) {
+                    method.getCode().visit(this);
+                }
+            }
+            for (FieldNode field : classNode.getFields()) {
+                if (field.getInitialExpression() != null) {
+                    field.getInitialExpression().visit(this);
+                }
+            }
+        }
+
+        private void addAll(Parameter[] parameters) {
+            if (parameters != null) {
+                for (Parameter parameter : parameters) {
+                    names.add(parameter.getName());
+                }
+            }
+        }
+
+        @Override
+        public void visitDeclarationExpression(DeclarationExpression expression) {
+            if (expression.isMultipleAssignmentDeclaration()) {
+                for (Expression variable : expression.getTupleExpression().getExpressions()) {
+                    names.add(((VariableExpression) variable).getName());
+                }
+            } else {
+                names.add(expression.getVariableExpression().getName());
+            }
+            super.visitDeclarationExpression(expression);
+        }
+
+        @Override
+        public void visitClosureExpression(ClosureExpression expression) {
+            addAll(expression.getParameters());
+            super.visitClosureExpression(expression);
+        }
+
+        @Override
+        public void visitForLoop(ForStatement statement) {
+            names.add(statement.getVariable().getName());
+            super.visitForLoop(statement);
+        }
+
+        @Override
+        public void visitCatchStatement(CatchStatement statement) {
+            names.add(statement.getVariable().getName());
+            super.visitCatchStatement(statement);
+        }
+    }
+
+    /**
+     * Emits one token per node; every node type that changes meaning is marked so that
+     * e.g. {@code !a} and {@code a} never print the same
+     */
+    private static final class Printer extends CodeVisitorSupport {
+        final StringBuilder out = new StringBuilder();
+        private final Set<String> declared;
+        private final Map<String, String> canonical = new HashMap<>();
+
+        Printer(Set<String> declared) {
+            this.declared = declared;
+        }
+
+        void printClass(ClassNode classNode) {
+            emit(classNode.isScript() ? "script" : "class " + classNode.getNameWithoutPackage());
+            for (FieldNode field : classNode.getFields()) {
+                emit("field " + name(field.getName()));
+                if (field.getInitialExpression() != null) {
+                    field.getInitialExpression().visit(this);
+                }
+            }
+            for (MethodNode method : classNode.getMethods()) {
+                emit("method " + method.getName());
+                parameters(method.getParameters());
+                if (method.getCode() != null) {
+                    method.getCode().visit(this);
+                }
+            }
+        }
+
+        private void emit(String token) {
+            out.append(token).append(' ');
+        }
+
+        private String name(String name) {
+            if (!declared.contains(name)) {
+                return name;
+            }
+            return canonical.computeIfAbsent(name, n -> "v" + canonical.size());
+        }
+
+        private void parameters(Parameter[] parameters) {
+            emit("(");
+            if (parameters != null) {
+                for (Parameter parameter : parameters) {
+                    emit(parameter.getType().getNameWithoutPackage() + " " + name(parameter.getName()));
+                    if (parameter.hasInitialExpression()) {
+                        parameter.getInitialExpression().visit(this);
+                    }
+                }
+            }
+            emit(")");
+        }
+
+        // ---- statements ----
+
+        @Override
+        public void visitBlockStatement(BlockStatement block) {
+            emit("{");
+            super.visitBlockStatement(block);
+            emit("}");
+        }
+
+        @Override
+        public void visitForLoop(ForStatement statement) {
+            emit("for " + name(statement.getVariable().getName()));
+            super.visitForLoop(statement);
+        }
+
+        @Override
+        public void visitWhileLoop(WhileStatement statement) {
+            emit("while");
+            super.visitWhileLoop(statement);
+        }
+
+        @Override
+        public void visitDoWhileLoop(DoWhileStatement statement) {
+            emit("do");
+            super.visitDoWhileLoop(statement);
+        }
+
+        @Override
+        public void visitIfElse(IfStatement statement) {
+            emit("if");
+            super.visitIfElse(statement);
+        }
+
+        @Override
+        public void visitExpressionStatement(ExpressionStatement statement) {
+            emit(";");
+            super.visitExpressionStatement(statement);
+        }
+
+        @Override
+        public void visitReturnStatement(ReturnStatement statement) {
+            emit("return");
+            super.visitReturnStatement(statement);
+        }
+
+        @Override
+        public void visitAssertStatement(AssertStatement statement) {
+            emit("assert");
+            super.visitAssertStatement(statement);
+        }
+
+        @Override
+        public void visitTryCatchFinally(TryCatchStatement statement) {
+            emit("try");
+            super.visitTryCatchFinally(statement);
+        }
+
+        @Override
+        public void visitCatchStatement(CatchStatement statement) {
+            emit("catch " + statement.getExceptionType().getName() + " " + name(statement.getVariable().getName()));
+            super.visitCatchStatement(statement);
+        }
+
+        @Override
+        public void visitSwitch(SwitchStatement statement) {
+            emit("switch");
+            super.visitSwitch(statement);
+        }
+
+        @Override
+        public void visitCaseStatement(CaseStatement statement) {
+            emit("case");
+            super.visitCaseStatement(statement);
+        }
+
+        @Override
+        public void visitBreakStatement(BreakStatement statement) {
+            emit("break");
+        }
+
+        @Override
+        public void visitContinueStatement(ContinueStatement statement) {
+            emit("continue");
+        }
+
+        @Override
+        public void visitThrowStatement(ThrowStatement statement) {
+            emit("throw");
+            super.visitThrowStatement(statement);
+        }
+
+        @Override
+        public void visitSynchronizedStatement(SynchronizedStatement statement) {
+            emit("synchronized");
+            super.visitSynchronizedStatement(statement);
+        }
+
+        // ---- expressions ----
+
+        @Override
+        public void visitMethodCallExpression(MethodCallExpression call) {
+            emit((call.isSafe() ? "?." : ".") + (call.isSpreadSafe() ? "*" : "") + "call " + call.getMethodAsString());
+            call.getObjectExpression().visit(this);
+            if (call.getMethodAsString() == null) {
+                call.getMethod().visit(this);
+            }
+            call.getArguments().visit(this);
+        }
+
+        @Override
+        public void visitStaticMethodCallExpression(StaticMethodCallExpression call) {
+            emit("static " + call.getOwnerType().getName() + "." + call.getMethod());
+            super.visitStaticMethodCallExpression(call);
+        }
+
+        @Override
+        public void visitConstructorCallExpression(ConstructorCallExpression call) {
+            emit("new " + call.getType().getName());
+            super.visitConstructorCallExpression(call);
+        }
+
+        @Override
+        public void visitPropertyExpression(PropertyExpression expression) {
+            emit((expression.isSafe() ? "?." : ".") + (expression.isSpreadSafe() ? "*" : "") + "prop "
+                    + expression.getPropertyAsString());
+            expression.getObjectExpression().visit(this);
+            if (expression.getPropertyAsString() == null) {
+                expression.getProperty().visit(this);
+            }
+        }
+
+        @Override
+        public void visitAttributeExpression(AttributeExpression expression) {
+            emit("@" + expression.getPropertyAsString());
+            expression.getObjectExpression().visit(this);
+        }
+
+        @Override
+        public void visitFieldExpression(FieldExpression expression) {
+            emit("field " + expression.getFieldName());
+        }
+
+        @Override
+        public void visitMethodPointerExpression(MethodPointerExpression expression) {
+            emit(".&" + expression.getMethodName().getText());
+            expression.getExpression().visit(this);
+        }
+
+        @Override
+        public void visitMethodReferenceExpression(MethodReferenceExpression expression) {
+            emit("::" + expression.getMethodName().getText());
+            expression.getExpression().visit(this);
+        }
+
+        @Override
+        public void visitVariableExpression(VariableExpression expression) {
+            emit("var " + name(expression.getName()));
+        }
+
+        @Override
+        public void visitDeclarationExpression(DeclarationExpression expression) {
+            emit("def");
+            super.visitDeclarationExpression(expression);
+        }
+
+        @Override
+        public void visitBinaryExpression(BinaryExpression expression) {
+            emit("op " + expression.getOperation().getText());
+            super.visitBinaryExpression(expression);
+        }
+
+        @Override
+        public void visitPrefixExpression(PrefixExpression expression) {
+            emit("prefix " + expression.getOperation().getText());
+            super.visitPrefixExpression(expression);
+        }
+
+        @Override
+        public void visitPostfixExpression(PostfixExpression expression) {
+            emit("postfix " + expression.getOperation().getText());
+            super.visitPostfixExpression(expression);
+        }
+
+        @Override
+        public void visitTernaryExpression(TernaryExpression expression) {
+            emit("?");
+            super.visitTernaryExpression(expression);
+        }
+
+        @Override
+        public void visitShortTernaryExpression(ElvisOperatorExpression expression) {
+            emit("?:");
+            super.visitTernaryExpression(expression);
+        }
+
+        @Override
+        public void visitNotExpression(NotExpression expression) {
+            emit("!");
+            super.visitNotExpression(expression);
+        }
+
+        @Override
+        public void visitUnaryMinusExpression(UnaryMinusExpression expression) {
+            emit("-");
+            super.visitUnaryMinusExpression(expression);
+        }
+
+        @Override
+        public void visitUnaryPlusExpression(UnaryPlusExpression expression) {
+            emit("+");
+            super.visitUnaryPlusExpression(expression);
+        }
+
+        @Override
+        public void visitBitwiseNegationExpression(BitwiseNegationExpression expression) {
+            emit("~");
+            super.visitBitwiseNegationExpression(expression);
+        }
+
+        @Override
+        public void visitCastExpression(CastExpression expression) {
+            emit("as " + expression.getType().getName());
+            super.visitCastExpression(expression);
+        }
+
+        @Override
+        public void visitClosureExpression(ClosureExpression expression) {
+            emit("closure");
+            parameters(expression.getParameters());
+            super.visitClosureExpression(expression);
+        }
+
+        @Override
+        public void visitLambdaExpression(LambdaExpression expression) {
+            emit("lambda");
+            parameters(expression.getParameters());
+            super.visitClosureExpression(expression);
+        }
+
+        @Override
+        public void visitListExpression(ListExpression expression) {
+            emit("[");
+            super.visitListExpression(expression);
+            emit("]");
+        }
+
+        @Override
+        public void visitMapExpression(MapExpression expression) {
+            emit("[:");
+            super.visitMapExpression(expression);
+            emit("]");
+        }
+
+        @Override
+        public void visitRangeExpression(RangeExpression expression) {
+            emit(expression.isInclusive() ? ".." : "..<");
+            super.visitRangeExpression(expression);
+        }
+
+        @Override
+        public void visitArgumentlistExpression(ArgumentListExpression expression) {
+            emit("(" + expression.getExpressions().size());
+            super.visitArgumentlistExpression(expression);
+            emit(")");
+        }
+
+        @Override
+        public void visitTupleExpression(TupleExpression expression) {
+            emit("tuple " + expression.getExpressions().size());
+            super.visitTupleExpression(expression);
+        }
+
+        @Override
+        public void visitGStringExpression(GStringExpression expression) {
+            emit("gstring " + expression.getValues().size());
+            for (int i = 0; i < expression.getStrings().size(); i++) {
+                expression.getStrings().get(i).visit(this);
+                if (i < expression.getValues().size()) {
+                    expression.getValues().get(i).visit(this);
+                }
+            }
+        }
+
+        @Override
+        public void visitSpreadExpression(SpreadExpression expression) {
+            emit("*");
+            super.visitSpreadExpression(expression);
+        }
+
+        @Override
+        public void visitSpreadMapExpression(SpreadMapExpression expression) {
+            emit("*:");
+            super.visitSpreadMapExpression(expression);
+        }
+
+        @Override
+        public void visitArrayExpression(ArrayExpression expression) {
+            emit("array " + expression.getElementType().getName());
+            super.visitArrayExpression(expression);
+        }
+
+        @Override
+        public void visitClassExpression(ClassExpression expression) {
+            emit("class " + expression.getType().getName());
+        }
+
+        @Override
+        public void visitConstantExpression(ConstantExpression expression) {
+            Object value = expression.getValue();
+            if (value instanceof String || value instanceof Boolean) {
+                // 带长度前缀，取值里的空格与标记不会和后续节点混淆
+                String text = value.toString();
+                emit("lit " + value.getClass().getSimpleName() + " " + text.length() + ":" + text);
+                return;
+            }
+            emit(value == null ? "null" : "lit " + value.getClass().getSimpleName());
+        }
+    }
+}
@@ -0,0 +1,129 @@
+-- 扫描-过滤-聚合下推脚本（由 LuaScanAggregator 通过 EVALSHA 调用）
+-- 每次调用只处理一个 SCAN 步长或一批显式键，避免长时间阻塞 Redis
+--
+-- KEYS: 显式键列表；为空时按 ARGV[2] 执行一步 SCAN
+-- ARGV: cursor, pattern, count, groupField('' 表示不分组), nFields, fields..., nPreds, (field, op, value)...
+-- 返回: nextCursor, scanned, nGroups, 然后每组 group, count, 每个字段 (n, sum, min, max, fractional)
+
+local nf = tonumber(ARGV[5])
+local fields = {}
+for i = 1, nf do
+    fields[i] = ARGV[5 + i]
+end
+
+local np = tonumber(ARGV[6 + nf])
+local preds = {}
+for i = 1, np do
+    local b = 6 + nf + (i - 1) * 3
+    preds[i] = { ARGV[b + 1], ARGV[b + 2], ARGV[b + 3] }
+end
+
+local want = {}
+for i = 1, nf do
+    want[#want + 1] = fields[i]
+end
+local predIdx = {}
+for i = 1, np do
+    want[#want + 1] = preds[i][1]
+    predIdx[i] = #want
+end
+local group = ARGV[4]
+local groupIdx = nil
+if group ~= '' then
+    want[#want + 1] = group
+    groupIdx = #want
+end
+
+local keys = KEYS
+local nextCursor = '0'
+if #KEYS == 0 then
+    local res = redis.call('SCAN', ARGV[1], 'MATCH', ARGV[2], 'COUNT', tonumber(ARGV[3]))
+    nextCursor = res[1]
+    keys = res[2]
+end
+
+local function compare(actual, op, expected)
+    local a, e = tonumber(actual), tonumber(expected)
+    if a == nil or e == nil then
+        a, e = actual, expected
+    end
+    if op == '==' then return a == e end
+    if op == '!=' then return a ~= e end
+    if op == '>' then return a > e end
+    if op == '>=' then return a >= e end
+    if op == '<' then return a < e end
+    if op == '<=' then return a <= e end
+    return false
+end
+
+local groups = {}
+local order = {}
+for _, key in ipairs(keys) do
+    local vals = {}
+    local ok = true
+    if #want > 0 then
+        vals = redis.pcall('HMGET', key, unpack(want))
+        if type(vals) ~= 'table' or vals.err then
+            ok = false
+        else
+            local any = false
+            for i = 1, #want do
+                if vals[i] then any = true end
+            end
+            ok = any
+        end
+    end
+    if ok then
+        for i = 1, np do
+            local v = vals[predIdx[i]]
+            if not v or not compare(v, preds[i][2], preds[i][3]) then
+                ok = false
+                break
+            end
+        end
+    end
+    local g = ''
+    if ok and groupIdx then
+        g = vals[groupIdx]
+        if not g then ok = false end
+    end
+    if ok then
+        local s = groups[g]
+        if not s then
+            s = { count = 0, n = {}, sum = {}, min = {}, max = {}, frac = {} }
+            for i = 1, nf do
+                s.n[i] = 0
+                s.sum[i] = 0
+                s.frac[i] = 0
+            end
+            groups[g] = s
+            order[#order + 1] = g
+        end
+        s.count = s.count + 1
+        for i = 1, nf do
+            local v = tonumber(vals[i])
+            if v then
+                s.n[i] = s.n[i] + 1
+                s.sum[i] = s.sum[i] + v
+                if s.min[i] == nil or v < s.min[i] then s.min[i] = v end
+                if s.max[i] == nil or v > s.max[i] then s.max[i] = v end
+                if v % 1 ~= 0 then s.frac[i] = 1 end
+            end
+        end
+    end
+end
+
+local out = { nextCursor, tostring(#keys), tostring(#order) }
+for _, g in ipairs(order) do
+    local s = groups[g]
+    out[#out + 1] = g
+    out[#out + 1] = tostring(s.count)
+    for i = 1, nf do
+        out[#out + 1] = tostring(s.n[i])
+        out[#out + 1] = string.format('%.17g', s.sum[i])
+        out[#out + 1] = string.format('%.17g', s.min[i] or 0)
+        out[#out + 1] = string.format('%.17g', s.max[i] or 0)
+        out[#out + 1] = tostring(s.frac[i])
+    end
+end
+return out
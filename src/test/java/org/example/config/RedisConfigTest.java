@@ -0,0 +1,142 @@
+package org.example.config;
+
+import io.lettuce.core.ReadFrom;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.models.role.RedisInstance;
+import io.lettuce.core.models.role.RedisNodeDescription;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettucePoolingClientConfiguration;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+/**
+ * 单元测试类：RedisConfig
+ * 测试读副本路由策略与节点解析
+ */
+@DisplayName("Redis 主从读路由配置单元测试")
+class RedisConfigTest {
+
+    private static RedisNodeDescription node(int port, RedisInstance.Role role) {
+        RedisURI uri = RedisURI.create("localhost", port);
+        return new RedisNodeDescription() {
+            @Override
+            public RedisURI getUri() {
+                return uri;
+            }
+
+            @Override
+            public RedisInstance.Role getRole() {
+                return role;
+            }
+        };
+    }
+
+    private static ReadFrom.Nodes nodes(List<RedisNodeDescription> nodes) {
+        return new ReadFrom.Nodes() {
+            @Override
+            public List<RedisNodeDescription> getNodes() {
+                return nodes;
+            }
+
+            @Override
+            public Iterator<RedisNodeDescription> iterator() {
+                return nodes.iterator();
+            }
+        };
+    }
+
+    @Test
+    @DisplayName("测试读策略映射")
+    void testReadFrom_Mapping() {
+        assertSame(ReadFrom.LOWEST_LATENCY, RedisConfig.readFrom(RedisTopologyConfig.ReadPolicy.NEAREST));
+        assertSame(ReadFrom.REPLICA_PREFERRED, RedisConfig.readFrom(RedisTopologyConfig.ReadPolicy.REPLICA_PREFERRED));
+        assertSame(ReadFrom.REPLICA, RedisConfig.readFrom(RedisTopologyConfig.ReadPolicy.REPLICA));
+        assertSame(ReadFrom.UPSTREAM, RedisConfig.readFrom(RedisTopologyConfig.ReadPolicy.MASTER));
+        assertInstanceOf(RoundRobinReadFrom.class, RedisConfig.readFrom(RedisTopologyConfig.ReadPolicy.ROUND_ROBIN));
+    }
+
+    @Test
+    @DisplayName("测试轮询 - 依次从不同副本开始，主节点排在最后")
+    void testRoundRobin_RotatesReplicas() {
+        // 准备测试数据
+        RedisNodeDescription master = node(6379, RedisInstance.Role.UPSTREAM);
+        RedisNodeDescription replica1 = node(6380, RedisInstance.Role.REPLICA);
+        RedisNodeDescription replica2 = node(6381, RedisInstance.Role.REPLICA);
+        List<RedisNodeDescription> nodes = List.of(master, replica1, replica2);
+        ReadFrom readFrom = new RoundRobinReadFrom();
+
+        // 执行
+        List<Integer> firstPorts = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            List<RedisNodeDescription> selected = readFrom.select(nodes(nodes));
+            firstPorts.add(selected.get(0).getUri().getPort());
+            assertSame(master, selected.get(2));
+        }
+
+        // 验证结果
+        assertEquals(List.of(6380, 6381, 6380, 6381), firstPorts);
+    }
+
+    @Test
+    @DisplayName("测试轮询 - 没有副本时使用主节点")
+    void testRoundRobin_NoReplicas() {
+        RedisNodeDescription master = node(6379, RedisInstance.Role.UPSTREAM);
+
+        assertEquals(List.of(master), new RoundRobinReadFrom().select(nodes(List.of(master))));
+    }
+
+    @Test
+    @DisplayName("测试节点地址解析")
+    void testHostAndPort() {
+        assertEquals("10.0.0.5", RedisConfig.host("10.0.0.5:6380"));
+        assertEquals(6380, RedisConfig.port("10.0.0.5:6380"));
+        assertEquals("replica-1", RedisConfig.host("replica-1"));
+        assertEquals(6379, RedisConfig.port("replica-1"));
+    }
+
+    @Test
+    @DisplayName("测试未开启拓扑时读模板就是主模板")
+    @SuppressWarnings("unchecked")
+    void testScriptReadTemplate_DisabledReturnsPrimary() {
+        RedisTemplate<String, Object> redisTemplate = mock(RedisTemplate.class);
+
+        assertSame(redisTemplate, new RedisConfig().scriptReadRedisTemplate(redisTemplate, new RedisTopologyConfig(),
+                new RedisConnectionsConfig(), new SimpleMeterRegistry()));
+    }
+
+    @Test
+    @DisplayName("测试开启拓扑时读模板使用连接池，pipeline 交给按池大小限流的专用角色")
+    void testScriptReadTemplate_PooledWithRoles() {
+        // 准备测试数据
+        RedisTopologyConfig topology = new RedisTopologyConfig();
+        topology.setEnabled(true);
+        topology.setReplicas(List.of("localhost:6380"));
+        topology.setReadFrom(RedisTopologyConfig.ReadPolicy.REPLICA);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        RedisConfig config = new RedisConfig();
+
+        // 执行：只创建连接工厂，不实际连接
+        try {
+            RedisTemplate<String, Object> template = config.scriptReadRedisTemplate(null, topology, new RedisConnectionsConfig(), meterRegistry);
+
+            // 验证结果
+            assertInstanceOf(RoleRedisTemplate.class, template);
+            LettuceConnectionFactory factory = (LettuceConnectionFactory) template.getConnectionFactory();
+            assertInstanceOf(LettucePoolingClientConfiguration.class, factory.getClientConfiguration());
+            assertEquals(ReadFrom.REPLICA, factory.getClientConfiguration().getReadFrom().orElseThrow());
+            assertNotNull(meterRegistry.find("redis.connections.in_flight").tag("role", "replica").gauge());
+            assertNotNull(meterRegistry.find("redis.connections.in_flight").tag("role", "replica-dedicated").gauge());
+        } finally {
+            config.closeReplicaConnections();
+        }
+    }
+}
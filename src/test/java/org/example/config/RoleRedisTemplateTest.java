@@ -0,0 +1,97 @@
+package org.example.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * 单元测试类：RoleRedisTemplate
+ * 测试连接角色的 pipeline 转交、许可上限与指标
+ */
+@DisplayName("Redis 连接角色单元测试")
+class RoleRedisTemplateTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private RedisConnectionFactory connectionFactory;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        connectionFactory = mock(RedisConnectionFactory.class);
+        when(connectionFactory.getConnection()).thenAnswer(invocation -> mock(RedisConnection.class));
+    }
+
+    private RoleRedisTemplate template(String role, int permits) {
+        RoleRedisTemplate template = new RoleRedisTemplate(role, permits, 50, meterRegistry);
+        template.setConnectionFactory(connectionFactory);
+        template.afterPropertiesSet();
+        return template;
+    }
+
+    @Test
+    @DisplayName("测试共享角色 - pipeline 转交给专用角色，单键命令留在共享连接")
+    @SuppressWarnings("unchecked")
+    void testSharedRole_DelegatesPipelines() {
+        // 准备测试数据
+        RedisTemplate<String, Object> dedicated = mock(RedisTemplate.class);
+        when(dedicated.executePipelined(any(RedisCallback.class), any(RedisSerializer.class))).thenReturn(List.of("v"));
+        RoleRedisTemplate shared = template("shared", 0);
+        shared.setDedicated(dedicated);
+
+        // 执行
+        List<Object> results = shared.executePipelined((RedisCallback<Object>) connection -> null);
+        String single = shared.execute((RedisCallback<String>) connection -> "ok");
+
+        // 验证结果
+        assertEquals(List.of("v"), results);
+        assertEquals("ok", single);
+        verify(dedicated).executePipelined(any(RedisCallback.class), any(RedisSerializer.class));
+        verify(dedicated, never()).execute(any(RedisCallback.class));
+    }
+
+    @Test
+    @DisplayName("测试专用角色 - 许可用完后等待超时失败，并记录在途数与等待时间")
+    void testDedicatedRole_BoundedWithMetrics() throws Exception {
+        // 准备测试数据：一个许可，被另一个线程占用
+        RoleRedisTemplate dedicated = template("dedicated", 1);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread(() -> dedicated.execute((RedisCallback<Object>) connection -> {
+            running.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }));
+        holder.start();
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+
+        // 执行 & 验证
+        assertEquals(1.0, meterRegistry.get("redis.connections.in_flight").tag("role", "dedicated").gauge().value());
+        assertThrows(RedisConnectionFailureException.class,
+                () -> dedicated.execute((RedisCallback<Object>) connection -> null));
+
+        release.countDown();
+        holder.join(5000);
+        assertEquals("ok", dedicated.execute((RedisCallback<String>) connection -> "ok"));
+        assertEquals(0.0, meterRegistry.get("redis.connections.in_flight").tag("role", "dedicated").gauge().value());
+        assertEquals(3, meterRegistry.get("redis.connections.wait").tag("role", "dedicated").timer().count());
+    }
+}
@@ -11,6 +11,7 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -57,9 +58,12 @@ class ControllerIntegrationTest {
         ScriptAnalysisRequest analysisRequest = new ScriptAnalysisRequest();
         analysisRequest.setScript(request.getScript());
 
-        mockMvc.perform(post("/api/script/analyze")
+        MvcResult analysis = mockMvc.perform(post("/api/script/analyze")
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(objectMapper.writeValueAsString(analysisRequest)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(analysis))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.securityScore").exists());
 
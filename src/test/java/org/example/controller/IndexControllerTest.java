@@ -0,0 +1,60 @@
+package org.example.controller;
+
+import org.example.service.redis.SecondaryIndexes;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * 测试类：IndexController
+ * 测试二级索引相关的REST API接口
+ */
+@WebMvcTest(IndexController.class)
+@DisplayName("索引控制器测试")
+class IndexControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private SecondaryIndexes secondaryIndexes;
+
+    @Test
+    @DisplayName("测试回填索引接口 - 成功场景")
+    void testBackfill_Success() throws Exception {
+        // Mock服务
+        when(secondaryIndexes.backfillAll()).thenReturn(List.of(CompletableFuture.completedFuture(10L)));
+
+        // 执行请求
+        mockMvc.perform(post("/api/index/backfill"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.success").value(true))
+                .andExpect(jsonPath("$.message").value("Backfill started for 1 indexes"));
+
+        verify(secondaryIndexes, times(1)).backfillAll();
+    }
+
+    @Test
+    @DisplayName("测试查询索引接口")
+    void testGetIndexes() throws Exception {
+        // Mock服务
+        when(secondaryIndexes.getDefinitions()).thenReturn(Collections.emptyList());
+        when(secondaryIndexes.getBackfillStatus()).thenReturn(Collections.emptyMap());
+
+        // 执行请求
+        mockMvc.perform(get("/api/index"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.indexes").isArray());
+    }
+}
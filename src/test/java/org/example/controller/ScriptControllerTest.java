@@ -15,9 +15,14 @@ import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -172,13 +177,11 @@ class ScriptControllerTest {
     @DisplayName("测试分析脚本接口 - 成功场景")
     void testAnalyzeScript_Success() throws Exception {
         // Mock服务返回分析结果
-        when(llmAnalysisService.analyzeScript(anyString()))
-                .thenReturn(analysisResult);
+        when(llmAnalysisService.analyzeScriptAsync(anyString(), any()))
+                .thenReturn(CompletableFuture.completedFuture(analysisResult));
 
         // 执行请求
-        mockMvc.perform(post("/api/script/analyze")
-                        .contentType(MediaType.APPLICATION_JSON)
-                        .content(objectMapper.writeValueAsString(analysisRequest)))
+        mockMvc.perform(asyncDispatch(analyze(analysisRequest)))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$.securityScore").value(85))
@@ -202,13 +205,11 @@ class ScriptControllerTest {
                 .llmAnalysis("Analysis failed: LLM service unavailable")
                 .build();
 
-        when(llmAnalysisService.analyzeScript(anyString()))
-                .thenReturn(failureResult);
+        when(llmAnalysisService.analyzeScriptAsync(anyString(), any()))
+                .thenReturn(CompletableFuture.completedFuture(failureResult));
 
         // 执行请求
-        mockMvc.perform(post("/api/script/analyze")
-                        .contentType(MediaType.APPLICATION_JSON)
-                        .content(objectMapper.writeValueAsString(analysisRequest)))
+        mockMvc.perform(asyncDispatch(analyze(analysisRequest)))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$.securityScore").value(0))
@@ -219,13 +220,11 @@ class ScriptControllerTest {
     @DisplayName("测试分析脚本接口 - 异常场景")
     void testAnalyzeScript_Exception() throws Exception {
         // Mock服务抛出异常
-        when(llmAnalysisService.analyzeScript(anyString()))
-                .thenThrow(new RuntimeException("LLM service error"));
+        when(llmAnalysisService.analyzeScriptAsync(anyString(), any()))
+                .thenReturn(CompletableFuture.failedFuture(new RuntimeException("LLM service error")));
 
         // 执行请求
-        mockMvc.perform(post("/api/script/analyze")
-                        .contentType(MediaType.APPLICATION_JSON)
-                        .content(objectMapper.writeValueAsString(analysisRequest)))
+        mockMvc.perform(asyncDispatch(analyze(analysisRequest)))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$.securityScore").value(0))
@@ -318,17 +317,52 @@ class ScriptControllerTest {
                 .llmAnalysis("该脚本包含危险操作，不建议执行")
                 .build();
 
-        when(llmAnalysisService.analyzeScript(anyString()))
-                .thenReturn(unsafeResult);
+        when(llmAnalysisService.analyzeScriptAsync(anyString(), any()))
+                .thenReturn(CompletableFuture.completedFuture(unsafeResult));
 
         // 执行请求
-        mockMvc.perform(post("/api/script/analyze")
-                        .contentType(MediaType.APPLICATION_JSON)
-                        .content(objectMapper.writeValueAsString(analysisRequest)))
+        mockMvc.perform(asyncDispatch(analyze(analysisRequest)))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.securityScore").value(20))
                 .andExpect(jsonPath("$.safeToExecute").value(false))
                 .andExpect(jsonPath("$.securityIssues[0]").exists());
     }
-}
 
+    @Test
+    @DisplayName("测试流式分析接口 - 依次发送 analysis、token、done 事件")
+    @SuppressWarnings("unchecked")
+    void testAnalyzeScriptStream() throws Exception {
+        // Mock服务：交付静态分析与两个 token
+        when(llmAnalysisService.analyzeScriptStreaming(anyString(), any(), any(), any())).thenAnswer(invocation -> {
+            ((Consumer<ScriptAnalysisResult>) invocation.getArgument(2)).accept(analysisResult);
+            ((Consumer<String>) invocation.getArgument(3)).accept("逻辑");
+            ((Consumer<String>) invocation.getArgument(3)).accept("清晰");
+            return CompletableFuture.completedFuture(analysisResult);
+        });
+
+        // 执行请求
+        MvcResult result = mockMvc.perform(post("/api/script/analyze/stream")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(analysisRequest)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // 验证结果
+        String body = result.getResponse().getContentAsString(StandardCharsets.UTF_8);
+        assertTrue(body.indexOf("event:analysis") < body.indexOf("event:token"));
+        assertTrue(body.contains("data:{\"text\":\"逻辑\"}"));
+        assertTrue(body.indexOf("data:{\"text\":\"清晰\"}") < body.indexOf("event:done"));
+        assertTrue(result.getResponse().getContentType().startsWith(MediaType.TEXT_EVENT_STREAM_VALUE));
+    }
+
+    /**
+     * 分析接口异步返回：先确认异步处理已开始，再分派取回结果
+     */
+    private MvcResult analyze(ScriptAnalysisRequest body) throws Exception {
+        return mockMvc.perform(post("/api/script/analyze")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(body)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+    }
+}
@@ -1,19 +1,29 @@
 package org.example.service;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.example.config.ScriptConfig;
 import org.example.model.ScriptExecutionResult;
+import org.example.service.redis.HotKeyTracker;
+import org.example.service.redis.RedisClusterRouter;
+import org.example.service.redis.RowSchemaRegistry;
+import org.example.service.redis.ScriptBudget;
+import org.example.service.redis.SecondaryIndexes;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
 import org.springframework.data.redis.core.ValueOperations;
 import org.springframework.data.redis.core.HashOperations;
 import org.springframework.data.redis.core.SetOperations;
 
 import java.util.*;
+import java.util.function.Predicate;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -103,8 +113,7 @@ class ScriptEngineServiceTest {
     void testExecuteScript_KeysQuery() {
         // 准备测试数据
         String script = "def keys = redis.keys('user:*')\nreturn keys.size()";
-        Set<String> keys = new HashSet<>(Arrays.asList("user:1", "user:2", "user:3"));
-        when(redisTemplate.keys("user:*")).thenReturn(keys);
+        mockScan("user:1", "user:2", "user:3");
 
         // 执行脚本
         ScriptExecutionResult result = scriptEngineService.executeScript(script, false);
@@ -201,8 +210,7 @@ class ScriptEngineServiceTest {
                 """;
 
         // Mock数据
-        Set<String> keys = new HashSet<>(Arrays.asList("user:1", "user:2"));
-        when(redisTemplate.keys("user:*")).thenReturn(keys);
+        mockScan("user:1", "user:2");
 
         Map<Object, Object> user1 = new HashMap<>();
         user1.put("name", "张三");
@@ -322,5 +330,291 @@ class ScriptEngineServiceTest {
         assertTrue(result.isSuccess());
         assertEquals(15, result.getResult());
     }
-}
 
+    @Test
+    @DisplayName("测试投影读取 - hmget 只返回存在的字段")
+    void testExecuteScript_Hmget() {
+        // 准备测试数据
+        String script = "return redis.hmget('user:1', 'age', 'city')";
+        when(hashOperations.multiGet("user:1", Arrays.asList("age", "city"))).thenReturn(Arrays.asList("25", null));
+
+        // 执行脚本
+        ScriptExecutionResult result = scriptEngineService.executeScript(script, false);
+
+        // 验证结果
+        assertTrue(result.isSuccess());
+        assertEquals(Map.of("age", "25"), result.getResult());
+    }
+
+    @Test
+    @DisplayName("测试批量投影读取 - hgetAllMany 按批次走 pipeline")
+    @SuppressWarnings("unchecked")
+    void testExecuteScript_HgetAllMany() {
+        // 准备测试数据：批次大小为 2，3 个键需要两次 pipeline
+        scriptConfig.setPipelineBatchSize(2);
+        String script = "return redis.hgetAllMany(['user:1', 'user:2', 'user:3'], ['age'])";
+        when(redisTemplate.executePipelined(any(RedisCallback.class)))
+                .thenReturn(Arrays.asList(Arrays.asList("25"), Arrays.asList("30")))
+                .thenReturn(List.of(Arrays.asList((Object) null)));
+
+        // 执行脚本
+        ScriptExecutionResult result = scriptEngineService.executeScript(script, false);
+
+        // 验证结果
+        assertTrue(result.isSuccess());
+        Map<String, Map<String, Object>> rows = (Map<String, Map<String, Object>>) result.getResult();
+        assertEquals(Map.of("age", "25"), rows.get("user:1"));
+        assertEquals(Map.of("age", "30"), rows.get("user:2"));
+        assertTrue(rows.get("user:3").isEmpty());
+        verify(redisTemplate, times(2)).executePipelined(any(RedisCallback.class));
+    }
+
+    @Test
+    @DisplayName("测试紧凑行模式 - Groovy 属性访问不变")
+    void testExecuteScript_CompactRows() {
+        // 开启紧凑行
+        scriptConfig.setCompactRows(true);
+        String script = "def userData = redis.hgetAll('user:1')\nreturn userData ? userData.city : null";
+        Map<Object, Object> userData = new HashMap<>();
+        userData.put("name", "张三");
+        userData.put("city", "北京");
+        when(hashOperations.entries("user:1")).thenReturn(userData);
+
+        // 执行脚本
+        ScriptExecutionResult result = scriptEngineService.executeScript(script, false);
+
+        // 验证结果
+        assertTrue(result.isSuccess());
+        assertEquals("北京", result.getResult());
+    }
+
+    @Test
+    @DisplayName("测试聚合助手 - 脚本直接返回聚合构建器")
+    void testExecuteScript_AggregationBinding() {
+        // 准备测试数据
+        String script = "agg.over(['user:1', 'user:2']).avg('age').count()";
+        when(redisTemplate.executePipelined(any(RedisCallback.class)))
+                .thenReturn(Arrays.asList(Arrays.asList("20"), Arrays.asList("30")));
+
+        // 执行脚本
+        ScriptExecutionResult result = scriptEngineService.executeScript(script, false);
+
+        // 验证结果
+        assertTrue(result.isSuccess());
+        assertEquals(Map.of("count", 2L, "avg_age", 25.0), result.getResult());
+    }
+
+    @Test
+    @DisplayName("测试 keys - 以 SCAN 分批实现，超出 keysScanned 预算时在扫描途中终止")
+    void testExecuteScript_KeysScanBudget() {
+        // 准备测试数据：每批 2 个键，最多扫描 3 个
+        scriptConfig.setPipelineBatchSize(2);
+        scriptConfig.setMaxKeysScanned(3);
+        Cursor<String> cursor = mockScan("user:1", "user:2", "user:3", "user:4", "user:5", "user:6");
+
+        // 执行脚本
+        ScriptExecutionResult result = scriptEngineService.executeScript("return redis.keys('user:*')", false);
+
+        // 验证结果：第二批就超出预算，剩余的键不再读取
+        assertFalse(result.isSuccess());
+        assertTrue(result.getError().contains("keys budget"), result.getError());
+        verify(cursor, times(4)).next();
+        verify(redisTemplate, never()).keys(anyString());
+    }
+
+    @Test
+    @DisplayName("测试命令白名单 - 未授权的 Redis 命令被拒绝")
+    void testExecuteScript_CommandNotAllowed() {
+        // 只允许 GET
+        scriptConfig.setAllowedCommands(List.of("GET"));
+        String script = "return redis.keys('*')";
+
+        // 执行脚本
+        ScriptExecutionResult result = scriptEngineService.executeScript(script, false);
+
+        // 验证结果
+        assertFalse(result.isSuccess());
+        assertTrue(result.getError().contains("Redis command not allowed: KEYS"));
+        verify(redisTemplate, never()).keys(anyString());
+    }
+
+    @Test
+    @DisplayName("测试执行预算 - 超出命令数后中止脚本")
+    void testExecuteScript_CommandBudgetExceeded() {
+        // 每次执行最多 3 条命令
+        scriptConfig.setMaxCommands(3);
+        String script = "(1..10).each { redis.get('test:key') }\nreturn 'done'";
+
+        // 执行脚本
+        ScriptExecutionResult result = scriptEngineService.executeScript(script, false);
+
+        // 验证结果
+        assertFalse(result.isSuccess());
+        assertTrue(result.getError().contains("commands budget"));
+        verify(valueOperations, times(3)).get("test:key");
+    }
+
+    @Test
+    @DisplayName("测试 N+1 改写 - keys/each/hgetAll 循环改为 SCAN + pipeline 预取")
+    @SuppressWarnings("unchecked")
+    void testExecuteScript_BatchRewrite() {
+        // 开启编译期改写，脚本与复杂脚本用例相同
+        scriptConfig.setBatchRewrite(true);
+        String script = """
+                def keys = redis.keys('user:*')
+                def users = []
+                keys.each { key ->
+                    def userData = redis.hgetAll(key)
+                    if (userData && userData.name) {
+                        users.add(userData.name)
+                    }
+                }
+                return users
+                """;
+
+        // Mock SCAN 游标（重复返回 user:1）和一次 pipeline
+        Cursor<String> cursor = mock(Cursor.class);
+        when(cursor.hasNext()).thenReturn(true, true, true, false);
+        when(cursor.next()).thenReturn("user:1", "user:2", "user:1");
+        when(redisTemplate.scan(any(ScanOptions.class))).thenReturn(cursor);
+        when(redisTemplate.executePipelined(any(RedisCallback.class)))
+                .thenReturn(Arrays.asList(Map.of("name", "张三"), Map.of("name", "李四")));
+
+        // 执行脚本
+        ScriptExecutionResult result = scriptEngineService.executeScript(script, false);
+
+        // 验证结果：一次 pipeline 取完，不再逐键 HGETALL，也不走 KEYS
+        assertTrue(result.isSuccess(), result.getError());
+        assertTrue(result.isBatchRewriteApplied());
+        assertEquals(List.of("张三", "李四"), result.getResult());
+        verify(redisTemplate, times(1)).executePipelined(any(RedisCallback.class));
+        verify(redisTemplate, never()).keys(anyString());
+        verifyNoInteractions(hashOperations);
+    }
+
+    @Test
+    @DisplayName("测试 N+1 改写 - 未开启时保持原有逐键读取")
+    void testExecuteScript_BatchRewriteDisabled() {
+        // 准备测试数据
+        String script = "redis.keys('user:*').each { k -> redis.hgetAll(k) }\nreturn 'ok'";
+        mockScan("user:1");
+        when(hashOperations.entries("user:1")).thenReturn(Map.of("name", "张三"));
+
+        // 执行脚本
+        ScriptExecutionResult result = scriptEngineService.executeScript(script, false);
+
+        // 验证结果
+        assertTrue(result.isSuccess());
+        assertFalse(result.isBatchRewriteApplied());
+        verify(hashOperations).entries("user:1");
+    }
+
+    @Test
+    @DisplayName("测试惰性查询 - 脚本直接返回查询构建器")
+    @SuppressWarnings("unchecked")
+    void testExecuteScript_LazyQuery() {
+        // 准备测试数据
+        String script = "redis.from('user:*').select('name').limit(1)";
+        Cursor<String> cursor = mock(Cursor.class);
+        when(cursor.hasNext()).thenReturn(true, true, false);
+        when(cursor.next()).thenReturn("user:1", "user:2");
+        when(redisTemplate.scan(any(ScanOptions.class))).thenReturn(cursor);
+        when(redisTemplate.executePipelined(any(RedisCallback.class)))
+                .thenReturn(Arrays.asList(Arrays.asList("张三"), Arrays.asList("李四")));
+
+        // 执行脚本
+        ScriptExecutionResult result = scriptEngineService.executeScript(script, false);
+
+        // 验证结果
+        assertTrue(result.isSuccess(), result.getError());
+        assertEquals(Map.of("user:1", Map.of("name", "张三")), result.getResult());
+    }
+
+    @Test
+    @DisplayName("测试并行处理绑定 - parallelCollect 合并各分区结果")
+    @SuppressWarnings("unchecked")
+    void testExecuteScript_ParallelCollect() {
+        // 准备测试数据
+        String script = "parallelCollect('user:*') { key, row -> row.name }";
+        Cursor<String> cursor = mock(Cursor.class);
+        when(cursor.hasNext()).thenReturn(true, true, false);
+        when(cursor.next()).thenReturn("user:1", "user:2");
+        when(redisTemplate.scan(any(ScanOptions.class))).thenReturn(cursor);
+        when(redisTemplate.executePipelined(any(RedisCallback.class)))
+                .thenReturn(Arrays.asList(Map.of("name", "张三"), Map.of("name", "李四")));
+
+        // 执行脚本
+        ScriptExecutionResult result = scriptEngineService.executeScript(script, false);
+
+        // 验证结果
+        assertTrue(result.isSuccess(), result.getError());
+        assertEquals(List.of("张三", "李四"), result.getResult());
+    }
+
+    @Test
+    @DisplayName("测试读副本路由 - 读走副本，写入之后的读回到主节点")
+    @SuppressWarnings("unchecked")
+    void testRedisOperations_ReadReplicaRouting() {
+        // 准备测试数据
+        RedisTemplate<String, Object> replicaTemplate = mock(RedisTemplate.class);
+        ValueOperations<String, Object> replicaValues = mock(ValueOperations.class);
+        when(replicaTemplate.opsForValue()).thenReturn(replicaValues);
+        when(replicaValues.get("test:key")).thenReturn("from-replica");
+        when(valueOperations.get("test:key")).thenReturn("from-master");
+        ScriptEngineService.RedisOperations redis = new ScriptEngineService.RedisOperations(redisTemplate, scriptConfig,
+                new RowSchemaRegistry(),
+                new SecondaryIndexes(redisTemplate, scriptConfig),
+                new ScriptBudget(scriptConfig, null),
+                new HotKeyTracker(scriptConfig), replicaTemplate,
+                new RedisClusterRouter(redisTemplate, new SimpleMeterRegistry()));
+
+        // 执行 & 验证：写之前读副本，写之后读主节点
+        assertEquals("from-replica", redis.get("test:key"));
+        redis.set("test:key", "v2");
+        assertEquals("from-master", redis.get("test:key"));
+        verify(valueOperations).set("test:key", "v2");
+        verify(replicaValues, never()).set(anyString(), any());
+    }
+
+    @Test
+    @DisplayName("测试集群模式 - keys 对所有主节点 SCAN 合并，批量读取按节点分组")
+    @SuppressWarnings("unchecked")
+    void testRedisOperations_ClusterRouting() {
+        // 准备测试数据：两个主节点各返回一批键
+        RedisClusterRouter cluster = mock(RedisClusterRouter.class);
+        when(cluster.isCluster()).thenReturn(true);
+        doAnswer(invocation -> {
+            Predicate<List<String>> consumer = invocation.getArgument(2);
+            if (consumer.test(List.of("user:1", "user:2"))) {
+                consumer.test(List.of("user:3"));
+            }
+            return null;
+        }).when(cluster).scanBatchesWhile(eq("user:*"), anyInt(), any(Predicate.class));
+        when(cluster.pipelineByNode(anyList(), any())).thenReturn(List.of(Map.of("name", "a"), Map.of("name", "b")));
+        ScriptEngineService.RedisOperations redis = new ScriptEngineService.RedisOperations(redisTemplate, scriptConfig,
+                new RowSchemaRegistry(),
+                new SecondaryIndexes(redisTemplate, scriptConfig),
+                new ScriptBudget(scriptConfig, null),
+                new HotKeyTracker(scriptConfig), redisTemplate, cluster);
+
+        // 执行
+        Object keys = redis.keys("user:*");
+        Map<String, Map<String, Object>> rows = redis.hgetAllMany(List.of("user:1", "user:3"));
+
+        // 验证结果：不再执行 KEYS，结果按输入顺序对应
+        assertEquals(new LinkedHashSet<>(List.of("user:1", "user:2", "user:3")), keys);
+        assertEquals("a", rows.get("user:1").get("name"));
+        assertEquals("b", rows.get("user:3").get("name"));
+        verify(redisTemplate, never()).keys(anyString());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Cursor<String> mockScan(String... keys) {
+        Iterator<String> iterator = List.of(keys).iterator();
+        Cursor<String> cursor = mock(Cursor.class);
+        lenient().when(cursor.hasNext()).thenAnswer(invocation -> iterator.hasNext());
+        lenient().when(cursor.next()).thenAnswer(invocation -> iterator.next());
+        when(redisTemplate.scan(any(ScanOptions.class))).thenReturn(cursor);
+        return cursor;
+    }
+}
@@ -0,0 +1,170 @@
+package org.example.service.llm;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.config.LlmConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 单元测试类：AnalysisCache
+ * 测试缓存键组成、本地与 Redis 两级命中、TTL 与 Redis 故障降级
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("LLM 分析两级缓存单元测试")
+class AnalysisCacheTest {
+
+    @Mock
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Mock
+    private ValueOperations<String, Object> valueOperations;
+
+    @Mock
+    private LlmService llmService;
+
+    private LlmConfig.CacheConfig config;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        config = new LlmConfig.CacheConfig();
+        meterRegistry = new SimpleMeterRegistry();
+        lenient().when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        lenient().when(llmService.getProvider()).thenReturn(LlmProvider.OPENAI);
+        lenient().when(llmService.getModel()).thenReturn("gpt-4o");
+    }
+
+    @Test
+    @DisplayName("测试缓存键 - 随脚本结构、模型变化")
+    void testKey() {
+        AnalysisCache cache = new AnalysisCache(config, redisTemplate, meterRegistry);
+
+        // 执行
+        String key = cache.key("return 1", llmService);
+        String otherScript = cache.key("return redis.get('k')", llmService);
+        when(llmService.getModel()).thenReturn("gpt-4o-mini");
+        String otherModel = cache.key("return 1", llmService);
+
+        // 验证结果
+        assertTrue(key.startsWith("llm:analysis:"));
+        assertEquals(key, new AnalysisCache(config, redisTemplate, meterRegistry).key("return 1", mockService("gpt-4o")));
+        assertNotEquals(key, otherScript);
+        assertNotEquals(key, otherModel);
+    }
+
+    private static LlmService mockService(String model) {
+        LlmService service = mock(LlmService.class);
+        when(service.getProvider()).thenReturn(LlmProvider.OPENAI);
+        when(service.getModel()).thenReturn(model);
+        return service;
+    }
+
+    @Test
+    @DisplayName("测试 put/get - 写入两级，之后命中本地缓存")
+    void testPutThenLocalHit() {
+        AnalysisCache cache = new AnalysisCache(config, redisTemplate, meterRegistry);
+        String key = cache.key("return 1", llmService);
+
+        // 执行
+        long ttl = cache.put(key, "return 1", "looks safe", 12_000);
+        AnalysisCache.Hit hit = cache.get(key, "return 1");
+
+        // 验证结果
+        assertEquals(86400, ttl);
+        assertNotNull(hit);
+        assertEquals("looks safe", hit.analysis());
+        assertEquals(AnalysisCache.TIER_LOCAL, hit.tier());
+        assertTrue(hit.ttlSeconds() > 86000);
+        assertEquals(AnalysisCache.MATCH_EXACT, hit.match());
+        assertEquals(12.0, meterRegistry.get("llm.analysis.cache.saved").counter().count());
+        ArgumentCaptor<Object> json = ArgumentCaptor.forClass(Object.class);
+        verify(valueOperations).set(eq(key), json.capture(), eq(Duration.ofSeconds(86400)));
+        assertTrue(json.getValue().toString().contains("looks safe"));
+        verify(valueOperations, never()).get(anyString());
+    }
+
+    @Test
+    @DisplayName("测试 get - 本地未命中时读取 Redis 并回填本地")
+    void testRedisHitFillsLocal() {
+        // 准备测试数据：另一个节点写入的分析，还剩约 100 秒
+        AnalysisCache cache = new AnalysisCache(config, redisTemplate, meterRegistry);
+        String key = cache.key("return 1", llmService);
+        long expiresAt = System.currentTimeMillis() + 100_000;
+        when(valueOperations.get(key)).thenReturn("{\"analysis\":\"from node B\",\"expiresAt\":" + expiresAt + "}");
+
+        // 执行
+        AnalysisCache.Hit first = cache.get(key, "return 1");
+        AnalysisCache.Hit second = cache.get(key, "return 1");
+
+        // 验证结果
+        assertEquals(AnalysisCache.TIER_REDIS, first.tier());
+        assertEquals("from node B", first.analysis());
+        assertTrue(first.ttlSeconds() <= 100 && first.ttlSeconds() >= 98);
+        assertEquals(AnalysisCache.TIER_LOCAL, second.tier());
+        verify(valueOperations, times(1)).get(key);
+    }
+
+    @Test
+    @DisplayName("测试 Redis 故障 - 降级为未命中，写入失败不抛异常")
+    void testRedisFailureDegradesToMiss() {
+        AnalysisCache cache = new AnalysisCache(config, redisTemplate, meterRegistry);
+        String key = cache.key("return 1", llmService);
+        when(valueOperations.get(key)).thenThrow(new RedisConnectionFailureException("down"));
+        doThrow(new RedisConnectionFailureException("down")).when(valueOperations).set(anyString(), any(), any(Duration.class));
+
+        // 执行 & 验证
+        assertNull(cache.get(key, "return 1"));
+        assertEquals(86400, cache.put(key, "return 1", "fresh", 100));
+        assertEquals(AnalysisCache.TIER_LOCAL, cache.get(key, "return 1").tier());
+    }
+
+    @Test
+    @DisplayName("测试禁用缓存 - 不访问 Redis")
+    void testDisabled() {
+        AnalysisCache cache = AnalysisCache.disabled();
+
+        // 执行 & 验证
+        assertNull(cache.key("return 1", llmService));
+        assertEquals(0, cache.put("k", "return 1", "analysis", 100));
+        assertNull(cache.get("k", "return 1"));
+        verifyNoInteractions(redisTemplate);
+    }
+
+    @Test
+    @DisplayName("测试规范化键 - 只差空白、注释、变量名和数值字面量的脚本命中同一分析")
+    void testNormalizedKeyHit() {
+        // 准备测试数据
+        AnalysisCache cache = new AnalysisCache(config, redisTemplate, meterRegistry);
+        String original = "def user = redis.hgetAll('user:1')\nreturn user.name.take(10)";
+        String variant = "// 查询用户\ndef u   = redis.hgetAll(\"user:1\")  \n\nreturn u.name.take(20)";
+        String different = "def user = redis.hgetAll('user:1')\nreturn user.city.take(10)";
+        cache.put(cache.key(original, llmService), original, "analysis of original", 8_000);
+
+        // 执行
+        AnalysisCache.Hit hit = cache.get(cache.key(variant, llmService), variant);
+        AnalysisCache.Hit miss = cache.get(cache.key(different, llmService), different);
+
+        // 验证结果
+        assertNotNull(hit);
+        assertEquals("analysis of original", hit.analysis());
+        assertEquals(AnalysisCache.MATCH_NORMALIZED, hit.match());
+        assertNull(miss);
+        assertEquals(1.0, meterRegistry.get("llm.analysis.cache").tag("result", "hit").tag("match", "normalized").counter().count());
+        assertEquals(1.0, meterRegistry.get("llm.analysis.cache").tag("result", "miss").counter().count());
+        assertEquals(8.0, meterRegistry.get("llm.analysis.cache.saved").counter().count());
+    }
+}
@@ -0,0 +1,161 @@
+package org.example.service.llm;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.config.LlmConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 单元测试类：HedgePolicy
+ * 测试对冲延迟的分位计算、对冲触发与取消、每分钟预算
+ */
+@DisplayName("LLM 对冲请求单元测试")
+class HedgePolicyTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private LlmConfig.HedgeConfig config;
+    private HedgePolicy policy;
+    private LlmService vllm;
+    private LlmService ollama;
+    private List<String> outcomes;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        config = new LlmConfig.HedgeConfig();
+        config.setInitialDelayMs(50);
+        config.setMinDelayMs(10);
+        config.setMinSamples(10);
+        policy = new HedgePolicy(config, meterRegistry, System::currentTimeMillis);
+        vllm = mock(LlmService.class);
+        ollama = mock(LlmService.class);
+        when(vllm.getProvider()).thenReturn(LlmProvider.VLLM);
+        when(ollama.getProvider()).thenReturn(LlmProvider.OLLAMA);
+        outcomes = new ArrayList<>();
+    }
+
+    private void report(LlmService service, Throwable error) {
+        outcomes.add(service.getProvider() + (error == null ? ":ok" : ":failed"));
+    }
+
+    @Test
+    @DisplayName("测试对冲延迟 - 样本不足时用初始延迟，之后取分位耗时")
+    void testHedgeDelay() {
+        // 准备测试数据
+        for (int i = 1; i < 10; i++) {
+            policy.recordLatency(LlmProvider.VLLM, i * 100);
+        }
+        assertEquals(50, policy.hedgeDelayMs(LlmProvider.VLLM));
+
+        // 执行
+        for (int i = 10; i <= 100; i++) {
+            policy.recordLatency(LlmProvider.VLLM, i * 100);
+        }
+
+        // 验证结果
+        assertEquals(9500, policy.hedgeDelayMs(LlmProvider.VLLM));
+        assertEquals(50, policy.hedgeDelayMs(LlmProvider.OLLAMA));
+    }
+
+    @Test
+    @DisplayName("测试对冲 - 主提供者迟迟不返回时调用备用提供者，先成功者胜出并取消另一个")
+    void testSlowPrimary_HedgeWins() throws Exception {
+        // 准备测试数据：vLLM 卡住
+        CompletableFuture<String> stalled = new CompletableFuture<>();
+        CompletableFuture<String> hedge = new CompletableFuture<>();
+
+        // 执行
+        CompletableFuture<HedgePolicy.Answer> answer = policy.race(vllm, () -> ollama,
+                service -> service == vllm ? stalled : hedge, this::report);
+        Thread.sleep(20);
+        assertFalse(answer.isDone());
+        TimeUnit.MILLISECONDS.sleep(200);
+        hedge.complete("from ollama");
+
+        // 验证结果
+        assertEquals("from ollama", answer.get(1, TimeUnit.SECONDS).text());
+        assertSame(ollama, answer.get().service());
+        assertTrue(stalled.isCancelled());
+        assertEquals(List.of("OLLAMA:ok"), outcomes);
+        assertEquals(1.0, meterRegistry.get("llm.hedge").tag("outcome", "fired").counter().count());
+        assertEquals(1.0, meterRegistry.get("llm.hedge").tag("outcome", "hedge_won").counter().count());
+    }
+
+    @Test
+    @DisplayName("测试截尾样本 - 被取消的主调用记录已等待的时间，分位耗时不会因慢调用被取消而下降")
+    void testCancelledPrimary_RecordsCensoredLatency() throws Exception {
+        // 准备测试数据：一个样本就参与分位计算
+        config.setMinSamples(1);
+        CompletableFuture<String> stalled = new CompletableFuture<>();
+        CompletableFuture<String> hedge = new CompletableFuture<>();
+
+        // 执行
+        CompletableFuture<HedgePolicy.Answer> answer = policy.race(vllm, () -> ollama,
+                service -> service == vllm ? stalled : hedge, this::report);
+        TimeUnit.MILLISECONDS.sleep(200);
+        hedge.complete("from ollama");
+        answer.get(1, TimeUnit.SECONDS);
+
+        // 验证结果：vLLM 至少等了 200ms，备用提供者的耗时照常记录
+        assertTrue(stalled.isCancelled());
+        assertTrue(policy.hedgeDelayMs(LlmProvider.VLLM) >= 200, "delay: " + policy.hedgeDelayMs(LlmProvider.VLLM));
+        assertTrue(policy.hedgeDelayMs(LlmProvider.OLLAMA) < 200, "delay: " + policy.hedgeDelayMs(LlmProvider.OLLAMA));
+    }
+
+    @Test
+    @DisplayName("测试对冲 - 主提供者在对冲延迟内返回时不对冲")
+    void testFastPrimary_NoHedge() throws Exception {
+        // 执行
+        CompletableFuture<HedgePolicy.Answer> answer = policy.race(vllm, () -> ollama,
+                service -> CompletableFuture.completedFuture("from " + service.getProvider()), this::report);
+        TimeUnit.MILLISECONDS.sleep(100);
+
+        // 验证结果
+        assertEquals("from VLLM", answer.get().text());
+        assertEquals(List.of("VLLM:ok"), outcomes);
+        assertTrue(meterRegistry.find("llm.hedge").counters().isEmpty());
+    }
+
+    @Test
+    @DisplayName("测试对冲预算 - 每分钟超过上限后不再对冲，等待主提供者")
+    void testBudgetExhausted() throws Exception {
+        // 准备测试数据
+        config.setMaxHedgesPerMinute(0);
+        CompletableFuture<String> slow = new CompletableFuture<>();
+
+        // 执行
+        CompletableFuture<HedgePolicy.Answer> answer = policy.race(vllm, () -> ollama, service -> slow, this::report);
+        TimeUnit.MILLISECONDS.sleep(200);
+        slow.complete("late but fine");
+
+        // 验证结果
+        assertEquals("late but fine", answer.get(1, TimeUnit.SECONDS).text());
+        assertEquals(1.0, meterRegistry.get("llm.hedge").tag("outcome", "budget_exhausted").counter().count());
+        assertEquals(List.of("VLLM:ok"), outcomes);
+    }
+
+    @Test
+    @DisplayName("测试失败 - 主提供者在对冲前失败时直接失败，不对冲")
+    void testPrimaryFailsBeforeHedge() {
+        // 执行
+        CompletableFuture<HedgePolicy.Answer> answer = policy.race(vllm, () -> ollama,
+                service -> CompletableFuture.failedFuture(new IOException("vLLM API request failed: 500")), this::report);
+
+        // 验证结果
+        ExecutionException error = assertThrows(ExecutionException.class, () -> answer.get(1, TimeUnit.SECONDS));
+        assertEquals("vLLM API request failed: 500", error.getCause().getMessage());
+        assertEquals(List.of("VLLM:failed"), outcomes);
+        verify(ollama, never()).analyzeScriptAsync(anyString());
+    }
+}
@@ -0,0 +1,155 @@
+package org.example.service.llm;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.example.config.LlmConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 单元测试类：LlmHttpClients
+ * 测试共享调度器、每个提供者独立的连接池与超时、连接复用指标
+ */
+@DisplayName("LLM 共享 HTTP 客户端单元测试")
+class LlmHttpClientsTest {
+
+    private HttpServer server;
+    private SimpleMeterRegistry meterRegistry;
+    private LlmConfig llmConfig;
+    private LlmHttpClients httpClients;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/chat/completions", exchange -> {
+            exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, 0);
+            for (String token : new String[]{"Looks", " safe", "."}) {
+                exchange.getResponseBody().write(("data: {\"choices\":[{\"delta\":{\"content\":\"" + token + "\"}}]}\n\n")
+                        .getBytes(StandardCharsets.UTF_8));
+                exchange.getResponseBody().flush();
+            }
+            exchange.getResponseBody().write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+            exchange.close();
+        });
+        server.createContext("/broken", exchange -> {
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+        });
+        server.createContext("/", exchange -> {
+            byte[] body = "ok".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+
+        meterRegistry = new SimpleMeterRegistry();
+        llmConfig = new LlmConfig();
+        LlmConfig.ProviderHttpConfig vllm = new LlmConfig.ProviderHttpConfig();
+        vllm.setMaxIdleConnections(2);
+        vllm.setTimeoutSeconds(120);
+        llmConfig.getHttp().getProviders().put(LlmProvider.VLLM, vllm);
+        httpClients = new LlmHttpClients(llmConfig, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        httpClients.shutdown();
+        server.stop(0);
+    }
+
+    @Test
+    @DisplayName("测试提供者客户端 - 共享调度器，连接池与超时按提供者区分")
+    void testForProvider() {
+        // 执行
+        OkHttpClient ollama = httpClients.forProvider(LlmProvider.OLLAMA);
+        OkHttpClient vllm = httpClients.forProvider(LlmProvider.VLLM);
+
+        // 验证结果
+        assertSame(ollama, httpClients.forProvider(LlmProvider.OLLAMA));
+        assertSame(ollama.dispatcher(), vllm.dispatcher());
+        assertNotSame(ollama.connectionPool(), vllm.connectionPool());
+        assertEquals(60_000, ollama.readTimeoutMillis());
+        assertEquals(120_000, vllm.callTimeoutMillis());
+        assertEquals(5_000, vllm.connectTimeoutMillis());
+        assertEquals(2.0, meterRegistry.get("llm.http.pool.max_idle").tag("provider", "VLLM").gauge().value());
+        assertEquals(5.0, meterRegistry.get("llm.http.pool.max_idle").tag("provider", "OLLAMA").gauge().value());
+    }
+
+    @Test
+    @DisplayName("测试连接复用 - 第二次调用复用 keep-alive 连接并记录指标")
+    void testConnectionReuse() throws Exception {
+        // 准备测试数据
+        Request request = new Request.Builder().url("http://127.0.0.1:" + server.getAddress().getPort() + "/v1/models").build();
+
+        // 执行
+        for (int i = 0; i < 3; i++) {
+            try (Response response = httpClients.probe(LlmProvider.OLLAMA, request).execute()) {
+                assertEquals("ok", response.body().string());
+            }
+        }
+
+        // 验证结果
+        assertEquals(1.0, meterRegistry.get("llm.http.connections").tags("provider", "OLLAMA", "reused", "false").counter().count());
+        assertEquals(2.0, meterRegistry.get("llm.http.connections").tags("provider", "OLLAMA", "reused", "true").counter().count());
+        assertEquals(1.0, meterRegistry.get("llm.http.pool.connections").tags("provider", "OLLAMA", "state", "idle").gauge().value());
+        assertEquals(0.0, meterRegistry.get("llm.http.pool.connections").tags("provider", "OLLAMA", "state", "active").gauge().value());
+    }
+
+    @Test
+    @DisplayName("测试探测调用 - 使用更短的单次调用超时")
+    void testProbeTimeout() {
+        Request request = new Request.Builder().url("http://127.0.0.1:" + server.getAddress().getPort() + "/").build();
+
+        // 执行 & 验证
+        assertEquals(TimeUnit.SECONDS.toNanos(3), httpClients.probe(LlmProvider.OLLAMA, request).timeout().timeoutNanos());
+    }
+
+    @Test
+    @DisplayName("测试流式调用 - 逐个交付 token，返回完整文本并记录首 token 延迟")
+    void testStream() throws Exception {
+        // 准备测试数据
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/v1/chat/completions";
+        Request request = new Request.Builder().url(url).build();
+        List<String> tokens = new ArrayList<>();
+        LlmHttpClients.LineParser parser = line -> line.startsWith("data: {")
+                ? line.replaceAll(".*\"content\":\"([^\"]*)\".*", "$1") : null;
+
+        // 执行
+        String text = httpClients.stream(LlmProvider.VLLM, httpClients.forProvider(LlmProvider.VLLM).newCall(request), parser, tokens::add)
+                .get(5, TimeUnit.SECONDS);
+
+        // 验证结果
+        assertEquals(List.of("Looks", " safe", "."), tokens);
+        assertEquals("Looks safe.", text);
+        assertEquals(1, meterRegistry.get("llm.analysis.first_token").tag("provider", "VLLM").timer().count());
+    }
+
+    @Test
+    @DisplayName("测试流式调用 - 非 2xx 响应以异常结束")
+    void testStream_HttpError() {
+        Request request = new Request.Builder().url("http://127.0.0.1:" + server.getAddress().getPort() + "/broken").build();
+
+        // 执行 & 验证
+        ExecutionException error = assertThrows(ExecutionException.class, () -> httpClients
+                .stream(LlmProvider.OLLAMA, httpClients.forProvider(LlmProvider.OLLAMA).newCall(request), line -> line, token -> {
+                })
+                .get(5, TimeUnit.SECONDS));
+        assertTrue(error.getCause().getMessage().contains("503"));
+    }
+}
@@ -1,5 +1,6 @@
 package org.example.service.llm;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.example.config.LlmConfig;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -248,5 +249,44 @@ class LlmServiceFactoryTest {
         assertEquals(claudeLlmService, claude);
         assertEquals(ollamaLlmService, ollama);
     }
-}
 
+    @Test
+    @DisplayName("测试熔断 - 主服务连续失败后回退，且选择时不再探测")
+    void testGetPrimaryService_CircuitOpen_FallbackWithoutProbing() {
+        // 准备测试数据：默认连续 3 次失败打开熔断器
+        when(llmConfig.getPrimaryProvider()).thenReturn(LlmProvider.OLLAMA);
+        when(ollamaLlmService.isAvailable()).thenReturn(true);
+        when(openAILlmService.isAvailable()).thenReturn(true);
+        assertEquals(ollamaLlmService, llmServiceFactory.getPrimaryService());
+
+        // 执行
+        for (int i = 0; i < 3; i++) {
+            llmServiceFactory.recordFailure(LlmProvider.OLLAMA);
+        }
+        LlmService first = llmServiceFactory.getPrimaryService();
+        LlmService second = llmServiceFactory.getPrimaryService();
+
+        // 验证结果
+        assertEquals(ProviderHealth.State.OPEN, llmServiceFactory.getState(LlmProvider.OLLAMA));
+        assertEquals(openAILlmService, first);
+        assertEquals(openAILlmService, second);
+        verify(ollamaLlmService, times(1)).isAvailable();
+        verify(openAILlmService, times(1)).isAvailable();
+    }
+
+    @Test
+    @DisplayName("测试根据提供者获取服务 - LMDeploy 与 SGLang")
+    void testGetService_LmdeployAndSglang() {
+        // 准备测试数据
+        LmdeployLlmService lmdeployLlmService = mock(LmdeployLlmService.class);
+        SglangLlmService sglangLlmService = mock(SglangLlmService.class);
+        LlmServiceFactory factory = new LlmServiceFactory(llmConfig, openAILlmService, claudeLlmService,
+                compassLlmService, ollamaLlmService, vllmLlmService, lmdeployLlmService, sglangLlmService,
+                new SimpleMeterRegistry());
+
+        // 执行 & 验证
+        assertEquals(lmdeployLlmService, factory.getService(LlmProvider.LLMDEPLOY));
+        assertEquals(sglangLlmService, factory.getService(LlmProvider.SGLANG));
+        assertThrows(IllegalArgumentException.class, () -> llmServiceFactory.getService(LlmProvider.SGLANG));
+    }
+}
@@ -0,0 +1,130 @@
+package org.example.service.llm;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.config.LlmConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 单元测试类：OpenAICompatibleLlmService
+ * 以本地 HTTP 服务器模拟 OpenAI 兼容后端，测试请求体生成与响应解析
+ */
+@DisplayName("OpenAI 兼容提供者单元测试")
+class OpenAICompatibleLlmServiceTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, JsonNode> requests = new ConcurrentHashMap<>();
+    private HttpServer server;
+    private LlmConfig llmConfig;
+    private LlmHttpClients httpClients;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/chat/completions", exchange -> {
+            JsonNode request = objectMapper.readTree(exchange.getRequestBody());
+            requests.put("chat", request);
+            respond(exchange, "{\"id\":\"cmpl-1\",\"usage\":{\"prompt_tokens\":12,\"details\":[1,2]},"
+                    + "\"choices\":[{\"index\":0,\"logprobs\":null,\"message\":{\"role\":\"assistant\",\"content\":\"Looks \\\"safe\\\".\"}}]}");
+        });
+        server.createContext("/compass", exchange -> respond(exchange, "{\"id\":\"x\",\"result\":\"安全\"}"));
+        server.start();
+
+        llmConfig = new LlmConfig();
+        LlmConfig.SglangConfig sglang = new LlmConfig.SglangConfig();
+        sglang.setApiUrl(url("/v1/chat/completions"));
+        llmConfig.setSglang(sglang);
+        httpClients = new LlmHttpClients(llmConfig, new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        httpClients.shutdown();
+        server.stop(0);
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+
+    @Test
+    @DisplayName("测试同步分析 - 生成转义正确的请求体，只读取 choices[0].message.content")
+    void testAnalyzeScript() throws Exception {
+        // 准备测试数据
+        String script = "def s = \"a\\tb\"\nreturn redis.get(s)";
+
+        // 执行
+        String analysis = new SglangLlmService(llmConfig, httpClients).analyzeScript(script);
+
+        // 验证结果
+        assertEquals("Looks \"safe\".", analysis);
+        JsonNode request = requests.get("chat");
+        assertEquals("meta-llama/Llama-3.1-8B-Instruct", request.get("model").asText());
+        assertTrue(request.get("messages").get(0).get("content").asText().contains(script));
+        assertEquals(0.3, request.get("temperature").asDouble());
+        assertEquals(2000, request.get("max_tokens").asInt());
+        assertFalse(request.get("stream").asBoolean());
+    }
+
+    @Test
+    @DisplayName("测试响应解析 - Compass 以顶层 result 字段返回")
+    void testFallbackField() throws Exception {
+        // 准备测试数据
+        LlmConfig.CompassConfig compass = new LlmConfig.CompassConfig();
+        compass.setApiUrl(url("/compass"));
+        compass.setApiKey("key");
+        llmConfig.setCompass(compass);
+
+        // 执行 & 验证
+        assertEquals("安全", new CompassLlmService(llmConfig, httpClients).analyzeScript("return 1"));
+    }
+
+    @Test
+    @DisplayName("测试异步分析 - 每个分析直接作为自己的聊天请求发出")
+    void testAnalyzeScriptAsync() throws Exception {
+        // 执行
+        CompletableFuture<String> answer = new SglangLlmService(llmConfig, httpClients).analyzeScriptAsync("return 1");
+
+        // 验证结果
+        assertEquals("Looks \"safe\".", answer.get(5, TimeUnit.SECONDS));
+        assertTrue(requests.get("chat").get("messages").get(0).get("content").asText().contains("return 1"));
+    }
+
+    @Test
+    @DisplayName("测试可用性 - 本地服务器以 /v1/models 探测，未配置时不可用")
+    void testIsAvailable() {
+        server.createContext("/v1/models", exchange -> respond(exchange, "{\"data\":[]}"));
+
+        // 执行 & 验证
+        assertTrue(new SglangLlmService(llmConfig, httpClients).isAvailable());
+        assertFalse(new LmdeployLlmService(llmConfig, httpClients).isAvailable());
+        assertEquals(List.of(LlmProvider.SGLANG, LlmProvider.LLMDEPLOY), List.of(
+                new SglangLlmService(llmConfig, httpClients).getProvider(),
+                new LmdeployLlmService(llmConfig, httpClients).getProvider()));
+    }
+}
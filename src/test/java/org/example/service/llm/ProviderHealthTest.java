@@ -0,0 +1,138 @@
+package org.example.service.llm;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.config.LlmConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 单元测试类：ProviderHealth
+ * 测试熔断器的关闭、打开、半开转换，以及选择提供者时不重复探测
+ */
+@DisplayName("LLM 提供者健康检查单元测试")
+class ProviderHealthTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private SimpleMeterRegistry meterRegistry;
+    private LlmService ollama;
+    private LlmService vllm;
+    private ProviderHealth health;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        ollama = mock(LlmService.class);
+        vllm = mock(LlmService.class);
+        when(ollama.isAvailable()).thenReturn(true);
+        when(vllm.isAvailable()).thenReturn(false);
+
+        LlmConfig.HealthConfig config = new LlmConfig.HealthConfig();
+        config.setFailureThreshold(2);
+        config.setOpenSeconds(30);
+        Map<LlmProvider, LlmService> services = new EnumMap<>(LlmProvider.class);
+        services.put(LlmProvider.OLLAMA, ollama);
+        services.put(LlmProvider.VLLM, vllm);
+        health = new ProviderHealth(config, services, meterRegistry, now::get);
+    }
+
+    @Test
+    @DisplayName("测试可用性查询 - 每个提供者只在首次查询时探测一次")
+    void testAvailability_ProbedOnce() {
+        // 执行
+        for (int i = 0; i < 5; i++) {
+            assertTrue(health.isAvailable(LlmProvider.OLLAMA));
+            assertFalse(health.isAvailable(LlmProvider.VLLM));
+        }
+
+        // 验证结果
+        verify(ollama, times(1)).isAvailable();
+        verify(vllm, times(1)).isAvailable();
+        assertFalse(health.isAvailable(LlmProvider.OPENAI));
+        assertEquals(1.0, meterRegistry.get("llm.provider.reachable").tag("provider", "OLLAMA").gauge().value());
+    }
+
+    @Test
+    @DisplayName("测试熔断器 - 连续失败打开，超时后半开，试探成功关闭")
+    void testBreaker_OpenHalfOpenClosed() {
+        assertTrue(health.isAvailable(LlmProvider.OLLAMA));
+
+        // 执行：一次失败后成功会清零计数
+        health.recordFailure(LlmProvider.OLLAMA);
+        health.recordSuccess(LlmProvider.OLLAMA);
+        health.recordFailure(LlmProvider.OLLAMA);
+        assertEquals(ProviderHealth.State.CLOSED, health.getState(LlmProvider.OLLAMA));
+
+        // 连续第二次失败打开熔断器
+        health.recordFailure(LlmProvider.OLLAMA);
+        assertEquals(ProviderHealth.State.OPEN, health.getState(LlmProvider.OLLAMA));
+        assertFalse(health.isAvailable(LlmProvider.OLLAMA));
+        assertEquals(2.0, meterRegistry.get("llm.provider.circuit").tag("provider", "OLLAMA").gauge().value());
+
+        // 30 秒后半开，放行试探调用
+        now.addAndGet(30_000);
+        assertTrue(health.isAvailable(LlmProvider.OLLAMA));
+        assertEquals(ProviderHealth.State.HALF_OPEN, health.getState(LlmProvider.OLLAMA));
+
+        health.recordSuccess(LlmProvider.OLLAMA);
+
+        // 验证结果
+        assertEquals(ProviderHealth.State.CLOSED, health.getState(LlmProvider.OLLAMA));
+        assertTrue(health.isAvailable(LlmProvider.OLLAMA));
+    }
+
+    @Test
+    @DisplayName("测试熔断器 - 半开状态下试探失败立即重新打开")
+    void testBreaker_HalfOpenFailureReopens() {
+        // 准备测试数据
+        health.recordFailure(LlmProvider.OLLAMA);
+        health.recordFailure(LlmProvider.OLLAMA);
+        now.addAndGet(30_000);
+        assertEquals(ProviderHealth.State.HALF_OPEN, health.getState(LlmProvider.OLLAMA));
+
+        // 执行
+        health.recordFailure(LlmProvider.OLLAMA);
+
+        // 验证结果：重新计时
+        assertEquals(ProviderHealth.State.OPEN, health.getState(LlmProvider.OLLAMA));
+        now.addAndGet(29_000);
+        assertEquals(ProviderHealth.State.OPEN, health.getState(LlmProvider.OLLAMA));
+    }
+
+    @Test
+    @DisplayName("测试熔断器 - 半开状态只放行一个试探调用，试探结束或超时后才放行下一个")
+    void testBreaker_HalfOpenSingleTrial() {
+        // 准备测试数据
+        health.recordFailure(LlmProvider.OLLAMA);
+        health.recordFailure(LlmProvider.OLLAMA);
+        now.addAndGet(30_000);
+
+        // 执行 & 验证：第一个调用方拿到试探名额，其余调用方视为不可用
+        assertTrue(health.isAvailable(LlmProvider.OLLAMA));
+        assertTrue(health.tryAcquire(LlmProvider.OLLAMA));
+        assertFalse(health.tryAcquire(LlmProvider.OLLAMA));
+        assertFalse(health.isAvailable(LlmProvider.OLLAMA));
+
+        // 试探调用一直没有结果，超时后名额作废
+        now.addAndGet(30_000);
+        assertTrue(health.tryAcquire(LlmProvider.OLLAMA));
+        assertFalse(health.tryAcquire(LlmProvider.OLLAMA));
+
+        // 抢到名额却没有发出调用（命中缓存）时交还，下一个调用方立即拿到试探名额
+        health.release(LlmProvider.OLLAMA);
+        assertTrue(health.tryAcquire(LlmProvider.OLLAMA));
+        assertFalse(health.tryAcquire(LlmProvider.OLLAMA));
+
+        // 试探成功后关闭，所有调用方都可用
+        health.recordSuccess(LlmProvider.OLLAMA);
+        assertTrue(health.tryAcquire(LlmProvider.OLLAMA));
+        assertTrue(health.tryAcquire(LlmProvider.OLLAMA));
+    }
+}
@@ -0,0 +1,226 @@
+package org.example.service.llm;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.example.config.LlmConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 单元测试类：ProviderLimiter
+ * 测试令牌桶、重试延迟计算、429 重试以及并发名额的排队、取消与归还
+ */
+@DisplayName("LLM 提供者限流与重试单元测试")
+class ProviderLimiterTest {
+
+    private final AtomicInteger throttled = new AtomicInteger();
+    private final AtomicInteger overloaded = new AtomicInteger();
+    private HttpServer server;
+    private SimpleMeterRegistry meterRegistry;
+    private LlmConfig llmConfig;
+    private LlmHttpClients httpClients;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/throttled", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            if (throttled.getAndIncrement() == 0) {
+                exchange.getResponseHeaders().add("Retry-After", "0");
+                exchange.sendResponseHeaders(429, -1);
+            } else {
+                byte[] body = "ok".getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+            exchange.close();
+        });
+        server.createContext("/overloaded", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            overloaded.incrementAndGet();
+            exchange.getResponseHeaders().add("Retry-After", "1");
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+        });
+        server.createContext("/", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            byte[] body = "ok".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+
+        meterRegistry = new SimpleMeterRegistry();
+        llmConfig = new LlmConfig();
+        LlmConfig.ProviderHttpConfig limits = new LlmConfig.ProviderHttpConfig();
+        limits.setMaxConcurrent(1);
+        llmConfig.getHttp().getProviders().put(LlmProvider.OPENAI, limits);
+        llmConfig.getHttp().getRetry().setInitialBackoffMs(10);
+        httpClients = new LlmHttpClients(llmConfig, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        httpClients.shutdown();
+        server.stop(0);
+    }
+
+    private Request analysis(String path) {
+        return new Request.Builder()
+                .url("http://127.0.0.1:" + server.getAddress().getPort() + path)
+                .tag(ProviderLimiter.Cost.class, ProviderLimiter.Cost.of(List.of("return 1"), 100))
+                .post(RequestBody.create("{}", MediaType.parse("application/json")))
+                .build();
+    }
+
+    /**
+     * Parser that keeps the call's slot until hold is released
+     */
+    private static String held(CountDownLatch hold, Response response) throws IOException {
+        try {
+            hold.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return response.body().string();
+    }
+
+    @Test
+    @DisplayName("测试令牌桶 - 用完后按每分钟速率补充，透支的预订按到达顺序排到补足时刻，超过容量的请求按容量计")
+    void testTokenBucket() {
+        // 准备测试数据
+        AtomicLong now = new AtomicLong(0);
+        ProviderLimiter.TokenBucket bucket = new ProviderLimiter.TokenBucket(60, now::get);
+
+        // 执行 & 验证
+        assertEquals(0, bucket.reserve(60));
+        assertEquals(1000, bucket.reserve(1));
+        assertEquals(2000, bucket.reserve(1));
+        now.addAndGet(3000);
+        assertEquals(0, bucket.reserve(1));
+        now.addAndGet(60_000);
+        assertEquals(0, bucket.reserve(500));
+        assertEquals(30_000, bucket.reserve(30));
+    }
+
+    @Test
+    @DisplayName("测试重试延迟 - 优先 Retry-After，否则指数退避加抖动，且不超过上限")
+    void testRetryDelay() {
+        // 准备测试数据
+        LlmConfig.RetryConfig retry = new LlmConfig.RetryConfig();
+        ProviderLimiter limiter = new ProviderLimiter(LlmProvider.OPENAI, null, retry, null, meterRegistry, System::currentTimeMillis);
+
+        // 执行 & 验证
+        assertEquals(2000, limiter.retryDelayMs("2", 0));
+        assertEquals(30_000, limiter.retryDelayMs("120", 0));
+        for (int i = 0; i < 20; i++) {
+            long first = limiter.retryDelayMs(null, 0);
+            long third = limiter.retryDelayMs("soon", 2);
+            long late = limiter.retryDelayMs(null, 10);
+            assertTrue(first >= 250 && first <= 500, "attempt 0: " + first);
+            assertTrue(third >= 1000 && third <= 2000, "attempt 2: " + third);
+            assertTrue(late >= 15_000 && late <= 30_000, "attempt 10: " + late);
+        }
+    }
+
+    @Test
+    @DisplayName("测试重试 - 429 响应按 Retry-After 重试后成功")
+    void testRetryOn429() throws Exception {
+        // 执行
+        String body = httpClients.execute(LlmProvider.OPENAI,
+                httpClients.forProvider(LlmProvider.OPENAI).newCall(analysis("/throttled")), response -> response.body().string());
+
+        // 验证结果
+        assertEquals("ok", body);
+        assertEquals(2, throttled.get());
+        assertEquals(1.0, meterRegistry.get("llm.http.retries").tags("provider", "OPENAI", "status", "429").counter().count());
+    }
+
+    @Test
+    @DisplayName("测试重试退避 - 等待期间不占用调度器，取消后不再重试")
+    void testRetryBackoff_CancelStopsRetry() throws Exception {
+        // 执行
+        CompletableFuture<String> answer = httpClients.enqueue(LlmProvider.OPENAI,
+                httpClients.forProvider(LlmProvider.OPENAI).newCall(analysis("/overloaded")), response -> response.body().string());
+        TimeUnit.MILLISECONDS.sleep(300);
+
+        // 验证结果：第一次 503 之后在定时器上等待 Retry-After，调度器上没有运行中的调用
+        assertEquals(1, overloaded.get());
+        assertEquals(0.0, meterRegistry.get("llm.http.calls.running").gauge().value());
+        answer.cancel(true);
+        TimeUnit.MILLISECONDS.sleep(1200);
+        assertEquals(1, overloaded.get());
+        assertEquals(0.0, meterRegistry.get("llm.limit.queued").tag("provider", "OPENAI").gauge().value());
+    }
+
+    @Test
+    @DisplayName("测试并发限制 - 名额占满时在 enqueue 之前排队，不占用调度器；处理完响应后归还；探测调用不受限制")
+    void testMaxConcurrent() throws Exception {
+        // 准备测试数据：第一个调用的响应处理保持未完成
+        CountDownLatch hold = new CountDownLatch(1);
+        CompletableFuture<String> first = httpClients.enqueue(LlmProvider.OPENAI,
+                httpClients.forProvider(LlmProvider.OPENAI).newCall(analysis("/")), response -> held(hold, response));
+        TimeUnit.MILLISECONDS.sleep(100);
+
+        // 执行
+        CompletableFuture<String> second = httpClients.enqueue(LlmProvider.OPENAI,
+                httpClients.forProvider(LlmProvider.OPENAI).newCall(analysis("/")), response -> response.body().string());
+        TimeUnit.MILLISECONDS.sleep(200);
+
+        // 验证结果
+        assertFalse(second.isDone());
+        assertEquals(1.0, meterRegistry.get("llm.limit.queued").tag("provider", "OPENAI").gauge().value());
+        assertEquals(1.0, meterRegistry.get("llm.http.calls.running").gauge().value());
+        Request probe = new Request.Builder().url("http://127.0.0.1:" + server.getAddress().getPort() + "/v1/models").build();
+        try (Response response = httpClients.probe(LlmProvider.OPENAI, probe).execute()) {
+            assertEquals(200, response.code());
+        }
+
+        hold.countDown();
+        assertEquals("ok", first.get(5, TimeUnit.SECONDS));
+        assertEquals("ok", second.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    @DisplayName("测试取消 - 排队中的调用取消后移出队列，名额交给下一个调用")
+    void testCancelQueued() throws Exception {
+        // 准备测试数据
+        CountDownLatch hold = new CountDownLatch(1);
+        CompletableFuture<String> first = httpClients.enqueue(LlmProvider.OPENAI,
+                httpClients.forProvider(LlmProvider.OPENAI).newCall(analysis("/")), response -> held(hold, response));
+        CompletableFuture<String> second = httpClients.enqueue(LlmProvider.OPENAI,
+                httpClients.forProvider(LlmProvider.OPENAI).newCall(analysis("/")), response -> response.body().string());
+        CompletableFuture<String> third = httpClients.enqueue(LlmProvider.OPENAI,
+                httpClients.forProvider(LlmProvider.OPENAI).newCall(analysis("/")), response -> response.body().string());
+
+        // 执行
+        second.cancel(true);
+
+        // 验证结果
+        assertEquals(1.0, meterRegistry.get("llm.limit.queued").tag("provider", "OPENAI").gauge().value());
+        hold.countDown();
+        assertEquals("ok", first.get(5, TimeUnit.SECONDS));
+        assertEquals("ok", third.get(5, TimeUnit.SECONDS));
+        assertThrows(CancellationException.class, second::join);
+    }
+}
@@ -0,0 +1,328 @@
+package org.example.service.redis;
+
+import org.example.service.ScriptEngineService.RedisOperations;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 单元测试类：Aggregation
+ * 测试脚本聚合助手的分组、数值解析与投影读取
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("脚本聚合助手单元测试")
+class AggregationTest {
+
+    @Mock
+    private RedisOperations redis;
+
+    @Mock
+    private LuaScanAggregator luaAggregator;
+
+    private Aggregations agg;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(redis.getPipelineBatchSize()).thenReturn(500);
+        agg = new Aggregations(redis);
+    }
+
+    @Test
+    @DisplayName("测试分组聚合 - 只投影读取用到的字段")
+    void testGroupByAvgCount() {
+        // 准备测试数据
+        List<String> keys = List.of("user:1", "user:2", "user:3", "user:4");
+        Map<String, Map<String, Object>> rows = new LinkedHashMap<>();
+        rows.put("user:1", Map.of("city", "北京", "age", "20"));
+        rows.put("user:2", Map.of("city", "北京", "age", "31"));
+        rows.put("user:3", Map.of("city", "上海", "age", "40"));
+        rows.put("user:4", Map.of());
+        when(redis.hgetAllMany(eq(keys), eq(List.of("age", "city")))).thenReturn(rows);
+
+        // 执行聚合
+        Map<String, Object> result = agg.over(keys).groupBy("city").avg("age").max("age").count().result();
+
+        // 验证结果
+        assertEquals(Map.of("count", 2L, "avg_age", 25.5, "max_age", 31L), result.get("北京"));
+        assertEquals(Map.of("count", 1L, "avg_age", 40.0, "max_age", 40L), result.get("上海"));
+        assertEquals(2, result.size());
+    }
+
+    @Test
+    @DisplayName("测试无分组聚合 - 非数值字段被忽略")
+    void testSumWithoutGroup() {
+        // 准备测试数据
+        List<String> keys = List.of("order:1", "order:2");
+        Map<String, Map<String, Object>> rows = new LinkedHashMap<>();
+        rows.put("order:1", Map.of("amount", "10.5"));
+        rows.put("order:2", Map.of("amount", "n/a"));
+        when(redis.hgetAllMany(eq(keys), eq(List.of("amount")))).thenReturn(rows);
+
+        // 执行聚合
+        Map<String, Object> result = agg.over(keys).sum("amount").count().result();
+
+        // 验证结果
+        assertEquals(2L, result.get("count"));
+        assertEquals(10.5, result.get("sum_amount"));
+    }
+
+    @Test
+    @DisplayName("测试仅计数 - 不读取 Hash 内容")
+    void testCountOnly() {
+        // 执行聚合
+        Map<String, Object> result = agg.over(List.of("user:1", "user:2")).count().result();
+
+        // 验证结果
+        assertEquals(Map.of("count", 2L), result);
+        verify(redis, never()).hgetAllMany(anyCollection(), anyList());
+    }
+
+    @Test
+    @DisplayName("测试数值解析")
+    void testParseNumber() {
+        assertEquals(42.0, Aggregation.parseNumber("42"));
+        assertEquals(-7.0, Aggregation.parseNumber("-7"));
+        assertEquals(3.5, Aggregation.parseNumber("3.5"));
+        assertEquals(8.0, Aggregation.parseNumber(8));
+        assertTrue(Double.isNaN(Aggregation.parseNumber("abc")));
+        assertTrue(Double.isNaN(Aggregation.parseNumber(null)));
+        assertTrue(Double.isNaN(Aggregation.parseNumber("-")));
+    }
+
+    @Test
+    @DisplayName("测试本地过滤条件 - 数值比较")
+    void testWhere_Local() {
+        // 准备测试数据
+        List<String> keys = List.of("user:1", "user:2");
+        Map<String, Map<String, Object>> rows = new LinkedHashMap<>();
+        rows.put("user:1", Map.of("age", "20", "salary", "5000"));
+        rows.put("user:2", Map.of("age", "35", "salary", "9000"));
+        when(redis.hgetAllMany(eq(keys), eq(List.of("salary", "age")))).thenReturn(rows);
+
+        // 执行聚合
+        Map<String, Object> result = agg.over(keys).where("age", ">", 30).sum("salary").count().result();
+
+        // 验证结果
+        assertEquals(Map.of("count", 1L, "sum_salary", 9000L), result);
+        assertThrows(IllegalArgumentException.class, () -> agg.over(keys).where("age", "=~", 1));
+    }
+
+    @Test
+    @DisplayName("测试 Lua 下推 - 合并多步 SCAN 的部分结果")
+    void testPushdown_MergesPartialResults() {
+        // 两步 SCAN，每步返回按城市分组的部分聚合
+        Aggregations pushdownAgg = new Aggregations(redis, luaAggregator, null, true);
+        when(luaAggregator.step(eq(List.of()), eq("0"), eq("user:*"), eq(500), eq("city"), eq(List.of("age")), anyList()))
+                .thenReturn(List.of("17", "3", "1", "北京", "2", "2", "51", "20", "31", "0"));
+        when(luaAggregator.step(eq(List.of()), eq("17"), eq("user:*"), eq(500), eq("city"), eq(List.of("age")), anyList()))
+                .thenReturn(List.of("0", "2", "1", "北京", "1", "1", "40.5", "40.5", "40.5", "1"));
+
+        // 执行聚合
+        Map<String, Object> result = pushdownAgg.over("user:*").groupBy("city").avg("age").max("age").count().result();
+
+        // 验证结果
+        assertEquals(Map.of("count", 3L, "avg_age", 91.5 / 3, "max_age", 40.5), result.get("北京"));
+        verify(redis, never()).hgetAllMany(anyCollection(), anyList());
+    }
+
+    @Test
+    @DisplayName("测试 Lua 下推 - 集群模式改走按节点 SCAN 与 pipeline 的本地计算")
+    @SuppressWarnings("unchecked")
+    void testPushdown_ClusterFallsBackToLocal() {
+        // 准备测试数据：集群中 EVALSHA 只会扫描一个节点，必须退回本地路径
+        Aggregations pushdownAgg = new Aggregations(redis, luaAggregator, null, true);
+        when(luaAggregator.isCluster()).thenReturn(true);
+        doAnswer(invocation -> {
+            Predicate<List<String>> consumer = invocation.getArgument(2);
+            consumer.test(List.of("user:1"));
+            consumer.test(List.of("user:2"));
+            return null;
+        }).when(redis).scanBatchesWhile(eq("user:*"), eq(500), any(Predicate.class));
+        when(redis.hgetAllMany(eq(List.of("user:1")), eq(List.of("age")))).thenReturn(Map.of("user:1", Map.of("age", "20")));
+        when(redis.hgetAllMany(eq(List.of("user:2")), eq(List.of("age")))).thenReturn(Map.of("user:2", Map.of("age", "40")));
+
+        // 执行聚合
+        Map<String, Object> result = pushdownAgg.over("user:*").avg("age").count().result();
+
+        // 验证结果：两个节点的键都计入
+        assertEquals(Map.of("count", 2L, "avg_age", 30.0), result);
+        verify(luaAggregator, never()).step(anyList(), anyString(), anyString(), anyInt(), any(), anyList(), anyList());
+    }
+
+    @Test
+    @DisplayName("测试 Lua 下推不可用时报错")
+    void testPushdown_NotAvailable() {
+        assertThrows(IllegalStateException.class, () -> agg.over("user:*").pushdown());
+    }
+
+    @Test
+    @DisplayName("测试近似模式 - 达到目标误差后提前停止并给出置信区间")
+    @SuppressWarnings("unchecked")
+    void testApproximate_StopsAtTargetError() {
+        // 准备测试数据：1000 个键，每批 50 个，age 在 30~32 之间
+        when(redis.getPipelineBatchSize()).thenReturn(50);
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            keys.add("user:" + i);
+        }
+        when(redis.hgetAllMany(anyCollection(), eq(List.of("age")))).thenAnswer(invocation -> {
+            Map<String, Map<String, Object>> rows = new LinkedHashMap<>();
+            for (Object key : (Collection<String>) invocation.getArgument(0)) {
+                int id = Integer.parseInt(key.toString().substring(5));
+                rows.put(key.toString(), Map.of("age", String.valueOf(30 + id % 3)));
+            }
+            return rows;
+        });
+
+        // 执行聚合
+        Map<String, Object> result = agg.over(keys).avg("age").sum("age").count().approximate(0.05).result();
+
+        // 验证结果：一批样本即满足精度，count/sum 按键总数外推
+        Map<String, Object> sample = (Map<String, Object>) result.get("_approximate");
+        assertEquals(50L, sample.get("sample_size"));
+        assertEquals(false, sample.get("exact"));
+        assertEquals(1000L, result.get("count"));
+        double avg = (double) result.get("avg_age");
+        List<Double> ci = (List<Double>) result.get("avg_age_ci");
+        assertTrue(ci.get(0) <= avg && avg <= ci.get(1));
+        assertTrue(ci.get(1) - ci.get(0) <= 0.1 * avg);
+        assertTrue(Math.abs((double) result.get("sum_age") - 31_000) < 31_000 * 0.05);
+        verify(redis, times(1)).hgetAllMany(anyCollection(), eq(List.of("age")));
+    }
+
+    @Test
+    @DisplayName("测试近似模式 - 键列表按键名有序时样本不偏向前缀")
+    @SuppressWarnings("unchecked")
+    void testApproximate_PrefixOrderedKeysUnbiased() {
+        // 准备测试数据：前一半键 age=20，后一半 age=40，真实均值 30；按顺序取前 N 个会得到 20
+        when(redis.getPipelineBatchSize()).thenReturn(100);
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            keys.add("user:" + i);
+        }
+        List<Integer> sampled = new ArrayList<>();
+        when(redis.hgetAllMany(anyCollection(), eq(List.of("age")))).thenAnswer(invocation -> {
+            Map<String, Map<String, Object>> rows = new LinkedHashMap<>();
+            for (Object key : (Collection<String>) invocation.getArgument(0)) {
+                int id = Integer.parseInt(key.toString().substring(5));
+                sampled.add(id);
+                rows.put(key.toString(), Map.of("age", id < 5_000 ? "20" : "40"));
+            }
+            return rows;
+        });
+
+        // 执行聚合
+        Map<String, Object> result = agg.over(keys).avg("age").approximate().result();
+
+        // 验证结果：提前停止，但样本来自整个键空间，均值落在真实值附近
+        assertTrue(sampled.size() < keys.size());
+        double firstHalf = sampled.stream().filter(id -> id < 5_000).count() / (double) sampled.size();
+        assertTrue(firstHalf > 0.35 && firstHalf < 0.65, "first half: " + firstHalf);
+        double avg = (double) result.get("avg_age");
+        assertTrue(Math.abs(avg - 30) < 2, "avg: " + avg);
+        List<Double> ci = (List<Double>) result.get("avg_age_ci");
+        assertTrue(ci.get(0) <= 30 && 30 <= ci.get(1));
+    }
+
+    @Test
+    @DisplayName("测试近似模式 - 模式扫描且未给出 population 时 count/sum 无法外推，退回精确计算")
+    @SuppressWarnings("unchecked")
+    void testApproximate_PatternWithoutPopulationIsExact() {
+        // 准备测试数据：SCAN 返回 20 批、每批 50 个键，age 在 30~32 之间
+        when(redis.getPipelineBatchSize()).thenReturn(50);
+        doAnswer(invocation -> {
+            Predicate<List<String>> consumer = invocation.getArgument(2);
+            for (int b = 0; b < 20; b++) {
+                List<String> batch = new ArrayList<>();
+                for (int i = b * 50; i < (b + 1) * 50; i++) {
+                    batch.add("user:" + i);
+                }
+                if (!consumer.test(batch)) {
+                    break;
+                }
+            }
+            return null;
+        }).when(redis).scanBatchesWhile(eq("user:*"), eq(50), any(Predicate.class));
+        when(redis.hgetAllMany(anyCollection(), eq(List.of("age")))).thenAnswer(invocation -> {
+            Map<String, Map<String, Object>> rows = new LinkedHashMap<>();
+            for (Object key : (Collection<String>) invocation.getArgument(0)) {
+                int id = Integer.parseInt(key.toString().substring(5));
+                rows.put(key.toString(), Map.of("age", String.valueOf(30 + id % 3)));
+            }
+            return rows;
+        });
+
+        // 执行聚合
+        Map<String, Object> result = agg.over("user:*").sum("age").count().approximate(Map.of("maxSample", 100)).result();
+
+        // 验证结果：读完所有行，count/sum 是精确值而不是 null
+        assertEquals(1000L, result.get("count"));
+        assertEquals(30_999L, result.get("sum_age"));
+        assertEquals(true, ((Map<?, ?>) result.get("_approximate")).get("exact"));
+        verify(redis, times(20)).hgetAllMany(anyCollection(), eq(List.of("age")));
+    }
+
+    @Test
+    @DisplayName("测试近似模式 - 样本覆盖全部行时结果精确")
+    void testApproximate_ExhaustedIsExact() {
+        // 准备测试数据
+        List<String> keys = List.of("user:1", "user:2");
+        Map<String, Map<String, Object>> rows = new LinkedHashMap<>();
+        rows.put("user:1", Map.of("age", "20"));
+        rows.put("user:2", Map.of("age", "30"));
+        when(redis.hgetAllMany(eq(keys), eq(List.of("age")))).thenReturn(rows);
+
+        // 执行聚合
+        Map<String, Object> result = agg.over(keys).avg("age").count().approximate().result();
+
+        // 验证结果
+        assertEquals(2L, result.get("count"));
+        assertEquals(25.0, result.get("avg_age"));
+        assertFalse(result.containsKey("avg_age_ci"));
+        assertEquals(true, ((Map<?, ?>) result.get("_approximate")).get("exact"));
+    }
+
+    @Test
+    @DisplayName("测试去重计数 - HyperLogLog 估计")
+    @SuppressWarnings("unchecked")
+    void testCountDistinct() {
+        // 准备测试数据：5000 行，1000 个不同城市
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            keys.add("user:" + i);
+        }
+        when(redis.hgetAllMany(anyCollection(), eq(List.of("city")))).thenAnswer(invocation -> {
+            Map<String, Map<String, Object>> rows = new LinkedHashMap<>();
+            for (Object key : (Collection<String>) invocation.getArgument(0)) {
+                int id = Integer.parseInt(key.toString().substring(5));
+                rows.put(key.toString(), Map.of("city", "city-" + id % 1000));
+            }
+            return rows;
+        });
+
+        // 执行聚合
+        Map<String, Object> result = agg.over(keys).countDistinct("city").result();
+
+        // 验证结果
+        long distinct = (long) result.get("distinct_city");
+        assertTrue(Math.abs(distinct - 1000) <= 30, "estimate: " + distinct);
+    }
+
+    @Test
+    @DisplayName("测试近似模式 - 非法参数")
+    void testApproximate_InvalidOptions() {
+        assertThrows(IllegalArgumentException.class, () -> agg.over("user:*").approximate(Map.of("confidence", 0.5)));
+        assertThrows(IllegalArgumentException.class, () -> agg.over("user:*").approximate(Map.of("errorRate", 0.1)));
+        assertThrows(IllegalArgumentException.class, () -> agg.over("user:*").approximate(1.5));
+    }
+}
@@ -0,0 +1,112 @@
+package org.example.service.redis;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 单元测试类：FrequencySketch
+ * 测试计数估计、top-K 与衰减
+ */
+@DisplayName("频率草图单元测试")
+class FrequencySketchTest {
+
+    @Test
+    @DisplayName("测试 top-K - 热点键排在前面，冷键被淘汰")
+    void testTop_KeepsHeavyHitters() {
+        FrequencySketch sketch = new FrequencySketch(1024, 3, 0);
+
+        // 准备测试数据：3 个热点键 + 大量冷键
+        for (int i = 0; i < 1000; i++) {
+            sketch.record("user:1");
+            if (i % 2 == 0) {
+                sketch.record("user:2");
+            }
+            if (i % 4 == 0) {
+                sketch.record("user:3");
+            }
+            sketch.record("cold:" + i);
+        }
+
+        // 验证结果
+        List<Map<String, Object>> top = sketch.top();
+        assertEquals(List.of("user:1", "user:2", "user:3"), top.stream().map(entry -> entry.get("key")).toList());
+        assertTrue((long) top.get(0).get("count") >= 1000);
+        assertTrue(sketch.estimate("user:2") >= 500);
+    }
+
+    @Test
+    @DisplayName("测试衰减 - 每个周期计数减半")
+    void testDecay_HalvesCounts() throws InterruptedException {
+        FrequencySketch sketch = new FrequencySketch(1024, 5, 200);
+        for (int i = 0; i < 100; i++) {
+            sketch.record("user:1");
+        }
+
+        // 等待一个衰减周期后再次访问
+        Thread.sleep(250);
+        sketch.record("user:1");
+
+        // 验证结果
+        assertEquals(51, sketch.estimate("user:1"));
+        assertEquals(51L, sketch.top().get(0).get("count"));
+    }
+
+    @Test
+    @DisplayName("测试估计值不低于真实计数")
+    void testEstimate_NeverUnderestimates() {
+        FrequencySketch sketch = new FrequencySketch(64, 5, 0);
+        for (int i = 0; i < 5000; i++) {
+            sketch.record("key:" + (i % 500));
+        }
+
+        for (int i = 0; i < 500; i++) {
+            assertTrue(sketch.estimate("key:" + i) >= 10);
+        }
+    }
+
+    @Test
+    @DisplayName("测试并发记录 - 热点键无锁更新计数，top-K 大小不超过上限")
+    void testTop_ConcurrentRecords() throws Exception {
+        FrequencySketch sketch = new FrequencySketch(4096, 3, 0);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            // 准备测试数据：4 个线程同时访问热点键与各自的冷键
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int thread = t;
+                tasks.add(executor.submit(() -> {
+                    for (int i = 0; i < 5000; i++) {
+                        sketch.record("user:1");
+                        if (i % 2 == 0) {
+                            sketch.record("user:2");
+                        }
+                        if (i % 4 == 0) {
+                            sketch.record("user:3");
+                        }
+                        sketch.record("cold:" + thread + ":" + i);
+                    }
+                }));
+            }
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // 验证结果
+        List<Map<String, Object>> top = sketch.top();
+        assertEquals(List.of("user:1", "user:2", "user:3"), top.stream().map(entry -> entry.get("key")).toList());
+        assertTrue((long) top.get(0).get("count") >= 20_000);
+        assertTrue((long) top.get(2).get("count") >= 5_000);
+    }
+}
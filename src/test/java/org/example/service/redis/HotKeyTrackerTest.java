@@ -0,0 +1,52 @@
+package org.example.service.redis;
+
+import org.example.config.ScriptConfig;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 单元测试类：HotKeyTracker
+ * 测试热点键与热点前缀统计
+ */
+@DisplayName("热点键统计单元测试")
+class HotKeyTrackerTest {
+
+    @Test
+    @DisplayName("测试热点前缀 - 按最后一个冒号之前的部分聚合")
+    @SuppressWarnings("unchecked")
+    void testSnapshot_KeysAndPrefixes() {
+        HotKeyTracker tracker = new HotKeyTracker(new ScriptConfig());
+
+        // 准备测试数据
+        for (int i = 0; i < 50; i++) {
+            tracker.record("user:" + i);
+        }
+        tracker.recordAll(List.of("order:1", "order:1", "plain"));
+
+        // 验证结果
+        Map<String, Object> snapshot = tracker.snapshot();
+        List<Map<String, Object>> keys = (List<Map<String, Object>>) snapshot.get("keys");
+        List<Map<String, Object>> prefixes = (List<Map<String, Object>>) snapshot.get("prefixes");
+        assertEquals("order:1", keys.get(0).get("key"));
+        assertEquals(Map.of("key", "user", "count", 50L), prefixes.get(0));
+        assertEquals(2, prefixes.size());
+    }
+
+    @Test
+    @DisplayName("测试关闭统计")
+    void testDisabled() {
+        ScriptConfig scriptConfig = new ScriptConfig();
+        scriptConfig.setHotKeysEnabled(false);
+        HotKeyTracker tracker = new HotKeyTracker(scriptConfig);
+
+        tracker.record("user:1");
+
+        assertEquals(0, tracker.estimate("user:1"));
+        assertEquals(List.of(), tracker.snapshot().get("keys"));
+    }
+}
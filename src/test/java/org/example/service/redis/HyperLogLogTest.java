@@ -0,0 +1,46 @@
+package org.example.service.redis;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 单元测试类：HyperLogLog
+ * 测试去重计数估计的误差
+ */
+@DisplayName("HyperLogLog 去重计数单元测试")
+class HyperLogLogTest {
+
+    @Test
+    @DisplayName("测试小基数 - 线性计数修正后基本精确")
+    void testEstimate_SmallCardinality() {
+        HyperLogLog hll = new HyperLogLog();
+        for (int i = 0; i < 100; i++) {
+            hll.add("user:" + i);
+            hll.add("user:" + i);
+        }
+        hll.add(null);
+
+        assertEquals(100, hll.estimate(), 2);
+    }
+
+    @Test
+    @DisplayName("测试大基数 - 误差在标准误差的 3 倍以内")
+    void testEstimate_LargeCardinality() {
+        HyperLogLog hll = new HyperLogLog();
+        int cardinality = 200_000;
+        for (int i = 0; i < cardinality; i++) {
+            hll.add(i);
+        }
+
+        double relativeError = Math.abs(hll.estimate() - cardinality) / (double) cardinality;
+        assertTrue(relativeError < 3 * HyperLogLog.STANDARD_ERROR, "relative error: " + relativeError);
+    }
+
+    @Test
+    @DisplayName("测试空计数器")
+    void testEstimate_Empty() {
+        assertEquals(0, new HyperLogLog().estimate());
+    }
+}
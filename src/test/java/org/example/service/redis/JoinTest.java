@@ -0,0 +1,152 @@
+package org.example.service.redis;
+
+import org.example.service.ScriptEngineService.RedisOperations;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 单元测试类：Join
+ * 测试外键去重、右表缓存与行合并
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("外键关联单元测试")
+class JoinTest {
+
+    @Mock
+    private RedisOperations redis;
+
+    private final List<List<String>> consumedBatches = new ArrayList<>();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        lenient().when(redis.getPipelineBatchSize()).thenReturn(500);
+        // SCAN 返回两批订单
+        lenient().doAnswer(invocation -> {
+            Predicate<List<String>> consumer = invocation.getArgument(2);
+            for (List<String> batch : List.of(List.of("order:1", "order:2"), List.of("order:3"))) {
+                consumedBatches.add(batch);
+                if (!consumer.test(batch)) {
+                    return null;
+                }
+            }
+            return null;
+        }).when(redis).scanBatchesWhile(eq("order:*"), anyInt(), any(Predicate.class));
+        lenient().when(redis.hgetAllMany(List.of("order:1", "order:2"), List.of()))
+                .thenReturn(rows("order:1", Map.of("userId", "7", "amount", "10"),
+                        "order:2", Map.of("userId", "7", "amount", "20")));
+        lenient().when(redis.hgetAllMany(List.of("order:3"), List.of()))
+                .thenReturn(rows("order:3", Map.of("userId", "8", "amount", "30")));
+    }
+
+    @Test
+    @DisplayName("测试外键去重 - 每个用户只读取一次，跨批次复用")
+    void testJoin_FetchesEachReferenceOnce() {
+        // 准备测试数据
+        when(redis.hgetAllMany(List.of("user:7"), List.of("name")))
+                .thenReturn(rows("user:7", Map.of("name", "张三")));
+        when(redis.hgetAllMany(List.of("user:8"), List.of("name")))
+                .thenReturn(rows("user:8", Map.of()));
+
+        // 执行关联
+        Map<String, Map<String, Object>> result = new Join(redis, "order:*")
+                .join("userId", "user:").selectRight("name")
+                .result();
+
+        // 验证结果：user:8 不存在时别名为 null
+        assertEquals(Map.of("name", "张三"), result.get("order:1").get("user"));
+        assertEquals(Map.of("name", "张三"), result.get("order:2").get("user"));
+        assertEquals("20", result.get("order:2").get("amount"));
+        assertTrue(result.get("order:3").containsKey("user"));
+        assertNull(result.get("order:3").get("user"));
+        verify(redis, times(1)).hgetAllMany(List.of("user:7"), List.of("name"));
+    }
+
+    @Test
+    @DisplayName("测试 limit 与别名 - 满足后停止扫描")
+    void testJoin_LimitAndAlias() {
+        // 准备测试数据
+        when(redis.hgetAllMany(List.of("user:7"), List.of()))
+                .thenReturn(rows("user:7", Map.of("name", "张三")));
+
+        // 执行关联
+        List<Map<String, Object>> result = new Join(redis, "order:*")
+                .join("userId", "user:", "buyer").limit(1).toList();
+
+        // 验证结果
+        assertEquals(1, result.size());
+        assertEquals(Map.of("name", "张三"), result.get(0).get("buyer"));
+        assertEquals(1, consumedBatches.size());
+    }
+
+    @Test
+    @DisplayName("测试左表投影 - 外键字段总会被读取")
+    void testJoin_LeftProjectionIncludesForeignKey() {
+        // 准备测试数据
+        when(redis.hgetAllMany(List.of("order:1", "order:2"), List.of("amount", "userId")))
+                .thenReturn(rows("order:1", Map.of("userId", "7", "amount", "10")));
+        when(redis.hgetAllMany(List.of("order:3"), List.of("amount", "userId")))
+                .thenReturn(rows());
+        when(redis.hgetAllMany(List.of("user:7"), List.of()))
+                .thenReturn(rows("user:7", Map.of("name", "张三")));
+
+        // 执行关联
+        Map<String, Map<String, Object>> result = new Join(redis, "order:*")
+                .select("amount").join("userId", "user:").result();
+
+        // 验证结果
+        assertEquals(Set.of("order:1"), result.keySet());
+    }
+
+    @Test
+    @DisplayName("测试别名冲突 - 左表行已有同名字段时报错而不是覆盖")
+    void testJoin_AliasCollidesWithLeftField() {
+        // 准备测试数据：订单本身有 user 字段
+        when(redis.hgetAllMany(List.of("order:1", "order:2"), List.of()))
+                .thenReturn(rows("order:1", Map.of("userId", "7", "user", "zhangsan")));
+        when(redis.hgetAllMany(List.of("user:7"), List.of()))
+                .thenReturn(rows("user:7", Map.of("name", "张三")));
+
+        // 执行 & 验证
+        Join join = new Join(redis, "order:*").join("userId", "user:");
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class, join::result);
+        assertTrue(error.getMessage().contains("'user'"));
+        assertTrue(error.getMessage().contains("order:1"));
+    }
+
+    @Test
+    @DisplayName("测试别名冲突 - 与外键、已选字段或其他关联同名时在声明时报错")
+    void testJoin_AliasCollidesWhenDeclared() {
+        assertThrows(IllegalArgumentException.class, () -> new Join(redis, "order:*").join("userId", "user:", "userId"));
+        assertThrows(IllegalArgumentException.class, () -> new Join(redis, "order:*").select("amount").join("userId", "user:", "amount"));
+        assertThrows(IllegalArgumentException.class, () -> new Join(redis, "order:*").join("userId", "user:").select("user"));
+        assertThrows(IllegalArgumentException.class, () -> new Join(redis, "order:*").join("userId", "user:").join("buyerId", "user:"));
+    }
+
+    @Test
+    @DisplayName("测试 selectRight 需要先声明关联")
+    void testSelectRight_WithoutRelation() {
+        assertThrows(IllegalStateException.class, () -> new Join(redis, "order:*").selectRight("name"));
+    }
+
+    private static Map<String, Map<String, Object>> rows(Object... keysAndRows) {
+        Map<String, Map<String, Object>> rows = new LinkedHashMap<>();
+        for (int i = 0; i < keysAndRows.length; i += 2) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> row = (Map<String, Object>) keysAndRows[i + 1];
+            rows.put((String) keysAndRows[i], row);
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,190 @@
+package org.example.service.redis;
+
+import groovy.lang.Closure;
+import groovy.lang.GroovyShell;
+import org.example.config.ScriptConfig;
+import org.example.service.ScriptEngineService.RedisOperations;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 单元测试类：ParallelScan
+ * 测试分区并行处理、结果合并、失败传播与截止时间
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("分区并行处理单元测试")
+class ParallelScanTest {
+
+    @Mock
+    private RedisOperations redis;
+
+    private ExecutorService executor;
+    private ScriptConfig scriptConfig;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+        scriptConfig = new ScriptConfig();
+        lenient().when(redis.getPipelineBatchSize()).thenReturn(2);
+        // SCAN 返回三个分区
+        lenient().doAnswer(invocation -> {
+            Predicate<List<String>> consumer = invocation.getArgument(2);
+            for (List<String> batch : List.of(List.of("user:1", "user:2"), List.of("user:3", "user:4"), List.of("user:5"))) {
+                if (!consumer.test(batch)) {
+                    return null;
+                }
+            }
+            return null;
+        }).when(redis).scanBatchesWhile(eq("user:*"), eq(2), any(Predicate.class));
+        lenient().when(redis.hgetAllMany(anyCollection(), eq(List.of("age")))).thenAnswer(invocation -> {
+            Map<String, Map<String, Object>> rows = new LinkedHashMap<>();
+            for (Object key : (Collection<?>) invocation.getArgument(0)) {
+                rows.put((String) key, Map.of("age", String.valueOf(key).substring(5)));
+            }
+            return rows;
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private ParallelScan parallelScan() {
+        return new ParallelScan(redis, executor, new ScriptBudget(scriptConfig, null), 2);
+    }
+
+    private static Closure<?> closure(String code) {
+        return (Closure<?>) new GroovyShell().evaluate("return " + code);
+    }
+
+    @Test
+    @DisplayName("测试 parallelCollect - 按分区顺序合并非 null 结果")
+    void testParallelCollect_MergesInPartitionOrder() {
+        // 执行：只保留偶数 age
+        List<Object> result = parallelScan().parallelCollect("user:*", List.of("age"),
+                closure("{ key, row -> (row.age as int) % 2 == 0 ? key : null }"));
+
+        // 验证结果
+        assertEquals(List.of("user:2", "user:4"), result);
+        verify(redis, times(3)).hgetAllMany(anyCollection(), eq(List.of("age")));
+    }
+
+    @Test
+    @DisplayName("测试 parallelEach - 每行在工作线程上处理一次")
+    void testParallelEach_RunsOnWorkers() {
+        // 准备测试数据
+        Map<Object, String> threads = new ConcurrentHashMap<>();
+        Closure<?> body = new Closure<Object>(null) {
+            public Object doCall(Object row) {
+                threads.put(((Map<?, ?>) row).get("age"), Thread.currentThread().getName());
+                return null;
+            }
+        };
+
+        // 执行
+        parallelScan().parallelEach("user:*", List.of("age"), body);
+
+        // 验证结果
+        assertEquals(Set.of("1", "2", "3", "4", "5"), threads.keySet());
+        assertFalse(threads.containsValue(Thread.currentThread().getName()));
+    }
+
+    @Test
+    @DisplayName("测试分区失败 - 异常传回脚本线程")
+    void testPartitionFailure_Propagates() {
+        // 执行 & 验证
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () ->
+                parallelScan().parallelEach("user:*", List.of("age"),
+                        closure("{ row -> if (row.age == '3') throw new IllegalArgumentException('bad row') }")));
+        assertEquals("bad row", e.getMessage());
+    }
+
+    @Test
+    @DisplayName("测试截止时间 - 超时后中止所有分区")
+    void testDeadline_Exceeded() {
+        // 准备测试数据：截止时间 50ms，每行耗时 100ms
+        scriptConfig.setMaxExecutionTime(50);
+
+        // 执行 & 验证
+        assertThrows(ScriptBudgetExceededException.class, () ->
+                parallelScan().parallelEach("user:*", List.of("age"), closure("{ row -> sleep(100) }")));
+    }
+
+    @Test
+    @DisplayName("测试截止时间 - 分区内逐行检查，不响应中断的慢闭包也在截止后停止")
+    @SuppressWarnings("unchecked")
+    void testDeadline_CheckedPerRow() throws Exception {
+        // 准备测试数据：一个 10 行的分区，每行 40ms 且不响应中断；截止时间 100ms
+        scriptConfig.setMaxExecutionTime(100);
+        List<String> keys = new ArrayList<>();
+        for (int i = 10; i < 20; i++) {
+            keys.add("user:" + i);
+        }
+        doAnswer(invocation -> {
+            ((Predicate<List<String>>) invocation.getArgument(2)).test(keys);
+            return null;
+        }).when(redis).scanBatchesWhile(eq("slow:*"), eq(2), any(Predicate.class));
+        AtomicInteger rows = new AtomicInteger();
+        Closure<?> body = new Closure<Object>(null) {
+            public Object doCall(Object row) {
+                rows.incrementAndGet();
+                // 吞掉中断的慢代码，取消分区无法让它停下
+                long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(40);
+                while (System.nanoTime() < end) {
+                    Thread.interrupted();
+                }
+                return null;
+            }
+        };
+
+        // 执行
+        assertThrows(ScriptBudgetExceededException.class, () -> parallelScan().parallelEach("slow:*", List.of("age"), body));
+        TimeUnit.MILLISECONDS.sleep(500);
+
+        // 验证结果：截止之后不再处理后续行
+        assertTrue(rows.get() <= 4, "rows: " + rows.get());
+    }
+
+    @Test
+    @DisplayName("测试嵌套调用 - 分区闭包内的并行扫描在当前线程顺序执行，不会占满线程池而死锁")
+    void testNested_RunsInline() {
+        // 准备测试数据：只有一个工作线程
+        scriptConfig.setMaxExecutionTime(5000);
+        ExecutorService single = Executors.newSingleThreadExecutor();
+        ParallelScan scan = new ParallelScan(redis, single, new ScriptBudget(scriptConfig, null), 1);
+        Closure<?> body = new Closure<Object>(null) {
+            public Object doCall(Object row) {
+                return scan.parallelCollect("user:*", List.of("age"), closure("{ inner -> inner.age }")).size();
+            }
+        };
+
+        try {
+            // 执行
+            List<Object> result = scan.parallelCollect("user:*", List.of("age"), body);
+
+            // 验证结果
+            assertEquals(List.of(5, 5, 5, 5, 5), result);
+        } finally {
+            single.shutdownNow();
+        }
+    }
+}
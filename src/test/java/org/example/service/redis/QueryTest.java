@@ -0,0 +1,122 @@
+package org.example.service.redis;
+
+import groovy.lang.Closure;
+import groovy.lang.GroovyShell;
+import org.example.service.ScriptEngineService.RedisOperations;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 单元测试类：Query
+ * 测试惰性查询的条件、投影与 limit 提前结束
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("惰性查询单元测试")
+class QueryTest {
+
+    @Mock
+    private RedisOperations redis;
+
+    private final List<List<String>> consumedBatches = new ArrayList<>();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        lenient().when(redis.getPipelineBatchSize()).thenReturn(500);
+        // SCAN 返回两批键，记录实际消费的批次
+        lenient().doAnswer(invocation -> {
+            Predicate<List<String>> consumer = invocation.getArgument(2);
+            for (List<String> batch : List.of(List.of("user:1", "user:2"), List.of("user:3", "user:1"))) {
+                consumedBatches.add(batch);
+                if (!consumer.test(batch)) {
+                    return null;
+                }
+            }
+            return null;
+        }).when(redis).scanBatchesWhile(eq("user:*"), anyInt(), any(Predicate.class));
+    }
+
+    private static Closure<?> closure(String code) {
+        return (Closure<?>) new GroovyShell().evaluate("return " + code);
+    }
+
+    @Test
+    @DisplayName("测试闭包条件 - 自动补读条件字段，结果只保留 select 字段")
+    void testWhereClosure_LearnsFilterFields() {
+        // 准备测试数据：第一次只读 name，条件访问 age 后扩大投影重读
+        when(redis.hgetAllMany(List.of("user:1", "user:2"), List.of("name")))
+                .thenReturn(rows("user:1", Map.of("name", "张三"), "user:2", Map.of("name", "李四")));
+        when(redis.hgetAllMany(List.of("user:1", "user:2"), List.of("name", "age")))
+                .thenReturn(rows("user:1", Map.of("name", "张三", "age", "35"), "user:2", Map.of("name", "李四", "age", "20")));
+        when(redis.hgetAllMany(List.of("user:3"), List.of("name", "age")))
+                .thenReturn(rows("user:3", Map.of("name", "王五", "age", "40")));
+
+        // 执行查询
+        Map<String, Map<String, Object>> result = new Query(redis, "user:*")
+                .where(closure("{ it.age != null && (it.age as int) > 30 }"))
+                .select("name")
+                .result();
+
+        // 验证结果：重复的 user:1 只出现一次
+        assertEquals(Map.of("user:1", Map.of("name", "张三"), "user:3", Map.of("name", "王五")), result);
+    }
+
+    @Test
+    @DisplayName("测试 limit - 满足后停止扫描")
+    void testLimit_StopsScanning() {
+        // 准备测试数据
+        when(redis.hgetAllMany(List.of("user:1", "user:2"), List.of("city")))
+                .thenReturn(rows("user:1", Map.of("city", "北京"), "user:2", Map.of("city", "上海")));
+
+        // 执行查询
+        List<Map<String, Object>> result = new Query(redis, "user:*").select("city").limit(1).toList();
+
+        // 验证结果
+        assertEquals(List.of(Map.of("city", "北京")), result);
+        assertEquals(1, consumedBatches.size());
+    }
+
+    @Test
+    @DisplayName("测试字段条件 - 条件字段直接加入投影")
+    void testWhereOperator() {
+        // 准备测试数据
+        when(redis.hgetAllMany(List.of("user:1", "user:2"), List.of("name", "age")))
+                .thenReturn(rows("user:1", Map.of("name", "张三", "age", "35"), "user:2", Map.of("name", "李四", "age", "20")));
+        when(redis.hgetAllMany(List.of("user:3"), List.of("name", "age")))
+                .thenReturn(rows("user:3", Map.of()));
+
+        // 执行查询
+        int count = new Query(redis, "user:*").where("age", ">=", 30).select("name").count();
+
+        // 验证结果
+        assertEquals(1, count);
+    }
+
+    @Test
+    @DisplayName("测试不支持的操作符")
+    void testWhere_UnsupportedOperator() {
+        assertThrows(IllegalArgumentException.class, () -> new Query(redis, "user:*").where("age", "~", 1));
+        verifyNoInteractions(redis);
+    }
+
+    private static Map<String, Map<String, Object>> rows(Object... keysAndRows) {
+        Map<String, Map<String, Object>> rows = new LinkedHashMap<>();
+        for (int i = 0; i < keysAndRows.length; i += 2) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> row = (Map<String, Object>) keysAndRows[i + 1];
+            rows.put((String) keysAndRows[i], row);
+        }
+        return rows;
+    }
+}
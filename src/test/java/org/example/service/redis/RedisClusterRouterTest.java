@@ -0,0 +1,241 @@
+package org.example.service.redis;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisClusterNode;
+import org.springframework.data.redis.connection.RedisClusterNode.SlotRange;
+import org.springframework.data.redis.connection.RedisNode.NodeType;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 单元测试类：RedisClusterRouter
+ * 测试多主节点并行 SCAN 合并、提前停止、按 slot 分组 pipeline、拓扑缓存与节点指标
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Redis 集群路由单元测试")
+class RedisClusterRouterTest {
+
+    private static final RedisClusterNode NODE_A = master("10.0.0.1", 0, 8191);
+    private static final RedisClusterNode NODE_B = master("10.0.0.2", 8192, 16383);
+
+    @Mock
+    private RedisClusterConnection connection;
+
+    private SimpleMeterRegistry meterRegistry;
+    private RedisClusterRouter router;
+    private final AtomicLong now = new AtomicLong(1_000);
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        RedisClusterNode replica = RedisClusterNode.newRedisClusterNode()
+                .listeningAt("10.0.0.3", 6379).promotedAs(NodeType.REPLICA).build();
+        lenient().when(connection.clusterGetNodes()).thenReturn(List.of(NODE_A, NODE_B, replica));
+        router = new RedisClusterRouter(true, () -> connection, meterRegistry, now::get);
+    }
+
+    @AfterEach
+    void tearDown() {
+        router.shutdown();
+    }
+
+    private static RedisClusterNode master(String host, int from, int to) {
+        return RedisClusterNode.newRedisClusterNode()
+                .listeningAt(host, 6379)
+                .promotedAs(NodeType.MASTER)
+                .serving(new SlotRange(from, to))
+                .build();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Cursor<byte[]> cursor(String... keys) {
+        Iterator<String> iterator = List.of(keys).iterator();
+        Cursor<byte[]> cursor = mock(Cursor.class);
+        // 提前停止时某些节点可能还没开始扫描
+        lenient().when(cursor.hasNext()).thenAnswer(invocation -> iterator.hasNext());
+        lenient().when(cursor.next()).thenAnswer(invocation -> iterator.next().getBytes(StandardCharsets.UTF_8));
+        return cursor;
+    }
+
+    @Test
+    @DisplayName("测试 scanBatchesWhile - 只扫描主节点并合并所有节点的键")
+    void testScanBatchesWhile_MergesAllMasters() {
+        // 准备测试数据
+        Cursor<byte[]> cursorA = cursor("user:1", "user:2", "user:3");
+        Cursor<byte[]> cursorB = cursor("user:4");
+        when(connection.scan(eq(NODE_A), any(ScanOptions.class))).thenReturn(cursorA);
+        when(connection.scan(eq(NODE_B), any(ScanOptions.class))).thenReturn(cursorB);
+
+        // 执行
+        List<String> keys = new ArrayList<>();
+        router.scanBatchesWhile("user:*", 2, batch -> keys.addAll(batch));
+
+        // 验证结果
+        assertEquals(Set.of("user:1", "user:2", "user:3", "user:4"), new HashSet<>(keys));
+        assertEquals(4, keys.size());
+        verify(connection, times(2)).scan(any(RedisClusterNode.class), any(ScanOptions.class));
+        assertNotNull(meterRegistry.find("redis.cluster.node.latency").tag("node", "10.0.0.1:6379").tag("operation", "scan").timer());
+    }
+
+    @Test
+    @DisplayName("测试 scanBatchesWhile - 回调返回 false 后停止所有节点")
+    void testScanBatchesWhile_StopsEarly() {
+        // 准备测试数据
+        String[] many = new String[1000];
+        for (int i = 0; i < many.length; i++) {
+            many[i] = "user:" + i;
+        }
+        Cursor<byte[]> cursorA = cursor(many);
+        Cursor<byte[]> cursorB = cursor(many);
+        lenient().when(connection.scan(eq(NODE_A), any(ScanOptions.class))).thenReturn(cursorA);
+        lenient().when(connection.scan(eq(NODE_B), any(ScanOptions.class))).thenReturn(cursorB);
+
+        // 执行
+        int[] batches = {0};
+        router.scanBatchesWhile("user:*", 10, batch -> ++batches[0] < 2);
+
+        // 验证结果
+        assertEquals(2, batches[0]);
+    }
+
+    @Test
+    @DisplayName("测试 scanBatchesWhile - 节点失败时抛出异常")
+    void testScanBatchesWhile_PropagatesNodeFailure() {
+        // 准备测试数据
+        Cursor<byte[]> cursorA = cursor("user:1");
+        lenient().when(connection.scan(eq(NODE_A), any(ScanOptions.class))).thenReturn(cursorA);
+        when(connection.scan(eq(NODE_B), any(ScanOptions.class))).thenThrow(new IllegalStateException("node down"));
+
+        // 执行 & 验证
+        IllegalStateException error = assertThrows(IllegalStateException.class,
+                () -> router.scanBatchesWhile("user:*", 10, batch -> true));
+        assertEquals("node down", error.getMessage());
+    }
+
+    @Test
+    @DisplayName("测试 groupByNode - 按 hash slot 归到所属主节点")
+    void testGroupByNode() {
+        // 准备测试数据：{u1} 与 {u1}:orders 是同一个 hash tag
+        List<String> keys = List.of("{u1}", "{u1}:orders", "a", "b", "c");
+
+        // 执行
+        Map<RedisClusterNode, List<Integer>> groups = RedisClusterRouter.groupByNode(keys, List.of(NODE_A, NODE_B));
+
+        // 验证结果
+        for (Map.Entry<RedisClusterNode, List<Integer>> group : groups.entrySet()) {
+            for (int index : group.getValue()) {
+                assertTrue(group.getKey().servesSlot(ClusterSlotHashUtil.calculateSlot(keys.get(index))));
+            }
+        }
+        assertEquals(keys.size(), groups.values().stream().mapToInt(List::size).sum());
+        RedisClusterNode tagged = groups.entrySet().stream()
+                .filter(group -> group.getValue().contains(0)).findFirst().orElseThrow().getKey();
+        assertTrue(groups.get(tagged).contains(1));
+    }
+
+    @Test
+    @DisplayName("测试 pipelineByNode - 每个节点一条 pipeline，结果按输入顺序返回")
+    void testPipelineByNode_PreservesOrder() {
+        // 准备测试数据：六个键按 slot 分布在两个节点上
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; keys.size() < 6; i++) {
+            keys.add("user:" + i);
+        }
+
+        // 执行：pipeline 返回键本身的大写
+        List<List<String>> calls = Collections.synchronizedList(new ArrayList<>());
+        List<Object> results = router.pipelineByNode(keys, nodeKeys -> {
+            calls.add(nodeKeys);
+            List<Object> values = new ArrayList<>();
+            nodeKeys.forEach(key -> values.add(key.toUpperCase()));
+            return values;
+        });
+
+        // 验证结果
+        for (int i = 0; i < keys.size(); i++) {
+            assertEquals(keys.get(i).toUpperCase(), results.get(i));
+        }
+        Set<Integer> expectedGroups = new HashSet<>();
+        keys.forEach(key -> expectedGroups.add(ClusterSlotHashUtil.calculateSlot(key) <= 8191 ? 0 : 1));
+        assertEquals(expectedGroups.size(), calls.size());
+        double counted = meterRegistry.find("redis.cluster.node.keys").counters().stream()
+                .mapToDouble(counter -> counter.count()).sum();
+        assertEquals(keys.size(), counted);
+    }
+
+    @Test
+    @DisplayName("测试 pipelineByNode - 多个批次共用缓存的拓扑，过期后才重新执行 CLUSTER NODES")
+    void testPipelineByNode_CachesTopology() {
+        // 准备测试数据
+        List<String> keys = List.of("user:1", "user:2", "user:3");
+
+        // 执行：十个批次
+        for (int i = 0; i < 10; i++) {
+            router.pipelineByNode(keys, nodeKeys -> new ArrayList<>(nodeKeys));
+        }
+
+        // 验证结果
+        verify(connection, times(1)).clusterGetNodes();
+
+        // 执行：超过缓存时间
+        now.addAndGet(RedisClusterRouter.TOPOLOGY_TTL_MS);
+        router.pipelineByNode(keys, nodeKeys -> new ArrayList<>(nodeKeys));
+
+        // 验证结果
+        verify(connection, times(2)).clusterGetNodes();
+    }
+
+    @Test
+    @DisplayName("测试 pipelineByNode - MOVED 时刷新拓扑并用新的 slot 分布重试")
+    void testPipelineByNode_RefreshesOnMoved() {
+        // 准备测试数据：slot 迁移后所有 slot 都在 NODE_B 上
+        RedisClusterNode moved = master("10.0.0.2", 0, 16383);
+        when(connection.clusterGetNodes()).thenReturn(List.of(NODE_A, NODE_B), List.of(moved));
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; keys.size() < 6; i++) {
+            keys.add("user:" + i);
+        }
+        AtomicInteger attempts = new AtomicInteger();
+
+        // 执行：第一次读取遇到 MOVED
+        List<Object> results = router.pipelineByNode(keys, nodeKeys -> {
+            if (attempts.getAndIncrement() == 0) {
+                throw new RedisSystemException("Error in execution",
+                        new IllegalStateException("MOVED 3999 10.0.0.2:6379"));
+            }
+            return new ArrayList<>(nodeKeys);
+        });
+
+        // 验证结果：刷新一次后全部键在同一个节点上一次读完
+        assertEquals(keys, results);
+        verify(connection, times(2)).clusterGetNodes();
+        assertEquals(List.of(moved), router.masters());
+        assertTrue(attempts.get() >= 2);
+    }
+
+    @Test
+    @DisplayName("测试 isMoved - 只识别 MOVED 重定向")
+    void testIsMoved() {
+        assertTrue(RedisClusterRouter.isMoved(new RedisSystemException("x", new IllegalStateException("MOVED 1 h:1"))));
+        assertFalse(RedisClusterRouter.isMoved(new IllegalStateException("node down")));
+    }
+}
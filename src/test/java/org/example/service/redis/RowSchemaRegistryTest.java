@@ -0,0 +1,80 @@
+package org.example.service.redis;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 单元测试类：RowSchemaRegistry / CompactRow
+ * 测试紧凑行的字段共享与 Map 行为
+ */
+@DisplayName("紧凑行结构注册表单元测试")
+class RowSchemaRegistryTest {
+
+    private RowSchemaRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new RowSchemaRegistry();
+    }
+
+    @Test
+    @DisplayName("测试同前缀的行共享同一字段表")
+    void testToRow_SharesSchemaPerPrefix() {
+        // 准备测试数据
+        Map<Object, Object> user1 = new LinkedHashMap<>();
+        user1.put("name", "张三");
+        user1.put("city", "北京");
+        Map<Object, Object> user2 = new LinkedHashMap<>();
+        user2.put("city", "上海");
+        user2.put("age", "30");
+
+        // 执行转换
+        Map<String, Object> row1 = registry.toRow("user:1", user1);
+        Map<String, Object> row2 = registry.toRow("user:2", user2);
+
+        // 验证结果
+        assertTrue(row1 instanceof CompactRow);
+        assertEquals(1, registry.schemaCount());
+        assertEquals(user1, row1);
+        assertEquals(user2, row2);
+        assertNull(row2.get("name"));
+        assertEquals(2, row2.size());
+    }
+
+    @Test
+    @DisplayName("测试投影结果转换 - 缺失字段不出现")
+    void testToRow_Projection() {
+        // 执行转换
+        Map<String, Object> row = registry.toRow("user:1", new String[]{"age", "city"}, Arrays.asList("25", null));
+
+        // 验证结果
+        assertEquals(Map.of("age", "25"), row);
+        assertFalse(row.containsKey("city"));
+    }
+
+    @Test
+    @DisplayName("测试紧凑行只读")
+    void testCompactRow_ReadOnly() {
+        // 执行转换
+        Map<String, Object> row = registry.toRow("user:1", Map.of("name", "张三"));
+
+        // 验证结果
+        assertThrows(UnsupportedOperationException.class, () -> row.put("key", "user:1"));
+    }
+
+    @Test
+    @DisplayName("测试空 Hash 返回空 Map")
+    void testToRow_EmptyHash() {
+        // 执行转换
+        Map<String, Object> row = registry.toRow("user:404", Collections.emptyMap());
+
+        // 验证结果
+        assertTrue(row.isEmpty());
+        assertEquals(0, registry.schemaCount());
+    }
+}
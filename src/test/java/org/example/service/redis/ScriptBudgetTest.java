@@ -0,0 +1,101 @@
+package org.example.service.redis;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.config.ScriptConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 单元测试类：ScriptBudget
+ * 测试命令白名单与单次执行预算
+ */
+@DisplayName("脚本执行预算单元测试")
+class ScriptBudgetTest {
+
+    private ScriptConfig scriptConfig;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        scriptConfig = new ScriptConfig();
+        scriptConfig.setAllowedCommands(List.of("GET", "hgetall", "SCAN"));
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    @DisplayName("测试白名单 - 未授权命令被拒绝并计数")
+    void testCommand_NotAllowed() {
+        ScriptBudget budget = new ScriptBudget(scriptConfig, meterRegistry);
+
+        // 验证结果
+        budget.command("HGETALL");
+        assertThrows(SecurityException.class, () -> budget.command("KEYS"));
+        assertEquals(1.0, meterRegistry.counter("script.budget.exceeded", "budget", "command_denied").count());
+    }
+
+    @Test
+    @DisplayName("测试命令数预算")
+    void testCommand_BudgetExceeded() {
+        scriptConfig.setMaxCommands(2);
+        ScriptBudget budget = new ScriptBudget(scriptConfig, meterRegistry);
+
+        // 执行命令
+        budget.command("GET");
+        budget.command("GET");
+
+        // 验证结果
+        ScriptBudgetExceededException e = assertThrows(ScriptBudgetExceededException.class, () -> budget.command("GET"));
+        assertTrue(e.getMessage().contains("commands"));
+        assertEquals(1.0, meterRegistry.counter("script.budget.exceeded", "budget", "commands").count());
+    }
+
+    @Test
+    @DisplayName("测试扫描键数与读取字节预算")
+    void testKeysAndBytesBudget() {
+        scriptConfig.setMaxKeysScanned(10);
+        scriptConfig.setMaxBytesRead(10);
+        ScriptBudget budget = new ScriptBudget(scriptConfig, meterRegistry);
+
+        // 执行
+        budget.keysScanned(10);
+        budget.read("北京");
+
+        // 验证结果
+        assertThrows(ScriptBudgetExceededException.class, () -> budget.keysScanned(1));
+        assertThrows(ScriptBudgetExceededException.class, () -> budget.read(Map.of("name", "abc")));
+        assertEquals(6L, ScriptBudget.estimateBytes("北京"));
+    }
+
+    @Test
+    @DisplayName("测试未配置白名单时允许所有命令")
+    void testCommand_NoWhitelist() {
+        scriptConfig.setAllowedCommands(null);
+        scriptConfig.setMaxCommands(0);
+        ScriptBudget budget = new ScriptBudget(scriptConfig, meterRegistry);
+
+        // 验证结果
+        assertDoesNotThrow(() -> budget.command("KEYS", 1_000_000));
+        assertEquals(1_000_000L, budget.usage().get("commands"));
+    }
+
+    @Test
+    @DisplayName("测试截止时间 - 超过 maxExecutionTime 后检查失败")
+    void testCheckDeadline() throws InterruptedException {
+        scriptConfig.setMaxExecutionTime(1);
+        ScriptBudget budget = new ScriptBudget(scriptConfig, meterRegistry);
+
+        // 等待超过截止时间
+        Thread.sleep(5);
+
+        // 验证结果
+        assertTrue(budget.remainingNanos() <= 0);
+        assertThrows(ScriptBudgetExceededException.class, budget::checkDeadline);
+        assertEquals(1.0, meterRegistry.counter("script.budget.exceeded", "budget", "deadline").count());
+    }
+}
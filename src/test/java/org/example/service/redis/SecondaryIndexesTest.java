@@ -0,0 +1,194 @@
+package org.example.service.redis;
+
+import org.example.config.ScriptConfig;
+import org.example.config.ScriptConfig.IndexDefinition;
+import org.example.config.ScriptConfig.IndexType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentMatcher;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisClusterNode;
+import org.springframework.data.redis.connection.RedisClusterNode.SlotRange;
+import org.springframework.data.redis.connection.RedisNode.NodeType;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.SetOperations;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.ZSetOperations.TypedTuple;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 单元测试类：SecondaryIndexes
+ * 测试二级索引的写入维护与查询
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("二级索引单元测试")
+class SecondaryIndexesTest {
+
+    @Mock
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Mock
+    private SetOperations<String, Object> setOperations;
+
+    @Mock
+    private ZSetOperations<String, Object> zSetOperations;
+
+    private ScriptConfig scriptConfig;
+    private SecondaryIndexes secondaryIndexes;
+
+    @BeforeEach
+    void setUp() {
+        // 声明 user.city 等值索引与 user.age 范围索引
+        scriptConfig = new ScriptConfig();
+        scriptConfig.setIndexes(List.of(definition("city", IndexType.EQUALITY), definition("age", IndexType.RANGE)));
+
+        lenient().when(redisTemplate.opsForSet()).thenReturn(setOperations);
+        lenient().when(redisTemplate.opsForZSet()).thenReturn(zSetOperations);
+
+        secondaryIndexes = new SecondaryIndexes(redisTemplate, scriptConfig);
+    }
+
+    @Test
+    @DisplayName("测试索引匹配 - 仅匹配声明的前缀和字段")
+    void testIsIndexed() {
+        assertTrue(secondaryIndexes.isIndexed("user:1", "city"));
+        assertFalse(secondaryIndexes.isIndexed("user:1", "email"));
+        assertFalse(secondaryIndexes.isIndexed("user:profile:1", "city"));
+        assertFalse(secondaryIndexes.isIndexed("order:1", "city"));
+    }
+
+    @Test
+    @DisplayName("测试等值索引维护 - 从旧值集合移到新值集合")
+    void testUpdate_Equality() {
+        // 执行更新
+        secondaryIndexes.update("user:1", "city", "北京", "上海");
+
+        // 验证调用
+        verify(setOperations).remove("idx:user:city:北京", "user:1");
+        verify(setOperations).add("idx:user:city:上海", "user:1");
+    }
+
+    @Test
+    @DisplayName("测试范围索引维护 - 非数值移除")
+    void testUpdate_Range() {
+        // 执行更新
+        secondaryIndexes.update("user:1", "age", null, "30");
+        secondaryIndexes.update("user:2", "age", "30", "unknown");
+
+        // 验证调用
+        verify(zSetOperations).add("idx:user:age", "user:1", 30.0);
+        verify(zSetOperations).remove("idx:user:age", "user:2");
+    }
+
+    @Test
+    @DisplayName("测试索引查询")
+    void testQuery() {
+        // Mock索引数据
+        when(setOperations.members("idx:user:city:北京")).thenReturn(Set.of("user:1"));
+        when(zSetOperations.rangeByScore("idx:user:age", 25.0, 35.0)).thenReturn(Set.of("user:2"));
+
+        // 验证结果
+        assertEquals(Set.of("user:1"), secondaryIndexes.query("user", "city").eq("北京"));
+        assertEquals(Set.of("user:2"), secondaryIndexes.query("user", "age").range(25, 35));
+        assertThrows(IllegalStateException.class, () -> secondaryIndexes.query("user", "city").range(1, 2));
+        assertThrows(IllegalArgumentException.class, () -> secondaryIndexes.query("user", "email"));
+    }
+
+    @Test
+    @DisplayName("测试回填 - 补齐缺失的索引项并删除键已删除或取值已变化的成员")
+    @SuppressWarnings("unchecked")
+    void testBackfill_PrunesStaleEntries() throws Exception {
+        // 准备测试数据：user:3 已删除，但仍留在 北京 的索引集合里
+        Cursor<String> dataKeys = cursor("user:1", "user:2");
+        Cursor<String> indexKeys = cursor("idx:user:city:北京");
+        when(redisTemplate.scan(argThat(pattern("user:*")))).thenReturn(dataKeys);
+        when(redisTemplate.scan(argThat(pattern("idx:user:city:*")))).thenReturn(indexKeys);
+        Cursor<Object> members = cursor("user:1", "user:3");
+        when(setOperations.scan(eq("idx:user:city:北京"), any(ScanOptions.class))).thenReturn(members);
+        when(redisTemplate.executePipelined(any(RedisCallback.class)))
+                .thenReturn(Arrays.asList("北京", "上海"), Arrays.asList("北京", null));
+
+        // 执行
+        long indexed = secondaryIndexes.backfill(definition("city", IndexType.EQUALITY)).get(5, TimeUnit.SECONDS);
+
+        // 验证结果
+        assertEquals(2, indexed);
+        verify(setOperations).add("idx:user:city:北京", "user:1");
+        verify(setOperations).add("idx:user:city:上海", "user:2");
+        verify(setOperations).remove("idx:user:city:北京", "user:3");
+        assertEquals(Map.of("state", "DONE", "indexedKeys", 2L, "removedEntries", 1L),
+                secondaryIndexes.getBackfillStatus().get("user.city:EQUALITY"));
+    }
+
+    @Test
+    @DisplayName("测试回填 - 集群模式经主节点扫描，不走 RedisTemplate.scan")
+    @SuppressWarnings("unchecked")
+    void testBackfill_Cluster() throws Exception {
+        // 准备测试数据：单个主节点负责全部 slot，user:9 已删除
+        RedisClusterConnection connection = mock(RedisClusterConnection.class);
+        RedisClusterNode master = RedisClusterNode.newRedisClusterNode()
+                .listeningAt("10.0.0.1", 6379).promotedAs(NodeType.MASTER).serving(new SlotRange(0, 16383)).build();
+        when(connection.clusterGetNodes()).thenReturn(List.of(master));
+        Cursor<byte[]> dataKeys = cursor("user:1".getBytes(StandardCharsets.UTF_8), "user:2".getBytes(StandardCharsets.UTF_8));
+        when(connection.scan(eq(master), any(ScanOptions.class))).thenReturn(dataKeys);
+        Cursor<TypedTuple<Object>> members = cursor(new DefaultTypedTuple<Object>("user:1", 30.0),
+                new DefaultTypedTuple<Object>("user:9", 41.0));
+        when(zSetOperations.scan(eq("idx:user:age"), any(ScanOptions.class))).thenReturn(members);
+        when(redisTemplate.executePipelined(any(RedisCallback.class)))
+                .thenReturn(Arrays.asList("30", "unknown"), Arrays.asList("30", null));
+        RedisClusterRouter router = new RedisClusterRouter(true, () -> connection, new SimpleMeterRegistry());
+        SecondaryIndexes clustered = new SecondaryIndexes(redisTemplate, scriptConfig, router);
+
+        // 执行
+        long indexed;
+        try {
+            indexed = clustered.backfill(definition("age", IndexType.RANGE)).get(5, TimeUnit.SECONDS);
+        } finally {
+            router.shutdown();
+        }
+
+        // 验证结果
+        assertEquals(1, indexed);
+        verify(zSetOperations).add(eq("idx:user:age"), argThat((Set<TypedTuple<Object>> tuples) -> tuples.size() == 1
+                && "user:1".equals(tuples.iterator().next().getValue())));
+        verify(zSetOperations).remove("idx:user:age", "user:9");
+        verify(redisTemplate, never()).scan(any(ScanOptions.class));
+    }
+
+    @SafeVarargs
+    @SuppressWarnings("unchecked")
+    private static <T> Cursor<T> cursor(T... items) {
+        Iterator<T> iterator = List.of(items).iterator();
+        Cursor<T> cursor = mock(Cursor.class);
+        lenient().when(cursor.hasNext()).thenAnswer(invocation -> iterator.hasNext());
+        lenient().when(cursor.next()).thenAnswer(invocation -> iterator.next());
+        return cursor;
+    }
+
+    private static ArgumentMatcher<ScanOptions> pattern(String pattern) {
+        return options -> options != null && pattern.equals(options.getPattern());
+    }
+
+    private static IndexDefinition definition(String field, IndexType type) {
+        IndexDefinition definition = new IndexDefinition();
+        definition.setPrefix("user");
+        definition.setField(field);
+        definition.setType(type);
+        return definition;
+    }
+}
@@ -0,0 +1,152 @@
+package org.example.service.script;
+
+import groovy.lang.Binding;
+import groovy.lang.Closure;
+import groovy.lang.GroovyShell;
+import groovy.lang.Script;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 单元测试类：BatchFetchRewriter
+ * 测试编译期 N+1 循环识别与改写
+ */
+@DisplayName("N+1 循环编译期改写单元测试")
+class BatchFetchRewriterTest {
+
+    /**
+     * 只记录调用的 redis 替身
+     */
+    public static class RecordingRedis {
+        final List<String> calls = new ArrayList<>();
+
+        public Set<String> keys(String pattern) {
+            calls.add("keys " + pattern);
+            return new LinkedHashSet<>(List.of("user:1"));
+        }
+
+        public Map<String, Object> hgetAll(String key) {
+            calls.add("hgetAll " + key);
+            return Map.of("name", "张三");
+        }
+
+        public void eachKeyPrefetched(String pattern, Closure<?> body) {
+            calls.add("eachKeyPrefetched " + pattern);
+            body.call("user:1");
+        }
+
+        public void hset(String key, String field, Object value) {
+            calls.add("hset " + key);
+        }
+    }
+
+    private BatchFetchRewriter rewriter;
+
+    private Object run(String scriptText, RecordingRedis redis) {
+        rewriter = new BatchFetchRewriter();
+        CompilerConfiguration configuration = new CompilerConfiguration();
+        configuration.addCompilationCustomizers(rewriter);
+        Binding binding = new Binding();
+        binding.setVariable("redis", redis);
+        Script script = new GroovyShell(binding, configuration).parse(scriptText);
+        return script.run();
+    }
+
+    @Test
+    @DisplayName("测试链式 keys().each 被改写")
+    void testRewrite_ChainedEach() {
+        // 准备测试数据
+        RecordingRedis redis = new RecordingRedis();
+        String script = "def names = []\nredis.keys('user:*').each { k -> names << redis.hgetAll(k).name }\nnames";
+
+        // 执行
+        Object result = run(script, redis);
+
+        // 验证结果
+        assertTrue(rewriter.isApplied());
+        assertEquals(List.of("张三"), result);
+        assertEquals(List.of("eachKeyPrefetched user:*", "hgetAll user:1"), redis.calls);
+    }
+
+    @Test
+    @DisplayName("测试先赋值再 each 的写法被改写，隐式 it 参数也可识别")
+    void testRewrite_DeclaredKeysVariable() {
+        // 准备测试数据
+        RecordingRedis redis = new RecordingRedis();
+        String script = "def ks = redis.keys('user:*')\nint n = 0\nks.each { redis.hgetAll(it); n++ }\nn";
+
+        // 执行
+        Object result = run(script, redis);
+
+        // 验证结果
+        assertTrue(rewriter.isApplied());
+        assertEquals(1, result);
+        assertEquals("eachKeyPrefetched user:*", redis.calls.get(0));
+    }
+
+    @Test
+    @DisplayName("测试 each 是最后一条语句时不改写，脚本结果仍是键集合")
+    void testNoRewrite_LastStatementIsResult() {
+        // 准备测试数据
+        RecordingRedis redis = new RecordingRedis();
+        String script = "redis.keys('user:*').each { k -> redis.hgetAll(k) }";
+
+        // 执行
+        Object result = run(script, redis);
+
+        // 验证结果
+        assertFalse(rewriter.isApplied());
+        assertEquals(Set.of("user:1"), result);
+    }
+
+    @Test
+    @DisplayName("测试闭包经脚本方法间接写入时不改写")
+    void testNoRewrite_WritesThroughHelper() {
+        // 准备测试数据
+        RecordingRedis redis = new RecordingRedis();
+        String script = "def touch(r, k) { r.hset(k, 'seen', '1') }\n"
+                + "redis.keys('user:*').each { k -> redis.hgetAll(k); touch(redis, k) }\nreturn 'ok'";
+
+        // 执行
+        run(script, redis);
+
+        // 验证结果
+        assertFalse(rewriter.isApplied());
+        assertEquals(List.of("keys user:*", "hgetAll user:1", "hset user:1"), redis.calls);
+    }
+
+    @Test
+    @DisplayName("测试闭包内有写操作时不改写")
+    void testNoRewrite_WritesInsideLoop() {
+        // 准备测试数据
+        RecordingRedis redis = new RecordingRedis();
+        String script = "redis.keys('user:*').each { k -> redis.hgetAll(k); redis.hset(k, 'seen', '1') }\nreturn 'ok'";
+
+        // 执行
+        run(script, redis);
+
+        // 验证结果
+        assertFalse(rewriter.isApplied());
+        assertEquals("keys user:*", redis.calls.get(0));
+    }
+
+    @Test
+    @DisplayName("测试键列表在循环外还被使用时不改写")
+    void testNoRewrite_KeysVariableReused() {
+        // 准备测试数据
+        RecordingRedis redis = new RecordingRedis();
+        String script = "def ks = redis.keys('user:*')\nks.each { k -> redis.hgetAll(k) }\nks.size()";
+
+        // 执行
+        Object result = run(script, redis);
+
+        // 验证结果
+        assertFalse(rewriter.isApplied());
+        assertEquals(1, result);
+    }
+}
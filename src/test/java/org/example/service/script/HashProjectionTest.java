@@ -0,0 +1,70 @@
+package org.example.service.script;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 单元测试类：HashProjection
+ * 测试 hgetAll 结果上字段访问与整体使用的识别
+ */
+@DisplayName("hgetAll 字段投影识别单元测试")
+class HashProjectionTest {
+
+    @Test
+    @DisplayName("测试字段访问 - 属性、安全导航与下标访问都算作字段")
+    void testFieldAccess() {
+        // 准备测试数据
+        String script = """
+                def u = redis.hgetAll('user:1')
+                if (u && u.active) {
+                    return [u.city, u?.name, u['age']]
+                }
+                return null
+                """;
+
+        // 执行 & 验证
+        assertEquals(Set.of("active", "city", "name", "age"), HashProjection.fields(script));
+    }
+
+    @Test
+    @DisplayName("测试整体使用 - 接收闭包的 GDK 方法与 Map 自身的属性不是字段")
+    void testWholeMapUsage() {
+        // 执行 & 验证
+        assertTrue(HashProjection.fields("def d = redis.hgetAll('k')\nd.each { k, v -> println k }\nreturn d.city").isEmpty());
+        assertTrue(HashProjection.fields("def d = redis.hgetAll('k')\nreturn d.findAll { it.value }").isEmpty());
+        assertTrue(HashProjection.fields("def d = redis.hgetAll('k')\nreturn d.keySet").isEmpty());
+        assertTrue(HashProjection.fields("def d = redis.hgetAll('k')\nreturn d").isEmpty());
+    }
+
+    @Test
+    @DisplayName("测试作用域 - 字符串与注释中的同名文字、其他作用域的同名变量不影响结果")
+    void testScopesStringsAndComments() {
+        // 准备测试数据：另一个闭包里的同名变量 d 不是 hgetAll 的结果
+        String script = """
+                def cities = ['user:1'].collect { key ->
+                    def d = redis.hgetAll(key)
+                    // d.each { } 只是注释
+                    d.city
+                }
+                def labels = ['x'].collect { key ->
+                    def d = [name: key]
+                    d.each { k, v -> println k }
+                    "d.keySet() is not called"
+                }
+                return cities + labels
+                """;
+
+        // 执行 & 验证
+        assertEquals(Set.of("city"), HashProjection.fields(script));
+    }
+
+    @Test
+    @DisplayName("测试无法解析 - 语法错误的脚本不给出建议")
+    void testUnparseable() {
+        assertTrue(HashProjection.fields("def d = redis.hgetAll('k'\nreturn d.city").isEmpty());
+    }
+}
@@ -0,0 +1,88 @@
+package org.example.service.script;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 单元测试类：ScriptFingerprint
+ * 测试注释、空白、变量名、字面量的规范化，以及语义差异的保留
+ */
+@DisplayName("脚本结构指纹单元测试")
+class ScriptFingerprintTest {
+
+    @Test
+    @DisplayName("测试规范化 - 注释、空白、局部变量名与数值字面量取值不影响指纹")
+    void testEquivalentScripts() {
+        // 准备测试数据
+        String original = """
+                def total = 0
+                redis.keys('user:*').each { key ->
+                    def user = redis.hgetAll(key)
+                    if (user.age) { total += user.age as int }
+                }
+                return total
+                """;
+        String variant = """
+                /* 统计年龄 */
+                def sum = 100   // 初始值
+                redis.keys("user:*").each { k -> def row = redis.hgetAll(k)
+                    if (row.age) { sum += row.age as int } }
+                return sum
+                """;
+
+        // 执行 & 验证
+        assertNotNull(ScriptFingerprint.of(original));
+        assertEquals(ScriptFingerprint.of(original), ScriptFingerprint.of(variant));
+    }
+
+    @Test
+    @DisplayName("测试语义差异 - 方法名、属性名、运算符、未声明的名字会改变指纹")
+    void testDifferentScripts() {
+        String base = ScriptFingerprint.of("def v = redis.get('k')\nreturn v");
+
+        // 执行 & 验证
+        assertNotEquals(base, ScriptFingerprint.of("def v = redis.hgetAll('k')\nreturn v"));
+        assertNotEquals(base, ScriptFingerprint.of("def v = redis.get('k')\nreturn !v"));
+        assertNotEquals(base, ScriptFingerprint.of("def v = redis.get('k')\nreturn v.size"));
+        assertNotEquals(base, ScriptFingerprint.of("def v = other.get('k')\nreturn v"));
+        assertNotEquals(ScriptFingerprint.of("return 1 + 2"), ScriptFingerprint.of("return 1 - 2"));
+        assertNotEquals(ScriptFingerprint.of("return 1"), ScriptFingerprint.of("return '1'"));
+        assertNotEquals(ScriptFingerprint.of("System.out.println('x')"), ScriptFingerprint.of("Runtime.getRuntime()"));
+    }
+
+    @Test
+    @DisplayName("测试字符串字面量 - 命令、求值载荷与键模式的取值会改变指纹")
+    void testStringLiteralsKept() {
+        // 执行 & 验证
+        assertNotEquals(ScriptFingerprint.of("return 'ls'.execute().text"),
+                ScriptFingerprint.of("return 'rm -rf /'.execute().text"));
+        assertNotEquals(ScriptFingerprint.of("def cmd = 'ls'\nreturn cmd.execute().text"),
+                ScriptFingerprint.of("def cmd = 'rm -rf /'\nreturn cmd.execute().text"));
+        assertNotEquals(ScriptFingerprint.of("return Eval.me('1 + 1')"),
+                ScriptFingerprint.of("return Eval.me('System.exit(0)')"));
+        assertNotEquals(ScriptFingerprint.of("def d = '/tmp'\nreturn \"ls ${d}\".execute()"),
+                ScriptFingerprint.of("def d = '/tmp'\nreturn \"rm -rf ${d}\".execute()"));
+        assertNotEquals(ScriptFingerprint.of("return redis.keys('user:*')"), ScriptFingerprint.of("return redis.keys('*')"));
+        assertEquals(ScriptFingerprint.of("return redis.get('k').take(10)"), ScriptFingerprint.of("return redis.get('k').take(20)"));
+    }
+
+    @Test
+    @DisplayName("测试变量名规范化 - 按出现顺序映射，交换两个变量的用法会改变指纹")
+    void testVariableOrder() {
+        String ab = ScriptFingerprint.of("def a = redis.get('x')\ndef b = redis.get('y')\nreturn [a, b]");
+        String xy = ScriptFingerprint.of("def x = redis.get('x')\ndef y = redis.get('y')\nreturn [x, y]");
+        String swapped = ScriptFingerprint.of("def a = redis.get('x')\ndef b = redis.get('y')\nreturn [b, a]");
+
+        // 执行 & 验证
+        assertEquals(ab, xy);
+        assertNotEquals(ab, swapped);
+    }
+
+    @Test
+    @DisplayName("测试无法解析的脚本 - 返回 null")
+    void testUnparseable() {
+        assertNull(ScriptFingerprint.of("def x = {"));
+    }
+}